@@ -0,0 +1,707 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc.generator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Generates the abstract base classes of the JDBC wrappers from the java.sql interfaces and the
+ * instrumentation table in src/generator/wrappers.txt.
+ *
+ * <p>For each interface of the table, OcWrap&lt;Interface&gt;Base implements every abstract method
+ * by calling the wrapped instance through a final field, so that each call site only ever sees the
+ * driver's class. The methods of the table are instrumented according to their traits, and the
+ * names of their spans are derived from the interface and the method, rather than typed by hand.
+ *
+ * <p>Usage: WrapperGenerator &lt;table&gt; &lt;output directory&gt;
+ */
+public final class WrapperGenerator {
+  private static final String PACKAGE = "io.opencensus.integration.jdbc";
+  private static final int MAX_LINE_LENGTH = 100;
+
+  private enum Trait {
+    ROUNDTRIP,
+    SQL,
+    WRAP,
+    ROWS,
+    QUERY,
+    CUSTOM
+  }
+
+  // An [interface] section of the table.
+  private static final class Section {
+    final Class<?> iface;
+    final boolean boundSql;
+    final boolean unitOfWork;
+    final boolean parameters;
+    final boolean inFlight;
+    final boolean resources;
+    // Keyed by method name, or by name and parameter types for a single overload.
+    final Map<String, EnumSet<Trait>> entries = new LinkedHashMap<>();
+    final Set<String> usedEntries = new HashSet<>();
+
+    Section(
+        Class<?> iface,
+        boolean boundSql,
+        boolean unitOfWork,
+        boolean parameters,
+        boolean inFlight,
+        boolean resources) {
+      this.iface = iface;
+      this.boundSql = boundSql;
+      this.unitOfWork = unitOfWork;
+      this.parameters = parameters;
+      this.inFlight = inFlight;
+      this.resources = resources;
+    }
+  }
+
+  private final Set<String> imports = new TreeSet<>();
+  private final StringBuilder out = new StringBuilder();
+  // The span names of the roundtrip methods, listed by the generated class.
+  private final Set<String> spanNames = new TreeSet<>();
+
+  private WrapperGenerator() {}
+
+  public static void main(String[] args) throws IOException, ClassNotFoundException {
+    if (args.length != 2) {
+      throw new IllegalArgumentException("Usage: WrapperGenerator <table> <output directory>");
+    }
+    Path table = Paths.get(args[0]);
+    Path outputDir = Paths.get(args[1]).resolve(PACKAGE.replace('.', '/'));
+    Files.createDirectories(outputDir);
+    for (Section section : parse(table)) {
+      String className = baseClassName(section.iface);
+      String source = new WrapperGenerator().generate(section, className);
+      try (Writer writer =
+          Files.newBufferedWriter(outputDir.resolve(className + ".java"), StandardCharsets.UTF_8)) {
+        writer.write(source);
+      }
+    }
+  }
+
+  private static List<Section> parse(Path table) throws IOException, ClassNotFoundException {
+    List<Section> sections = new ArrayList<>();
+    Section section = null;
+    int lineNumber = 0;
+    for (String rawLine : Files.readAllLines(table, StandardCharsets.UTF_8)) {
+      lineNumber++;
+      String line = rawLine.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] words = line.split("\\s+");
+      if (line.startsWith("[")) {
+        if (!line.endsWith("]")) {
+          throw new IllegalArgumentException(table + ":" + lineNumber + ": unclosed section");
+        }
+        words = line.substring(1, line.length() - 1).trim().split("\\s+");
+        List<String> options = Arrays.asList(words).subList(1, words.length);
+        boolean boundSql = options.contains("boundSql");
+        boolean unitOfWork = options.contains("unitOfWork");
+        boolean parameters = options.contains("parameters");
+        boolean inFlight = options.contains("inFlight");
+        boolean resources = options.contains("resources");
+        if (options.size()
+            != (boundSql ? 1 : 0)
+                + (unitOfWork ? 1 : 0)
+                + (parameters ? 1 : 0)
+                + (inFlight ? 1 : 0)
+                + (resources ? 1 : 0)) {
+          throw new IllegalArgumentException(table + ":" + lineNumber + ": invalid section");
+        }
+        section =
+            new Section(
+                Class.forName(words[0]), boundSql, unitOfWork, parameters, inFlight, resources);
+        sections.add(section);
+        continue;
+      }
+      if (section == null) {
+        throw new IllegalArgumentException(table + ":" + lineNumber + ": entry outside a section");
+      }
+      EnumSet<Trait> traits = EnumSet.noneOf(Trait.class);
+      for (String word : Arrays.asList(words).subList(1, words.length)) {
+        try {
+          traits.add(Trait.valueOf(word.toUpperCase(Locale.ROOT)));
+        } catch (IllegalArgumentException e) {
+          throw new IllegalArgumentException(
+              table + ":" + lineNumber + ": unknown trait " + word, e);
+        }
+      }
+      if (traits.isEmpty()) {
+        throw new IllegalArgumentException(table + ":" + lineNumber + ": no traits");
+      }
+      if (traits.contains(Trait.CUSTOM) && traits.size() > 1) {
+        throw new IllegalArgumentException(
+            table + ":" + lineNumber + ": custom methods can't have other traits");
+      }
+      if (traits.contains(Trait.ROWS) && !traits.contains(Trait.ROUNDTRIP)) {
+        throw new IllegalArgumentException(
+            table + ":" + lineNumber + ": rows are only recorded by roundtrip methods");
+      }
+      if (traits.contains(Trait.QUERY)
+          && !(traits.contains(Trait.ROUNDTRIP) && traits.contains(Trait.SQL))) {
+        throw new IllegalArgumentException(
+            table + ":" + lineNumber + ": queries must be roundtrip sql methods");
+      }
+      if (section.entries.put(words[0], traits) != null) {
+        throw new IllegalArgumentException(table + ":" + lineNumber + ": duplicate entry");
+      }
+    }
+    return sections;
+  }
+
+  private String generate(Section section, String className) {
+    Class<?> iface = section.iface;
+    String field = fieldName(iface);
+    imports.add(iface.getName());
+
+    // The class is generated before its header, so that it collects the imports.
+    out.setLength(0);
+    line("/**");
+    line(" * Implements the methods of {@link " + iface.getSimpleName() + "} for its wrapper.");
+    line(" *");
+    line(" * <p>Generated by WrapperGenerator from src/generator/wrappers.txt, do not edit.");
+    line(" */");
+    line("abstract class " + className + " implements " + iface.getSimpleName() + " {");
+    line("  final " + iface.getSimpleName() + " " + field + ";");
+    line("  final TrackingOptions options;");
+    if (section.boundSql) {
+      imports.add("javax.annotation.Nullable");
+      line("  // The \"sql\" attributes of the sampled spans of the executions, built once per");
+      line("  // statement, or null if the spans aren't annotated with the SQL.");
+      line("  @Nullable final SqlAttributes sqlAttributes;");
+      line("  // The SQL the statement was prepared with, if known.");
+      line("  @Nullable final String sql;");
+    }
+    if (section.unitOfWork) {
+      imports.add("javax.annotation.Nullable");
+      line("  // The unit of work of the connection the wrapper belongs to, if any.");
+      line("  @Nullable final UnitOfWork unitOfWork;");
+    }
+    if (section.parameters) {
+      imports.add("javax.annotation.Nullable");
+      line("  // The values bound to the parameters, if a ParameterCapture was started when the");
+      line("  // statement was prepared.");
+      line("  @Nullable final ParameterSlots parameters;");
+    }
+    if (section.inFlight) {
+      line("  // The operation of the \"query\" method executing on the wrapper, which cancel()");
+      line("  // marks as cancelled.");
+      line("  final InFlightOperation inFlight = new InFlightOperation();");
+    }
+    if (section.resources) {
+      line("  // The count and the tracking of the statement and the wrappers of its result sets,");
+      line("  // released when it is closed.");
+      line("  final StatementResources resources;");
+    }
+    // The span names are only known once the methods are generated.
+    int spanNamesAt = out.length();
+    line("");
+    List<String> parameters = new ArrayList<>();
+    parameters.add(iface.getSimpleName() + " " + field);
+    if (section.boundSql) {
+      parameters.add("@Nullable String sql");
+    }
+    parameters.add("TrackingOptions options");
+    if (section.unitOfWork) {
+      parameters.add("@Nullable UnitOfWork unitOfWork");
+    }
+    String parameterList = String.join(", ", parameters);
+    if (("  " + className + "(" + parameterList + ") {").length() <= MAX_LINE_LENGTH) {
+      line("  " + className + "(" + parameterList + ") {");
+    } else if (("      " + parameterList + ") {").length() <= MAX_LINE_LENGTH) {
+      line("  " + className + "(");
+      line("      " + parameterList + ") {");
+    } else {
+      line("  " + className + "(");
+      for (int i = 0; i < parameters.size(); i++) {
+        line("      " + parameters.get(i) + (i == parameters.size() - 1 ? ") {" : ","));
+      }
+    }
+    line("    this." + field + " = " + field + ";");
+    line("    this.options = options;");
+    if (section.boundSql) {
+      line("    this.sqlAttributes = options.sqlAttributes(sql);");
+      line("    this.sql = sql;");
+    }
+    if (section.unitOfWork) {
+      line("    this.unitOfWork = unitOfWork;");
+    }
+    if (section.parameters) {
+      line(
+          "    this.parameters ="
+              + " ParameterCapture.current() != null ? new ParameterSlots() : null;");
+    }
+    if (section.resources) {
+      // The kind of the statement for the StatementLeakDetector, e.g. PREPARED_STATEMENT.
+      String kind =
+          iface.getSimpleName().replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase(Locale.ROOT);
+      line("    this.resources =");
+      line(
+          "        new StatementResources(this, StatementLeakDetector."
+              + kind
+              + (section.boundSql ? ", sql" : ", null")
+              + (section.unitOfWork ? ", unitOfWork);" : ", null);"));
+    }
+    line("  }");
+
+    for (Method method : abstractMethods(iface)) {
+      EnumSet<Trait> traits = traits(section, method);
+      line("");
+      if (method.isAnnotationPresent(Deprecated.class)) {
+        line("  @SuppressWarnings(\"deprecation\")");
+      }
+      line("  @Override");
+      if (traits.contains(Trait.CUSTOM)) {
+        declaration(method, traits, "public abstract ", ";");
+      } else {
+        declaration(method, traits, "public ", " {");
+        methodBody(section, method, traits, field);
+        line("  }");
+      }
+    }
+    line("}");
+    if (!spanNames.isEmpty()) {
+      StringBuilder declaration = new StringBuilder();
+      declaration.append(
+          "  // The methods instrumented by the class, named like their spans, which\n");
+      declaration.append("  // an InstrumentationPolicy can configure.\n");
+      declaration.append("  static final String[] INSTRUMENTED_METHODS = {\n");
+      int i = 0;
+      for (String spanName : spanNames) {
+        declaration.append("    \"").append(spanName).append('"');
+        declaration.append(++i < spanNames.size() ? ",\n" : "\n");
+      }
+      declaration.append("  };\n");
+      out.insert(spanNamesAt, declaration);
+    }
+    for (String entry : section.entries.keySet()) {
+      if (!section.usedEntries.contains(entry)) {
+        throw new IllegalArgumentException(
+            iface.getName() + " has no abstract method matching " + entry);
+      }
+    }
+    String body = out.toString();
+
+    out.setLength(0);
+    line("// Copyright 2018, OpenCensus Authors");
+    line("//");
+    line("// Licensed under the Apache License, Version 2.0 (the \"License\");");
+    line("// you may not use this file except in compliance with the License.");
+    line("// You may obtain a copy of the License at");
+    line("//");
+    line("//     http://www.apache.org/licenses/LICENSE-2.0");
+    line("//");
+    line("// Unless required by applicable law or agreed to in writing, software");
+    line("// distributed under the License is distributed on an \"AS IS\" BASIS,");
+    line("// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.");
+    line("// See the License for the specific language governing permissions and");
+    line("// limitations under the License.");
+    line("");
+    line("package " + PACKAGE + ";");
+    line("");
+    for (String name : imports) {
+      line("import " + name + ";");
+    }
+    line("");
+    return out.append(body).toString();
+  }
+
+  private void methodBody(Section section, Method method, EnumSet<Trait> traits, String field) {
+    boolean hasSqlParameter = hasSqlParameter(method, traits);
+    String call =
+        "this." + field + "." + method.getName() + "(" + arguments(method, hasSqlParameter) + ")";
+    String result = wrapResult(section, method, traits, hasSqlParameter);
+    boolean isVoid = method.getReturnType() == void.class;
+
+    if (section.resources && !method.getName().equals("isClosed")) {
+      line("    this.resources.checkOpen();");
+    }
+    if (section.parameters && isParameterSetter(method)) {
+      // setNull binds NULL, its second parameter is the SQL type.
+      String value = method.getName().equals("setNull") ? "null" : parameterName(1, false);
+      line("    if (this.parameters != null) {");
+      line("      this.parameters.set(" + parameterName(0, false) + ", " + value + ");");
+      line("    }");
+    } else if (section.parameters && method.getName().equals("clearParameters")) {
+      line("    if (this.parameters != null) {");
+      line("      this.parameters.clear();");
+      line("    }");
+    } else if (section.resources && traits.contains(Trait.QUERY)) {
+      line("    this.resources.executed();");
+    } else if (section.resources && method.getName().equals("getMoreResults")) {
+      line("    this.resources.moreResults(" + arguments(method, false) + ");");
+    }
+
+    if (!traits.contains(Trait.ROUNDTRIP)) {
+      if (isVoid) {
+        line("    " + call + ";");
+      } else if (result == null) {
+        line("    return " + call + ";");
+      } else {
+        line("    " + typeName(method.getGenericReturnType()) + " result = " + call + ";");
+        returnResult("    ", result);
+      }
+      return;
+    }
+
+    imports.add("io.opencensus.common.Scope");
+    imports.add("io.opencensus.integration.jdbc.Observability.TrackingOperation");
+    spanNames.add(section.iface.getName() + "." + method.getName());
+    String spanName = "\"" + section.iface.getName() + "." + method.getName() + "\"";
+    String arguments = "this.options, " + spanName;
+    if (hasSqlParameter) {
+      arguments += ", sql";
+    } else if (traits.contains(Trait.SQL) && section.boundSql) {
+      arguments += ", this.sqlAttributes";
+    }
+    String factory = "createRoundtripTrackingSpan";
+    if (traits.contains(Trait.QUERY)) {
+      if (!hasSqlParameter && !section.boundSql) {
+        throw new IllegalArgumentException(method + " doesn't know the SQL of its query");
+      }
+      factory = "createQueryTrackingSpan";
+      arguments +=
+          (hasSqlParameter ? "" : ", this.sql")
+              + (section.unitOfWork ? ", this.unitOfWork" : ", null");
+    }
+    line("    TrackingOperation trackingOperation =");
+    String span = "        Observability." + factory + "(" + arguments + ");";
+    if (span.length() <= MAX_LINE_LENGTH) {
+      line(span);
+    } else if (("            " + arguments + ");").length() <= MAX_LINE_LENGTH) {
+      line("        Observability." + factory + "(");
+      line("            " + arguments + ");");
+    } else {
+      line("        Observability." + factory + "(");
+      line("            " + arguments.replace(", ", ",\n            ") + ");");
+    }
+    if (traits.contains(Trait.QUERY) && section.parameters && !hasSqlParameter) {
+      line("    trackingOperation.recordParameters(this.parameters);");
+    }
+    if (traits.contains(Trait.QUERY) && section.inFlight) {
+      line("    trackingOperation.recordInFlight(this.inFlight);");
+    } else if (section.inFlight && method.getName().equals("cancel")) {
+      line("    this.inFlight.cancel(trackingOperation);");
+    }
+    line("    try (Scope ws = trackingOperation.withSpan()) {");
+    if (isVoid) {
+      line("      " + call + ";");
+    } else if (traits.contains(Trait.ROWS)) {
+      line("      int rows = " + call + ";");
+      line("      trackingOperation.recordRowsAffected(rows);");
+      line("      return rows;");
+    } else if (result == null) {
+      line("      return " + call + ";");
+    } else {
+      line("      " + typeName(method.getGenericReturnType()) + " result = " + call + ";");
+      returnResult("      ", result);
+    }
+    line("    } catch (Exception e) {");
+    line("      trackingOperation.recordException(e);");
+    line("      throw e;");
+    line("    } finally {");
+    line("      trackingOperation.end();");
+    line("    }");
+  }
+
+  // Returns the wrapped result of a "wrap" method, splitting the conditional if it is too long.
+  private void returnResult(String indent, String result) {
+    String oneLine = indent + "return " + result + ";";
+    if (oneLine.length() <= MAX_LINE_LENGTH) {
+      line(oneLine);
+      return;
+    }
+    String[] parts = result.split(" \\? | : ");
+    line(indent + "return " + parts[0]);
+    line(indent + "    ? " + parts[1]);
+    line(indent + "    : " + parts[2] + ";");
+  }
+
+  // Returns the expression wrapping the result of a "wrap" method, or null to return it as is.
+  private static String wrapResult(
+      Section section, Method method, EnumSet<Trait> traits, boolean hasSqlParameter) {
+    if (!traits.contains(Trait.WRAP)) {
+      return null;
+    }
+    Class<?> type = method.getReturnType();
+    String wrapper = "OcWrap" + type.getSimpleName();
+    String arguments;
+    // The statements and result sets belong to the unit of work of the wrapper creating them.
+    String unitOfWork = section.unitOfWork ? "this.unitOfWork" : "null";
+    if (type == java.sql.ResultSet.class) {
+      // The SQL of the result set, if known, identifies it when it leaks.
+      String sql = hasSqlParameter ? "sql" : section.boundSql ? "this.sql" : "null";
+      arguments = "result, " + sql + ", this.options, " + unitOfWork;
+      if (section.resources) {
+        // The result sets of a statement are owned by its resources, which create their wrappers.
+        String owner =
+            method.getName().equals("getGeneratedKeys") ? "generatedKeys" : "resultSet";
+        return "result == null ? null : this.resources." + owner + "(" + arguments + ")";
+      }
+    } else if (type == java.sql.Statement.class) {
+      arguments = "result, this.options, " + unitOfWork;
+    } else if (type == java.sql.PreparedStatement.class
+        || type == java.sql.CallableStatement.class) {
+      arguments =
+          "result, " + (hasSqlParameter ? "sql" : "null") + ", this.options, " + unitOfWork;
+    } else {
+      throw new IllegalArgumentException(
+          "Can't wrap the " + type.getName() + " returned by " + method);
+    }
+    return "result == null ? null : new " + wrapper + "(" + arguments + ")";
+  }
+
+  private EnumSet<Trait> traits(Section section, Method method) {
+    List<String> parameters = new ArrayList<>();
+    for (Class<?> type : method.getParameterTypes()) {
+      parameters.add(stripJavaLang(type.getTypeName()));
+    }
+    String overload = method.getName() + "(" + String.join(",", parameters) + ")";
+    for (String key : Arrays.asList(overload, method.getName())) {
+      EnumSet<Trait> traits = section.entries.get(key);
+      if (traits != null) {
+        section.usedEntries.add(key);
+        if (traits.contains(Trait.ROWS) && method.getReturnType() != int.class) {
+          throw new IllegalArgumentException(method + " doesn't return a row count");
+        }
+        return traits;
+      }
+    }
+    return EnumSet.noneOf(Trait.class);
+  }
+
+  private void declaration(Method method, EnumSet<Trait> traits, String modifiers, String end) {
+    StringBuilder signature = new StringBuilder("  ").append(modifiers);
+    TypeVariable<Method>[] typeParameters = method.getTypeParameters();
+    if (typeParameters.length > 0) {
+      List<String> names = new ArrayList<>();
+      for (TypeVariable<Method> typeParameter : typeParameters) {
+        names.add(typeParameterDeclaration(typeParameter));
+      }
+      signature.append('<').append(String.join(", ", names)).append("> ");
+    }
+    signature
+        .append(typeName(method.getGenericReturnType()))
+        .append(' ')
+        .append(method.getName())
+        .append('(');
+    String prefix = signature.toString();
+
+    List<String> parameters = new ArrayList<>();
+    Type[] types = method.getGenericParameterTypes();
+    for (int i = 0; i < types.length; i++) {
+      String type = typeName(types[i]);
+      if (method.isVarArgs() && i == types.length - 1) {
+        type = type.substring(0, type.length() - 2) + "...";
+      }
+      parameters.add(type + " " + parameterName(i, hasSqlParameter(method, traits)));
+    }
+    String parameterList = String.join(", ", parameters);
+
+    List<String> exceptions = new ArrayList<>();
+    for (Type exception : method.getGenericExceptionTypes()) {
+      exceptions.add(typeName(exception));
+    }
+    String suffix = ")";
+    if (!exceptions.isEmpty()) {
+      suffix += " throws " + String.join(", ", exceptions);
+    }
+
+    String oneLine = prefix + parameterList + suffix + end;
+    if (oneLine.length() <= MAX_LINE_LENGTH || parameterList.isEmpty()) {
+      line(oneLine);
+    } else {
+      line(prefix);
+      line("      " + parameterList + suffix + end);
+    }
+  }
+
+  private static String arguments(Method method, boolean hasSqlParameter) {
+    List<String> arguments = new ArrayList<>();
+    for (int i = 0; i < method.getParameterCount(); i++) {
+      arguments.add(parameterName(i, hasSqlParameter));
+    }
+    return String.join(", ", arguments);
+  }
+
+  // The names of the parameters of the java.sql interfaces aren't available through reflection,
+  // except for the SQL of the "sql" methods, which is always their first parameter.
+  private static String parameterName(int index, boolean hasSqlParameter) {
+    return index == 0 && hasSqlParameter ? "sql" : "arg" + index;
+  }
+
+  // Whether the method binds a value to a parameter of a prepared statement, given by its index.
+  private static boolean isParameterSetter(Method method) {
+    return method.getDeclaringClass() == java.sql.PreparedStatement.class
+        && method.getName().startsWith("set")
+        && method.getParameterCount() >= 2
+        && method.getParameterTypes()[0] == int.class;
+  }
+
+  private static boolean hasSqlParameter(Method method, EnumSet<Trait> traits) {
+    return traits.contains(Trait.SQL)
+        && method.getParameterCount() > 0
+        && method.getParameterTypes()[0] == String.class;
+  }
+
+  private String typeParameterDeclaration(TypeVariable<?> typeParameter) {
+    List<String> bounds = new ArrayList<>();
+    for (Type bound : typeParameter.getBounds()) {
+      if (bound != Object.class) {
+        bounds.add(typeName(bound));
+      }
+    }
+    if (bounds.isEmpty()) {
+      return typeParameter.getName();
+    }
+    return typeParameter.getName() + " extends " + String.join(" & ", bounds);
+  }
+
+  private String typeName(Type type) {
+    if (type instanceof Class) {
+      Class<?> clazz = (Class<?>) type;
+      if (clazz.isArray()) {
+        return typeName(clazz.getComponentType()) + "[]";
+      }
+      if (clazz.isPrimitive()) {
+        return clazz.getName();
+      }
+      return importedName(clazz);
+    }
+    if (type instanceof ParameterizedType) {
+      ParameterizedType parameterized = (ParameterizedType) type;
+      List<String> arguments = new ArrayList<>();
+      for (Type argument : parameterized.getActualTypeArguments()) {
+        arguments.add(typeName(argument));
+      }
+      return typeName(parameterized.getRawType()) + "<" + String.join(", ", arguments) + ">";
+    }
+    if (type instanceof WildcardType) {
+      WildcardType wildcard = (WildcardType) type;
+      if (wildcard.getLowerBounds().length > 0) {
+        return "? super " + typeName(wildcard.getLowerBounds()[0]);
+      }
+      Type upperBound = wildcard.getUpperBounds()[0];
+      return upperBound == Object.class ? "?" : "? extends " + typeName(upperBound);
+    }
+    if (type instanceof GenericArrayType) {
+      return typeName(((GenericArrayType) type).getGenericComponentType()) + "[]";
+    }
+    if (type instanceof TypeVariable) {
+      return ((TypeVariable<?>) type).getName();
+    }
+    throw new IllegalArgumentException("Unsupported type " + type);
+  }
+
+  // Imports the class, unless another class with the same simple name was imported already.
+  private String importedName(Class<?> clazz) {
+    if (clazz.getEnclosingClass() != null) {
+      return clazz.getCanonicalName();
+    }
+    if (clazz.getPackage().getName().equals("java.lang")) {
+      return clazz.getSimpleName();
+    }
+    for (String name : imports) {
+      if (name.endsWith("." + clazz.getSimpleName()) && !name.equals(clazz.getName())) {
+        return clazz.getName();
+      }
+    }
+    imports.add(clazz.getName());
+    return clazz.getSimpleName();
+  }
+
+  // Returns the abstract methods of the interface, including the inherited ones, with a single
+  // method per signature, sorted by name and parameter types so that overloads are grouped.
+  private static List<Method> abstractMethods(Class<?> iface) {
+    Map<String, Method> methods = new HashMap<>();
+    for (Method method : iface.getMethods()) {
+      if (Modifier.isStatic(method.getModifiers())) {
+        continue;
+      }
+      String signature = method.getName() + Arrays.toString(method.getParameterTypes());
+      Method other = methods.get(signature);
+      if (other == null
+          || other.getDeclaringClass().isAssignableFrom(method.getDeclaringClass())) {
+        methods.put(signature, method);
+      }
+    }
+    List<Method> result = new ArrayList<>();
+    for (Method method : methods.values()) {
+      if (!method.isDefault()) {
+        result.add(method);
+      }
+    }
+    Collections.sort(
+        result,
+        new Comparator<Method>() {
+          @Override
+          public int compare(Method a, Method b) {
+            int byName = a.getName().compareTo(b.getName());
+            if (byName != 0) {
+              return byName;
+            }
+            return Arrays.toString(a.getParameterTypes())
+                .compareTo(Arrays.toString(b.getParameterTypes()));
+          }
+        });
+    return result;
+  }
+
+  private static String baseClassName(Class<?> iface) {
+    return "OcWrap" + iface.getSimpleName() + "Base";
+  }
+
+  private static String fieldName(Class<?> iface) {
+    String name = iface.getSimpleName();
+    return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+  }
+
+  private static String stripJavaLang(String typeName) {
+    return typeName.startsWith("java.lang.") && typeName.indexOf('.', 10) < 0
+        ? typeName.substring(10)
+        : typeName;
+  }
+
+  private void line(String line) {
+    out.append(line).append('\n');
+  }
+}
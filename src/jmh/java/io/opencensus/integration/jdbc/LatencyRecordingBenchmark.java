@@ -0,0 +1,121 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.common.Scope;
+import io.opencensus.integration.jdbc.Observability.TraceOption;
+import io.opencensus.tags.TagContext;
+import io.opencensus.tags.TagKey;
+import io.opencensus.tags.TagValue;
+import io.opencensus.tags.Tagger;
+import io.opencensus.tags.Tags;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Benchmarks how recording the latency of the calls scales with the number of threads making them,
+ * with the stats recorder of the OpenCensus implementation and with the {@link
+ * LocalLatencyAggregator}, with and without tags in the current context.
+ */
+@State(Scope.Benchmark)
+public class LatencyRecordingBenchmark {
+  private static final String METHOD = "java.sql.Statement.executeQuery";
+
+  // "statsRecorder" records every call in the views, "local" aggregates them locally.
+  @Param({"statsRecorder", "local"})
+  public String mode;
+
+  // Whether the calls are made with a tag in the current context.
+  @Param({"false", "true"})
+  public boolean tagged;
+
+  private final TrackingOptions options = TrackingOptions.of(EnumSet.of(TraceOption.METRICS_ONLY));
+  private final Tagger tagger = Tags.getTagger();
+  private final TagContext context =
+      tagger.emptyBuilder().put(TagKey.create("tenant"), TagValue.create("benchmark")).build();
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Observability.registerAllViews();
+    if ("local".equals(mode)) {
+      LocalLatencyAggregator.start(1, TimeUnit.SECONDS);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    LocalLatencyAggregator.stop();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void threads01() {
+    record();
+  }
+
+  @Benchmark
+  @Threads(2)
+  public void threads02() {
+    record();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void threads04() {
+    record();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public void threads08() {
+    record();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public void threads16() {
+    record();
+  }
+
+  @Benchmark
+  @Threads(32)
+  public void threads32() {
+    record();
+  }
+
+  @Benchmark
+  @Threads(64)
+  public void threads64() {
+    record();
+  }
+
+  private void record() {
+    if (!tagged) {
+      Observability.createRoundtripTrackingSpan(options, METHOD).end();
+      return;
+    }
+    try (Scope scope = tagger.withTagContext(context)) {
+      Observability.createRoundtripTrackingSpan(options, METHOD).end();
+    }
+  }
+}
@@ -0,0 +1,92 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.integration.jdbc.Observability.TraceOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.EnumSet;
+import java.util.Properties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks the per-row overhead of the ResultSet wrapper against the raw driver. */
+@State(Scope.Thread)
+public class ResultSetBenchmark {
+  private static final String SQL = "SELECT id, name FROM users";
+
+  // "raw" uses the driver directly, the other modes name the TraceOption used by the wrappers.
+  @Param({"raw", "NONE", "AGGREGATE_RESULT_SET_FETCHES"})
+  public String mode;
+
+  @Param({"100"})
+  public int rows;
+
+  private Connection connection;
+  private Statement statement;
+  private ResultSet resultSet;
+
+  @Setup(Level.Trial)
+  public void setUp() throws SQLException {
+    Observability.registerAllViews();
+    StubDriver driver = new StubDriver(rows);
+    Connection raw = driver.connect(StubDriver.URL, new Properties());
+    connection =
+        "raw".equals(mode)
+            ? raw
+            : new OcWrapConnection(raw, EnumSet.of(TraceOption.valueOf(mode)));
+    statement = connection.createStatement();
+  }
+
+  @Setup(Level.Invocation)
+  public void openResultSet() throws SQLException {
+    resultSet = statement.executeQuery(SQL);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws SQLException {
+    connection.close();
+  }
+
+  // Scans the whole ResultSet, so the score is the cost of "rows" calls to next() plus close().
+  @Benchmark
+  public int nextLoop() throws SQLException {
+    int count = 0;
+    while (resultSet.next()) {
+      count++;
+    }
+    resultSet.close();
+    return count;
+  }
+
+  // Scans the whole ResultSet and reads every column of every row.
+  @Benchmark
+  public void nextLoopWithGetters(Blackhole blackhole) throws SQLException {
+    while (resultSet.next()) {
+      blackhole.consume(resultSet.getLong(1));
+      blackhole.consume(resultSet.getString(2));
+      blackhole.consume(resultSet.getInt(1));
+    }
+    resultSet.close();
+  }
+}
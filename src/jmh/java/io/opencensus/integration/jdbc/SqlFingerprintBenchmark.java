@@ -0,0 +1,80 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks the cache hit and miss paths of {@link SqlFingerprint} on large statements. */
+@State(Scope.Thread)
+public class SqlFingerprintBenchmark {
+  // The approximate length of the statement in characters.
+  @Param({"2048", "20480"})
+  public int length;
+
+  private String sql;
+  private String copy;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    sql = statement(length);
+    SqlFingerprint.of(sql);
+  }
+
+  @Setup(Level.Invocation)
+  public void copyStatement() {
+    // A distinct but equal String, as drivers and ORMs often build the SQL anew for every call.
+    copy = new String(sql.toCharArray());
+  }
+
+  // The common case: the same String instance, whose hash code is already computed.
+  @Benchmark
+  public SqlFingerprint cacheHit() {
+    return SqlFingerprint.of(sql);
+  }
+
+  // A cache hit that has to hash and compare the whole statement.
+  @Benchmark
+  public SqlFingerprint cacheHitEqualString() {
+    return SqlFingerprint.of(copy);
+  }
+
+  // The cost of a miss, a single pass of the normalizer plus the hash.
+  @Benchmark
+  public SqlFingerprint cacheMiss() {
+    return SqlFingerprint.compute(sql);
+  }
+
+  // Builds a reporting-style query with comments, joins, string and numeric literals and an IN
+  // list that grows until the statement is about "length" characters long.
+  private static String statement(int length) {
+    StringBuilder sb =
+        new StringBuilder(length + 64)
+            .append("/* report:daily */\nSELECT o.id, o.created_at, c.name, SUM(l.amount) AS total")
+            .append("\n  FROM orders o\n  JOIN customers c ON c.id = o.customer_id")
+            .append("\n  JOIN order_lines l ON l.order_id = o.id -- all lines")
+            .append("\n WHERE o.status = 'SHIPPED' AND o.created_at >= '2018-01-01'")
+            .append("\n   AND o.customer_id IN (");
+    for (int i = 0; sb.length() < length - 64; i++) {
+      sb.append(i == 0 ? "" : ", ").append(100000 + i);
+    }
+    return sb.append(")\n GROUP BY o.id, o.created_at, c.name\n ORDER BY total DESC LIMIT 100")
+        .toString();
+  }
+}
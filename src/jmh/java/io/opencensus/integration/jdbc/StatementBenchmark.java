@@ -0,0 +1,102 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.integration.jdbc.Observability.TraceOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.EnumSet;
+import java.util.Properties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** Benchmarks the per-call overhead of the Statement wrappers against the raw driver. */
+@State(Scope.Thread)
+public class StatementBenchmark {
+  private static final String SQL = "SELECT id, name FROM users WHERE id = ?";
+
+  // "raw" uses the driver directly, the other modes name the TraceOption used by the wrappers.
+  @Param({"raw", "NONE", "METRICS_ONLY"})
+  public String mode;
+
+  @Param({"10"})
+  public int batchSize;
+
+  private Connection connection;
+  private Statement statement;
+  private PreparedStatement preparedStatement;
+
+  @Setup(Level.Trial)
+  public void setUp() throws SQLException {
+    Observability.registerAllViews();
+    StubDriver driver = new StubDriver(1);
+    Connection raw = driver.connect(StubDriver.URL, new Properties());
+    connection =
+        "raw".equals(mode)
+            ? raw
+            : new OcWrapConnection(raw, EnumSet.of(TraceOption.valueOf(mode)));
+    statement = connection.createStatement();
+    preparedStatement = connection.prepareStatement(SQL);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws SQLException {
+    connection.close();
+  }
+
+  @Benchmark
+  public boolean execute() throws SQLException {
+    return statement.execute(SQL);
+  }
+
+  @Benchmark
+  public ResultSet executeQuery() throws SQLException {
+    return statement.executeQuery(SQL);
+  }
+
+  @Benchmark
+  public int executeUpdate() throws SQLException {
+    return statement.executeUpdate(SQL);
+  }
+
+  @Benchmark
+  public boolean preparedExecute() throws SQLException {
+    preparedStatement.setLong(1, 42L);
+    return preparedStatement.execute();
+  }
+
+  @Benchmark
+  public ResultSet preparedExecuteQuery() throws SQLException {
+    preparedStatement.setLong(1, 42L);
+    return preparedStatement.executeQuery();
+  }
+
+  @Benchmark
+  public int[] preparedAddBatchExecuteBatch() throws SQLException {
+    for (int i = 0; i < batchSize; i++) {
+      preparedStatement.setLong(1, i);
+      preparedStatement.addBatch();
+    }
+    return preparedStatement.executeBatch();
+  }
+}
@@ -0,0 +1,188 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * An in-process {@link Driver} whose connections answer every call immediately, so that the
+ * benchmarks only measure the overhead of the wrappers.
+ *
+ * <p>The JDBC objects are dynamic proxies. Both the raw and the wrapped benchmarks go through the
+ * same proxies, so their dispatch cost cancels out when comparing the two.
+ */
+final class StubDriver implements Driver {
+  static final String URL = "jdbc:stub:";
+
+  // The number of rows returned by every ResultSet.
+  private final int rows;
+
+  StubDriver(int rows) {
+    this.rows = rows;
+  }
+
+  @Override
+  public Connection connect(String url, Properties info) {
+    return proxy(Connection.class, new ConnectionHandler());
+  }
+
+  @Override
+  public boolean acceptsURL(String url) {
+    return url.startsWith(URL);
+  }
+
+  @Override
+  public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+    return new DriverPropertyInfo[0];
+  }
+
+  @Override
+  public int getMajorVersion() {
+    return 1;
+  }
+
+  @Override
+  public int getMinorVersion() {
+    return 0;
+  }
+
+  @Override
+  public boolean jdbcCompliant() {
+    return false;
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    throw new SQLFeatureNotSupportedException();
+  }
+
+  private static <T> T proxy(Class<T> iface, InvocationHandler handler) {
+    return iface.cast(
+        Proxy.newProxyInstance(StubDriver.class.getClassLoader(), new Class<?>[] {iface}, handler));
+  }
+
+  // Returns the zero value of the given return type.
+  private static Object zero(Class<?> type) {
+    if (type == boolean.class) {
+      return Boolean.FALSE;
+    } else if (type == int.class) {
+      return 0;
+    } else if (type == long.class) {
+      return 0L;
+    } else if (type == double.class) {
+      return 0.0d;
+    } else if (type == float.class) {
+      return 0.0f;
+    } else if (type == short.class) {
+      return (short) 0;
+    } else if (type == byte.class) {
+      return (byte) 0;
+    }
+    return null;
+  }
+
+  private final class ConnectionHandler implements InvocationHandler {
+    private final StatementHandler statementHandler = new StatementHandler();
+    private final Statement statement = proxy(Statement.class, statementHandler);
+    private final PreparedStatement preparedStatement =
+        proxy(PreparedStatement.class, statementHandler);
+    private final CallableStatement callableStatement =
+        proxy(CallableStatement.class, statementHandler);
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      switch (method.getName()) {
+        case "createStatement":
+          return statement;
+        case "prepareStatement":
+          return preparedStatement;
+        case "prepareCall":
+          return callableStatement;
+        case "isValid":
+          return Boolean.TRUE;
+        default:
+          return zero(method.getReturnType());
+      }
+    }
+  }
+
+  private final class StatementHandler implements InvocationHandler {
+    private int batchSize;
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      switch (method.getName()) {
+        case "execute":
+          return Boolean.TRUE;
+        case "executeQuery":
+        case "getResultSet":
+        case "getGeneratedKeys":
+          return proxy(ResultSet.class, new ResultSetHandler());
+        case "executeUpdate":
+          return 1;
+        case "executeLargeUpdate":
+          return 1L;
+        case "addBatch":
+          batchSize++;
+          return null;
+        case "clearBatch":
+          batchSize = 0;
+          return null;
+        case "executeBatch":
+          int[] counts = new int[batchSize];
+          Arrays.fill(counts, 1);
+          batchSize = 0;
+          return counts;
+        default:
+          return zero(method.getReturnType());
+      }
+    }
+  }
+
+  private final class ResultSetHandler implements InvocationHandler {
+    private int row;
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      switch (method.getName()) {
+        case "next":
+          return ++row <= rows;
+        case "getString":
+          return "value";
+        case "getInt":
+          return row;
+        case "getLong":
+          return (long) row;
+        case "getRow":
+          return row;
+        default:
+          return zero(method.getReturnType());
+      }
+    }
+  }
+}
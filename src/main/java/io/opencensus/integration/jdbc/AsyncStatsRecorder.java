@@ -0,0 +1,336 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.integration.jdbc.Observability.MethodTags;
+import io.opencensus.stats.Stats;
+import io.opencensus.stats.StatsRecorder;
+import io.opencensus.tags.TagContext;
+import io.opencensus.tags.TagValue;
+import io.opencensus.tags.Tagger;
+import io.opencensus.tags.Tags;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.Nullable;
+
+/**
+ * Records the stats of the JDBC calls on a background thread, so that building the tags and
+ * recording the measurements is taken off the latency of the calls.
+ *
+ * <p>When a call ends, its method, tags, error and measurements are written to a preallocated
+ * ring buffer, shared by all the calling threads without locks, which a single thread drains into
+ * the {@link StatsRecorder}. If the buffer is full, because the stats can't be recorded as fast as
+ * the calls are made, the {@link OverflowPolicy} decides whether the stats of the call are dropped
+ * and counted in {@link #getDroppedRecords()}, or recorded on the calling thread.
+ *
+ * <p>The recorder is started with {@link #start(int, OverflowPolicy)}, after which the stats of
+ * all the instrumented calls are recorded by it, until {@link #stop()} is called.
+ */
+public final class AsyncStatsRecorder {
+
+  /** What to do with the stats of a call when the buffer is full. */
+  public enum OverflowPolicy {
+    // Drops the stats of the call, so that the calls never wait for the stats to be recorded.
+    DROP,
+    // Records the stats of the call on the calling thread, as if there was no AsyncStatsRecorder.
+    RECORD_SYNCHRONOUSLY
+  }
+
+  /** The default number of calls the buffer can hold. */
+  public static final int DEFAULT_CAPACITY = 8192;
+
+  // The tail once the recorder is stopped, after which the calling threads record their stats.
+  private static final long CLOSED = -1;
+
+  @Nullable private static volatile AsyncStatsRecorder current;
+
+  private final OverflowPolicy overflowPolicy;
+  private final StatsRecorder statsRecorder;
+  private final Tagger tagger;
+  private final AtomicLong droppedRecords = new AtomicLong();
+
+  // The ring buffer, as one array per field. A slot is free for the call whose position is the
+  // sequence of the slot, and holds the call at the position sequence - 1 once it is published.
+  private final int mask;
+  private final AtomicLongArray sequences;
+  private final MethodTags[] methods;
+  private final TagContext[] contexts;
+  private final TagValue[] errors;
+  private final long[] durationsNs;
+  private final boolean[] connectionAcquires;
+  private final long[] rowsRead;
+  private final long[] rowsAffected;
+  private final int[] batchSizes;
+
+  // The position of the next call to publish, claimed by the calling threads, or CLOSED.
+  private final AtomicLong tail = new AtomicLong();
+  // The position of the next call to record, only used by the recording thread.
+  private long head;
+  // The position past the last call accepted before the recorder was stopped.
+  private volatile long closedAt;
+
+  private final Thread thread;
+  private volatile boolean running = true;
+  // Whether the recording thread is about to park, or parked, until a call is published.
+  private volatile boolean waiting;
+
+  // VisibleForTesting
+  AsyncStatsRecorder(
+      int capacity, OverflowPolicy overflowPolicy, StatsRecorder statsRecorder, Tagger tagger) {
+    if (capacity <= 0 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException("Invalid capacity: " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    this.overflowPolicy = overflowPolicy;
+    this.statsRecorder = statsRecorder;
+    this.tagger = tagger;
+    this.mask = size - 1;
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+    this.methods = new MethodTags[size];
+    this.contexts = new TagContext[size];
+    this.errors = new TagValue[size];
+    this.durationsNs = new long[size];
+    this.connectionAcquires = new boolean[size];
+    this.rowsRead = new long[size];
+    this.rowsAffected = new long[size];
+    this.batchSizes = new int[size];
+
+    this.thread =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                drainUntilStopped();
+              }
+            },
+            "opencensus-jdbc-stats");
+    this.thread.setDaemon(true);
+  }
+
+  /**
+   * Starts recording the stats of the JDBC calls on a background thread, with a buffer of {@link
+   * #DEFAULT_CAPACITY} calls that drops the stats of the calls once it is full.
+   *
+   * @return the started recorder.
+   */
+  public static AsyncStatsRecorder start() {
+    return start(DEFAULT_CAPACITY, OverflowPolicy.DROP);
+  }
+
+  /**
+   * Starts recording the stats of the JDBC calls on a background thread, stopping the recorder
+   * started previously if there is one.
+   *
+   * @param capacity the number of calls the buffer can hold, rounded up to a power of two.
+   * @param overflowPolicy what to do with the stats of a call when the buffer is full.
+   * @return the started recorder.
+   * @throws IllegalArgumentException if the capacity isn't positive or exceeds 2^30.
+   */
+  public static synchronized AsyncStatsRecorder start(
+      int capacity, OverflowPolicy overflowPolicy) {
+    AsyncStatsRecorder recorder =
+        new AsyncStatsRecorder(
+            capacity, overflowPolicy, Stats.getStatsRecorder(), Tags.getTagger());
+    stop();
+    recorder.startThread();
+    current = recorder;
+    return recorder;
+  }
+
+  /**
+   * Stops the recorder started by {@link #start(int, OverflowPolicy)}, if any, after recording the
+   * stats of the calls it holds. The stats of the calls made afterwards are recorded on the calling
+   * threads.
+   */
+  public static synchronized void stop() {
+    AsyncStatsRecorder recorder = current;
+    if (recorder == null) {
+      return;
+    }
+    current = null;
+    recorder.shutdown();
+  }
+
+  /**
+   * Returns the number of calls whose stats were dropped, because the buffer was full or they
+   * couldn't be recorded.
+   *
+   * @return the number of calls whose stats were dropped.
+   */
+  public long getDroppedRecords() {
+    return droppedRecords.get();
+  }
+
+  /**
+   * Returns the number of calls the buffer can hold.
+   *
+   * @return the number of calls the buffer can hold.
+   */
+  public int getCapacity() {
+    return mask + 1;
+  }
+
+  // Returns the recorder the operations started now hand their stats to, if any.
+  @Nullable
+  static AsyncStatsRecorder current() {
+    return current;
+  }
+
+  // Publishes the stats of a call. Returns false if the caller has to record them itself.
+  boolean offer(
+      MethodTags methodTags,
+      TagContext context,
+      @Nullable TagValue error,
+      long durationNs,
+      boolean connectionAcquire,
+      long rowsRead,
+      long rowsAffected,
+      int batchSize) {
+    long position = tail.get();
+    int index;
+    while (true) {
+      if (position == CLOSED) {
+        // The recorder was stopped, and may have recorded its last call already.
+        return false;
+      }
+      index = (int) position & mask;
+      long available = sequences.get(index) - position;
+      if (available == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          break;
+        }
+        position = tail.get();
+      } else if (available < 0) {
+        // The slot still holds the call published a lap ago: the buffer is full.
+        if (overflowPolicy == OverflowPolicy.RECORD_SYNCHRONOUSLY) {
+          return false;
+        }
+        droppedRecords.incrementAndGet();
+        return true;
+      } else {
+        // Another thread claimed the position.
+        position = tail.get();
+      }
+    }
+
+    this.methods[index] = methodTags;
+    this.contexts[index] = context;
+    this.errors[index] = error;
+    this.durationsNs[index] = durationNs;
+    this.connectionAcquires[index] = connectionAcquire;
+    this.rowsRead[index] = rowsRead;
+    this.rowsAffected[index] = rowsAffected;
+    this.batchSizes[index] = batchSize;
+    // Publishes the call to the recording thread. The write is volatile, so that it can't be
+    // reordered with the read of waiting, which would let the recording thread park past it.
+    sequences.set(index, position + 1);
+    if (waiting) {
+      LockSupport.unpark(thread);
+    }
+    return true;
+  }
+
+  // Records the stats of the published calls. Returns the number of calls recorded.
+  // VisibleForTesting
+  int drain() {
+    int recorded = 0;
+    while (true) {
+      int index = (int) head & mask;
+      if (sequences.get(index) != head + 1) {
+        return recorded;
+      }
+
+      MethodTags methodTags = this.methods[index];
+      TagContext context = this.contexts[index];
+      TagValue error = this.errors[index];
+      this.methods[index] = null;
+      this.contexts[index] = null;
+      this.errors[index] = null;
+      try {
+        Observability.recordStats(
+            statsRecorder,
+            tagger,
+            methodTags,
+            context,
+            error,
+            durationsNs[index],
+            connectionAcquires[index],
+            rowsRead[index],
+            rowsAffected[index],
+            batchSizes[index]);
+      } catch (RuntimeException e) {
+        // The recording thread must survive a failing stats implementation.
+        droppedRecords.incrementAndGet();
+      }
+      // Frees the slot for the call a lap ahead.
+      sequences.lazySet(index, head + mask + 1);
+      head++;
+      recorded++;
+    }
+  }
+
+  // Stops accepting calls, whose stats are then recorded by the calling threads. The calls accepted
+  // until then are still recorded by the recording thread, before it ends.
+  // VisibleForTesting
+  void close() {
+    closedAt = tail.getAndSet(CLOSED);
+    running = false;
+  }
+
+  // VisibleForTesting
+  void startThread() {
+    thread.start();
+  }
+
+  private void drainUntilStopped() {
+    while (running) {
+      if (drain() == 0) {
+        waiting = true;
+        // Checks again once waiting is set, as a call published before may not have unparked it.
+        if (running && sequences.get((int) head & mask) != head + 1) {
+          LockSupport.park(this);
+        }
+        waiting = false;
+      }
+    }
+    // Records the calls accepted before the recorder was stopped, some of which may still be
+    // being written by the calling threads.
+    long end = closedAt;
+    while (head < end) {
+      if (drain() == 0) {
+        Thread.yield();
+      }
+    }
+  }
+
+  // Stops accepting calls, and waits for the recording thread to record the calls accepted so far.
+  // VisibleForTesting
+  void shutdown() {
+    close();
+    LockSupport.unpark(thread);
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
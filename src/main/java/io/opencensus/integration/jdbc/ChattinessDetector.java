@@ -0,0 +1,128 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.integration.jdbc.Observability.TrackingOperation;
+import io.opencensus.trace.AttributeValue;
+import io.opencensus.trace.TraceId;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Detects the units of work that execute the same statement over and over, e.g. the N+1 queries
+ * of an ORM loading a collection one row at a time, or that make too many roundtrips.
+ *
+ * <p>A unit of work is the work done with a connection from when it is checked out until it is
+ * closed, or within a single trace. When a statement, compared by {@link SqlFingerprint}, is
+ * executed more than the given number of times in a unit of work, or when the unit of work
+ * executes more than the given number of statements, the "java.sql/client/chatty_units_of_work"
+ * metric is incremented and the span of the offending execution is annotated with the fingerprint
+ * and the count. Each unit of work is reported at most once per fingerprint and once for its
+ * roundtrips.
+ *
+ * <p>The detector is started with {@link #start(int, int)}, after which the units of work are
+ * tracked until {@link #stop()} is called.
+ */
+public final class ChattinessDetector {
+
+  /** The default number of executions of the same statement tolerated in a unit of work. */
+  public static final int DEFAULT_MAX_REPEATS = 20;
+
+  /** The default number of executions tolerated in a unit of work. */
+  public static final int DEFAULT_MAX_ROUNDTRIPS = 200;
+
+  @Nullable private static volatile ChattinessDetector current;
+
+  private final int maxRepeats;
+  private final int maxRoundtrips;
+
+  // VisibleForTesting
+  ChattinessDetector(int maxRepeats, int maxRoundtrips) {
+    if (maxRepeats <= 0) {
+      throw new IllegalArgumentException("Invalid number of repeats: " + maxRepeats);
+    }
+    if (maxRoundtrips <= 0) {
+      throw new IllegalArgumentException("Invalid number of roundtrips: " + maxRoundtrips);
+    }
+    this.maxRepeats = maxRepeats;
+    this.maxRoundtrips = maxRoundtrips;
+  }
+
+  /**
+   * Starts detecting the units of work that execute a statement more than {@link
+   * #DEFAULT_MAX_REPEATS} times or make more than {@link #DEFAULT_MAX_ROUNDTRIPS} roundtrips.
+   *
+   * @return the started detector.
+   */
+  public static ChattinessDetector start() {
+    return start(DEFAULT_MAX_REPEATS, DEFAULT_MAX_ROUNDTRIPS);
+  }
+
+  /**
+   * Starts detecting the chatty units of work, replacing the detector started previously if there
+   * is one.
+   *
+   * @param maxRepeats the number of executions of the same statement tolerated in a unit of work.
+   * @param maxRoundtrips the number of executions tolerated in a unit of work.
+   * @return the started detector.
+   * @throws IllegalArgumentException if a number isn't positive.
+   */
+  public static synchronized ChattinessDetector start(int maxRepeats, int maxRoundtrips) {
+    ChattinessDetector detector = new ChattinessDetector(maxRepeats, maxRoundtrips);
+    current = detector;
+    return detector;
+  }
+
+  /** Stops detecting the chatty units of work. */
+  public static synchronized void stop() {
+    current = null;
+  }
+
+  // Returns the detector the executions are checked by, if any.
+  @Nullable
+  static ChattinessDetector current() {
+    return current;
+  }
+
+  // Counts an execution of the given SQL in the unit of work, and reports the unit of work on the
+  // operation of the execution if it just became chatty.
+  void recordExecution(
+      UnitOfWork unitOfWork,
+      String sql,
+      @Nullable TraceId traceId,
+      TrackingOperation trackingOperation) {
+    SqlFingerprint fingerprint = SqlFingerprint.of(sql);
+    int repeats = unitOfWork.recordExecution(fingerprint.getHash(), traceId);
+    if (repeats == maxRepeats + 1) {
+      Map<String, AttributeValue> attributes = new HashMap<String, AttributeValue>();
+      attributes.put(
+          "fingerprint", AttributeValue.stringAttributeValue(fingerprint.getHashString()));
+      attributes.put("sql", AttributeValue.stringAttributeValue(fingerprint.getNormalizedSql()));
+      attributes.put("count", AttributeValue.longAttributeValue(repeats));
+      trackingOperation.recordChattiness(
+          Observability.VALUE_REPEATED_STATEMENT, "Repeated statement", attributes);
+    }
+    int executions = unitOfWork.executions();
+    if (executions == maxRoundtrips + 1) {
+      Map<String, AttributeValue> attributes = new HashMap<String, AttributeValue>();
+      attributes.put(
+          "fingerprint", AttributeValue.stringAttributeValue(fingerprint.getHashString()));
+      attributes.put("count", AttributeValue.longAttributeValue(executions));
+      trackingOperation.recordChattiness(
+          Observability.VALUE_TOO_MANY_ROUNDTRIPS, "Too many roundtrips", attributes);
+    }
+  }
+}
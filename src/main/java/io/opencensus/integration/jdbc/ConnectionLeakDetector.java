@@ -0,0 +1,304 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.stats.Stats;
+import io.opencensus.stats.StatsRecorder;
+import io.opencensus.tags.TagValue;
+import io.opencensus.tags.Tagger;
+import io.opencensus.tags.Tags;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Detects the connections that are checked out for too long, or garbage collected without being
+ * closed, which exhaust the pools they are taken from.
+ *
+ * <p>Every {@link OcWrapConnection} opened while the detector is started is tracked by a {@link
+ * PhantomReference}, which doesn't delay its collection the way a finalizer would, until it is
+ * closed. A background thread logs a warning when a connection has been open for longer than the
+ * threshold, once per connection, and when a connection was collected without being closed. Each
+ * leak increments the "java.sql/client/leaked_connections" metric, and the thread records the age
+ * of the oldest open connection in "java.sql/client/connection_age".
+ *
+ * <p>The warnings carry the stack trace of the code that opened the connection, for the sampled
+ * connections. Capturing a stack trace only walks the stack, it is rendered when a leak is logged.
+ *
+ * <p>The detector is started with {@link #start(long, TimeUnit, double)}, after which the
+ * connections opened are tracked until {@link #stop()} is called.
+ */
+public final class ConnectionLeakDetector {
+  private static final Logger logger = Logger.getLogger(ConnectionLeakDetector.class.getName());
+
+  /** The default probability of capturing the stack trace of an opened connection. */
+  public static final double DEFAULT_STACK_TRACE_PROBABILITY = 0.1;
+
+  // The interval between two checks of the open connections.
+  private static final long CHECK_INTERVAL_MS = 1000;
+
+  @Nullable private static volatile ConnectionLeakDetector current;
+
+  private final long thresholdNs;
+  private final double stackTraceProbability;
+  private final StatsRecorder statsRecorder;
+  private final Tagger tagger;
+  // The tracked connections, which keep their phantom references reachable.
+  private final Set<Checkout> checkouts =
+      Collections.newSetFromMap(new ConcurrentHashMap<Checkout, Boolean>());
+  private final ReferenceQueue<OcWrapConnection> queue = new ReferenceQueue<OcWrapConnection>();
+  private final AtomicLong leakedConnections = new AtomicLong();
+
+  private final Thread thread;
+  private volatile boolean running = true;
+
+  // VisibleForTesting
+  ConnectionLeakDetector(
+      long threshold,
+      TimeUnit unit,
+      double stackTraceProbability,
+      StatsRecorder statsRecorder,
+      Tagger tagger) {
+    if (threshold <= 0) {
+      throw new IllegalArgumentException("Invalid threshold: " + threshold);
+    }
+    if (!(stackTraceProbability >= 0 && stackTraceProbability <= 1)) {
+      throw new IllegalArgumentException(
+          "Invalid stack trace probability: " + stackTraceProbability);
+    }
+    this.thresholdNs = unit.toNanos(threshold);
+    this.stackTraceProbability = stackTraceProbability;
+    this.statsRecorder = statsRecorder;
+    this.tagger = tagger;
+
+    this.thread =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                checkUntilStopped();
+              }
+            },
+            "opencensus-jdbc-leaks");
+    this.thread.setDaemon(true);
+  }
+
+  /**
+   * Starts detecting the connections checked out for longer than the given threshold, capturing
+   * the stack traces of {@link #DEFAULT_STACK_TRACE_PROBABILITY} of the connections.
+   *
+   * @param threshold the time after which an open connection is reported.
+   * @param unit the unit of the threshold.
+   * @return the started detector.
+   */
+  public static ConnectionLeakDetector start(long threshold, TimeUnit unit) {
+    return start(threshold, unit, DEFAULT_STACK_TRACE_PROBABILITY);
+  }
+
+  /**
+   * Starts detecting the leaked connections, stopping the detector started previously if there is
+   * one. The connections opened before are not tracked.
+   *
+   * @param threshold the time after which an open connection is reported.
+   * @param unit the unit of the threshold.
+   * @param stackTraceProbability the probability of capturing the stack trace of the code that
+   *     opens a connection, between 0 and 1.
+   * @return the started detector.
+   * @throws IllegalArgumentException if the threshold isn't positive or the probability isn't
+   *     between 0 and 1.
+   */
+  public static synchronized ConnectionLeakDetector start(
+      long threshold, TimeUnit unit, double stackTraceProbability) {
+    ConnectionLeakDetector detector =
+        new ConnectionLeakDetector(
+            threshold, unit, stackTraceProbability, Stats.getStatsRecorder(), Tags.getTagger());
+    stop();
+    detector.thread.start();
+    current = detector;
+    return detector;
+  }
+
+  /**
+   * Stops the detector started by {@link #start(long, TimeUnit, double)}, if any. The connections
+   * it tracks are no longer reported.
+   */
+  public static synchronized void stop() {
+    ConnectionLeakDetector detector = current;
+    if (detector == null) {
+      return;
+    }
+    current = null;
+    detector.shutdown();
+  }
+
+  // Returns the detector the connections opened now are tracked by, if any.
+  @Nullable
+  static ConnectionLeakDetector current() {
+    return current;
+  }
+
+  /**
+   * Returns the number of connections reported as leaked since the detector was started.
+   *
+   * @return the number of leaked connections.
+   */
+  public long getLeakedConnections() {
+    return leakedConnections.get();
+  }
+
+  /**
+   * Returns the number of open connections tracked by the detector.
+   *
+   * @return the number of tracked connections.
+   */
+  public int getTrackedConnections() {
+    return checkouts.size();
+  }
+
+  // Starts tracking a connection that was just opened, until Checkout.release() is called.
+  Checkout track(OcWrapConnection connection) {
+    Throwable stackTrace = null;
+    if (stackTraceProbability > 0
+        && ThreadLocalRandom.current().nextDouble() < stackTraceProbability) {
+      stackTrace = new Throwable("Connection opened here");
+    }
+    Checkout checkout =
+        new Checkout(connection, queue, this, Thread.currentThread().getName(), stackTrace);
+    checkouts.add(checkout);
+    return checkout;
+  }
+
+  // Reports the connections collected without being closed and those open for longer than the
+  // threshold, and records the age of the oldest open connection. Returns the number of leaks
+  // reported.
+  // VisibleForTesting
+  int check() {
+    int leaks = 0;
+    for (Reference<?> reference = queue.poll(); reference != null; reference = queue.poll()) {
+      if (collected((Checkout) reference)) {
+        leaks++;
+      }
+    }
+
+    long now = System.nanoTime();
+    long oldestAgeNs = 0;
+    for (Checkout checkout : checkouts) {
+      long ageNs = now - checkout.startTimeNs;
+      oldestAgeNs = Math.max(oldestAgeNs, ageNs);
+      if (ageNs >= thresholdNs && !checkout.reported) {
+        checkout.reported = true;
+        report(
+            checkout,
+            Observability.VALUE_CHECKED_OUT_TOO_LONG,
+            "has been open for " + TimeUnit.NANOSECONDS.toMillis(ageNs) + "ms");
+        leaks++;
+      }
+    }
+    statsRecorder
+        .newMeasureMap()
+        .put(Observability.MEASURE_CONNECTION_AGE_MS, oldestAgeNs / 1e6)
+        .record(tagger.empty());
+    return leaks;
+  }
+
+  // Reports a collected connection, unless it was closed.
+  private boolean collected(Checkout checkout) {
+    if (!checkouts.remove(checkout)) {
+      return false;
+    }
+    report(checkout, Observability.VALUE_NOT_CLOSED, "was garbage collected without being closed");
+    return true;
+  }
+
+  private void report(Checkout checkout, TagValue leak, String description) {
+    leakedConnections.incrementAndGet();
+    statsRecorder
+        .newMeasureMap()
+        .put(Observability.MEASURE_LEAKED_CONNECTIONS, 1)
+        .record(tagger.emptyBuilder().put(Observability.JAVA_SQL_LEAK, leak).build());
+    logger.log(
+        Level.WARNING,
+        "Connection opened by thread "
+            + checkout.threadName
+            + " "
+            + description
+            + (checkout.stackTrace == null ? ", its stack trace wasn't sampled" : ""),
+        checkout.stackTrace);
+  }
+
+  private void checkUntilStopped() {
+    while (running) {
+      try {
+        // Wakes up as soon as a connection is collected.
+        Reference<?> reference = queue.remove(CHECK_INTERVAL_MS);
+        if (reference != null) {
+          collected((Checkout) reference);
+        }
+        check();
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException e) {
+        // The checking thread must survive a failing stats implementation or logger.
+      }
+    }
+  }
+
+  private void shutdown() {
+    running = false;
+    thread.interrupt();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // The phantom reference to a tracked connection, which must not reference the connection itself.
+  static final class Checkout extends PhantomReference<OcWrapConnection> {
+    final long startTimeNs = System.nanoTime();
+    final ConnectionLeakDetector detector;
+    final String threadName;
+    @Nullable final Throwable stackTrace;
+    // Whether the connection was reported as open for too long, only read by the checking thread.
+    boolean reported;
+
+    Checkout(
+        OcWrapConnection connection,
+        ReferenceQueue<OcWrapConnection> queue,
+        ConnectionLeakDetector detector,
+        String threadName,
+        @Nullable Throwable stackTrace) {
+      super(connection, queue);
+      this.detector = detector;
+      this.threadName = threadName;
+      this.stackTrace = stackTrace;
+    }
+
+    // Stops tracking the connection, which was closed.
+    void release() {
+      detector.checkouts.remove(this);
+      clear();
+    }
+  }
+}
@@ -0,0 +1,154 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.stats.Stats;
+import io.opencensus.stats.StatsRecorder;
+import io.opencensus.tags.Tagger;
+import io.opencensus.tags.Tags;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the statements and result sets of a connection that are open, along with the totals of
+ * all the connections, which the "java.sql/client/open_statements" and
+ * "java.sql/client/open_result_sets" gauges report.
+ *
+ * <p>Opening or closing a statement or a result set increments or decrements the counters, and
+ * records the total in its gauge. Concurrent changes may be recorded out of order, until the next
+ * change. A result set is counted until it is closed, or until JDBC closes it along with its
+ * statement, which the {@link StatementResources} of the statement keep track of. When the
+ * connection is closed, JDBC closes its statements and result sets along with it: the statements
+ * still open are released, and nothing stays counted.
+ */
+final class CursorTracker {
+  private static final AtomicLong allStatements = new AtomicLong();
+  private static final AtomicLong allResultSets = new AtomicLong();
+
+  private final StatsRecorder statsRecorder;
+  private final Tagger tagger;
+  private final AtomicInteger statements = new AtomicInteger();
+  private final AtomicInteger resultSets = new AtomicInteger();
+  // The statements open on the connection, released when it is closed. They are weakly referenced,
+  // so that the leaked ones are still collected and reported by the StatementLeakDetector.
+  private final Map<StatementResources, Boolean> openStatements =
+      new WeakHashMap<StatementResources, Boolean>();
+
+  CursorTracker() {
+    this(Stats.getStatsRecorder(), Tags.getTagger());
+  }
+
+  // VisibleForTesting
+  CursorTracker(StatsRecorder statsRecorder, Tagger tagger) {
+    this.statsRecorder = statsRecorder;
+    this.tagger = tagger;
+  }
+
+  void statementOpened(StatementResources statement) {
+    synchronized (openStatements) {
+      openStatements.put(statement, Boolean.TRUE);
+    }
+    statements.incrementAndGet();
+    recordOpenStatements(allStatements.incrementAndGet());
+  }
+
+  void statementClosed(StatementResources statement) {
+    synchronized (openStatements) {
+      openStatements.remove(statement);
+    }
+    if (decrement(statements)) {
+      recordOpenStatements(allStatements.decrementAndGet());
+    }
+  }
+
+  void resultSetOpened() {
+    resultSets.incrementAndGet();
+    recordOpenResultSets(allResultSets.incrementAndGet());
+  }
+
+  void resultSetClosed() {
+    if (decrement(resultSets)) {
+      recordOpenResultSets(allResultSets.decrementAndGet());
+    }
+  }
+
+  // Called when the connection is closed, which closes its statements and result sets.
+  void closeAll() {
+    List<StatementResources> closed;
+    synchronized (openStatements) {
+      closed = new ArrayList<StatementResources>(openStatements.keySet());
+    }
+    for (StatementResources statement : closed) {
+      statement.release();
+    }
+    // The leaked statements and their result sets are still counted.
+    int leakedStatements = statements.getAndSet(0);
+    if (leakedStatements > 0) {
+      recordOpenStatements(allStatements.addAndGet(-leakedStatements));
+    }
+    int leakedResultSets = resultSets.getAndSet(0);
+    if (leakedResultSets > 0) {
+      recordOpenResultSets(allResultSets.addAndGet(-leakedResultSets));
+    }
+  }
+
+  int openStatements() {
+    return statements.get();
+  }
+
+  int openResultSets() {
+    return resultSets.get();
+  }
+
+  // Returns the number of statements open through all the connections.
+  static long allOpenStatements() {
+    return allStatements.get();
+  }
+
+  // Returns the number of result sets open through all the connections.
+  static long allOpenResultSets() {
+    return allResultSets.get();
+  }
+
+  private void recordOpenStatements(long open) {
+    statsRecorder
+        .newMeasureMap()
+        .put(Observability.MEASURE_OPEN_STATEMENTS, open)
+        .record(tagger.empty());
+  }
+
+  private void recordOpenResultSets(long open) {
+    statsRecorder
+        .newMeasureMap()
+        .put(Observability.MEASURE_OPEN_RESULT_SETS, open)
+        .record(tagger.empty());
+  }
+
+  // Decrements the count of the connection unless it was already reset by closeAll(), in which
+  // case the total doesn't count the statement or result set anymore either. Returns whether the
+  // total has to be decremented.
+  private static boolean decrement(AtomicInteger count) {
+    for (int n = count.get(); n > 0; n = count.get()) {
+      if (count.compareAndSet(n, n - 1)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,245 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.tags.TagValue;
+import java.sql.BatchUpdateException;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLInvalidAuthorizationSpecException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLNonTransientException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLSyntaxErrorException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.SQLTransientException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * Maps exceptions to the values of the "java_sql_error" tag.
+ *
+ * <p>Exception messages often embed ids, constraint names and values, so using them as tag values
+ * creates a new time series per distinct message. Instead, an exception is classified by its type
+ * into a small fixed vocabulary, and for {@link SQLException}s refined with the class of their
+ * SQLState, e.g. "integrity_constraint:23". Vendor error codes are left out, as they differ across
+ * drivers and would multiply the values.
+ *
+ * <p>At most {@link #MAX_REFINED_VALUES} refined values are created. Past that, errors are tagged
+ * with their category alone, so the tag never has more values than the vocabulary and the refined
+ * values, however many distinct SQLStates the drivers report. The values are created once and
+ * looked up without locking.
+ */
+final class ErrorClassifier {
+  private ErrorClassifier() {}
+
+  // The fixed vocabulary of error categories.
+  static final String TIMEOUT = "timeout";
+  static final String TRANSACTION_ROLLBACK = "transaction_rollback";
+  static final String TRANSIENT_CONNECTION = "transient_connection";
+  static final String TRANSIENT = "transient";
+  static final String CONNECTION = "connection";
+  static final String INTEGRITY_CONSTRAINT = "integrity_constraint";
+  static final String SYNTAX = "syntax";
+  static final String AUTHORIZATION = "authorization";
+  static final String FEATURE_NOT_SUPPORTED = "feature_not_supported";
+  static final String DATA = "data";
+  static final String NON_TRANSIENT = "non_transient";
+  static final String RECOVERABLE = "recoverable";
+  static final String BATCH_UPDATE = "batch_update";
+  static final String CLIENT_INFO = "client_info";
+  static final String SQL = "sql";
+  static final String RUNTIME = "runtime";
+  static final String OTHER = "other";
+
+  // VisibleForTesting
+  static final int MAX_REFINED_VALUES = 128;
+
+  // The values of the categories, created once.
+  private static final ConcurrentHashMap<String, TagValue> categoryValues =
+      new ConcurrentHashMap<String, TagValue>();
+  // The values of the categories refined with a SQLState class, at most MAX_REFINED_VALUES.
+  private static final ConcurrentHashMap<String, TagValue> refinedValues =
+      new ConcurrentHashMap<String, TagValue>();
+  // The number of refined values created or being created, which reserves them under the cap.
+  private static final AtomicInteger refinedCount = new AtomicInteger();
+
+  static {
+    for (String category :
+        new String[] {
+          TIMEOUT,
+          TRANSACTION_ROLLBACK,
+          TRANSIENT_CONNECTION,
+          TRANSIENT,
+          CONNECTION,
+          INTEGRITY_CONSTRAINT,
+          SYNTAX,
+          AUTHORIZATION,
+          FEATURE_NOT_SUPPORTED,
+          DATA,
+          NON_TRANSIENT,
+          RECOVERABLE,
+          BATCH_UPDATE,
+          CLIENT_INFO,
+          SQL,
+          RUNTIME,
+          OTHER
+        }) {
+      categoryValues.put(category, TagValue.create(category));
+    }
+  }
+
+  static TagValue classify(Throwable t) {
+    return classify(category(t), t);
+  }
+
+  // Returns the value of the exception, given the category it was already classified into.
+  static TagValue classify(String category, Throwable t) {
+    TagValue categoryValue = categoryValues.get(category);
+    if (!(t instanceof SQLException)) {
+      return categoryValue;
+    }
+    String sqlStateClass = sqlStateClass(((SQLException) t).getSQLState());
+    if (sqlStateClass == null) {
+      return categoryValue;
+    }
+    String value = category + ':' + sqlStateClass;
+    TagValue refinedValue = refinedValues.get(value);
+    if (refinedValue != null) {
+      return refinedValue;
+    }
+    if (refinedCount.incrementAndGet() > MAX_REFINED_VALUES) {
+      refinedCount.decrementAndGet();
+      return categoryValue;
+    }
+    refinedValue = TagValue.create(value);
+    TagValue previous = refinedValues.putIfAbsent(value, refinedValue);
+    if (previous != null) {
+      // Created concurrently by another thread, which used the reservation.
+      refinedCount.decrementAndGet();
+      return previous;
+    }
+    return refinedValue;
+  }
+
+  // VisibleForTesting
+  static String category(Throwable t) {
+    // Subclasses must be checked before their superclasses.
+    if (t instanceof SQLTimeoutException) {
+      return TIMEOUT;
+    } else if (t instanceof SQLTransactionRollbackException) {
+      return TRANSACTION_ROLLBACK;
+    } else if (t instanceof SQLTransientConnectionException) {
+      return TRANSIENT_CONNECTION;
+    } else if (t instanceof SQLTransientException) {
+      return TRANSIENT;
+    } else if (t instanceof SQLNonTransientConnectionException) {
+      return CONNECTION;
+    } else if (t instanceof SQLIntegrityConstraintViolationException) {
+      return INTEGRITY_CONSTRAINT;
+    } else if (t instanceof SQLSyntaxErrorException) {
+      return SYNTAX;
+    } else if (t instanceof SQLInvalidAuthorizationSpecException) {
+      return AUTHORIZATION;
+    } else if (t instanceof SQLFeatureNotSupportedException) {
+      return FEATURE_NOT_SUPPORTED;
+    } else if (t instanceof SQLDataException) {
+      return DATA;
+    } else if (t instanceof SQLNonTransientException) {
+      return NON_TRANSIENT;
+    } else if (t instanceof SQLRecoverableException) {
+      return RECOVERABLE;
+    } else if (t instanceof BatchUpdateException) {
+      return BATCH_UPDATE;
+    } else if (t instanceof SQLClientInfoException) {
+      return CLIENT_INFO;
+    } else if (t instanceof SQLException) {
+      // Many drivers only throw plain SQLExceptions, so fall back to the SQLState.
+      return categoryOfSqlState(((SQLException) t).getSQLState());
+    } else if (t instanceof RuntimeException) {
+      return RUNTIME;
+    }
+    return OTHER;
+  }
+
+  // Maps the standard SQLState classes onto the same vocabulary as the exception types.
+  private static String categoryOfSqlState(@Nullable String sqlState) {
+    if (sqlState == null) {
+      return SQL;
+    }
+    if (sqlState.startsWith("HYT")) {
+      return TIMEOUT;
+    }
+    String sqlStateClass = sqlStateClass(sqlState);
+    if (sqlStateClass == null) {
+      return SQL;
+    }
+    switch (sqlStateClass) {
+      case "08":
+        return CONNECTION;
+      case "0A":
+        return FEATURE_NOT_SUPPORTED;
+      case "22":
+        return DATA;
+      case "23":
+        return INTEGRITY_CONSTRAINT;
+      case "28":
+        return AUTHORIZATION;
+      case "40":
+        return TRANSACTION_ROLLBACK;
+      case "42":
+        return SYNTAX;
+      default:
+        return SQL;
+    }
+  }
+
+  // Returns the two character class of the SQLState, or null if the SQLState is malformed, so
+  // that arbitrary driver strings never end up in tag values.
+  @Nullable
+  private static String sqlStateClass(@Nullable String sqlState) {
+    if (sqlState == null || sqlState.length() < 2) {
+      return null;
+    }
+    char c0 = sqlState.charAt(0);
+    char c1 = sqlState.charAt(1);
+    if (!isSqlStateChar(c0) || !isSqlStateChar(c1)) {
+      return null;
+    }
+    return sqlState.substring(0, 2);
+  }
+
+  private static boolean isSqlStateChar(char c) {
+    return (c >= '0' && c <= '9') || (c >= 'A' && c <= 'Z');
+  }
+
+  // VisibleForTesting
+  static int refinedValues() {
+    return refinedValues.size();
+  }
+
+  // Forgets the refined values, so that each test starts under the cap.
+  // VisibleForTesting
+  static void clearRefinedValues() {
+    refinedValues.clear();
+    refinedCount.set(0);
+  }
+}
@@ -0,0 +1,61 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.integration.jdbc.Observability.TrackingOperation;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import javax.annotation.Nullable;
+
+/**
+ * Holds the operation executing on a statement, which {@link java.sql.Statement#cancel()} is
+ * usually called from another thread to interrupt.
+ *
+ * <p>The executing thread publishes its operation with a volatile write and withdraws it with a
+ * compare-and-set, so that the execution path takes no lock. The cancelling thread reads the
+ * operation, marks it as cancelled and links the span of the cancellation to it.
+ */
+final class InFlightOperation {
+  private static final AtomicReferenceFieldUpdater<InFlightOperation, TrackingOperation> updater =
+      AtomicReferenceFieldUpdater.newUpdater(
+          InFlightOperation.class, TrackingOperation.class, "operation");
+
+  @Nullable private volatile TrackingOperation operation;
+
+  // Called by the executing thread when the operation starts.
+  void begin(TrackingOperation operation) {
+    this.operation = operation;
+  }
+
+  // Called by the executing thread when the operation ends, unless another operation was started
+  // on the statement since.
+  void end(TrackingOperation operation) {
+    updater.compareAndSet(this, operation, null);
+  }
+
+  // Marks the operation executing on the statement, if any, as cancelled by the given call to
+  // cancel().
+  void cancel(TrackingOperation cancel) {
+    TrackingOperation operation = this.operation;
+    if (operation != null) {
+      operation.recordCancel(cancel);
+    }
+  }
+
+  // VisibleForTesting
+  @Nullable
+  TrackingOperation get() {
+    return operation;
+  }
+}
@@ -0,0 +1,224 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Decides, per instrumented method, whether calls are traced, only metered, or passed straight
+ * through to the driver.
+ *
+ * <p>Methods are named like their spans, e.g. "java.sql.ResultSet.getTimestamp". Only the methods
+ * the wrappers instrument can be configured, the others are always passed through. A policy is
+ * immutable and resolved into a hash table when it is created, so looking up the mode of a call
+ * costs a single hash lookup of a string literal.
+ *
+ * <p>The {@link #defaults() default} policy passes through the calls that never touch the
+ * database but used to be instrumented, and traces everything else.
+ */
+public final class InstrumentationPolicy {
+
+  /** How the calls to a method are instrumented. */
+  public enum Mode {
+    // Records a span and the metrics of the calls.
+    TRACE,
+    // Only records the metrics of the calls.
+    METER,
+    // Calls the driver directly, without recording anything.
+    PASSTHROUGH
+  }
+
+  /**
+   * The prefix of the {@link #fromProperties(Properties) properties} configuring a policy, e.g.
+   * "opencensus.jdbc.policy.java.sql.ResultSet.getTimestamp=TRACE", or
+   * "opencensus.jdbc.policy.default=METER" for the methods that aren't configured explicitly.
+   */
+  public static final String PROPERTY_PREFIX = "opencensus.jdbc.policy.";
+
+  private static final String DEFAULT_PROPERTY = PROPERTY_PREFIX + "default";
+
+  // Calls that are handled by the driver without going over the network, so that their spans
+  // cost more than they reveal.
+  // VisibleForTesting
+  static final String[] LOCAL_ONLY_METHODS = {
+    "java.sql.PreparedStatement.setDate",
+    "java.sql.PreparedStatement.setTime",
+    "java.sql.PreparedStatement.setTimestamp",
+    "java.sql.CallableStatement.setTime",
+    "java.sql.CallableStatement.setTimestamp",
+    "java.sql.ResultSet.getTimestamp",
+    "java.sql.ResultSet.findColumn",
+    "java.sql.ResultSet.getRow"
+  };
+
+  // The methods whose spans are written by hand, rather than generated with the wrappers.
+  private static final String[] HANDWRITTEN_METHODS = {
+    "java.sql.Driver.connect",
+    "javax.sql.DataSource.getConnection",
+    "java.sql.Connection.abort",
+    "java.sql.Connection.close",
+    "java.sql.Connection.commit",
+    "java.sql.Connection.rollback",
+    "java.sql.Connection.setAutoCommit",
+    "java.sql.Statement.close",
+    "java.sql.Statement.executeBatch",
+    "java.sql.PreparedStatement.close",
+    "java.sql.PreparedStatement.executeBatch",
+    "java.sql.CallableStatement.close",
+    "java.sql.CallableStatement.executeBatch",
+    "java.sql.ResultSet.close",
+    "java.sql.ResultSet.fetch",
+    "java.sql.ResultSet.next"
+  };
+
+  // The methods a policy can configure.
+  private static final Set<String> INSTRUMENTED_METHODS = instrumentedMethods();
+
+  private static final InstrumentationPolicy TRACE_ALL =
+      new InstrumentationPolicy(Mode.TRACE, Collections.<String, Mode>emptyMap());
+
+  private static final InstrumentationPolicy DEFAULTS = defaults(TRACE_ALL);
+
+  private final Mode defaultMode;
+  private final Map<String, Mode> modes;
+
+  private InstrumentationPolicy(Mode defaultMode, Map<String, Mode> modes) {
+    this.defaultMode = defaultMode;
+    this.modes = modes;
+  }
+
+  /**
+   * Returns the default policy, which passes through the calls that don't touch the database and
+   * traces all the others.
+   *
+   * @return the default policy.
+   */
+  public static InstrumentationPolicy defaults() {
+    return DEFAULTS;
+  }
+
+  /**
+   * Returns a policy that traces every instrumented method.
+   *
+   * @return a policy that traces every instrumented method.
+   */
+  public static InstrumentationPolicy traceAll() {
+    return TRACE_ALL;
+  }
+
+  /**
+   * Returns the {@link #defaults() default} policy, overridden by the properties starting with
+   * {@link #PROPERTY_PREFIX}. Other properties are ignored.
+   *
+   * @param properties the properties to read the policy from.
+   * @return the policy configured by the properties.
+   * @throws IllegalArgumentException if a property doesn't name a {@link Mode}, or names a method
+   *     that isn't instrumented.
+   */
+  public static InstrumentationPolicy fromProperties(Properties properties) {
+    InstrumentationPolicy policy = DEFAULTS;
+    for (String name : properties.stringPropertyNames()) {
+      if (!name.startsWith(PROPERTY_PREFIX)) {
+        continue;
+      }
+      Mode mode = parseMode(name, properties.getProperty(name));
+      if (name.equals(DEFAULT_PROPERTY)) {
+        policy = policy.withDefaultMode(mode);
+      } else {
+        policy = policy.withMode(name.substring(PROPERTY_PREFIX.length()), mode);
+      }
+    }
+    return policy;
+  }
+
+  /**
+   * Returns a copy of this policy where the calls to the given method are instrumented with the
+   * given mode.
+   *
+   * @param method the name of the method, e.g. "java.sql.ResultSet.getTimestamp".
+   * @param mode how the calls to the method are instrumented.
+   * @return the new policy.
+   * @throws IllegalArgumentException if the method isn't instrumented, e.g. because it never
+   *     touches the database or its name is misspelled.
+   */
+  public InstrumentationPolicy withMode(String method, Mode mode) {
+    if (!INSTRUMENTED_METHODS.contains(method)) {
+      throw new IllegalArgumentException("Not an instrumented method: " + method);
+    }
+    Map<String, Mode> newModes = new HashMap<String, Mode>(modes);
+    newModes.put(method, mode);
+    return new InstrumentationPolicy(defaultMode, Collections.unmodifiableMap(newModes));
+  }
+
+  /**
+   * Returns a copy of this policy where the methods that aren't configured explicitly are
+   * instrumented with the given mode.
+   *
+   * @param mode how the calls to the methods are instrumented.
+   * @return the new policy.
+   */
+  public InstrumentationPolicy withDefaultMode(Mode mode) {
+    return new InstrumentationPolicy(mode, modes);
+  }
+
+  /**
+   * Returns how the calls to the given method are instrumented.
+   *
+   * @param method the name of the method, e.g. "java.sql.ResultSet.getTimestamp".
+   * @return how the calls to the method are instrumented.
+   */
+  public Mode getMode(String method) {
+    Mode mode = modes.get(method);
+    return mode == null ? defaultMode : mode;
+  }
+
+  private static Set<String> instrumentedMethods() {
+    Set<String> methods = new HashSet<String>(Arrays.asList(HANDWRITTEN_METHODS));
+    methods.addAll(Arrays.asList(OcWrapConnectionBase.INSTRUMENTED_METHODS));
+    methods.addAll(Arrays.asList(OcWrapStatementBase.INSTRUMENTED_METHODS));
+    methods.addAll(Arrays.asList(OcWrapPreparedStatementBase.INSTRUMENTED_METHODS));
+    methods.addAll(Arrays.asList(OcWrapCallableStatementBase.INSTRUMENTED_METHODS));
+    methods.addAll(Arrays.asList(OcWrapResultSetBase.INSTRUMENTED_METHODS));
+    return Collections.unmodifiableSet(methods);
+  }
+
+  // VisibleForTesting
+  static boolean isInstrumented(String method) {
+    return INSTRUMENTED_METHODS.contains(method);
+  }
+
+  private static InstrumentationPolicy defaults(InstrumentationPolicy policy) {
+    for (String method : Arrays.asList(LOCAL_ONLY_METHODS)) {
+      policy = policy.withMode(method, Mode.PASSTHROUGH);
+    }
+    return policy;
+  }
+
+  private static Mode parseMode(String name, String value) {
+    try {
+      return Mode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(
+          "Invalid instrumentation mode for " + name + ": " + value, e);
+    }
+  }
+}
@@ -0,0 +1,485 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.integration.jdbc.Observability.MethodTags;
+import io.opencensus.stats.Aggregation;
+import io.opencensus.stats.MeasureMap;
+import io.opencensus.stats.Stats;
+import io.opencensus.stats.StatsRecorder;
+import io.opencensus.tags.TagContext;
+import io.opencensus.tags.TagValue;
+import io.opencensus.tags.Tagger;
+import io.opencensus.tags.Tags;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.Nullable;
+
+/**
+ * Aggregates the latencies of the JDBC calls in local histograms, which are flushed to the {@link
+ * StatsRecorder} periodically, so that the threads making the calls don't contend on the
+ * aggregation of the stats implementation.
+ *
+ * <p>The histograms are keyed by method, status and the tags of the current context, and use the
+ * buckets of the "java.sql/client/latency" view. Recording a call is a binary search for its bucket
+ * and an increment of the count and the total latency of the bucket, in {@link LongAdder}s that
+ * spread the threads over as many cells as they contend on. The tag context of a call is looked up
+ * by identity, in a per-thread cache of the last context the thread made a call in, and only
+ * hashed when it changes. Every flush records each non-empty bucket as its number of calls, at the
+ * mean latency of the calls of the bucket, which keeps the counts, the buckets and the sums of the
+ * views exact. The stats API can't record a measurement more than once at a time, so a bucket is
+ * still recorded once per call, but with a single {@link MeasureMap} and tag context, by a single
+ * thread. The flushes that take longer than the flush interval, because the calls are recorded
+ * slower than they are made, are counted in {@link #getOverrunFlushes()}.
+ *
+ * <p>Only the calls that record nothing but their latency are aggregated. The others, e.g. the
+ * calls that read rows or acquire a connection, are recorded as usual, by the {@link
+ * AsyncStatsRecorder} if one is started. So are the calls made with tags in the current context
+ * while the histograms of {@link #MAX_TAGGED_CONTEXTS} contexts are held. The histograms of a
+ * context that had no calls between two flushes are dropped.
+ *
+ * <p>The aggregator is started with {@link #start(long, TimeUnit)}, after which the latencies of
+ * the instrumented calls are aggregated by it, until {@link #stop()} is called.
+ */
+public final class LocalLatencyAggregator {
+
+  /** The default interval between two flushes, in seconds. */
+  public static final long DEFAULT_FLUSH_INTERVAL_SECONDS = 10;
+
+  // The boundaries of the buckets of the latency view, in milliseconds. Bucket i holds the
+  // latencies in [boundaries[i - 1], boundaries[i]).
+  private static final double[] BOUNDARIES =
+      boundaries(Observability.DEFAULT_MILLISECONDS_DISTRIBUTION);
+
+  /** The maximum number of tag contexts whose calls are aggregated at once. */
+  public static final int MAX_TAGGED_CONTEXTS = 1024;
+
+  @Nullable private static volatile LocalLatencyAggregator current;
+
+  private final long flushIntervalNs;
+  private final StatsRecorder statsRecorder;
+  private final Tagger tagger;
+  // The histograms of the calls made without tags.
+  private final TaggedHistograms untagged;
+  // The histograms of the calls made with tags, by context.
+  private final ConcurrentHashMap<TagContext, TaggedHistograms> tagged =
+      new ConcurrentHashMap<TagContext, TaggedHistograms>();
+  private final AtomicInteger taggedContexts = new AtomicInteger();
+  // The histograms dropped by the last flush, flushed once more by the next one, for the calls
+  // that were being added to them.
+  private List<TaggedHistograms> dropped = new ArrayList<TaggedHistograms>();
+  // The last context each thread made a call in, and its histograms.
+  private final ThreadLocal<LastContext> lastContexts =
+      new ThreadLocal<LastContext>() {
+        @Override
+        protected LastContext initialValue() {
+          return new LastContext();
+        }
+      };
+  // The number of calls that started and finished being recorded, so that stopping waits for the
+  // calls being recorded before the last flush.
+  private final LongAdder recordsStarted = new LongAdder();
+  private final LongAdder recordsFinished = new LongAdder();
+  private final AtomicLong overrunFlushes = new AtomicLong();
+
+  private final Thread thread;
+  private volatile boolean running = true;
+
+  // VisibleForTesting
+  LocalLatencyAggregator(
+      long flushInterval, TimeUnit unit, StatsRecorder statsRecorder, Tagger tagger) {
+    if (flushInterval <= 0) {
+      throw new IllegalArgumentException("Invalid flush interval: " + flushInterval);
+    }
+    this.flushIntervalNs = unit.toNanos(flushInterval);
+    this.statsRecorder = statsRecorder;
+    this.tagger = tagger;
+    this.untagged = new TaggedHistograms(tagger.empty(), tagger);
+
+    this.thread =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                flushUntilStopped();
+              }
+            },
+            "opencensus-jdbc-latency");
+    this.thread.setDaemon(true);
+  }
+
+  /**
+   * Starts aggregating the latencies of the JDBC calls locally, flushing them every {@link
+   * #DEFAULT_FLUSH_INTERVAL_SECONDS} seconds.
+   *
+   * @return the started aggregator.
+   */
+  public static LocalLatencyAggregator start() {
+    return start(DEFAULT_FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Starts aggregating the latencies of the JDBC calls locally, stopping the aggregator started
+   * previously if there is one.
+   *
+   * @param flushInterval the interval between two flushes of the histograms.
+   * @param unit the unit of the interval.
+   * @return the started aggregator.
+   * @throws IllegalArgumentException if the interval isn't positive.
+   */
+  public static synchronized LocalLatencyAggregator start(long flushInterval, TimeUnit unit) {
+    LocalLatencyAggregator aggregator =
+        new LocalLatencyAggregator(flushInterval, unit, Stats.getStatsRecorder(), Tags.getTagger());
+    stop();
+    aggregator.thread.start();
+    current = aggregator;
+    return aggregator;
+  }
+
+  /**
+   * Stops the aggregator started by {@link #start(long, TimeUnit)}, if any, after flushing its
+   * histograms, including the calls being aggregated while it stops. The latencies of the calls
+   * made afterwards are recorded as usual.
+   */
+  public static synchronized void stop() {
+    LocalLatencyAggregator aggregator = current;
+    if (aggregator == null) {
+      return;
+    }
+    current = null;
+    aggregator.shutdown();
+  }
+
+  /**
+   * Returns the number of flushes that took longer than the flush interval, during which the views
+   * lagged behind the calls by more than an interval. The calls made meanwhile are still
+   * aggregated, and recorded by the next flush.
+   *
+   * @return the number of flushes that took longer than the flush interval.
+   */
+  public long getOverrunFlushes() {
+    return overrunFlushes.get();
+  }
+
+  // Returns the aggregator the operations started now hand their latencies to, if any.
+  @Nullable
+  static LocalLatencyAggregator current() {
+    return current;
+  }
+
+  // Aggregates the latency of a call made in the given context. Returns false if the caller has to
+  // record it itself.
+  boolean record(
+      MethodTags methodTags, TagContext context, @Nullable TagValue error, long durationNs) {
+    recordsStarted.increment();
+    try {
+      if (!running) {
+        return false;
+      }
+      LastContext last = lastContexts.get();
+      TaggedHistograms histograms = last.histograms;
+      if (last.context != context || histograms == null || histograms.dropped) {
+        histograms = taggedHistograms(context);
+        if (histograms == null) {
+          return false;
+        }
+        last.context = context;
+        last.histograms = histograms;
+      }
+      Histogram histogram = histograms.methodHistograms(methodTags).histogram(error);
+      histogram.add(bucket(durationNs / 1e6), durationNs);
+      return true;
+    } finally {
+      recordsFinished.increment();
+    }
+  }
+
+  // Records the aggregated latencies and resets the histograms, dropping those of the contexts
+  // that had no calls since the previous flush. Returns the number of calls recorded.
+  // VisibleForTesting
+  long flush() {
+    long recorded = 0;
+    // The calls added to the histograms dropped by the previous flush while it dropped them.
+    for (TaggedHistograms histograms : dropped) {
+      recorded += flush(histograms);
+    }
+    dropped = new ArrayList<TaggedHistograms>();
+    recorded += flush(untagged);
+    for (TaggedHistograms histograms : tagged.values()) {
+      long calls = flush(histograms);
+      if (calls == 0) {
+        // The threads still holding the histograms stop using them, and look up their context
+        // again.
+        histograms.dropped = true;
+        tagged.remove(histograms.context, histograms);
+        taggedContexts.decrementAndGet();
+        dropped.add(histograms);
+      }
+      recorded += calls;
+    }
+    return recorded;
+  }
+
+  // Returns the number of tag contexts whose calls are aggregated.
+  // VisibleForTesting
+  int taggedContexts() {
+    return taggedContexts.get();
+  }
+
+  private long flush(TaggedHistograms histograms) {
+    long recorded = 0;
+    for (MethodHistograms methodHistograms : histograms.methods.values()) {
+      recorded += flush(methodHistograms.ok);
+      for (Histogram histogram : methodHistograms.errors.values()) {
+        recorded += flush(histogram);
+      }
+    }
+    return recorded;
+  }
+
+  private long flush(Histogram histogram) {
+    long recorded = 0;
+    for (int bucket = 0; bucket <= BOUNDARIES.length; bucket++) {
+      // A call added during the flush may be counted in this flush and its latency in the next
+      // one, or the other way around, which the clamping keeps within the bucket.
+      long count = histogram.counts[bucket].sumThenReset();
+      long totalNs = histogram.totalsNs[bucket].sumThenReset();
+      if (count == 0) {
+        continue;
+      }
+
+      MeasureMap measureMap =
+          statsRecorder
+              .newMeasureMap()
+              .put(Observability.MEASURE_LATENCY_MS, clamp(totalNs / 1e6 / count, bucket));
+      for (long i = 0; i < count; i++) {
+        measureMap.record(histogram.tags);
+      }
+      recorded += count;
+    }
+    return recorded;
+  }
+
+  // Returns the histograms of the calls made in the given context, or null if there are already
+  // too many contexts.
+  @Nullable
+  private TaggedHistograms taggedHistograms(TagContext context) {
+    if (MethodTags.isEmpty(context)) {
+      return untagged;
+    }
+    TaggedHistograms histograms = tagged.get(context);
+    if (histograms != null) {
+      return histograms;
+    }
+    if (taggedContexts.incrementAndGet() > MAX_TAGGED_CONTEXTS) {
+      taggedContexts.decrementAndGet();
+      return null;
+    }
+    histograms = new TaggedHistograms(context, tagger);
+    TaggedHistograms previous = tagged.putIfAbsent(context, histograms);
+    if (previous != null) {
+      taggedContexts.decrementAndGet();
+      return previous;
+    }
+    return histograms;
+  }
+
+  // Returns the index of the bucket of the given latency in milliseconds.
+  // VisibleForTesting
+  static int bucket(double latencyMs) {
+    int index = Arrays.binarySearch(BOUNDARIES, latencyMs);
+    // A latency equal to a boundary belongs to the bucket that starts at it.
+    return index >= 0 ? index + 1 : -index - 1;
+  }
+
+  // Keeps the mean latency of a bucket within the bucket, which a call added during a flush may
+  // push it out of.
+  private static double clamp(double latencyMs, int bucket) {
+    if (bucket > 0 && latencyMs < BOUNDARIES[bucket - 1]) {
+      return BOUNDARIES[bucket - 1];
+    }
+    if (bucket < BOUNDARIES.length && latencyMs >= BOUNDARIES[bucket]) {
+      return Math.nextDown(BOUNDARIES[bucket]);
+    }
+    return latencyMs;
+  }
+
+  private static double[] boundaries(Aggregation distribution) {
+    List<Double> boundaries =
+        ((Aggregation.Distribution) distribution).getBucketBoundaries().getBoundaries();
+    double[] result = new double[boundaries.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = boundaries.get(i);
+    }
+    return result;
+  }
+
+  private void flushUntilStopped() {
+    long nextFlushNs = System.nanoTime() + flushIntervalNs;
+    while (running) {
+      long remainingNs = nextFlushNs - System.nanoTime();
+      if (remainingNs > 0) {
+        LockSupport.parkNanos(this, remainingNs);
+        continue;
+      }
+      scheduledFlush();
+      // An overrun flush is followed by a full interval rather than by the flushes it missed.
+      nextFlushNs = Math.max(nextFlushNs + flushIntervalNs, System.nanoTime());
+    }
+  }
+
+  // Flushes the histograms, counting the flush as overrun if it took longer than the interval.
+  // VisibleForTesting
+  void scheduledFlush() {
+    long startNs = System.nanoTime();
+    flushQuietly();
+    if (System.nanoTime() - startNs > flushIntervalNs) {
+      overrunFlushes.incrementAndGet();
+    }
+  }
+
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (RuntimeException e) {
+      // The flushing thread must survive a failing stats implementation, the calls of the failed
+      // flush are lost.
+    }
+  }
+
+  // Stops aggregating calls, and waits for the calls being aggregated.
+  private void stopRecording() {
+    running = false;
+    // Every call started before has finished once as many calls finished as started, the
+    // finished ones being counted first.
+    while (true) {
+      long finished = recordsFinished.sum();
+      if (recordsStarted.sum() == finished) {
+        return;
+      }
+      Thread.yield();
+    }
+  }
+
+  private void shutdown() {
+    stopRecording();
+    LockSupport.unpark(thread);
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+    flushQuietly();
+  }
+
+  // The last context a thread made a call in, and its histograms.
+  private static final class LastContext {
+    @Nullable TagContext context;
+    @Nullable TaggedHistograms histograms;
+  }
+
+  // The histograms of the calls made in a context, by method.
+  private static final class TaggedHistograms {
+    final TagContext context;
+    // MethodTags are interned, so they are hashed by identity.
+    final ConcurrentHashMap<MethodTags, MethodHistograms> methods =
+        new ConcurrentHashMap<MethodTags, MethodHistograms>();
+    // Whether the histograms were dropped by a flush, after which their calls go to new ones.
+    volatile boolean dropped;
+    private final Tagger tagger;
+
+    TaggedHistograms(TagContext context, Tagger tagger) {
+      this.context = context;
+      this.tagger = tagger;
+    }
+
+    MethodHistograms methodHistograms(MethodTags methodTags) {
+      MethodHistograms methodHistograms = methods.get(methodTags);
+      if (methodHistograms == null) {
+        methodHistograms = new MethodHistograms(methodTags, context, tagger);
+        MethodHistograms previous = methods.putIfAbsent(methodTags, methodHistograms);
+        if (previous != null) {
+          methodHistograms = previous;
+        }
+      }
+      return methodHistograms;
+    }
+  }
+
+  // The histograms of a method in a context, for its successful calls and per error.
+  private static final class MethodHistograms {
+    final Histogram ok;
+    final ConcurrentHashMap<TagValue, Histogram> errors =
+        new ConcurrentHashMap<TagValue, Histogram>();
+    private final MethodTags methodTags;
+    private final TagContext context;
+    private final Tagger tagger;
+
+    MethodHistograms(MethodTags methodTags, TagContext context, Tagger tagger) {
+      this.ok = new Histogram(methodTags.tags(tagger, context, null));
+      this.methodTags = methodTags;
+      this.context = context;
+      this.tagger = tagger;
+    }
+
+    Histogram histogram(@Nullable TagValue error) {
+      if (error == null) {
+        return ok;
+      }
+      // The errors are classified into a bounded set of values, see ErrorClassifier.
+      Histogram histogram = errors.get(error);
+      if (histogram == null) {
+        histogram = new Histogram(methodTags.tags(tagger, context, error));
+        Histogram previous = errors.putIfAbsent(error, histogram);
+        if (previous != null) {
+          histogram = previous;
+        }
+      }
+      return histogram;
+    }
+  }
+
+  // The count and the total latency in nanoseconds of each bucket of a histogram.
+  private static final class Histogram {
+    final TagContext tags;
+    final LongAdder[] counts = newAdders();
+    final LongAdder[] totalsNs = newAdders();
+
+    Histogram(TagContext tags) {
+      this.tags = tags;
+    }
+
+    void add(int bucket, long durationNs) {
+      counts[bucket].increment();
+      totalsNs[bucket].add(durationNs);
+    }
+
+    private static LongAdder[] newAdders() {
+      LongAdder[] adders = new LongAdder[BOUNDARIES.length + 1];
+      for (int i = 0; i < adders.length; i++) {
+        adders[i] = new LongAdder();
+      }
+      return adders;
+    }
+  }
+}
@@ -15,15 +15,19 @@
 package io.opencensus.integration.jdbc;
 
 import io.opencensus.common.Scope;
+import io.opencensus.integration.jdbc.InstrumentationPolicy.Mode;
 import io.opencensus.stats.Aggregation;
 import io.opencensus.stats.Aggregation.Distribution;
 import io.opencensus.stats.BucketBoundaries;
 import io.opencensus.stats.Measure.MeasureDouble;
+import io.opencensus.stats.Measure.MeasureLong;
+import io.opencensus.stats.MeasureMap;
 import io.opencensus.stats.Stats;
 import io.opencensus.stats.StatsRecorder;
 import io.opencensus.stats.View;
 import io.opencensus.stats.View.Name;
 import io.opencensus.stats.ViewManager;
+import io.opencensus.tags.InternalUtils;
 import io.opencensus.tags.TagContext;
 import io.opencensus.tags.TagContextBuilder;
 import io.opencensus.tags.TagKey;
@@ -31,12 +35,21 @@ import io.opencensus.tags.TagValue;
 import io.opencensus.tags.Tagger;
 import io.opencensus.tags.Tags;
 import io.opencensus.trace.AttributeValue;
+import io.opencensus.trace.Link;
+import io.opencensus.trace.Sampler;
 import io.opencensus.trace.Span;
+import io.opencensus.trace.SpanBuilder;
 import io.opencensus.trace.Status;
+import io.opencensus.trace.TraceId;
 import io.opencensus.trace.Tracer;
 import io.opencensus.trace.Tracing;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import javax.annotation.Nullable;
 
 /** Observability for JDBC. */
@@ -50,22 +63,149 @@ public final class Observability {
 
   // Units of measurement
   private static final String MILLISECONDS = "ms";
+  private static final String DIMENSIONLESS = "1";
+  private static final String ROWS_PER_SECOND = "1/s";
 
   // Tag keys
   static final TagKey JAVA_SQL_METHOD = TagKey.create("java_sql_method");
   static final TagKey JAVA_SQL_ERROR = TagKey.create("java_sql_error");
   static final TagKey JAVA_SQL_STATUS = TagKey.create("java_sql_status");
+  static final TagKey JAVA_SQL_CHATTINESS = TagKey.create("java_sql_chattiness");
+  static final TagKey JAVA_SQL_TRANSACTION_OUTCOME = TagKey.create("java_sql_transaction_outcome");
+  static final TagKey JAVA_SQL_LEAK = TagKey.create("java_sql_leak");
+  static final TagKey JAVA_SQL_RESOURCE = TagKey.create("java_sql_resource");
+  static final TagKey JAVA_SQL_STATEMENT_CACHE = TagKey.create("java_sql_statement_cache");
 
   // Tag values
   // VisibleForTesting
   static final TagValue VALUE_OK = TagValue.create("OK");
   static final TagValue VALUE_ERROR = TagValue.create("ERROR");
+  static final TagValue VALUE_REPEATED_STATEMENT = TagValue.create("REPEATED_STATEMENT");
+  static final TagValue VALUE_TOO_MANY_ROUNDTRIPS = TagValue.create("TOO_MANY_ROUNDTRIPS");
+  static final TagValue VALUE_COMMIT = TagValue.create("COMMIT");
+  static final TagValue VALUE_ROLLBACK = TagValue.create("ROLLBACK");
+  static final TagValue VALUE_CLOSE = TagValue.create("CLOSE");
+  static final TagValue VALUE_CHECKED_OUT_TOO_LONG = TagValue.create("CHECKED_OUT_TOO_LONG");
+  static final TagValue VALUE_NOT_CLOSED = TagValue.create("NOT_CLOSED");
+  static final TagValue VALUE_HIT = TagValue.create("HIT");
+  static final TagValue VALUE_MISS = TagValue.create("MISS");
+  static final TagValue VALUE_EVICTION = TagValue.create("EVICTION");
 
   // Measures
   static final MeasureDouble MEASURE_LATENCY_MS =
       MeasureDouble.create(
           "java.sql/latency", "The latency of calls in milliseconds", MILLISECONDS);
 
+  static final MeasureDouble MEASURE_CONNECTION_ACQUIRE_MS =
+      MeasureDouble.create(
+          "java.sql/connection_acquire",
+          "The latency of acquiring connections in milliseconds",
+          MILLISECONDS);
+
+  static final MeasureLong MEASURE_ROWS_READ =
+      MeasureLong.create(
+          "java.sql/rows_read", "The number of rows read from a result set", DIMENSIONLESS);
+
+  static final MeasureLong MEASURE_ROWS_AFFECTED =
+      MeasureLong.create(
+          "java.sql/rows_affected",
+          "The number of rows inserted, updated or deleted by a statement",
+          DIMENSIONLESS);
+
+  static final MeasureLong MEASURE_BATCH_SIZE =
+      MeasureLong.create(
+          "java.sql/batch_size", "The number of statements in an executed batch", DIMENSIONLESS);
+
+  static final MeasureDouble MEASURE_BATCH_THROUGHPUT =
+      MeasureDouble.create(
+          "java.sql/batch_throughput",
+          "The number of batched statements executed per second",
+          ROWS_PER_SECOND);
+
+  static final MeasureDouble MEASURE_BATCH_LATENCY_MS =
+      MeasureDouble.create(
+          "java.sql/batch_latency",
+          "The latency of executing batches in milliseconds",
+          MILLISECONDS);
+
+  static final MeasureLong MEASURE_CHATTY_UNITS_OF_WORK =
+      MeasureLong.create(
+          "java.sql/chatty_units_of_work",
+          "The number of units of work that repeated a statement or made too many roundtrips",
+          DIMENSIONLESS);
+
+  static final MeasureDouble MEASURE_TRANSACTION_LATENCY_MS =
+      MeasureDouble.create(
+          "java.sql/transaction_latency",
+          "The duration of transactions, from their first statement to their end, in milliseconds",
+          MILLISECONDS);
+
+  static final MeasureLong MEASURE_TRANSACTION_STATEMENTS =
+      MeasureLong.create(
+          "java.sql/transaction_statements",
+          "The number of statements executed in a transaction",
+          DIMENSIONLESS);
+
+  static final MeasureDouble MEASURE_TRANSACTION_IDLE_MS =
+      MeasureDouble.create(
+          "java.sql/transaction_idle",
+          "The time a transaction was open without executing a statement in milliseconds",
+          MILLISECONDS);
+
+  static final MeasureLong MEASURE_OPEN_CONNECTIONS =
+      MeasureLong.create(
+          "java.sql/open_connections", "The number of open connections", DIMENSIONLESS);
+
+  static final MeasureDouble MEASURE_CONNECTION_AGE_MS =
+      MeasureDouble.create(
+          "java.sql/connection_age",
+          "The age of the oldest open connection in milliseconds",
+          MILLISECONDS);
+
+  static final MeasureLong MEASURE_LEAKED_CONNECTIONS =
+      MeasureLong.create(
+          "java.sql/leaked_connections",
+          "The number of connections checked out for too long or never closed",
+          DIMENSIONLESS);
+
+  static final MeasureLong MEASURE_OPEN_STATEMENTS =
+      MeasureLong.create(
+          "java.sql/open_statements", "The number of open statements", DIMENSIONLESS);
+
+  static final MeasureLong MEASURE_OPEN_RESULT_SETS =
+      MeasureLong.create(
+          "java.sql/open_result_sets", "The number of open result sets", DIMENSIONLESS);
+
+  static final MeasureLong MEASURE_LEAKED_STATEMENTS =
+      MeasureLong.create(
+          "java.sql/leaked_statements",
+          "The number of statements and result sets garbage collected without being closed",
+          DIMENSIONLESS);
+
+  static final MeasureDouble MEASURE_CANCEL_LATENCY_MS =
+      MeasureDouble.create(
+          "java.sql/cancel_latency",
+          "The time cancelled calls took to return after being cancelled in milliseconds",
+          MILLISECONDS);
+
+  static final MeasureDouble MEASURE_TIMEOUT_LATENCY_MS =
+      MeasureDouble.create(
+          "java.sql/timeout_latency",
+          "The latency of the calls that exceeded their query timeout in milliseconds",
+          MILLISECONDS);
+
+  static final MeasureLong MEASURE_STATEMENT_CACHE_EVENTS =
+      MeasureLong.create(
+          "java.sql/statement_cache",
+          "The number of hits, misses and evictions of the prepared statement caches",
+          DIMENSIONLESS);
+
+  static final MeasureDouble MEASURE_PREPARE_LATENCY_MS =
+      MeasureDouble.create(
+          "java.sql/prepare_latency",
+          "The latency of preparing the statements missing from the caches in milliseconds",
+          MILLISECONDS);
+
   // VisibleForTesting
   static final Aggregation DEFAULT_MILLISECONDS_DISTRIBUTION =
       Distribution.create(
@@ -106,8 +246,55 @@ public final class Observability {
                   200000.0,
                   500000.0)));
 
+  // [0, 1, 2, 5, 10, 20, 50, 100, 200, 500, 1k, 2k, 5k, 10k, 20k, 50k, 100k, 200k, 500k, 1M]
+  static final Aggregation ROWS_DISTRIBUTION =
+      Distribution.create(
+          BucketBoundaries.create(
+              Arrays.asList(
+                  0.0,
+                  1.0,
+                  2.0,
+                  5.0,
+                  10.0,
+                  20.0,
+                  50.0,
+                  100.0,
+                  200.0,
+                  500.0,
+                  1000.0,
+                  2000.0,
+                  5000.0,
+                  10000.0,
+                  20000.0,
+                  50000.0,
+                  100000.0,
+                  200000.0,
+                  500000.0,
+                  1000000.0)));
+
+  // [0/s, 10/s, 50/s, 100/s, 500/s, 1k/s, 5k/s, 10k/s, 50k/s, 100k/s, 500k/s, 1M/s, 5M/s]
+  static final Aggregation THROUGHPUT_DISTRIBUTION =
+      Distribution.create(
+          BucketBoundaries.create(
+              Arrays.asList(
+                  0.0,
+                  10.0,
+                  50.0,
+                  100.0,
+                  500.0,
+                  1000.0,
+                  5000.0,
+                  10000.0,
+                  50000.0,
+                  100000.0,
+                  500000.0,
+                  1000000.0,
+                  5000000.0)));
+
   static final Aggregation COUNT = Aggregation.Count.create();
 
+  static final Aggregation LAST_VALUE = Aggregation.LastValue.create();
+
   static final View SQL_CLIENT_LATENCY_VIEW =
       View.create(
           Name.create("java.sql/client/latency"),
@@ -124,9 +311,207 @@ public final class Observability {
           COUNT,
           Arrays.asList(JAVA_SQL_METHOD, JAVA_SQL_ERROR, JAVA_SQL_STATUS));
 
+  // Recorded separately from "java.sql/client/latency" so that waiting for a pooled connection
+  // shows up on its own instead of being mixed in with the latency of the queries.
+  static final View SQL_CLIENT_CONNECTION_ACQUIRE_VIEW =
+      View.create(
+          Name.create("java.sql/client/connection_acquire"),
+          "The distribution of the latencies of acquiring connections in milliseconds",
+          MEASURE_CONNECTION_ACQUIRE_MS,
+          DEFAULT_MILLISECONDS_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_METHOD, JAVA_SQL_ERROR, JAVA_SQL_STATUS));
+
+  static final View SQL_CLIENT_ROWS_READ_VIEW =
+      View.create(
+          Name.create("java.sql/client/rows_read"),
+          "The distribution of the number of rows read per result set",
+          MEASURE_ROWS_READ,
+          ROWS_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_METHOD));
+
+  static final View SQL_CLIENT_ROWS_AFFECTED_VIEW =
+      View.create(
+          Name.create("java.sql/client/rows_affected"),
+          "The distribution of the number of rows affected per call",
+          MEASURE_ROWS_AFFECTED,
+          ROWS_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_METHOD));
+
+  static final View SQL_CLIENT_BATCH_SIZE_VIEW =
+      View.create(
+          Name.create("java.sql/client/batch_size"),
+          "The distribution of the number of statements per executed batch",
+          MEASURE_BATCH_SIZE,
+          ROWS_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_METHOD));
+
+  static final View SQL_CLIENT_BATCH_THROUGHPUT_VIEW =
+      View.create(
+          Name.create("java.sql/client/batch_throughput"),
+          "The distribution of the number of batched statements executed per second",
+          MEASURE_BATCH_THROUGHPUT,
+          THROUGHPUT_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_METHOD));
+
+  static final View SQL_CLIENT_BATCH_LATENCY_VIEW =
+      View.create(
+          Name.create("java.sql/client/batch_latency"),
+          "The distribution of the latencies of executing batches in milliseconds",
+          MEASURE_BATCH_LATENCY_MS,
+          DEFAULT_MILLISECONDS_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_METHOD, JAVA_SQL_ERROR, JAVA_SQL_STATUS));
+
+  // Reported by the ChattinessDetector, once per unit of work and fingerprint or roundtrip limit.
+  static final View SQL_CLIENT_CHATTY_UNITS_OF_WORK_VIEW =
+      View.create(
+          Name.create("java.sql/client/chatty_units_of_work"),
+          "The number of units of work that repeated a statement or made too many roundtrips",
+          MEASURE_CHATTY_UNITS_OF_WORK,
+          COUNT,
+          Arrays.asList(JAVA_SQL_METHOD, JAVA_SQL_CHATTINESS));
+
+  // The transactions are recorded when they end, by commit, rollback or close, which is their
+  // outcome. A transaction holds its locks for its whole duration, idle time included.
+  static final View SQL_CLIENT_TRANSACTION_LATENCY_VIEW =
+      View.create(
+          Name.create("java.sql/client/transaction_latency"),
+          "The distribution of the durations of transactions in milliseconds",
+          MEASURE_TRANSACTION_LATENCY_MS,
+          DEFAULT_MILLISECONDS_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_TRANSACTION_OUTCOME, JAVA_SQL_STATUS));
+
+  static final View SQL_CLIENT_TRANSACTION_STATEMENTS_VIEW =
+      View.create(
+          Name.create("java.sql/client/transaction_statements"),
+          "The distribution of the number of statements per transaction",
+          MEASURE_TRANSACTION_STATEMENTS,
+          ROWS_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_TRANSACTION_OUTCOME, JAVA_SQL_STATUS));
+
+  static final View SQL_CLIENT_TRANSACTION_IDLE_VIEW =
+      View.create(
+          Name.create("java.sql/client/transaction_idle"),
+          "The distribution of the idle times of transactions in milliseconds",
+          MEASURE_TRANSACTION_IDLE_MS,
+          DEFAULT_MILLISECONDS_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_TRANSACTION_OUTCOME, JAVA_SQL_STATUS));
+
+  // The gauges of the connections are recorded without the tags of the current context, which
+  // would split them into one time series per context.
+  static final View SQL_CLIENT_OPEN_CONNECTIONS_VIEW =
+      View.create(
+          Name.create("java.sql/client/open_connections"),
+          "The number of open connections",
+          MEASURE_OPEN_CONNECTIONS,
+          LAST_VALUE,
+          Collections.<TagKey>emptyList());
+
+  // Recorded by the ConnectionLeakDetector, which tracks the open connections.
+  static final View SQL_CLIENT_CONNECTION_AGE_VIEW =
+      View.create(
+          Name.create("java.sql/client/connection_age"),
+          "The age of the oldest open connection in milliseconds",
+          MEASURE_CONNECTION_AGE_MS,
+          LAST_VALUE,
+          Collections.<TagKey>emptyList());
+
+  static final View SQL_CLIENT_LEAKED_CONNECTIONS_VIEW =
+      View.create(
+          Name.create("java.sql/client/leaked_connections"),
+          "The number of connections checked out for too long or never closed",
+          MEASURE_LEAKED_CONNECTIONS,
+          COUNT,
+          Arrays.asList(JAVA_SQL_LEAK));
+
+  // The gauges of the cursors are recorded by the CursorTrackers, whenever they change.
+  static final View SQL_CLIENT_OPEN_STATEMENTS_VIEW =
+      View.create(
+          Name.create("java.sql/client/open_statements"),
+          "The number of open statements",
+          MEASURE_OPEN_STATEMENTS,
+          LAST_VALUE,
+          Collections.<TagKey>emptyList());
+
+  static final View SQL_CLIENT_OPEN_RESULT_SETS_VIEW =
+      View.create(
+          Name.create("java.sql/client/open_result_sets"),
+          "The number of open result sets",
+          MEASURE_OPEN_RESULT_SETS,
+          LAST_VALUE,
+          Collections.<TagKey>emptyList());
+
+  // Recorded by the StatementLeakDetector.
+  static final View SQL_CLIENT_LEAKED_STATEMENTS_VIEW =
+      View.create(
+          Name.create("java.sql/client/leaked_statements"),
+          "The number of statements and result sets garbage collected without being closed",
+          MEASURE_LEAKED_STATEMENTS,
+          COUNT,
+          Arrays.asList(JAVA_SQL_RESOURCE));
+
+  // The calls cancelled by Statement.cancel() while they were executing, from another thread,
+  // recorded when they return.
+  static final View SQL_CLIENT_CANCEL_LATENCY_VIEW =
+      View.create(
+          Name.create("java.sql/client/cancel_latency"),
+          "The distribution of the times cancelled calls took to return after being cancelled",
+          MEASURE_CANCEL_LATENCY_MS,
+          DEFAULT_MILLISECONDS_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_METHOD));
+
+  static final View SQL_CLIENT_CANCELLED_CALLS_VIEW =
+      View.create(
+          Name.create("java.sql/client/cancelled_calls"),
+          "The number of calls cancelled while they were executing",
+          MEASURE_CANCEL_LATENCY_MS,
+          COUNT,
+          Arrays.asList(JAVA_SQL_METHOD));
+
+  // The calls that failed with a timeout error, e.g. a SQLTimeoutException thrown because the
+  // query timeout of the statement expired.
+  static final View SQL_CLIENT_TIMEOUT_LATENCY_VIEW =
+      View.create(
+          Name.create("java.sql/client/timeout_latency"),
+          "The distribution of the latencies of the calls that timed out in milliseconds",
+          MEASURE_TIMEOUT_LATENCY_MS,
+          DEFAULT_MILLISECONDS_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_METHOD));
+
+  static final View SQL_CLIENT_TIMEOUTS_VIEW =
+      View.create(
+          Name.create("java.sql/client/timeouts"),
+          "The number of calls that timed out",
+          MEASURE_TIMEOUT_LATENCY_MS,
+          COUNT,
+          Arrays.asList(JAVA_SQL_METHOD));
+
+  // Recorded by the StatementCache of the connections, if they have one. The hits multiplied by the
+  // average prepare latency estimate the time saved by the caches.
+  static final View SQL_CLIENT_STATEMENT_CACHE_VIEW =
+      View.create(
+          Name.create("java.sql/client/statement_cache"),
+          "The number of hits, misses and evictions of the prepared statement caches",
+          MEASURE_STATEMENT_CACHE_EVENTS,
+          COUNT,
+          Arrays.asList(JAVA_SQL_STATEMENT_CACHE));
+
+  static final View SQL_CLIENT_PREPARE_LATENCY_VIEW =
+      View.create(
+          Name.create("java.sql/client/prepare_latency"),
+          "The distribution of the latencies of preparing the statements missing from the caches",
+          MEASURE_PREPARE_LATENCY_MS,
+          DEFAULT_MILLISECONDS_DISTRIBUTION,
+          Collections.<TagKey>emptyList());
+
   public enum TraceOption {
     NONE,
-    ANNOTATE_TRACES_WITH_SQL
+    ANNOTATE_TRACES_WITH_SQL,
+    // Replaces the per-row "java.sql.ResultSet.next" spans with a single
+    // "java.sql.ResultSet.fetch" span covering the whole scan of a ResultSet.
+    AGGREGATE_RESULT_SET_FETCHES,
+    // Only records the metrics of the calls: no span is created and the current context is left
+    // untouched.
+    METRICS_ONLY
   }
 
   static boolean shouldAnnotateSpansWithSQL(EnumSet<TraceOption> opts) {
@@ -139,40 +524,170 @@ public final class Observability {
     return false;
   }
 
+  static boolean shouldAggregateResultSetFetches(EnumSet<TraceOption> opts) {
+    return opts.contains(TraceOption.AGGREGATE_RESULT_SET_FETCHES);
+  }
+
   // TrackingOperation records both the metric latency in milliseconds, and the span created by
   // tracing the calling function.
   static final class TrackingOperation {
-    private final Span span;
+    // Shared by the calls that are passed through without being recorded. It is created closed,
+    // so that all its methods do nothing.
+    static final TrackingOperation NOOP = new TrackingOperation();
+
+    private static final AtomicLongFieldUpdater<TrackingOperation> cancelTimeNsUpdater =
+        AtomicLongFieldUpdater.newUpdater(TrackingOperation.class, "cancelTimeNs");
+
+    // Null if the operation only records metrics.
+    @Nullable private final Span span;
     private final long startTimeNs;
     private final String method;
     private boolean closed;
-    private String recordedError;
+    @Nullable private TagValue recordedError;
+    // Whether the latency is also recorded as the latency of acquiring a connection.
+    private boolean connectionAcquire;
+    // The row counts recorded along with the latency, or -1 if there are none.
+    private long rowsRead = -1;
+    private long rowsAffected = -1;
+    // The number of statements of the executed batch, or -1 if this isn't a batch.
+    private int batchSize = -1;
+    // The SQL executed by the operation, or null if it doesn't execute SQL.
+    @Nullable private String sql;
+    // The unit of work the SQL is executed in, if any.
+    @Nullable private UnitOfWork unitOfWork;
+    // The parameters bound to the executed statement, if they are captured.
+    @Nullable private ParameterSlots parameters;
+    // The in-flight operation of the statement executing the operation, which cancel() reads.
+    @Nullable private InFlightOperation inFlight;
+    // The time the operation was cancelled at, possibly by another thread, or 0 if it wasn't.
+    private volatile long cancelTimeNs;
+    // Whether the call failed with a timeout error.
+    private boolean timedOut;
+    // The latency recorded instead of the time since the operation started, or -1 if there is none.
+    private long latencyNs = -1;
 
+    // Aggregates the latency locally, or null to record it with the other stats.
+    @Nullable private final LocalLatencyAggregator localLatencyAggregator;
+    // Records the stats off the calling thread, or null to record them when the operation ends.
+    @Nullable private final AsyncStatsRecorder asyncStatsRecorder;
     private final StatsRecorder statsRecorder;
     private final Tagger tagger;
     private final Tracer tracer;
 
-    TrackingOperation(String method) {
-      this(method, null);
+    // The span of the operation is a child of the given parent, or of the current span if it is
+    // null.
+    TrackingOperation(
+        String method,
+        @Nullable SqlAttributes sqlAttributes,
+        boolean traced,
+        @Nullable Sampler sampler,
+        @Nullable Span parent) {
+      this(
+          method,
+          sqlAttributes,
+          traced,
+          sampler,
+          parent,
+          LocalLatencyAggregator.current(),
+          AsyncStatsRecorder.current(),
+          Observability.statsRecorder,
+          Observability.tagger,
+          Observability.tracer);
     }
 
-    TrackingOperation(String method, @Nullable String sql) {
-      this(method, sql, Observability.statsRecorder, Observability.tagger, Observability.tracer);
+    // VisibleForTesting
+    TrackingOperation(
+        String method,
+        @Nullable String sql,
+        StatsRecorder statsRecorder,
+        Tagger tagger,
+        Tracer tracer) {
+      this(
+          method,
+          sql != null ? new SqlAttributes(sql, TrackingOptions.DEFAULT_MAX_SQL_LENGTH) : null,
+          true,
+          statsRecorder,
+          tagger,
+          tracer);
+    }
+
+    private TrackingOperation() {
+      span = null;
+      startTimeNs = 0;
+      method = "";
+      closed = true;
+      localLatencyAggregator = null;
+      asyncStatsRecorder = null;
+      statsRecorder = Observability.statsRecorder;
+      tagger = Observability.tagger;
+      tracer = Observability.tracer;
     }
 
     // VisibleForTesting
     TrackingOperation(
         String method,
-        @Nullable String sql,
+        @Nullable SqlAttributes sqlAttributes,
+        boolean traced,
+        StatsRecorder statsRecorder,
+        Tagger tagger,
+        Tracer tracer) {
+      this(method, sqlAttributes, traced, null, null, statsRecorder, tagger, tracer);
+    }
+
+    // VisibleForTesting
+    TrackingOperation(
+        String method,
+        @Nullable SqlAttributes sqlAttributes,
+        boolean traced,
+        @Nullable Sampler sampler,
+        @Nullable AsyncStatsRecorder asyncStatsRecorder,
+        StatsRecorder statsRecorder,
+        Tagger tagger,
+        Tracer tracer) {
+      this(
+          method,
+          sqlAttributes,
+          traced,
+          sampler,
+          null,
+          null,
+          asyncStatsRecorder,
+          statsRecorder,
+          tagger,
+          tracer);
+    }
+
+    // VisibleForTesting
+    TrackingOperation(
+        String method,
+        @Nullable SqlAttributes sqlAttributes,
+        boolean traced,
+        @Nullable Sampler sampler,
+        @Nullable Span parent,
+        @Nullable LocalLatencyAggregator localLatencyAggregator,
+        @Nullable AsyncStatsRecorder asyncStatsRecorder,
         StatsRecorder statsRecorder,
         Tagger tagger,
         Tracer tracer) {
       startTimeNs = System.nanoTime();
-      span = tracer.spanBuilder(method).startSpan();
       this.method = method;
-      if (sql != null) {
-        span.putAttribute("sql", AttributeValue.stringAttributeValue(sql));
+      if (traced) {
+        SpanBuilder spanBuilder =
+            parent != null
+                ? tracer.spanBuilderWithExplicitParent(method, parent)
+                : tracer.spanBuilder(method);
+        if (sampler != null) {
+          spanBuilder.setSampler(sampler);
+        }
+        span = spanBuilder.startSpan();
+        if (sqlAttributes != null && isSampled(span)) {
+          sqlAttributes.annotate(span);
+        }
+      } else {
+        span = null;
       }
+      this.localLatencyAggregator = localLatencyAggregator;
+      this.asyncStatsRecorder = asyncStatsRecorder;
       this.statsRecorder = statsRecorder;
       this.tagger = tagger;
       this.tracer = tracer;
@@ -180,6 +695,9 @@ public final class Observability {
 
     @SuppressWarnings("MustBeClosedChecker")
     Scope withSpan() {
+      if (span == null) {
+        return NoopScope.INSTANCE;
+      }
       return tracer.withSpan(span);
     }
 
@@ -187,48 +705,516 @@ public final class Observability {
       if (closed) return;
 
       try {
-        // Finally record the latency of the entire call,
-        // as well as "status": "OK" for non-error calls.
-        TagContextBuilder tagContextBuilder = tagger.currentBuilder();
-        tagContextBuilder.put(JAVA_SQL_METHOD, TagValue.create(this.method));
-
-        if (recordedError == null) {
-          tagContextBuilder.put(JAVA_SQL_STATUS, VALUE_OK);
-        } else {
-          tagContextBuilder.put(JAVA_SQL_ERROR, TagValue.create(recordedError));
-          tagContextBuilder.put(JAVA_SQL_STATUS, VALUE_ERROR);
+        // Finally record the latency of the entire call, as well as "status": "OK" for non-error
+        // calls. Only the current tags are read here, the tags of the call are built when the
+        // stats are recorded, which may happen on the thread of the AsyncStatsRecorder.
+        long endTimeNs = System.nanoTime();
+        long totalTimeNs = latencyNs >= 0 ? latencyNs : endTimeNs - this.startTimeNs;
+        if (inFlight != null) {
+          inFlight.end(this);
+        }
+        long cancelTimeNs = this.cancelTimeNs;
+        if (cancelTimeNs != 0 || timedOut) {
+          // The operation may be cancelled after it returned, before it stopped being in flight.
+          long cancelLatencyNs = cancelTimeNs != 0 ? Math.max(0, endTimeNs - cancelTimeNs) : -1;
+          recordInterruption(cancelLatencyNs, totalTimeNs);
+        }
+        // Every execution began a statement of the transaction, whether its SQL is known or not.
+        TransactionTracker transaction = unitOfWork != null ? unitOfWork.transaction() : null;
+        if (transaction != null) {
+          transaction.endStatement(totalTimeNs);
+        }
+        if (sql != null) {
+          recordExecution(sql, totalTimeNs);
+        }
+        if (parameters != null) {
+          annotateParameters(parameters);
+        }
+        MethodTags methodTags = methodTags(this.method);
+        TagContext current = tagger.getCurrentTagContext();
+        if (localLatencyAggregator != null
+            && isLatencyOnly()
+            && localLatencyAggregator.record(methodTags, current, recordedError, totalTimeNs)) {
+          return;
+        }
+        if (asyncStatsRecorder == null
+            || !asyncStatsRecorder.offer(
+                methodTags,
+                current,
+                recordedError,
+                totalTimeNs,
+                connectionAcquire,
+                rowsRead,
+                rowsAffected,
+                batchSize)) {
+          recordStats(
+              statsRecorder,
+              tagger,
+              methodTags,
+              current,
+              recordedError,
+              totalTimeNs,
+              connectionAcquire,
+              rowsRead,
+              rowsAffected,
+              batchSize);
         }
-
-        long totalTimeNs = System.nanoTime() - this.startTimeNs;
-        double timeSpentMs = ((double) totalTimeNs) / 1e6;
-
-        // Now finally record all the stats the same tags.
-        recordStatWithTags(timeSpentMs, tagContextBuilder.build());
       } finally {
-        span.end();
+        if (span != null) {
+          span.end();
+        }
         closed = true;
       }
     }
 
+    // Records the call as cancelled, returning the given time after being cancelled, and as timed
+    // out, if it is. Both are rare, so they are recorded here rather than with the other stats.
+    private void recordInterruption(long cancelLatencyNs, long totalTimeNs) {
+      MeasureMap measureMap = statsRecorder.newMeasureMap();
+      if (cancelLatencyNs >= 0) {
+        measureMap.put(MEASURE_CANCEL_LATENCY_MS, ((double) cancelLatencyNs) / 1e6);
+      }
+      if (timedOut) {
+        measureMap.put(MEASURE_TIMEOUT_LATENCY_MS, ((double) totalTimeNs) / 1e6);
+      }
+      measureMap.record(
+          tagger.currentBuilder().put(JAVA_SQL_METHOD, methodTags(method).method).build());
+    }
+
+    // Hands the executed SQL to the SlowQueryLog, the QueryStatistics and the ChattinessDetector,
+    // if they are started.
+    private void recordExecution(String sql, long totalTimeNs) {
+      ChattinessDetector chattinessDetector = ChattinessDetector.current();
+      if (chattinessDetector != null && unitOfWork != null) {
+        chattinessDetector.recordExecution(unitOfWork, sql, traceId(), this);
+      }
+      SlowQueryLog slowQueryLog = SlowQueryLog.current();
+      if (slowQueryLog != null) {
+        slowQueryLog.offer(method, sql, totalTimeNs, rowsAffected, recordedError, parameters);
+      }
+      QueryStatistics queryStatistics = QueryStatistics.current();
+      if (queryStatistics != null) {
+        queryStatistics.record(sql, totalTimeNs, rowsAffected, recordedError != null);
+      }
+    }
+
+    // Renders the captured parameters into the "parameters" attribute of the span, if it is
+    // sampled.
+    private void annotateParameters(ParameterSlots parameters) {
+      ParameterCapture parameterCapture = ParameterCapture.current();
+      if (parameterCapture != null && span != null && isSampled(span)) {
+        span.putAttribute(
+            "parameters", AttributeValue.stringAttributeValue(parameterCapture.render(parameters)));
+      }
+    }
+
+    // Whether the span is sampled, i.e. exported. The attributes of the spans that aren't are
+    // dropped, so they aren't built.
+    private static boolean isSampled(Span span) {
+      return span.getContext().getTraceOptions().isSampled();
+    }
+
+    // Returns the trace the operation belongs to, if any.
+    @Nullable
+    private TraceId traceId() {
+      Span traceSpan = span != null ? span : tracer.getCurrentSpan();
+      if (traceSpan == null) {
+        return null;
+      }
+      TraceId traceId = traceSpan.getContext().getTraceId();
+      return traceId.isValid() ? traceId : null;
+    }
+
+    // Whether the latency is the only stat of the operation.
+    private boolean isLatencyOnly() {
+      return !connectionAcquire && rowsRead < 0 && rowsAffected < 0 && batchSize < 0;
+    }
+
+    // Annotates the span with the attributes of the given SQL, if it is sampled. Used by the SQL
+    // executed once, whose attributes aren't kept.
+    void annotateSql(String sql, int maxSqlLength) {
+      if (span != null && !closed && isSampled(span)) {
+        SqlAttributes.annotate(span, sql, maxSqlLength);
+      }
+    }
+
+    void putAttribute(String key, AttributeValue value) {
+      if (span != null && !closed) {
+        span.putAttribute(key, value);
+      }
+    }
+
     // Annotates the underlying span with the description of the exception. The actual ending
-    // will be performed by end.
+    // will be performed by end. Only the classification of the exception is used as a tag, as
+    // its message would create a new time series per distinct message. The exception is
+    // classified once, for both the tag and the status of the span.
     void recordException(Exception e) {
-      recordedError = e.toString();
-      span.setStatus(Status.UNKNOWN.withDescription(recordedError));
+      if (closed) {
+        return;
+      }
+      String category = ErrorClassifier.category(e);
+      recordedError = ErrorClassifier.classify(category, e);
+      timedOut = category.equals(ErrorClassifier.TIMEOUT);
+      if (span != null) {
+        Status status = timedOut ? Status.DEADLINE_EXCEEDED : Status.UNKNOWN;
+        span.setStatus(status.withDescription(e.toString()));
+      }
     }
 
-    private void recordStatWithTags(double value, TagContext tagContext) {
-      statsRecorder.newMeasureMap().put(Observability.MEASURE_LATENCY_MS, value).record(tagContext);
+    // Marks the operation as acquiring a connection, e.g. from a pool.
+    void recordConnectionAcquire() {
+      if (!closed) {
+        connectionAcquire = true;
+      }
+    }
+
+    void recordRowsRead(long rows) {
+      if (!closed) {
+        rowsRead = rows;
+      }
+    }
+
+    // Records the given latency instead of the time between the start and the end of the
+    // operation, for the operations that span calls made by the application in between.
+    void recordLatency(long latencyNs) {
+      if (!closed) {
+        this.latencyNs = latencyNs;
+      }
+    }
+
+    // Marks the operation as executing a statement with the given captured parameters, which are
+    // only rendered if the span is sampled or the execution is slow.
+    void recordParameters(@Nullable ParameterSlots parameters) {
+      if (!closed) {
+        this.parameters = parameters;
+      }
+    }
+
+    // Makes the operation the in-flight operation of the statement executing it until it ends, so
+    // that a call to cancel() from another thread finds it.
+    void recordInFlight(InFlightOperation inFlight) {
+      if (!closed) {
+        this.inFlight = inFlight;
+        inFlight.begin(this);
+      }
+    }
+
+    // Marks the operation as cancelled by the given call to cancel(), which is made by another
+    // thread while the operation executes. The span of the cancellation is linked to the span of
+    // the operation. Only the first cancellation is recorded.
+    void recordCancel(TrackingOperation cancel) {
+      if (!cancelTimeNsUpdater.compareAndSet(this, 0, System.nanoTime())) {
+        return;
+      }
+      cancel.putAttribute("cancelled_method", AttributeValue.stringAttributeValue(method));
+      if (span != null) {
+        span.addAnnotation("Cancelled");
+        if (cancel.span != null) {
+          cancel.span.addLink(
+              Link.fromSpanContext(span.getContext(), Link.Type.PARENT_LINKED_SPAN));
+        }
+      }
+    }
+
+    void recordRowsAffected(long rows) {
+      if (!closed) {
+        rowsAffected = rows;
+      }
+    }
+
+    // Marks the operation as executing the given SQL, if it is known, in the given unit of work.
+    void recordQuery(@Nullable String sql, @Nullable UnitOfWork unitOfWork) {
+      if (!closed) {
+        this.sql = sql;
+        this.unitOfWork = unitOfWork;
+      }
+    }
+
+    // Reports the chattiness of the unit of work the operation executes in, as an annotation of
+    // its span and in the "java.sql/client/chatty_units_of_work" metric.
+    void recordChattiness(
+        TagValue chattiness, String description, Map<String, AttributeValue> attributes) {
+      if (closed) {
+        return;
+      }
+      if (span != null) {
+        span.addAnnotation(description, attributes);
+      }
+      statsRecorder
+          .newMeasureMap()
+          .put(MEASURE_CHATTY_UNITS_OF_WORK, 1)
+          .record(
+              tagger
+                  .currentBuilder()
+                  .put(JAVA_SQL_METHOD, methodTags(method).method)
+                  .put(JAVA_SQL_CHATTINESS, chattiness)
+                  .build());
+    }
+
+    // Marks the operation as executing a batch of the given number of statements.
+    void recordBatch(int size) {
+      if (closed) {
+        return;
+      }
+      batchSize = size;
+      if (span != null) {
+        span.putAttribute("batch_size", AttributeValue.longAttributeValue(size));
+      }
     }
   }
 
-  static TrackingOperation createRoundtripTrackingSpan(String method) {
-    return new TrackingOperation(method);
+  // Records the stats of a call, made in the given context, with the tags of its method and
+  // error. A negative row count or batch size isn't recorded.
+  static void recordStats(
+      StatsRecorder statsRecorder,
+      Tagger tagger,
+      MethodTags methodTags,
+      TagContext current,
+      @Nullable TagValue error,
+      long totalTimeNs,
+      boolean connectionAcquire,
+      long rowsRead,
+      long rowsAffected,
+      int batchSize) {
+    double timeSpentMs = ((double) totalTimeNs) / 1e6;
+
+    // Now finally record all the stats the same tags.
+    MeasureMap measureMap =
+        statsRecorder.newMeasureMap().put(Observability.MEASURE_LATENCY_MS, timeSpentMs);
+    if (connectionAcquire) {
+      measureMap.put(Observability.MEASURE_CONNECTION_ACQUIRE_MS, timeSpentMs);
+    }
+    if (rowsRead >= 0) {
+      measureMap.put(Observability.MEASURE_ROWS_READ, rowsRead);
+    }
+    if (rowsAffected >= 0) {
+      measureMap.put(Observability.MEASURE_ROWS_AFFECTED, rowsAffected);
+    }
+    if (batchSize >= 0) {
+      measureMap
+          .put(Observability.MEASURE_BATCH_SIZE, batchSize)
+          .put(Observability.MEASURE_BATCH_LATENCY_MS, timeSpentMs);
+      if (error == null && totalTimeNs > 0) {
+        measureMap.put(Observability.MEASURE_BATCH_THROUGHPUT, batchSize * 1e9 / totalTimeNs);
+      }
+    }
+    measureMap.record(methodTags.tags(tagger, current, error));
+  }
+
+  // Records the stats of a transaction that ended, successfully or not, with the given outcome.
+  static void recordTransaction(
+      StatsRecorder statsRecorder,
+      Tagger tagger,
+      TagValue outcome,
+      boolean failed,
+      long durationNs,
+      int statements,
+      long idleNs) {
+    statsRecorder
+        .newMeasureMap()
+        .put(MEASURE_TRANSACTION_LATENCY_MS, ((double) durationNs) / 1e6)
+        .put(MEASURE_TRANSACTION_STATEMENTS, statements)
+        .put(MEASURE_TRANSACTION_IDLE_MS, ((double) idleNs) / 1e6)
+        .record(
+            tagger
+                .currentBuilder()
+                .put(JAVA_SQL_TRANSACTION_OUTCOME, outcome)
+                .put(JAVA_SQL_STATUS, failed ? VALUE_ERROR : VALUE_OK)
+                .build());
   }
 
+  // The number of OcWrapConnection instances opened and not closed yet.
+  private static final AtomicLong openConnections = new AtomicLong();
+
+  // Counts a connection opened, or closed if the delta is -1, and records the number of open
+  // connections. Concurrent changes may be recorded out of order, until the next change.
+  static void recordOpenConnections(int delta) {
+    statsRecorder
+        .newMeasureMap()
+        .put(MEASURE_OPEN_CONNECTIONS, openConnections.addAndGet(delta))
+        .record(tagger.empty());
+  }
+
+  // Caches the tags of each method, keyed by the method name. Method names are drawn from a fixed
+  // set of string literals, so the cache is bounded by the number of instrumented methods.
+  private static final ConcurrentHashMap<String, MethodTags> methodTagsCache =
+      new ConcurrentHashMap<String, MethodTags>();
+
+  static MethodTags methodTags(String method) {
+    MethodTags methodTags = methodTagsCache.get(method);
+    if (methodTags == null) {
+      methodTags = new MethodTags(method, tagger);
+      MethodTags previous = methodTagsCache.putIfAbsent(method, methodTags);
+      if (previous != null) {
+        methodTags = previous;
+      }
+    }
+    return methodTags;
+  }
+
+  // MethodTags holds the TagValue of a method and its (method, OK) and (method, ERROR) tag sets,
+  // resolved once so that recording a call only has to merge them with the current tags.
+  static final class MethodTags {
+    private final TagValue method;
+    private final TagContext okTags;
+    private final TagContext errorTags;
+
+    MethodTags(String method, Tagger tagger) {
+      this.method = TagValue.create(method);
+      this.okTags =
+          tagger
+              .emptyBuilder()
+              .put(JAVA_SQL_METHOD, this.method)
+              .put(JAVA_SQL_STATUS, VALUE_OK)
+              .build();
+      this.errorTags =
+          tagger
+              .emptyBuilder()
+              .put(JAVA_SQL_METHOD, this.method)
+              .put(JAVA_SQL_STATUS, VALUE_ERROR)
+              .build();
+    }
+
+    TagContext okTags(Tagger tagger) {
+      return tags(tagger, tagger.getCurrentTagContext(), null);
+    }
+
+    TagContext errorTags(Tagger tagger, TagValue error) {
+      return tags(tagger, tagger.getCurrentTagContext(), error);
+    }
+
+    // Returns the tags of a call made in the given context, which failed with the given error or
+    // succeeded if it is null.
+    TagContext tags(Tagger tagger, TagContext current, @Nullable TagValue error) {
+      if (error == null) {
+        if (isEmpty(current)) {
+          return okTags;
+        }
+        return tagger
+            .toBuilder(current)
+            .put(JAVA_SQL_METHOD, method)
+            .put(JAVA_SQL_STATUS, VALUE_OK)
+            .build();
+      }
+
+      TagContextBuilder tagContextBuilder;
+      if (isEmpty(current)) {
+        tagContextBuilder = tagger.toBuilder(errorTags);
+      } else {
+        tagContextBuilder =
+            tagger
+                .toBuilder(current)
+                .put(JAVA_SQL_METHOD, method)
+                .put(JAVA_SQL_STATUS, VALUE_ERROR);
+      }
+      return tagContextBuilder.put(JAVA_SQL_ERROR, error).build();
+    }
+
+    static boolean isEmpty(TagContext tagContext) {
+      return !InternalUtils.getTags(tagContext).hasNext();
+    }
+  }
+
+  // The Scope of operations without a span, which leaves the current context untouched.
+  private static final class NoopScope implements Scope {
+    static final NoopScope INSTANCE = new NoopScope();
+
+    @Override
+    public void close() {}
+  }
+
+  static TrackingOperation createRoundtripTrackingSpan(TrackingOptions options, String method) {
+    return createRoundtripTrackingSpan(options, method, (SqlAttributes) null);
+  }
+
+  static TrackingOperation createRoundtripTrackingSpan(
+      TrackingOptions options, String method, String sql) {
+    Mode mode = options.mode(method);
+    if (mode == Mode.PASSTHROUGH) {
+      return TrackingOperation.NOOP;
+    }
+    TrackingOperation trackingOperation =
+        new TrackingOperation(method, null, mode == Mode.TRACE, options.sampler, null);
+    if (options.annotateSpansWithSQL) {
+      trackingOperation.annotateSql(sql, options.maxSqlLength);
+    }
+    return trackingOperation;
+  }
+
+  // Used by statements whose SQL is known in advance, e.g. prepared statements, so that the "sql"
+  // attributes are built once instead of on every sampled execution.
   static TrackingOperation createRoundtripTrackingSpan(
-      String method, boolean canRecordSQL, String sql) {
-    return new TrackingOperation(method, canRecordSQL ? sql : null);
+      TrackingOptions options, String method, @Nullable SqlAttributes sqlAttributes) {
+    Mode mode = options.mode(method);
+    if (mode == Mode.PASSTHROUGH) {
+      return TrackingOperation.NOOP;
+    }
+    return new TrackingOperation(method, sqlAttributes, mode == Mode.TRACE, options.sampler, null);
+  }
+
+  // Used by the calls that end the transaction of a connection, e.g. commit, whose spans are
+  // children of the span of the transaction if there is one.
+  static TrackingOperation createTransactionTrackingSpan(
+      TrackingOptions options, String method, @Nullable TransactionTracker transaction) {
+    Mode mode = options.mode(method);
+    if (mode == Mode.PASSTHROUGH) {
+      return TrackingOperation.NOOP;
+    }
+    return new TrackingOperation(
+        method,
+        null,
+        mode == Mode.TRACE,
+        options.sampler,
+        transaction != null ? transaction.span() : null);
+  }
+
+  // Used by the executions of SQL, which are recorded with their SQL, in the unit of work and the
+  // transaction of their connection if it is known. The execution starts a transaction if the
+  // connection isn't in auto-commit mode and has none open.
+  static TrackingOperation createQueryTrackingSpan(
+      TrackingOptions options,
+      String method,
+      @Nullable String sql,
+      @Nullable UnitOfWork unitOfWork) {
+    TrackingOperation trackingOperation =
+        createQueryTrackingSpan(options, method, (SqlAttributes) null, sql, unitOfWork);
+    if (options.annotateSpansWithSQL && sql != null) {
+      trackingOperation.annotateSql(sql, options.maxSqlLength);
+    }
+    return trackingOperation;
+  }
+
+  // Used by statements whose SQL is known in advance, see above.
+  static TrackingOperation createQueryTrackingSpan(
+      TrackingOptions options,
+      String method,
+      @Nullable SqlAttributes sqlAttributes,
+      @Nullable String sql,
+      @Nullable UnitOfWork unitOfWork) {
+    Mode mode = options.mode(method);
+    if (mode == Mode.PASSTHROUGH) {
+      return TrackingOperation.NOOP;
+    }
+    boolean traced = mode == Mode.TRACE;
+    TransactionTracker transaction = unitOfWork != null ? unitOfWork.transaction() : null;
+    Span parent =
+        transaction != null ? transaction.beginStatement(traced, options.sampler) : null;
+    TrackingOperation trackingOperation =
+        new TrackingOperation(method, sqlAttributes, traced, options.sampler, parent);
+    trackingOperation.recordQuery(sql, unitOfWork);
+    return trackingOperation;
+  }
+
+  // Returns the total number of rows affected by a batch, skipping the statements whose count is
+  // unknown (Statement.SUCCESS_NO_INFO) or that failed (Statement.EXECUTE_FAILED).
+  static long rowsAffected(int[] updateCounts) {
+    long rows = 0;
+    for (int updateCount : updateCounts) {
+      if (updateCount > 0) {
+        rows += updateCount;
+      }
+    }
+    return rows;
   }
 
   public static void registerAllViews() {
@@ -237,7 +1223,32 @@ public final class Observability {
 
   // VisibleForTesting
   static void registerAllViews(ViewManager viewManager) {
-    for (View v : Arrays.asList(SQL_CLIENT_LATENCY_VIEW, SQL_CLIENT_CALLS_VIEW)) {
+    for (View v :
+        Arrays.asList(
+            SQL_CLIENT_LATENCY_VIEW,
+            SQL_CLIENT_CALLS_VIEW,
+            SQL_CLIENT_CONNECTION_ACQUIRE_VIEW,
+            SQL_CLIENT_ROWS_READ_VIEW,
+            SQL_CLIENT_ROWS_AFFECTED_VIEW,
+            SQL_CLIENT_BATCH_SIZE_VIEW,
+            SQL_CLIENT_BATCH_THROUGHPUT_VIEW,
+            SQL_CLIENT_BATCH_LATENCY_VIEW,
+            SQL_CLIENT_CHATTY_UNITS_OF_WORK_VIEW,
+            SQL_CLIENT_TRANSACTION_LATENCY_VIEW,
+            SQL_CLIENT_TRANSACTION_STATEMENTS_VIEW,
+            SQL_CLIENT_TRANSACTION_IDLE_VIEW,
+            SQL_CLIENT_OPEN_CONNECTIONS_VIEW,
+            SQL_CLIENT_CONNECTION_AGE_VIEW,
+            SQL_CLIENT_LEAKED_CONNECTIONS_VIEW,
+            SQL_CLIENT_OPEN_STATEMENTS_VIEW,
+            SQL_CLIENT_OPEN_RESULT_SETS_VIEW,
+            SQL_CLIENT_LEAKED_STATEMENTS_VIEW,
+            SQL_CLIENT_CANCEL_LATENCY_VIEW,
+            SQL_CLIENT_CANCELLED_CALLS_VIEW,
+            SQL_CLIENT_TIMEOUT_LATENCY_VIEW,
+            SQL_CLIENT_TIMEOUTS_VIEW,
+            SQL_CLIENT_STATEMENT_CACHE_VIEW,
+            SQL_CLIENT_PREPARE_LATENCY_VIEW)) {
       viewManager.registerView(v);
     }
   }
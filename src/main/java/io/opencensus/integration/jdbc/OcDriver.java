@@ -0,0 +1,349 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.common.Scope;
+import io.opencensus.integration.jdbc.Observability.TraceOption;
+import io.opencensus.integration.jdbc.Observability.TrackingOperation;
+import io.opencensus.integration.jdbc.TransactionTracker.InitialAutoCommit;
+import io.opencensus.trace.Sampler;
+import io.opencensus.trace.samplers.Samplers;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * A JDBC driver that instruments the connections of the other drivers, for the URLs prefixed with
+ * "jdbc:opencensus:", e.g. "jdbc:opencensus:postgresql://localhost/db".
+ *
+ * <p>The driver registers itself with the {@link DriverManager}, which loads it through
+ * META-INF/services/java.sql.Driver. Connections are opened by the driver of the URL without the
+ * prefix, found through the {@link DriverManager}, and wrapped in {@link OcWrapConnection}s.
+ *
+ * <p>The instrumentation is configured by the URL parameters and the connection properties whose
+ * names start with "opencensus.jdbc.", which aren't passed on to the underlying driver. The
+ * properties take precedence over the URL parameters. Connecting fails with an {@link
+ * SQLException} if one of them is unknown or has an invalid value:
+ *
+ * <ul>
+ *   <li>{@link #ANNOTATE_SQL_PROPERTY}, {@link #AGGREGATE_FETCHES_PROPERTY} and {@link
+ *       #METRICS_ONLY_PROPERTY} enable the {@link TraceOption}s of the same names.
+ *   <li>{@link #SAMPLING_PROBABILITY_PROPERTY} samples the spans with the given probability.
+ *   <li>{@link #MAX_SQL_LENGTH_PROPERTY} truncates the SQL the spans are annotated with.
+ *   <li>{@link #STATEMENT_CACHE_SIZE_PROPERTY} caches the prepared statements of each connection.
+ *   <li>The properties starting with {@link InstrumentationPolicy#PROPERTY_PREFIX} configure the
+ *       {@link InstrumentationPolicy}.
+ * </ul>
+ *
+ * <p>For example: "jdbc:opencensus:mysql://localhost/db?opencensus.jdbc.annotateSql=true".
+ */
+public final class OcDriver implements Driver {
+  /** The prefix of the URLs accepted by this driver. */
+  public static final String URL_PREFIX = "jdbc:opencensus:";
+
+  /** Annotates the spans with the SQL of the statements: "true" or "false". */
+  public static final String ANNOTATE_SQL_PROPERTY = "opencensus.jdbc.annotateSql";
+
+  /** Records a single span per scan of a ResultSet: "true" or "false". */
+  public static final String AGGREGATE_FETCHES_PROPERTY = "opencensus.jdbc.aggregateFetches";
+
+  /** Only records metrics, without creating spans: "true" or "false". */
+  public static final String METRICS_ONLY_PROPERTY = "opencensus.jdbc.metricsOnly";
+
+  /** The probability of sampling the spans, between 0 and 1. */
+  public static final String SAMPLING_PROBABILITY_PROPERTY = "opencensus.jdbc.samplingProbability";
+
+  /**
+   * The maximum number of characters of the SQL the sampled spans are annotated with, past which
+   * it is truncated: a positive integer, 1024 by default.
+   */
+  public static final String MAX_SQL_LENGTH_PROPERTY = "opencensus.jdbc.maxSqlLength";
+
+  /**
+   * The maximum number of idle prepared statements cached by each connection, which closing a
+   * statement returns to the cache of its connection instead of closing it: a non-negative integer,
+   * 0 by default, which disables the cache.
+   */
+  public static final String STATEMENT_CACHE_SIZE_PROPERTY = "opencensus.jdbc.statementCacheSize";
+
+  private static final String PROPERTY_PREFIX = "opencensus.jdbc.";
+
+  private static final List<String> PROPERTIES =
+      Arrays.asList(
+          ANNOTATE_SQL_PROPERTY,
+          AGGREGATE_FETCHES_PROPERTY,
+          METRICS_ONLY_PROPERTY,
+          SAMPLING_PROBABILITY_PROPERTY,
+          MAX_SQL_LENGTH_PROPERTY,
+          STATEMENT_CACHE_SIZE_PROPERTY);
+
+  // Applications only connect to a handful of URLs, the cache is bounded in case they are built
+  // dynamically.
+  private static final int MAX_CACHED_URLS = 256;
+
+  // The same goes for the connection properties overriding the options of a URL.
+  private static final int MAX_CACHED_OVERRIDES = 16;
+
+  private static final ConcurrentHashMap<String, ParsedUrl> parsedUrls =
+      new ConcurrentHashMap<String, ParsedUrl>();
+
+  static {
+    try {
+      DriverManager.registerDriver(new OcDriver());
+    } catch (SQLException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  // A "jdbc:opencensus:" URL, split into the URL of the underlying driver and the options of the
+  // instrumentation.
+  // VisibleForTesting
+  static final class ParsedUrl {
+    final String delegateUrl;
+    // The "opencensus.jdbc." parameters of the URL.
+    final Properties settings;
+    final TrackingOptions options;
+    // The options of the URL overridden by "opencensus.jdbc." connection properties, by those
+    // properties.
+    private final ConcurrentHashMap<Properties, TrackingOptions> overriddenOptions =
+        new ConcurrentHashMap<Properties, TrackingOptions>();
+
+    private ParsedUrl(String delegateUrl, Properties settings, TrackingOptions options) {
+      this.delegateUrl = delegateUrl;
+      this.settings = settings;
+      this.options = options;
+    }
+
+    // Returns the options of the URL overridden by the given properties, which are cached so that
+    // they are only parsed once too. The properties mustn't be modified afterwards.
+    // VisibleForTesting
+    TrackingOptions options(Properties overrides) throws SQLException {
+      TrackingOptions options = overriddenOptions.get(overrides);
+      if (options == null) {
+        Properties merged = new Properties();
+        merged.putAll(settings);
+        merged.putAll(overrides);
+        options = OcDriver.options(merged);
+        if (overriddenOptions.size() < MAX_CACHED_OVERRIDES) {
+          overriddenOptions.putIfAbsent(overrides, options);
+        }
+      }
+      return options;
+    }
+  }
+
+  public OcDriver() {}
+
+  @Override
+  public boolean acceptsURL(String url) {
+    return url != null && url.startsWith(URL_PREFIX);
+  }
+
+  @Override
+  @Nullable
+  public Connection connect(String url, Properties info) throws SQLException {
+    // Drivers return null for the URLs they don't accept:
+    // https://docs.oracle.com/javase/8/docs/api/java/sql/Driver.html#connect-java.lang.String-java.util.Properties-
+    if (!acceptsURL(url)) {
+      return null;
+    }
+
+    ParsedUrl parsedUrl = parse(url);
+    TrackingOptions options = parsedUrl.options;
+    Properties delegateInfo = info == null ? new Properties() : info;
+    if (info != null && hasSettings(info)) {
+      // The connection properties override the options of the URL.
+      Properties overrides = new Properties();
+      delegateInfo = (Properties) info.clone();
+      for (String name : info.stringPropertyNames()) {
+        if (name.startsWith(PROPERTY_PREFIX)) {
+          overrides.setProperty(name, info.getProperty(name));
+          delegateInfo.remove(name);
+        }
+      }
+      options = parsedUrl.options(overrides);
+    }
+
+    TrackingOperation trackingOperation =
+        Observability.createRoundtripTrackingSpan(options, "java.sql.Driver.connect");
+    trackingOperation.recordConnectionAcquire();
+
+    try (Scope ws = trackingOperation.withSpan()) {
+      return new OcWrapConnection(
+          DriverManager.getConnection(parsedUrl.delegateUrl, delegateInfo),
+          options,
+          InitialAutoCommit.ofDriver());
+    } catch (Exception e) {
+      trackingOperation.recordException(e);
+      throw e;
+    } finally {
+      trackingOperation.end();
+    }
+  }
+
+  @Override
+  public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) throws SQLException {
+    String delegateUrl = parse(url).delegateUrl;
+    return DriverManager.getDriver(delegateUrl).getPropertyInfo(delegateUrl, info);
+  }
+
+  @Override
+  public int getMajorVersion() {
+    return 0;
+  }
+
+  @Override
+  public int getMinorVersion() {
+    return 0;
+  }
+
+  @Override
+  public boolean jdbcCompliant() {
+    // The compliance depends on the underlying driver.
+    return false;
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    // The loggers of the instrumentation, e.g. the one of the ConnectionLeakDetector, are named
+    // after their classes in this package.
+    return Logger.getLogger(OcDriver.class.getPackage().getName());
+  }
+
+  // Returns the parsed URL, which is cached so that the options of a URL are only parsed once.
+  // VisibleForTesting
+  static ParsedUrl parse(String url) throws SQLException {
+    ParsedUrl parsedUrl = parsedUrls.get(url);
+    if (parsedUrl == null) {
+      if (!url.startsWith(URL_PREFIX)) {
+        throw new SQLException("Not an OpenCensus JDBC URL: " + url);
+      }
+      parsedUrl = parseUncached(url);
+      if (parsedUrls.size() < MAX_CACHED_URLS) {
+        parsedUrls.putIfAbsent(url, parsedUrl);
+      }
+    }
+    return parsedUrl;
+  }
+
+  private static ParsedUrl parseUncached(String url) throws SQLException {
+    String delegateUrl = "jdbc:" + url.substring(URL_PREFIX.length());
+    Properties settings = new Properties();
+
+    int queryStart = delegateUrl.indexOf('?');
+    if (queryStart >= 0) {
+      List<String> parameters = new ArrayList<String>();
+      for (String parameter : delegateUrl.substring(queryStart + 1).split("&", -1)) {
+        if (!parameter.startsWith(PROPERTY_PREFIX)) {
+          parameters.add(parameter);
+          continue;
+        }
+        int equals = parameter.indexOf('=');
+        String name = equals < 0 ? parameter : parameter.substring(0, equals);
+        String value = equals < 0 ? "" : decode(parameter.substring(equals + 1));
+        settings.setProperty(name, value);
+      }
+      delegateUrl = delegateUrl.substring(0, queryStart);
+      if (!parameters.isEmpty()) {
+        delegateUrl += "?" + String.join("&", parameters);
+      }
+    }
+    return new ParsedUrl(delegateUrl, settings, options(settings));
+  }
+
+  // VisibleForTesting
+  static TrackingOptions options(Properties settings) throws SQLException {
+    try {
+      for (String name : settings.stringPropertyNames()) {
+        if (!PROPERTIES.contains(name) && !name.startsWith(InstrumentationPolicy.PROPERTY_PREFIX)) {
+          throw new IllegalArgumentException("unknown option " + name);
+        }
+      }
+      EnumSet<TraceOption> opts = EnumSet.noneOf(TraceOption.class);
+      if (booleanSetting(settings, ANNOTATE_SQL_PROPERTY)) {
+        opts.add(TraceOption.ANNOTATE_TRACES_WITH_SQL);
+      }
+      if (booleanSetting(settings, AGGREGATE_FETCHES_PROPERTY)) {
+        opts.add(TraceOption.AGGREGATE_RESULT_SET_FETCHES);
+      }
+      if (booleanSetting(settings, METRICS_ONLY_PROPERTY)) {
+        opts.add(TraceOption.METRICS_ONLY);
+      }
+      String probability = settings.getProperty(SAMPLING_PROBABILITY_PROPERTY);
+      Sampler sampler =
+          probability == null
+              ? null
+              : Samplers.probabilitySampler(Double.parseDouble(probability.trim()));
+      String maxSqlLength = settings.getProperty(MAX_SQL_LENGTH_PROPERTY);
+      String statementCacheSize = settings.getProperty(STATEMENT_CACHE_SIZE_PROPERTY);
+      return TrackingOptions.of(
+          opts,
+          InstrumentationPolicy.fromProperties(settings),
+          sampler,
+          maxSqlLength == null
+              ? TrackingOptions.DEFAULT_MAX_SQL_LENGTH
+              : Integer.parseInt(maxSqlLength.trim()),
+          statementCacheSize == null ? 0 : Integer.parseInt(statementCacheSize.trim()));
+    } catch (IllegalArgumentException e) {
+      throw new SQLException("Invalid OpenCensus JDBC option: " + e.getMessage(), e);
+    }
+  }
+
+  private static boolean booleanSetting(Properties settings, String name) {
+    String value = settings.getProperty(name);
+    if (value == null) {
+      return false;
+    }
+    switch (value.trim().toLowerCase(Locale.ROOT)) {
+      case "true":
+        return true;
+      case "false":
+        return false;
+      default:
+        throw new IllegalArgumentException(name + " must be true or false: " + value);
+    }
+  }
+
+  private static boolean hasSettings(Properties info) {
+    for (String name : info.stringPropertyNames()) {
+      if (name.startsWith(PROPERTY_PREFIX)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String decode(String value) {
+    try {
+      return URLDecoder.decode(value, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
@@ -17,632 +17,308 @@ package io.opencensus.integration.jdbc;
 import io.opencensus.common.Scope;
 import io.opencensus.integration.jdbc.Observability.TraceOption;
 import io.opencensus.integration.jdbc.Observability.TrackingOperation;
+import io.opencensus.integration.jdbc.TransactionTracker.InitialAutoCommit;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.EnumSet;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
 
 /**
  * Wraps and instruments a {@link Connection} instance with tracing and metrics using OpenCensus.
  */
-public class OcWrapConnection implements Connection {
-  private final Connection connection;
-  private final boolean shouldAnnotateSpansWithSQL;
-  private EnumSet<TraceOption> startOptions;
+public class OcWrapConnection extends OcWrapConnectionBase {
+  // The transactions of the connection, also reached by its statements through its unit of work.
+  private final TransactionTracker transaction;
+  // Whether the connection was closed or aborted, so that it is only counted as closed once.
+  private final AtomicBoolean closed = new AtomicBoolean();
+  // The tracking of the connection by the ConnectionLeakDetector started when it was opened, if
+  // any.
+  @Nullable private final ConnectionLeakDetector.Checkout checkout;
+  // The idle prepared statements of the connection, or null if they aren't cached.
+  @Nullable private final StatementCache statementCache;
 
   public OcWrapConnection(Connection connection, EnumSet<TraceOption> opts) {
-    this.connection = connection;
-    this.shouldAnnotateSpansWithSQL = Observability.shouldAnnotateSpansWithSQL(opts);
-    this.startOptions = opts;
+    this(connection, TrackingOptions.of(opts), InitialAutoCommit.ofConnection());
+  }
+
+  public OcWrapConnection(
+      Connection connection, EnumSet<TraceOption> opts, InstrumentationPolicy policy) {
+    this(connection, TrackingOptions.of(opts, policy), InitialAutoCommit.ofConnection());
+  }
+
+  /**
+   * Wraps a connection, caching up to the given number of its idle prepared statements, so that
+   * preparing the same SQL again reuses a statement.
+   *
+   * @throws IllegalArgumentException if the statement cache size is negative.
+   */
+  public OcWrapConnection(
+      Connection connection,
+      EnumSet<TraceOption> opts,
+      InstrumentationPolicy policy,
+      int statementCacheSize) {
+    this(
+        connection,
+        TrackingOptions.of(
+            opts, policy, null, TrackingOptions.DEFAULT_MAX_SQL_LENGTH, statementCacheSize),
+        InitialAutoCommit.ofConnection());
+  }
+
+  OcWrapConnection(
+      Connection connection, TrackingOptions options, InitialAutoCommit initialAutoCommit) {
+    this(connection, options, initialAutoCommit, new CursorTracker());
+  }
+
+  // VisibleForTesting
+  OcWrapConnection(
+      Connection connection,
+      TrackingOptions options,
+      InitialAutoCommit initialAutoCommit,
+      CursorTracker cursors) {
+    this(connection, options, new TransactionTracker(connection, initialAutoCommit), cursors);
+  }
+
+  private OcWrapConnection(
+      Connection connection,
+      TrackingOptions options,
+      TransactionTracker transaction,
+      CursorTracker cursors) {
+    super(connection, options, new UnitOfWork(transaction, cursors));
+    this.transaction = transaction;
+    this.statementCache =
+        options.statementCacheSize > 0 ? new StatementCache(options.statementCacheSize) : null;
+    Observability.recordOpenConnections(1);
+    ConnectionLeakDetector leakDetector = ConnectionLeakDetector.current();
+    this.checkout = leakDetector != null ? leakDetector.track(this) : null;
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql) throws SQLException {
+    return prepareStatement(
+        new StatementCache.Key(
+            sql,
+            StatementCache.UNSPECIFIED,
+            StatementCache.UNSPECIFIED,
+            StatementCache.UNSPECIFIED,
+            StatementCache.UNSPECIFIED,
+            null,
+            null));
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency)
+      throws SQLException {
+    return prepareStatement(
+        new StatementCache.Key(
+            sql,
+            resultSetType,
+            resultSetConcurrency,
+            StatementCache.UNSPECIFIED,
+            StatementCache.UNSPECIFIED,
+            null,
+            null));
   }
 
   @Override
-  public void abort(Executor executor) throws SQLException {
-    // This method directly touches the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#abort-java.util.concurrent.Executor-
-    TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.abort");
-
-    try (Scope ws = trackingOperation.withSpan()) {
-      this.connection.abort(executor);
-    } catch (Exception e) {
-      trackingOperation.recordException(e);
-      throw e;
-    } finally {
-      trackingOperation.end();
+  public PreparedStatement prepareStatement(
+      String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+      throws SQLException {
+    return prepareStatement(
+        new StatementCache.Key(
+            sql,
+            resultSetType,
+            resultSetConcurrency,
+            resultSetHoldability,
+            StatementCache.UNSPECIFIED,
+            null,
+            null));
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+    return prepareStatement(
+        new StatementCache.Key(
+            sql,
+            StatementCache.UNSPECIFIED,
+            StatementCache.UNSPECIFIED,
+            StatementCache.UNSPECIFIED,
+            autoGeneratedKeys,
+            null,
+            null));
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+    return prepareStatement(
+        new StatementCache.Key(
+            sql,
+            StatementCache.UNSPECIFIED,
+            StatementCache.UNSPECIFIED,
+            StatementCache.UNSPECIFIED,
+            StatementCache.UNSPECIFIED,
+            columnIndexes,
+            null));
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+    return prepareStatement(
+        new StatementCache.Key(
+            sql,
+            StatementCache.UNSPECIFIED,
+            StatementCache.UNSPECIFIED,
+            StatementCache.UNSPECIFIED,
+            StatementCache.UNSPECIFIED,
+            null,
+            columnNames));
+  }
+
+  // Prepares the statement of the given key, or takes it from the statement cache if there is one.
+  @Nullable
+  private PreparedStatement prepareStatement(StatementCache.Key key) throws SQLException {
+    if (this.statementCache == null || key.sql == null) {
+      PreparedStatement result = key.prepare(this.connection);
+      return result == null
+          ? null
+          : new OcWrapPreparedStatement(result, key.sql, this.options, this.unitOfWork);
     }
+    PreparedStatement result = this.statementCache.prepare(this.connection, key);
+    return result == null
+        ? null
+        : new OcWrapPreparedStatement(
+            result, key.sql, this.options, this.unitOfWork, this.statementCache, key);
   }
 
   @Override
-  public void clearWarnings() throws SQLException {
-    // This method may directly touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#clearWarnings--
-    TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.clearWarnings");
-
-    try (Scope ws = trackingOperation.withSpan()) {
-      this.connection.clearWarnings();
-    } catch (Exception e) {
-      trackingOperation.recordException(e);
-      throw e;
-    } finally {
-      trackingOperation.end();
-    }
+  public boolean getAutoCommit() throws SQLException {
+    boolean autoCommit = this.connection.getAutoCommit();
+    this.transaction.readAutoCommit(autoCommit);
+    return autoCommit;
   }
 
   @Override
-  public void close() throws SQLException {
-    // This method directly touches the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#close--
+  public void setAutoCommit(boolean autoCommit) throws SQLException {
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.close");
+        Observability.createTransactionTrackingSpan(
+            this.options, "java.sql.Connection.setAutoCommit", this.transaction);
+    boolean failed = false;
 
     try (Scope ws = trackingOperation.withSpan()) {
-      this.connection.close();
+      this.connection.setAutoCommit(autoCommit);
     } catch (Exception e) {
+      failed = true;
       trackingOperation.recordException(e);
       throw e;
     } finally {
       trackingOperation.end();
+      if (failed) {
+        this.transaction.resetAutoCommit();
+      } else {
+        this.transaction.setAutoCommit(autoCommit);
+      }
     }
   }
 
   @Override
   public void commit() throws SQLException {
-    // This method directly touches the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#commit--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.commit");
+        Observability.createTransactionTrackingSpan(
+            this.options, "java.sql.Connection.commit", this.transaction);
+    boolean failed = false;
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.connection.commit();
     } catch (Exception e) {
+      failed = true;
       trackingOperation.recordException(e);
       throw e;
     } finally {
       trackingOperation.end();
-    }
-  }
-
-  @Override
-  public java.sql.Array createArrayOf(String typeName, Object[] elements) throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#createArrayOf-java.lang.String-java.lang.Object:A-
-    return this.connection.createArrayOf(typeName, elements);
-  }
-
-  @Override
-  public java.sql.Blob createBlob() throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#createBlob--
-    return this.connection.createBlob();
-  }
-
-  @Override
-  public java.sql.Clob createClob() throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#createClob--
-    return this.connection.createClob();
-  }
-
-  @Override
-  public java.sql.NClob createNClob() throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#createNClob--
-    return this.connection.createNClob();
-  }
-
-  @Override
-  public java.sql.SQLXML createSQLXML() throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#createSQLXML--
-    return this.connection.createSQLXML();
-  }
-
-  @Override
-  public java.sql.Statement createStatement() throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#createStatement--
-    java.sql.Statement stmt = this.connection.createStatement();
-    return new OcWrapStatement(stmt, this.startOptions);
-  }
-
-  @Override
-  public java.sql.Statement createStatement(int resultSetType, int resultSetConcurrency)
-      throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#createStatement-int-int-
-    java.sql.Statement stmt = this.connection.createStatement(resultSetType, resultSetConcurrency);
-    return new OcWrapStatement(stmt, this.startOptions);
-  }
-
-  @Override
-  public java.sql.Statement createStatement(
-      int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#createStatement-int-int-int-
-    java.sql.Statement stmt =
-        this.connection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
-    return new OcWrapStatement(stmt, this.startOptions);
-  }
-
-  @Override
-  public java.sql.Struct createStruct(String typeName, Object[] attributes) throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#createStruct-java.lang.String-java.lang.Object:A-
-    return this.connection.createStruct(typeName, attributes);
-  }
-
-  @Override
-  public boolean getAutoCommit() throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#getAutoCommit--
-    return this.connection.getAutoCommit();
-  }
-
-  @Override
-  public String getCatalog() throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#getCatalog--
-    return this.connection.getCatalog();
-  }
-
-  @Override
-  public java.util.Properties getClientInfo() throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#getClientInfo--
-    return this.connection.getClientInfo();
-  }
-
-  @Override
-  public String getClientInfo(String name) throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#getClientInfo-java.lang.String-
-    return this.connection.getClientInfo(name);
-  }
-
-  @Override
-  public int getHoldability() throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#getHoldability--
-    return this.connection.getHoldability();
-  }
-
-  @Override
-  public java.sql.DatabaseMetaData getMetaData() throws SQLException {
-    // This method directly touches the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#getMetaData--
-    TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.getMetaData");
-
-    try (Scope ws = trackingOperation.withSpan()) {
-      return this.connection.getMetaData();
-    } catch (Exception e) {
-      trackingOperation.recordException(e);
-      throw e;
-    } finally {
-      trackingOperation.end();
-    }
-  }
-
-  @Override
-  public int getNetworkTimeout() throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#getNetworkTimeout--
-    return this.connection.getNetworkTimeout();
-  }
-
-  @Override
-  public String getSchema() throws SQLException {
-    // This method directly touches the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#getSchema--
-    TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.getSchema");
-
-    try (Scope ws = trackingOperation.withSpan()) {
-      return this.connection.getSchema();
-    } catch (Exception e) {
-      trackingOperation.recordException(e);
-      throw e;
-    } finally {
-      trackingOperation.end();
-    }
-  }
-
-  @Override
-  public int getTransactionIsolation() throws SQLException {
-    // This method directly touches the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#getTransactionIsolation--
-    TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.getTransactionIsolation");
-
-    try (Scope ws = trackingOperation.withSpan()) {
-      return this.connection.getTransactionIsolation();
-    } catch (Exception e) {
-      trackingOperation.recordException(e);
-      throw e;
-    } finally {
-      trackingOperation.end();
-    }
-  }
-
-  @Override
-  public java.util.Map<String, Class<?>> getTypeMap() throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#getTypeMap--
-    return this.connection.getTypeMap();
-  }
-
-  @Override
-  public java.sql.SQLWarning getWarnings() throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#getWarnings--
-    return this.connection.getWarnings();
-  }
-
-  @Override
-  public boolean isClosed() throws SQLException {
-    // This method doesn't touch the database:
-    return this.connection.isClosed();
-  }
-
-  @Override
-  public boolean isReadOnly() throws SQLException {
-    // This method doesn't touch the database:
-    return this.connection.isReadOnly();
-  }
-
-  @Override
-  public boolean isValid(int timeout) throws SQLException {
-    // This method directly touches the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#isValid-int-
-    TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.isValid");
-
-    try (Scope ws = trackingOperation.withSpan()) {
-      return this.connection.isValid(timeout);
-    } catch (Exception e) {
-      trackingOperation.recordException(e);
-      throw e;
-    } finally {
-      trackingOperation.end();
-    }
-  }
-
-  @Override
-  public String nativeSQL(String SQL) throws SQLException {
-    // This method directly touches the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#nativeSQL-java.lang.String-
-    TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan(
-            "java.sql.Connection.nativeSQL", this.shouldAnnotateSpansWithSQL, SQL);
-
-    try (Scope ws = trackingOperation.withSpan()) {
-      return this.connection.nativeSQL(SQL);
-    } catch (Exception e) {
-      trackingOperation.recordException(e);
-      throw e;
-    } finally {
-      trackingOperation.end();
-    }
-  }
-
-  @Override
-  public java.sql.CallableStatement prepareCall(String SQL) throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#prepareCall-java.lang.String-
-    java.sql.CallableStatement cstmt = this.connection.prepareCall(SQL);
-    return new OcWrapCallableStatement(cstmt, this.startOptions);
-  }
-
-  @Override
-  public java.sql.CallableStatement prepareCall(
-      String SQL, int resultSetType, int resultSetConcurrency) throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#prepareCall-java.lang.String-int-int-
-    java.sql.CallableStatement cstmt =
-        this.connection.prepareCall(SQL, resultSetType, resultSetConcurrency);
-    return new OcWrapCallableStatement(cstmt, this.startOptions);
-  }
-
-  @Override
-  public java.sql.CallableStatement prepareCall(
-      String SQL, int resultSetType, int resultSetConcurrency, int resultSetHoldability)
-      throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#prepareCall-java.lang.String-int-int-int-
-    java.sql.CallableStatement cstmt =
-        this.connection.prepareCall(SQL, resultSetType, resultSetConcurrency, resultSetHoldability);
-    return new OcWrapCallableStatement(cstmt, this.startOptions);
-  }
-
-  @Override
-  public java.sql.PreparedStatement prepareStatement(String SQL) throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#prepareStatement-java.lang.String-
-    java.sql.PreparedStatement pstmt = this.connection.prepareStatement(SQL);
-    return new OcWrapPreparedStatement(pstmt, this.startOptions);
-  }
-
-  @Override
-  public java.sql.PreparedStatement prepareStatement(String SQL, int autoGeneratedKeys)
-      throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#prepareStatement-java.lang.String-int-
-    java.sql.PreparedStatement pstmt = this.connection.prepareStatement(SQL, autoGeneratedKeys);
-    return new OcWrapPreparedStatement(pstmt, this.startOptions);
-  }
-
-  @Override
-  public java.sql.PreparedStatement prepareStatement(String SQL, int[] columnIndices)
-      throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#prepareStatement-java.lang.String-int:A-
-    java.sql.PreparedStatement pstmt = this.connection.prepareStatement(SQL, columnIndices);
-    return new OcWrapPreparedStatement(pstmt, this.startOptions);
-  }
-
-  @Override
-  public java.sql.PreparedStatement prepareStatement(String SQL, String[] columnNames)
-      throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#prepareStatement-java.lang.String-java.lang.String:A-
-    java.sql.PreparedStatement pstmt = this.connection.prepareStatement(SQL, columnNames);
-    return new OcWrapPreparedStatement(pstmt, this.startOptions);
-  }
-
-  @Override
-  public java.sql.PreparedStatement prepareStatement(
-      String SQL, int resultSetType, int resultSetConcurrency) throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#prepareStatement-java.lang.String-int-int
-    java.sql.PreparedStatement pstmt =
-        this.connection.prepareStatement(SQL, resultSetType, resultSetConcurrency);
-    return new OcWrapPreparedStatement(pstmt, this.startOptions);
-  }
-
-  @Override
-  public java.sql.PreparedStatement prepareStatement(
-      String SQL, int resultSetType, int resultSetConcurrency, int resultSetHoldability)
-      throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#prepareStatement-java.lang.String-int-int-int-
-    java.sql.PreparedStatement pstmt =
-        this.connection.prepareStatement(
-            SQL, resultSetType, resultSetConcurrency, resultSetHoldability);
-    return new OcWrapPreparedStatement(pstmt, this.startOptions);
-  }
-
-  @Override
-  public void releaseSavepoint(java.sql.Savepoint savepoint) throws SQLException {
-    // This method directly touches the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#releaseSavepoint-java.sql.Savepoint-
-    TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.releaseSavepoint");
-
-    try (Scope ws = trackingOperation.withSpan()) {
-      this.connection.releaseSavepoint(savepoint);
-    } catch (Exception e) {
-      trackingOperation.recordException(e);
-      throw e;
-    } finally {
-      trackingOperation.end();
+      this.transaction.end(Observability.VALUE_COMMIT, failed);
     }
   }
 
   @Override
   public void rollback() throws SQLException {
-    // This method directly touches the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#rollback--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.rollback");
+        Observability.createTransactionTrackingSpan(
+            this.options, "java.sql.Connection.rollback", this.transaction);
+    boolean failed = false;
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.connection.rollback();
     } catch (Exception e) {
+      failed = true;
       trackingOperation.recordException(e);
       throw e;
     } finally {
       trackingOperation.end();
+      this.transaction.end(Observability.VALUE_ROLLBACK, failed);
     }
   }
 
   @Override
-  public void rollback(java.sql.Savepoint savepoint) throws SQLException {
-    // This method directly touches the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#rollback-java.sql.Savepoint-
-    TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.rollback");
-
-    try (Scope ws = trackingOperation.withSpan()) {
-      this.connection.rollback(savepoint);
-    } catch (Exception e) {
-      trackingOperation.recordException(e);
-      throw e;
-    } finally {
-      trackingOperation.end();
-    }
-  }
-
-  @Override
-  public void setAutoCommit(boolean autoCommit) throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#setAutoCommit-boolean-
-    this.connection.setAutoCommit(autoCommit);
-  }
-
-  @Override
-  public void setCatalog(String catalog) throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#setCatalog-java.lang.String-
-    this.connection.setCatalog(catalog);
-  }
-
-  @Override
-  public void setClientInfo(java.util.Properties properties)
-      throws java.sql.SQLClientInfoException {
-    // This method may touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#setClientInfo-java.util.Properties-
-    TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.setClientInfo");
-
-    try (Scope ws = trackingOperation.withSpan()) {
-      this.connection.setClientInfo(properties);
-    } catch (Exception e) {
-      trackingOperation.recordException(e);
-      throw e;
-    } finally {
-      trackingOperation.end();
-    }
-  }
-
-  @Override
-  public void setClientInfo(String name, String value) throws java.sql.SQLClientInfoException {
-    // This method may touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#setClientInfo-java.lang.String-java.lang.String-
-    TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.setClientInfo");
-
-    try (Scope ws = trackingOperation.withSpan()) {
-      this.connection.setClientInfo(name, value);
-    } catch (Exception e) {
-      trackingOperation.recordException(e);
-      throw e;
-    } finally {
-      trackingOperation.end();
-    }
-  }
-
-  @Override
-  public void setHoldability(int holdability) throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#setHoldability-int-
-    this.connection.setHoldability(holdability);
-  }
-
-  @Override
-  public void setNetworkTimeout(java.util.concurrent.Executor executor, int milliseconds)
-      throws SQLException {
-    // This method may touch the database or incur some expenses:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#setNetworkTimeout-java.util.concurrent.Executor-int-
-    TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.setNetowrkTimeout");
-
-    try (Scope ws = trackingOperation.withSpan()) {
-      this.connection.setNetworkTimeout(executor, milliseconds);
-    } catch (Exception e) {
-      trackingOperation.recordException(e);
-      throw e;
-    } finally {
-      trackingOperation.end();
-    }
-  }
-
-  @Override
-  public void setReadOnly(boolean readOnly) throws SQLException {
-    // This method directly touches the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#setReadOnly-boolean-
+  public void close() throws SQLException {
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.setReadOnly");
+        Observability.createRoundtripTrackingSpan(this.options, "java.sql.Connection.close");
 
     try (Scope ws = trackingOperation.withSpan()) {
-      this.connection.setReadOnly(readOnly);
+      this.connection.close();
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
     } finally {
       trackingOperation.end();
+      closeStatementCache();
+      // The connection is returned to its pool, or closed: its unit of work is over, and so is
+      // its transaction, which the pool or the database rolls back.
+      this.unitOfWork.reset();
+      this.transaction.end(Observability.VALUE_CLOSE, false);
+      this.transaction.released();
+      released();
     }
   }
 
   @Override
-  public java.sql.Savepoint setSavepoint() throws SQLException {
-    // This method directly touches the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#setSavepoint--
+  public void abort(Executor executor) throws SQLException {
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.setSavepoint");
+        Observability.createRoundtripTrackingSpan(this.options, "java.sql.Connection.abort");
 
     try (Scope ws = trackingOperation.withSpan()) {
-      return this.connection.setSavepoint();
+      this.connection.abort(executor);
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
     } finally {
       trackingOperation.end();
+      closeStatementCache();
+      this.transaction.end(Observability.VALUE_CLOSE, false);
+      released();
     }
   }
 
-  @Override
-  public java.sql.Savepoint setSavepoint(String name) throws SQLException {
-    // This method directly touches the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#setSavepoint-java.lang.String-
-    TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.setSavepoint");
-
-    try (Scope ws = trackingOperation.withSpan()) {
-      return this.connection.setSavepoint(name);
-    } catch (Exception e) {
-      trackingOperation.recordException(e);
-      throw e;
-    } finally {
-      trackingOperation.end();
+  // Closes the idle statements of the cache, if any, once the connection is closed or aborted, in
+  // case a pool doesn't close them along with the connection it gets back. Closing them before
+  // would make abort() wait for the connection it is meant to give up on.
+  private void closeStatementCache() {
+    if (this.statementCache != null) {
+      this.statementCache.close();
     }
   }
 
-  @Override
-  public void setSchema(String schema) throws SQLException {
-    // This method directly touches the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#setSchema-java.lang.String-
-    TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.setSavepoint");
-
-    try (Scope ws = trackingOperation.withSpan()) {
-      this.connection.setSchema(schema);
-    } catch (Exception e) {
-      trackingOperation.recordException(e);
-      throw e;
-    } finally {
-      trackingOperation.end();
+  // Counts the connection as closed, along with its statements and result sets, the first time it
+  // is closed or aborted.
+  private void released() {
+    if (!this.closed.compareAndSet(false, true)) {
+      return;
     }
-  }
-
-  @Override
-  public void setTransactionIsolation(int level) throws SQLException {
-    // This method directly touches the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#setTransactionIsolation-int-
-    TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.setTransactionIsolation");
-
-    try (Scope ws = trackingOperation.withSpan()) {
-      this.connection.setTransactionIsolation(level);
-    } catch (Exception e) {
-      trackingOperation.recordException(e);
-      throw e;
-    } finally {
-      trackingOperation.end();
+    this.unitOfWork.cursors().closeAll();
+    Observability.recordOpenConnections(-1);
+    if (this.checkout != null) {
+      this.checkout.release();
     }
   }
-
-  @Override
-  public void setTypeMap(java.util.Map<String, Class<?>> map) throws SQLException {
-    // This method doesn't touch the database:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#setTypeMap-java.util.Map-
-    this.connection.setTypeMap(map);
-  }
-
-  @Override
-  public boolean isWrapperFor(Class<?> iface) throws SQLException {
-    // This method doesn't touch the database:
-    // Inherited from:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Wrapper.html#isWrapperFor-java.lang.Class-
-    return this.connection.isWrapperFor(iface);
-  }
-
-  @Override
-  public <T> T unwrap(Class<T> iface) throws SQLException {
-    // This method doesn't touch the database:
-    // Inherited from:
-    // https://docs.oracle.com/javase/8/docs/api/java/sql/Wrapper.html#unwrap-java.lang.Class-
-    return this.connection.unwrap(iface);
-  }
 }
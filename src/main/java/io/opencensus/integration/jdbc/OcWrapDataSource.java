@@ -0,0 +1,167 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.common.Scope;
+import io.opencensus.integration.jdbc.Observability.TraceOption;
+import io.opencensus.integration.jdbc.Observability.TrackingOperation;
+import io.opencensus.integration.jdbc.TransactionTracker.InitialAutoCommit;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.EnumSet;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * Wraps and instruments a {@link DataSource} instance, typically a connection pool, with tracing
+ * and metrics using OpenCensus.
+ *
+ * <p>The connections it hands out are wrapped in {@link OcWrapConnection}s, and the time spent
+ * waiting for them is recorded in the "java.sql/client/connection_acquire" view.
+ */
+public class OcWrapDataSource implements DataSource {
+  private final DataSource dataSource;
+  private final TrackingOptions options;
+  // Whether auto-commit is enabled on the connections of the pool, learned from them. The
+  // connections of other users may come from other pools, and are read from.
+  private final InitialAutoCommit initialAutoCommit = InitialAutoCommit.ofDataSource();
+
+  public OcWrapDataSource(DataSource dataSource) {
+    this(dataSource, EnumSet.noneOf(TraceOption.class));
+  }
+
+  public OcWrapDataSource(DataSource dataSource, EnumSet<TraceOption> opts) {
+    this(dataSource, opts, InstrumentationPolicy.defaults());
+  }
+
+  public OcWrapDataSource(
+      DataSource dataSource, EnumSet<TraceOption> opts, InstrumentationPolicy policy) {
+    this(dataSource, opts, policy, 0);
+  }
+
+  /**
+   * Wraps a data source, whose connections cache up to the given number of their idle prepared
+   * statements each, so that preparing the same SQL again reuses a statement.
+   *
+   * @throws IllegalArgumentException if the statement cache size is negative.
+   */
+  public OcWrapDataSource(
+      DataSource dataSource,
+      EnumSet<TraceOption> opts,
+      InstrumentationPolicy policy,
+      int statementCacheSize) {
+    this.dataSource = dataSource;
+    this.options =
+        TrackingOptions.of(
+            opts, policy, null, TrackingOptions.DEFAULT_MAX_SQL_LENGTH, statementCacheSize);
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    // This method may wait for a connection to be available or directly touch the database:
+    // https://docs.oracle.com/javase/8/docs/api/javax/sql/DataSource.html#getConnection--
+    TrackingOperation trackingOperation =
+        Observability.createRoundtripTrackingSpan(
+            this.options, "javax.sql.DataSource.getConnection");
+    trackingOperation.recordConnectionAcquire();
+
+    try (Scope ws = trackingOperation.withSpan()) {
+      return new OcWrapConnection(
+          this.dataSource.getConnection(), this.options, this.initialAutoCommit);
+    } catch (Exception e) {
+      trackingOperation.recordException(e);
+      throw e;
+    } finally {
+      trackingOperation.end();
+    }
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    // This method may wait for a connection to be available or directly touch the database:
+    // https://docs.oracle.com/javase/8/docs/api/javax/sql/DataSource.html#getConnection-java.lang.String-java.lang.String-
+    TrackingOperation trackingOperation =
+        Observability.createRoundtripTrackingSpan(
+            this.options, "javax.sql.DataSource.getConnection");
+    trackingOperation.recordConnectionAcquire();
+
+    try (Scope ws = trackingOperation.withSpan()) {
+      return new OcWrapConnection(
+          this.dataSource.getConnection(username, password),
+          this.options,
+          InitialAutoCommit.ofConnection());
+    } catch (Exception e) {
+      trackingOperation.recordException(e);
+      throw e;
+    } finally {
+      trackingOperation.end();
+    }
+  }
+
+  @Override
+  public PrintWriter getLogWriter() throws SQLException {
+    // This method doesn't touch the database:
+    // Inherited from:
+    // https://docs.oracle.com/javase/8/docs/api/javax/sql/CommonDataSource.html#getLogWriter--
+    return this.dataSource.getLogWriter();
+  }
+
+  @Override
+  public void setLogWriter(PrintWriter out) throws SQLException {
+    // This method doesn't touch the database:
+    // Inherited from:
+    // https://docs.oracle.com/javase/8/docs/api/javax/sql/CommonDataSource.html#setLogWriter-java.io.PrintWriter-
+    this.dataSource.setLogWriter(out);
+  }
+
+  @Override
+  public void setLoginTimeout(int seconds) throws SQLException {
+    // This method doesn't touch the database:
+    // Inherited from:
+    // https://docs.oracle.com/javase/8/docs/api/javax/sql/CommonDataSource.html#setLoginTimeout-int-
+    this.dataSource.setLoginTimeout(seconds);
+  }
+
+  @Override
+  public int getLoginTimeout() throws SQLException {
+    // This method doesn't touch the database:
+    // Inherited from:
+    // https://docs.oracle.com/javase/8/docs/api/javax/sql/CommonDataSource.html#getLoginTimeout--
+    return this.dataSource.getLoginTimeout();
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    return this.dataSource.getParentLogger();
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    // This method doesn't touch the database:
+    // Inherited from:
+    // https://docs.oracle.com/javase/8/docs/api/java/sql/Wrapper.html#isWrapperFor-java.lang.Class-
+    return this.dataSource.isWrapperFor(iface);
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    // This method doesn't touch the database:
+    // Inherited from:
+    // https://docs.oracle.com/javase/8/docs/api/java/sql/Wrapper.html#unwrap-java.lang.Class-
+    return this.dataSource.unwrap(iface);
+  }
+}
@@ -17,6 +17,7 @@ package io.opencensus.integration.jdbc;
 import io.opencensus.common.Scope;
 import io.opencensus.integration.jdbc.Observability.TraceOption;
 import io.opencensus.integration.jdbc.Observability.TrackingOperation;
+import io.opencensus.integration.jdbc.TransactionTracker.InitialAutoCommit;
 import java.sql.Driver;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
@@ -27,9 +28,19 @@ import java.util.logging.Logger;
 /** Wraps and instruments a {@link Driver} instance with tracing and metrics using OpenCensus. */
 public class OcWrapDriver implements Driver {
   private final Driver driver;
+  private final TrackingOptions options;
 
   public OcWrapDriver(Driver driver) {
+    this(driver, EnumSet.noneOf(TraceOption.class));
+  }
+
+  public OcWrapDriver(Driver driver, EnumSet<TraceOption> opts) {
+    this(driver, opts, InstrumentationPolicy.defaults());
+  }
+
+  public OcWrapDriver(Driver driver, EnumSet<TraceOption> opts, InstrumentationPolicy policy) {
     this.driver = driver;
+    this.options = TrackingOptions.of(opts, policy);
   }
 
   @Override
@@ -40,11 +51,15 @@ public class OcWrapDriver implements Driver {
   @Override
   public java.sql.Connection connect(String url, Properties info) throws SQLException {
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Driver.connect");
+        Observability.createRoundtripTrackingSpan(this.options, "java.sql.Driver.connect");
+    trackingOperation.recordConnectionAcquire();
 
     try (Scope ws = trackingOperation.withSpan()) {
-      return new OcWrapConnection(
-          this.driver.connect(url, info), EnumSet.noneOf(TraceOption.class));
+      java.sql.Connection connection = this.driver.connect(url, info);
+      // Drivers return null for the URLs they don't accept.
+      return connection == null
+          ? null
+          : new OcWrapConnection(connection, this.options, InitialAutoCommit.ofDriver());
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
@@ -0,0 +1,342 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Ref;
+import java.sql.RowId;
+import java.sql.SQLXML;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+
+/**
+ * Captures the values bound to the parameters of prepared statements, and renders them when an
+ * execution is traced by a sampled span, as its "parameters" attribute, or recorded by the {@link
+ * SlowQueryLog}.
+ *
+ * <p>While the capture is started, the setters of the statements prepared from then on only store
+ * a reference to their value in the slot of the parameter, which is reused by the following
+ * executions. Nothing is formatted unless the execution is sampled or slow. The slots of the
+ * values that aren't rendered only hold their type, and those of the long strings and byte arrays
+ * only the start that is rendered, so that the statements, which may be cached, don't keep large
+ * values from being collected.
+ *
+ * <p>Only the types of the values are rendered, e.g. {@code <redacted String>}, unless the values
+ * of a type are rendered verbatim with {@link #setRedaction(Class, Redaction)}, which applies to
+ * its subclasses too: {@code setRedaction(Number.class, Redaction.NONE)} renders the numbers, and
+ * {@code setRedaction(Object.class, Redaction.NONE)} all the values. The value of a stream, a LOB
+ * or another SQL object is never read. Each rendered value is truncated to a maximum number of
+ * UTF-8 bytes, and so are the rendered parameters of an execution. The batches only capture the
+ * parameters of their last statement.
+ *
+ * <p>The capture is started with {@link #start(int, int)}, after which the parameters are captured
+ * until {@link #stop()} is called.
+ */
+public final class ParameterCapture {
+
+  /** The default maximum number of UTF-8 bytes of a rendered value. */
+  public static final int DEFAULT_MAX_VALUE_BYTES = 64;
+
+  /** The default maximum number of UTF-8 bytes of the rendered parameters of an execution. */
+  public static final int DEFAULT_MAX_TOTAL_BYTES = 1024;
+
+  // Appended to the truncated values and parameters.
+  private static final String ELLIPSIS = "...";
+  // Marks the parameters left out of the rendered parameters.
+  private static final String TRUNCATED = ", " + ELLIPSIS;
+  // Leaves room for a few bytes of a quoted value and the ellipsis.
+  private static final int MIN_VALUE_BYTES = 8;
+
+  // The types that are never rendered, because rendering them would read them.
+  private static final Class<?>[] OPAQUE_TYPES = {
+    InputStream.class,
+    Reader.class,
+    Blob.class,
+    Clob.class,
+    SQLXML.class,
+    Array.class,
+    Ref.class,
+    RowId.class
+  };
+
+  // What the slots hold for the values of the opaque types, rendered as their type.
+  private static final Opaque[] OPAQUE_VALUES = opaqueValues();
+  // What the slot values of a type are mapped to when the values are rendered.
+  private static final Object RENDERED = new Object();
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  /** How the values of a type are rendered. */
+  public enum Redaction {
+    /** The value is rendered, e.g. 'alice' or 42. */
+    NONE,
+    /** Only the type of the value is rendered, e.g. <redacted String>. This is the default. */
+    REDACT
+  }
+
+  @Nullable private static volatile ParameterCapture current;
+
+  private final int maxValueBytes;
+  private final int maxTotalBytes;
+  private final ConcurrentHashMap<Class<?>, Redaction> redactions =
+      new ConcurrentHashMap<Class<?>, Redaction>();
+  // What the slots hold for the values of each type: RENDERED if the values are rendered, the type
+  // if they are redacted, or the Opaque of an opaque type. Replaced when a redaction is set.
+  private volatile ConcurrentHashMap<Class<?>, Object> slotValues =
+      new ConcurrentHashMap<Class<?>, Object>();
+
+  // VisibleForTesting
+  ParameterCapture(int maxValueBytes, int maxTotalBytes) {
+    if (maxValueBytes < MIN_VALUE_BYTES) {
+      throw new IllegalArgumentException("Invalid maximum value bytes: " + maxValueBytes);
+    }
+    if (maxTotalBytes < maxValueBytes) {
+      throw new IllegalArgumentException("Invalid maximum total bytes: " + maxTotalBytes);
+    }
+    this.maxValueBytes = maxValueBytes;
+    this.maxTotalBytes = maxTotalBytes;
+  }
+
+  /**
+   * Starts capturing the parameters, truncating each value to {@link #DEFAULT_MAX_VALUE_BYTES}
+   * and the parameters of an execution to {@link #DEFAULT_MAX_TOTAL_BYTES}.
+   *
+   * @return the started capture.
+   */
+  public static ParameterCapture start() {
+    return start(DEFAULT_MAX_VALUE_BYTES, DEFAULT_MAX_TOTAL_BYTES);
+  }
+
+  /**
+   * Starts capturing the parameters of the statements prepared from now on, replacing the capture
+   * started previously if there is one.
+   *
+   * @param maxValueBytes the maximum number of UTF-8 bytes of a rendered value.
+   * @param maxTotalBytes the maximum number of UTF-8 bytes of the rendered parameters of an
+   *     execution.
+   * @return the started capture.
+   * @throws IllegalArgumentException if maxValueBytes is less than 8, or maxTotalBytes is less
+   *     than maxValueBytes.
+   */
+  public static synchronized ParameterCapture start(int maxValueBytes, int maxTotalBytes) {
+    ParameterCapture capture = new ParameterCapture(maxValueBytes, maxTotalBytes);
+    current = capture;
+    return capture;
+  }
+
+  /**
+   * Stops capturing the parameters. The parameters captured before are no longer rendered.
+   */
+  public static synchronized void stop() {
+    current = null;
+  }
+
+  // Returns the capture the parameters are rendered by, if any.
+  @Nullable
+  static ParameterCapture current() {
+    return current;
+  }
+
+  /**
+   * Sets how the values of the given type, and of its subclasses without a redaction of their
+   * own, are rendered. The values of the types without a redaction are redacted.
+   *
+   * @param type the type of the values, e.g. {@code String.class}.
+   * @param redaction how the values are rendered.
+   */
+  public void setRedaction(Class<?> type, Redaction redaction) {
+    redactions.put(type, redaction);
+    slotValues = new ConcurrentHashMap<Class<?>, Object>();
+  }
+
+  // Renders the captured parameters, e.g. [42, 'alice', NULL], truncated to the maximum total
+  // bytes. The parameters that weren't set are rendered as ?.
+  String render(ParameterSlots parameters) {
+    StringBuilder out = new StringBuilder("[");
+    int totalBytes = 2;
+    for (int i = 1; i <= parameters.size(); i++) {
+      String value = renderValue(parameters.get(i));
+      int bytes = utf8Length(value) + (i > 1 ? 2 : 0);
+      // Leaves room for the ellipsis if more parameters follow.
+      int reservedBytes = i < parameters.size() ? TRUNCATED.length() : 0;
+      if (totalBytes + bytes + reservedBytes > maxTotalBytes) {
+        out.append(i > 1 ? TRUNCATED : ELLIPSIS);
+        break;
+      }
+      totalBytes += bytes;
+      if (i > 1) {
+        out.append(", ");
+      }
+      out.append(value);
+    }
+    return out.append(']').toString();
+  }
+
+  // Whether the values of the given type are rendered verbatim.
+  boolean renders(Class<?> type) {
+    return redaction(type) == Redaction.NONE;
+  }
+
+  // Returns what the slot of a parameter holds for the given value: the value if it is rendered,
+  // cut to the start that is rendered if it is a long string or byte array, its type if it is
+  // redacted, or the Opaque of its type if it is never rendered.
+  Object slotValue(Object value) {
+    Class<?> type = value.getClass();
+    ConcurrentHashMap<Class<?>, Object> slotValues = this.slotValues;
+    Object slotValue = slotValues.get(type);
+    if (slotValue == null) {
+      slotValue = opaqueValue(value);
+      if (slotValue == null) {
+        slotValue = renders(type) ? RENDERED : type;
+      }
+      slotValues.put(type, slotValue);
+    }
+    if (slotValue != RENDERED) {
+      return slotValue;
+    }
+    // Enough characters or bytes to render as many bytes as the value may take, and the ellipsis.
+    if (value instanceof String && ((String) value).length() > maxValueBytes) {
+      return ((String) value).substring(0, maxValueBytes);
+    }
+    if (value instanceof byte[] && ((byte[]) value).length > maxValueBytes) {
+      return Arrays.copyOf((byte[]) value, maxValueBytes);
+    }
+    return value;
+  }
+
+  // VisibleForTesting
+  String renderValue(@Nullable Object value) {
+    if (value == null) {
+      return "?";
+    }
+    if (value == ParameterSlots.NULL) {
+      return "NULL";
+    }
+    if (value instanceof Class) {
+      // The type of a value that was redacted when it was set.
+      return "<redacted " + ((Class<?>) value).getSimpleName() + ">";
+    }
+    Opaque opaque = value instanceof Opaque ? (Opaque) value : opaqueValue(value);
+    if (opaque != null) {
+      return opaque.rendered;
+    }
+    Class<?> type = value.getClass();
+    if (redaction(type) == Redaction.REDACT) {
+      return "<redacted " + type.getSimpleName() + ">";
+    }
+    if (value instanceof byte[]) {
+      return hex((byte[]) value);
+    }
+    if (value instanceof String || value instanceof Character) {
+      return "'" + truncate(value.toString(), maxValueBytes - 2) + "'";
+    }
+    return truncate(String.valueOf(value), maxValueBytes);
+  }
+
+  // Returns the Opaque of the type of the given value, if it is opaque.
+  @Nullable
+  private static Opaque opaqueValue(Object value) {
+    for (int i = 0; i < OPAQUE_TYPES.length; i++) {
+      if (OPAQUE_TYPES[i].isInstance(value)) {
+        return OPAQUE_VALUES[i];
+      }
+    }
+    return null;
+  }
+
+  private static Opaque[] opaqueValues() {
+    Opaque[] values = new Opaque[OPAQUE_TYPES.length];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = new Opaque("<" + OPAQUE_TYPES[i].getSimpleName() + ">");
+    }
+    return values;
+  }
+
+  // Returns the redaction of the closest superclass of the given type that has one.
+  private Redaction redaction(Class<?> type) {
+    if (redactions.isEmpty()) {
+      return Redaction.REDACT;
+    }
+    for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+      Redaction redaction = redactions.get(c);
+      if (redaction != null) {
+        return redaction;
+      }
+    }
+    return Redaction.REDACT;
+  }
+
+  private String hex(byte[] bytes) {
+    // Two digits per byte after the 0x prefix.
+    int length = bytes.length;
+    if (2 + length * 2 > maxValueBytes) {
+      length = (maxValueBytes - 2 - ELLIPSIS.length()) / 2;
+    }
+    StringBuilder out = new StringBuilder(2 + length * 2 + ELLIPSIS.length()).append("0x");
+    for (int i = 0; i < length; i++) {
+      out.append(HEX_DIGITS[(bytes[i] >> 4) & 0xf]).append(HEX_DIGITS[bytes[i] & 0xf]);
+    }
+    return length < bytes.length ? out.append(ELLIPSIS).toString() : out.toString();
+  }
+
+  // Truncates the given string to the given number of UTF-8 bytes, including the ellipsis that
+  // marks it as truncated, without splitting a character. Only the characters up to the maximum
+  // are measured, however long the string is.
+  private static String truncate(String s, int maxBytes) {
+    int bytes = 0;
+    // The end of the characters that fit along with the ellipsis, once they are known.
+    int end = -1;
+    for (int i = 0; i < s.length(); ) {
+      int codePoint = s.codePointAt(i);
+      bytes += utf8Length(codePoint);
+      if (end < 0 && bytes > maxBytes - ELLIPSIS.length()) {
+        end = i;
+      }
+      if (bytes > maxBytes) {
+        return s.substring(0, end) + ELLIPSIS;
+      }
+      i += Character.charCount(codePoint);
+    }
+    return s;
+  }
+
+  private static int utf8Length(String s) {
+    int bytes = 0;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      // A surrogate pair takes 4 bytes, 2 per surrogate.
+      bytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+    }
+    return bytes;
+  }
+
+  private static int utf8Length(int codePoint) {
+    return codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+  }
+
+  // Stands for the values of an opaque type in the slots.
+  private static final class Opaque {
+    final String rendered;
+
+    Opaque(String rendered) {
+      this.rendered = rendered;
+    }
+  }
+}
@@ -0,0 +1,123 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+/**
+ * The values bound to the parameters of a prepared statement, captured while a {@link
+ * ParameterCapture} is started.
+ *
+ * <p>The setters only store a reference to the value in the slot of its parameter, while the
+ * capture is started. The values that are redacted only store their type, so that the slots never
+ * hold a value they don't render, e.g. a stream or a large string, and the values of the primitive
+ * types are only boxed if they are rendered. The values are rendered by the {@link
+ * ParameterCapture} when an execution is sampled or slow. The slots are reused by the executions of
+ * the statement, and only cleared by clearParameters, like the parameters themselves.
+ */
+final class ParameterSlots {
+  // Stands for the SQL NULL values, told apart from the parameters that weren't set.
+  static final Object NULL = new Object();
+
+  private static final int INITIAL_CAPACITY = 8;
+  // The parameters with a greater index, which the drivers reject, aren't captured.
+  // VisibleForTesting
+  static final int MAX_PARAMETERS = 1 << 16;
+
+  private Object[] values = new Object[INITIAL_CAPACITY];
+  private int size;
+
+  // Captures the value bound to the parameter of the given index, starting at 1. While the capture
+  // is stopped, the parameter is captured as unset, so that an older value isn't rendered if it is
+  // started again.
+  void set(int index, @Nullable Object value) {
+    ParameterCapture capture = ParameterCapture.current();
+    store(index, capture == null ? null : value == null ? NULL : capture.slotValue(value));
+  }
+
+  void set(int index, boolean value) {
+    ParameterCapture capture = ParameterCapture.current();
+    store(index, capture == null ? null : capture.renders(Boolean.class) ? value : Boolean.class);
+  }
+
+  void set(int index, byte value) {
+    ParameterCapture capture = ParameterCapture.current();
+    store(index, capture == null ? null : capture.renders(Byte.class) ? value : Byte.class);
+  }
+
+  void set(int index, short value) {
+    ParameterCapture capture = ParameterCapture.current();
+    store(index, capture == null ? null : capture.renders(Short.class) ? value : Short.class);
+  }
+
+  void set(int index, int value) {
+    ParameterCapture capture = ParameterCapture.current();
+    store(index, capture == null ? null : capture.renders(Integer.class) ? value : Integer.class);
+  }
+
+  void set(int index, long value) {
+    ParameterCapture capture = ParameterCapture.current();
+    store(index, capture == null ? null : capture.renders(Long.class) ? value : Long.class);
+  }
+
+  void set(int index, float value) {
+    ParameterCapture capture = ParameterCapture.current();
+    store(index, capture == null ? null : capture.renders(Float.class) ? value : Float.class);
+  }
+
+  void set(int index, double value) {
+    ParameterCapture capture = ParameterCapture.current();
+    store(index, capture == null ? null : capture.renders(Double.class) ? value : Double.class);
+  }
+
+  // Stores the captured value of a parameter, NULL for a SQL NULL, the type of a redacted value,
+  // see ParameterCapture.slotValue, or null if the parameter is unset.
+  private void store(int index, @Nullable Object value) {
+    if (index < 1 || index > MAX_PARAMETERS) {
+      return;
+    }
+    if (value == null) {
+      if (index <= size) {
+        values[index - 1] = null;
+      }
+      return;
+    }
+    if (index > values.length) {
+      values = Arrays.copyOf(values, Math.max(index, values.length * 2));
+    }
+    values[index - 1] = value;
+    if (index > size) {
+      size = index;
+    }
+  }
+
+  void clear() {
+    Arrays.fill(values, 0, size, null);
+    size = 0;
+  }
+
+  // Returns the greatest index of the parameters set.
+  int size() {
+    return size;
+  }
+
+  // Returns the value of the parameter of the given index, NULL for a SQL NULL, the type of a
+  // redacted value, or null if the parameter wasn't set.
+  @Nullable
+  Object get(int index) {
+    return index >= 1 && index <= size ? values[index - 1] : null;
+  }
+}
@@ -0,0 +1,492 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+
+/**
+ * Keeps statistics of the executed statements per {@link SqlFingerprint}, like the
+ * pg_stat_statements extension of PostgreSQL but on the client: number of calls, total, mean and
+ * maximum latency, rows affected and read, errors and a latency histogram.
+ *
+ * <p>Only the most executed fingerprints are kept, using a sampled variant of the Space-Saving
+ * algorithm: once the table is full, a new fingerprint replaces the one with the fewest calls among
+ * a few sampled ones, and inherits its number of calls as the error of its own estimate. The
+ * fingerprints executed much more often than 1 / capacity of the time stay in the table, however
+ * many distinct statements are executed, as they are only replaced if all the other sampled
+ * fingerprints were executed even more often.
+ *
+ * <p>Recording the execution of a fingerprint in the table only updates its counters. Inserting a
+ * new fingerprint takes no lock and costs a constant number of steps, whatever the capacity, so
+ * that a workload of mostly distinct statements doesn't serialize the executing threads. The calls
+ * recorded by a thread that looked up a fingerprint just before it was replaced are added to the
+ * error of its replacement, rather than lost.
+ *
+ * <p>The statistics are kept from {@link #start(int)} until {@link #stop()}, and read with {@link
+ * #snapshot()}.
+ */
+public final class QueryStatistics {
+
+  /** The default number of fingerprints the table holds. */
+  public static final int DEFAULT_CAPACITY = 500;
+
+  // The upper bounds of the buckets of the latency histograms, in milliseconds. The last bucket
+  // holds the latencies of 10s and more.
+  private static final long[] HISTOGRAM_BOUNDS_MS = {
+    1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000
+  };
+
+  private static final long[] HISTOGRAM_BOUNDS_NS = new long[HISTOGRAM_BOUNDS_MS.length];
+
+  static {
+    for (int i = 0; i < HISTOGRAM_BOUNDS_MS.length; i++) {
+      HISTOGRAM_BOUNDS_NS[i] = TimeUnit.MILLISECONDS.toNanos(HISTOGRAM_BOUNDS_MS[i]);
+    }
+  }
+
+  // The number of fingerprints sampled to choose the one a new fingerprint replaces.
+  private static final int SAMPLES = 8;
+
+  // Orders the statistics by decreasing total latency.
+  private static final Comparator<QueryStats> BY_TOTAL_TIME =
+      new Comparator<QueryStats>() {
+        @Override
+        public int compare(QueryStats a, QueryStats b) {
+          return Long.compare(b.totalTimeNs, a.totalTimeNs);
+        }
+      };
+
+  @Nullable private static volatile QueryStatistics current;
+
+  private final int capacity;
+  // Replaced as a whole by reset().
+  private volatile Table table;
+
+  // VisibleForTesting
+  QueryStatistics(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Invalid capacity: " + capacity);
+    }
+    this.capacity = capacity;
+    this.table = new Table(capacity);
+  }
+
+  /**
+   * Starts keeping the statistics of the {@link #DEFAULT_CAPACITY} most executed fingerprints.
+   *
+   * @return the started table.
+   */
+  public static QueryStatistics start() {
+    return start(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Starts keeping the statistics of the most executed fingerprints, replacing the table started
+   * previously if there is one.
+   *
+   * @param capacity the number of fingerprints the table holds.
+   * @return the started table.
+   * @throws IllegalArgumentException if the capacity isn't positive.
+   */
+  public static synchronized QueryStatistics start(int capacity) {
+    QueryStatistics queryStatistics = new QueryStatistics(capacity);
+    current = queryStatistics;
+    return queryStatistics;
+  }
+
+  /**
+   * Stops keeping the statistics of the executions. The table started by {@link #start(int)}
+   * keeps the statistics it holds.
+   */
+  public static synchronized void stop() {
+    current = null;
+  }
+
+  // Returns the table the executions are recorded in, if any.
+  @Nullable
+  static QueryStatistics current() {
+    return current;
+  }
+
+  /**
+   * Returns the statistics of the fingerprints in the table, by decreasing total latency.
+   *
+   * @return the statistics of the fingerprints in the table.
+   */
+  public List<QueryStats> snapshot() {
+    Table table = this.table;
+    List<QueryStats> result = new ArrayList<QueryStats>(table.entries.size());
+    for (Entry entry : table.entries.values()) {
+      result.add(entry.snapshot());
+    }
+    Collections.sort(result, BY_TOTAL_TIME);
+    return result;
+  }
+
+  /** Removes all the fingerprints from the table. */
+  public void reset() {
+    table = new Table(capacity);
+  }
+
+  /**
+   * Returns the number of fingerprints the table holds.
+   *
+   * @return the number of fingerprints the table holds.
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Returns the upper bounds of the buckets of {@link QueryStats#getHistogram()} in milliseconds,
+   * the last bucket holding the latencies above the last bound.
+   *
+   * @return the upper bounds of the buckets of the latency histograms.
+   */
+  public static long[] getHistogramBoundsMillis() {
+    return HISTOGRAM_BOUNDS_MS.clone();
+  }
+
+  // Records an execution of the given SQL. The rows affected are negative if they aren't known.
+  void record(String sql, long durationNs, long rowsAffected, boolean failed) {
+    Table table = this.table;
+    SqlFingerprint fingerprint = SqlFingerprint.of(sql);
+    Entry entry = table.entries.get(fingerprint);
+    if (entry == null) {
+      entry = insert(table, fingerprint);
+    }
+    entry.record(durationNs, rowsAffected, failed);
+  }
+
+  // Records the rows read from the result set of an execution of the given SQL, once it is
+  // exhausted or closed, unless its fingerprint left the table since.
+  void recordRowsRead(String sql, long rowsRead) {
+    Entry entry = table.entries.get(SqlFingerprint.of(sql));
+    if (entry != null) {
+      entry.rowsRead.add(rowsRead);
+    }
+  }
+
+  // Adds the fingerprint to the table, in a free slot, or replacing the sampled fingerprint with
+  // the fewest calls if the table is full.
+  private Entry insert(Table table, SqlFingerprint fingerprint) {
+    while (true) {
+      int used = table.used.get();
+      Entry entry = new Entry(fingerprint);
+      if (used < capacity) {
+        if (!table.used.compareAndSet(used, used + 1)) {
+          continue;
+        }
+        table.slots.set(used, entry);
+      } else {
+        int slot = sampleVictim(table);
+        Entry victim = slot >= 0 ? table.slots.get(slot) : null;
+        if (victim == null || !table.slots.compareAndSet(slot, victim, entry)) {
+          // The slot was replaced concurrently, or the sampled slots are still being filled.
+          continue;
+        }
+        // The calls recorded by the victim from now on go to the error of its replacement, so
+        // that none is lost whichever of the two they are recorded in.
+        victim.successor = entry;
+        entry.inheritedCalls.addAndGet(victim.estimatedCalls());
+        table.entries.remove(victim.fingerprint, victim);
+      }
+      // If another thread inserted the same fingerprint concurrently, the calls the entry
+      // inherited go to that one, and the entry is left in its slot without calls, to be
+      // replaced first.
+      Entry previous = table.entries.putIfAbsent(fingerprint, entry);
+      if (previous != null) {
+        previous.inheritedCalls.addAndGet(entry.inheritedCalls.getAndSet(0));
+        return previous;
+      }
+      // Replaced in its slot before it was added, so that the replacing thread had nothing to
+      // remove: it is removed here, as no slot holds it anymore.
+      if (entry.successor != null) {
+        table.entries.remove(fingerprint, entry);
+      }
+      return entry;
+    }
+  }
+
+  // Returns the slot of the entry with the fewest calls among SAMPLES random slots, or among all
+  // the slots if there aren't more, or -1 if the sampled slots are still being filled.
+  private int sampleVictim(Table table) {
+    boolean all = capacity <= SAMPLES;
+    int samples = all ? capacity : SAMPLES;
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int victim = -1;
+    long minCalls = Long.MAX_VALUE;
+    for (int i = 0; i < samples; i++) {
+      int slot = all ? i : random.nextInt(capacity);
+      Entry entry = table.slots.get(slot);
+      if (entry != null) {
+        long calls = entry.estimatedCalls();
+        if (calls < minCalls) {
+          victim = slot;
+          minCalls = calls;
+        }
+      }
+    }
+    return victim;
+  }
+
+  // The fingerprints in the table, indexed by fingerprint for the executions and by slot for the
+  // sampling.
+  private static final class Table {
+    final ConcurrentHashMap<SqlFingerprint, Entry> entries;
+    final AtomicReferenceArray<Entry> slots;
+    // The number of slots filled or being filled, up to the capacity.
+    final AtomicInteger used = new AtomicInteger();
+
+    Table(int capacity) {
+      this.entries = new ConcurrentHashMap<SqlFingerprint, Entry>(capacity * 2);
+      this.slots = new AtomicReferenceArray<Entry>(capacity);
+    }
+  }
+
+  // The statistics of a fingerprint, updated concurrently by the executing threads.
+  private static final class Entry {
+    final SqlFingerprint fingerprint;
+    // The calls of the replaced fingerprint, which bound the error of the estimated calls.
+    final AtomicLong inheritedCalls = new AtomicLong();
+    final LongAdder calls = new LongAdder();
+    final LongAdder totalTimeNs = new LongAdder();
+    final AtomicLong maxTimeNs = new AtomicLong();
+    final LongAdder rowsAffected = new LongAdder();
+    final LongAdder rowsRead = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BOUNDS_NS.length + 1);
+    // The entry that replaced this one in the table, if any.
+    @Nullable volatile Entry successor;
+
+    Entry(SqlFingerprint fingerprint) {
+      this.fingerprint = fingerprint;
+    }
+
+    void record(long durationNs, long rowsAffected, boolean failed) {
+      calls.increment();
+      // Read after the increment, which the replacing thread reads after setting it.
+      Entry successor = this.successor;
+      if (successor != null) {
+        successor.inheritedCalls.incrementAndGet();
+      }
+      totalTimeNs.add(durationNs);
+      long max = maxTimeNs.get();
+      while (durationNs > max && !maxTimeNs.compareAndSet(max, durationNs)) {
+        max = maxTimeNs.get();
+      }
+      if (rowsAffected > 0) {
+        this.rowsAffected.add(rowsAffected);
+      }
+      if (failed) {
+        errors.increment();
+      }
+      int bucket = Arrays.binarySearch(HISTOGRAM_BOUNDS_NS, durationNs);
+      histogram.incrementAndGet(bucket >= 0 ? bucket + 1 : -bucket - 1);
+    }
+
+    long estimatedCalls() {
+      return inheritedCalls.get() + calls.sum();
+    }
+
+    QueryStats snapshot() {
+      long[] counts = new long[histogram.length()];
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = histogram.get(i);
+      }
+      return new QueryStats(
+          fingerprint,
+          calls.sum(),
+          inheritedCalls.get(),
+          totalTimeNs.sum(),
+          maxTimeNs.get(),
+          rowsAffected.sum(),
+          rowsRead.sum(),
+          errors.sum(),
+          counts);
+    }
+  }
+
+  /** The statistics of the executions of a fingerprint, at the time of a snapshot. */
+  public static final class QueryStats {
+    private final SqlFingerprint fingerprint;
+    private final long calls;
+    private final long callsError;
+    private final long totalTimeNs;
+    private final long maxTimeNs;
+    private final long rowsAffected;
+    private final long rowsRead;
+    private final long errors;
+    private final long[] histogram;
+
+    private QueryStats(
+        SqlFingerprint fingerprint,
+        long calls,
+        long callsError,
+        long totalTimeNs,
+        long maxTimeNs,
+        long rowsAffected,
+        long rowsRead,
+        long errors,
+        long[] histogram) {
+      this.fingerprint = fingerprint;
+      this.calls = calls;
+      this.callsError = callsError;
+      this.totalTimeNs = totalTimeNs;
+      this.maxTimeNs = maxTimeNs;
+      this.rowsAffected = rowsAffected;
+      this.rowsRead = rowsRead;
+      this.errors = errors;
+      this.histogram = histogram;
+    }
+
+    /**
+     * Returns the fingerprint of the executed statements.
+     *
+     * @return the fingerprint of the executed statements.
+     */
+    public SqlFingerprint getFingerprint() {
+      return fingerprint;
+    }
+
+    /**
+     * Returns the number of executions since the fingerprint entered the table, which the other
+     * statistics cover.
+     *
+     * @return the number of executions since the fingerprint entered the table.
+     */
+    public long getCalls() {
+      return calls;
+    }
+
+    /**
+     * Returns the estimated number of executions since the table was started, which exceeds the
+     * actual number by at most {@link #getCallsError()}.
+     *
+     * @return the estimated number of executions.
+     */
+    public long getEstimatedCalls() {
+      return callsError + calls;
+    }
+
+    /**
+     * Returns the maximum error of {@link #getEstimatedCalls()}: the calls of the fingerprint this
+     * one replaced in the table.
+     *
+     * @return the maximum error of the estimated number of executions.
+     */
+    public long getCallsError() {
+      return callsError;
+    }
+
+    /**
+     * Returns the total latency of the executions in nanoseconds.
+     *
+     * @return the total latency of the executions in nanoseconds.
+     */
+    public long getTotalTimeNanos() {
+      return totalTimeNs;
+    }
+
+    /**
+     * Returns the mean latency of the executions in nanoseconds.
+     *
+     * @return the mean latency of the executions in nanoseconds.
+     */
+    public double getMeanTimeNanos() {
+      return calls == 0 ? 0 : (double) totalTimeNs / calls;
+    }
+
+    /**
+     * Returns the maximum latency of the executions in nanoseconds.
+     *
+     * @return the maximum latency of the executions in nanoseconds.
+     */
+    public long getMaxTimeNanos() {
+      return maxTimeNs;
+    }
+
+    /**
+     * Returns the total number of rows affected by the executions, i.e. inserted, updated or
+     * deleted.
+     *
+     * @return the total number of rows affected by the executions.
+     */
+    public long getRowsAffected() {
+      return rowsAffected;
+    }
+
+    /**
+     * Returns the total number of rows read from the result sets of the executions, counted when
+     * they are exhausted or closed.
+     *
+     * @return the total number of rows read from the result sets of the executions.
+     */
+    public long getRowsRead() {
+      return rowsRead;
+    }
+
+    /**
+     * Returns the number of failed executions.
+     *
+     * @return the number of failed executions.
+     */
+    public long getErrors() {
+      return errors;
+    }
+
+    /**
+     * Returns the number of executions per latency bucket, whose upper bounds are given by {@link
+     * QueryStatistics#getHistogramBoundsMillis()}.
+     *
+     * @return the number of executions per latency bucket.
+     */
+    public long[] getHistogram() {
+      return histogram.clone();
+    }
+
+    @Override
+    public String toString() {
+      return fingerprint.getHashString()
+          + " calls="
+          + calls
+          + " total="
+          + TimeUnit.NANOSECONDS.toMillis(totalTimeNs)
+          + "ms max="
+          + TimeUnit.NANOSECONDS.toMillis(maxTimeNs)
+          + "ms rowsAffected="
+          + rowsAffected
+          + " rowsRead="
+          + rowsRead
+          + " errors="
+          + errors
+          + ": "
+          + fingerprint.getNormalizedSql();
+    }
+  }
+}
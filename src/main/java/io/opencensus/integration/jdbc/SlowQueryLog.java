@@ -0,0 +1,388 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.tags.TagValue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.annotation.Nullable;
+
+/**
+ * Keeps the most recent executions of SQL that were slower than a threshold, whether or not their
+ * spans were sampled.
+ *
+ * <p>The executions of statements, i.e. the calls to execute, executeQuery, executeUpdate and
+ * executeBatch, that take longer than their threshold are copied to a bounded ring buffer, shared
+ * by all the calling threads without locks, along with their duration, rows affected and thread,
+ * and their parameters if a {@link ParameterCapture} is started.
+ * The threshold is global, or set per {@link SqlFingerprint} with {@link #setThreshold(String,
+ * long, TimeUnit)}. The executions faster than all the thresholds only cost a comparison.
+ *
+ * <p>The log is started with {@link #start(long, TimeUnit, int)}, after which the slow executions
+ * are recorded in it until {@link #stop()} is called, and read with {@link #dump()}.
+ */
+public final class SlowQueryLog {
+
+  /** The default number of slow queries the log holds. */
+  public static final int DEFAULT_CAPACITY = 256;
+
+  // Orders the queries by the order in which they were recorded.
+  private static final Comparator<SlowQuery> BY_SEQUENCE =
+      new Comparator<SlowQuery>() {
+        @Override
+        public int compare(SlowQuery a, SlowQuery b) {
+          return Long.compare(a.sequence, b.sequence);
+        }
+      };
+
+  @Nullable private static volatile SlowQueryLog current;
+
+  private final long thresholdNs;
+  private final ConcurrentHashMap<SqlFingerprint, Long> fingerprintThresholdsNs =
+      new ConcurrentHashMap<SqlFingerprint, Long>();
+  // The smallest of the thresholds, the only one the fast queries are compared to.
+  private volatile long minThresholdNs;
+
+  // The ring buffer. The query recorded in position p is written to the slot p & mask, unless a
+  // query recorded after it already took the slot.
+  private final int mask;
+  private final AtomicReferenceArray<SlowQuery> queries;
+  private final AtomicLong recorded = new AtomicLong();
+
+  // VisibleForTesting
+  SlowQueryLog(long threshold, TimeUnit unit, int capacity) {
+    if (threshold < 0) {
+      throw new IllegalArgumentException("Invalid threshold: " + threshold);
+    }
+    if (capacity <= 0 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException("Invalid capacity: " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    this.thresholdNs = unit.toNanos(threshold);
+    this.minThresholdNs = this.thresholdNs;
+    this.mask = size - 1;
+    this.queries = new AtomicReferenceArray<SlowQuery>(size);
+  }
+
+  /**
+   * Starts recording the executions slower than the given threshold, in a log of {@link
+   * #DEFAULT_CAPACITY} queries.
+   *
+   * @param threshold the duration above which an execution is recorded.
+   * @param unit the unit of the threshold.
+   * @return the started log.
+   */
+  public static SlowQueryLog start(long threshold, TimeUnit unit) {
+    return start(threshold, unit, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Starts recording the executions slower than the given threshold, replacing the log started
+   * previously if there is one.
+   *
+   * @param threshold the duration above which an execution is recorded.
+   * @param unit the unit of the threshold.
+   * @param capacity the number of queries the log holds, rounded up to a power of two.
+   * @return the started log.
+   * @throws IllegalArgumentException if the threshold is negative, or the capacity isn't positive
+   *     or exceeds 2^30.
+   */
+  public static synchronized SlowQueryLog start(long threshold, TimeUnit unit, int capacity) {
+    SlowQueryLog log = new SlowQueryLog(threshold, unit, capacity);
+    current = log;
+    return log;
+  }
+
+  /**
+   * Stops recording the slow executions. The log started by {@link #start(long, TimeUnit, int)}
+   * keeps the queries it holds.
+   */
+  public static synchronized void stop() {
+    current = null;
+  }
+
+  // Returns the log the slow executions are recorded in, if any.
+  @Nullable
+  static SlowQueryLog current() {
+    return current;
+  }
+
+  /**
+   * Sets the threshold of the statements with the same fingerprint as the given SQL, which
+   * replaces the global threshold for them.
+   *
+   * @param sql a statement of the fingerprint.
+   * @param threshold the duration above which an execution of the fingerprint is recorded.
+   * @param unit the unit of the threshold.
+   * @throws IllegalArgumentException if the threshold is negative.
+   */
+  public synchronized void setThreshold(String sql, long threshold, TimeUnit unit) {
+    if (threshold < 0) {
+      throw new IllegalArgumentException("Invalid threshold: " + threshold);
+    }
+    fingerprintThresholdsNs.put(SqlFingerprint.of(sql), unit.toNanos(threshold));
+    updateMinThreshold();
+  }
+
+  /**
+   * Removes the threshold of the statements with the same fingerprint as the given SQL, which then
+   * use the global threshold.
+   *
+   * @param sql a statement of the fingerprint.
+   */
+  public synchronized void removeThreshold(String sql) {
+    fingerprintThresholdsNs.remove(SqlFingerprint.of(sql));
+    updateMinThreshold();
+  }
+
+  /**
+   * Returns the slow queries held by the log, from the oldest to the most recent.
+   *
+   * @return the slow queries held by the log.
+   */
+  public List<SlowQuery> dump() {
+    List<SlowQuery> result = new ArrayList<SlowQuery>(queries.length());
+    for (int i = 0; i < queries.length(); i++) {
+      SlowQuery query = queries.get(i);
+      if (query != null) {
+        result.add(query);
+      }
+    }
+    Collections.sort(result, BY_SEQUENCE);
+    return result;
+  }
+
+  /**
+   * Returns the number of slow queries recorded since the log was started, including those that
+   * were overwritten by more recent ones.
+   *
+   * @return the number of slow queries recorded.
+   */
+  public long getRecordedQueries() {
+    return recorded.get();
+  }
+
+  /**
+   * Returns the number of slow queries the log holds.
+   *
+   * @return the number of slow queries the log holds.
+   */
+  public int getCapacity() {
+    return mask + 1;
+  }
+
+  // Records the execution of the given SQL if it is slower than its threshold, rendering its
+  // captured parameters if any.
+  void offer(
+      String method,
+      String sql,
+      long durationNs,
+      long rowsAffected,
+      @Nullable TagValue error,
+      @Nullable ParameterSlots parameters) {
+    if (durationNs < minThresholdNs) {
+      return;
+    }
+    long thresholdNs = this.thresholdNs;
+    if (!fingerprintThresholdsNs.isEmpty()) {
+      Long fingerprintThresholdNs = fingerprintThresholdsNs.get(SqlFingerprint.of(sql));
+      if (fingerprintThresholdNs != null) {
+        thresholdNs = fingerprintThresholdNs;
+      }
+    }
+    if (durationNs < thresholdNs) {
+      return;
+    }
+
+    ParameterCapture parameterCapture = ParameterCapture.current();
+    String renderedParameters =
+        parameters != null && parameterCapture != null ? parameterCapture.render(parameters) : null;
+    long sequence = recorded.getAndIncrement();
+    SlowQuery query =
+        new SlowQuery(
+            sequence,
+            System.currentTimeMillis(),
+            method,
+            sql,
+            durationNs,
+            rowsAffected,
+            error == null ? null : error.asString(),
+            Thread.currentThread().getName(),
+            renderedParameters);
+    int index = (int) sequence & mask;
+    while (true) {
+      SlowQuery previous = queries.get(index);
+      if (previous != null && previous.sequence > sequence) {
+        // A query recorded a lap later already took the slot.
+        return;
+      }
+      if (queries.compareAndSet(index, previous, query)) {
+        return;
+      }
+    }
+  }
+
+  private void updateMinThreshold() {
+    long min = thresholdNs;
+    for (Long fingerprintThresholdNs : fingerprintThresholdsNs.values()) {
+      min = Math.min(min, fingerprintThresholdNs);
+    }
+    minThresholdNs = min;
+  }
+
+  /** An execution of SQL slower than its threshold. */
+  public static final class SlowQuery {
+    private final long sequence;
+    private final long timestampMillis;
+    private final String method;
+    private final String sql;
+    private final long durationNs;
+    private final long rowsAffected;
+    @Nullable private final String error;
+    private final String threadName;
+    @Nullable private final String parameters;
+
+    private SlowQuery(
+        long sequence,
+        long timestampMillis,
+        String method,
+        String sql,
+        long durationNs,
+        long rowsAffected,
+        @Nullable String error,
+        String threadName,
+        @Nullable String parameters) {
+      this.sequence = sequence;
+      this.timestampMillis = timestampMillis;
+      this.method = method;
+      this.sql = sql;
+      this.durationNs = durationNs;
+      this.rowsAffected = rowsAffected;
+      this.error = error;
+      this.threadName = threadName;
+      this.parameters = parameters;
+    }
+
+    /**
+     * Returns the time at which the execution ended, in milliseconds since the epoch.
+     *
+     * @return the time at which the execution ended.
+     */
+    public long getTimestampMillis() {
+      return timestampMillis;
+    }
+
+    /**
+     * Returns the executing method, e.g. "java.sql.PreparedStatement.executeQuery".
+     *
+     * @return the executing method.
+     */
+    public String getMethod() {
+      return method;
+    }
+
+    /**
+     * Returns the executed SQL. For the batches of a {@link java.sql.Statement}, it is the SQL of
+     * the first statement of the batch.
+     *
+     * @return the executed SQL.
+     */
+    public String getSql() {
+      return sql;
+    }
+
+    /**
+     * Returns the fingerprint of the executed SQL.
+     *
+     * @return the fingerprint of the executed SQL.
+     */
+    public SqlFingerprint getFingerprint() {
+      return SqlFingerprint.of(sql);
+    }
+
+    /**
+     * Returns the duration of the execution in nanoseconds.
+     *
+     * @return the duration of the execution in nanoseconds.
+     */
+    public long getDurationNanos() {
+      return durationNs;
+    }
+
+    /**
+     * Returns the number of rows affected by the execution, or -1 if it isn't known, e.g. for
+     * queries.
+     *
+     * @return the number of rows affected, or -1.
+     */
+    public long getRowsAffected() {
+      return rowsAffected;
+    }
+
+    /**
+     * Returns the classification of the error the execution failed with, or null if it succeeded.
+     *
+     * @return the classification of the error, or null.
+     */
+    @Nullable
+    public String getError() {
+      return error;
+    }
+
+    /**
+     * Returns the name of the thread that executed the SQL.
+     *
+     * @return the name of the executing thread.
+     */
+    public String getThreadName() {
+      return threadName;
+    }
+
+    /**
+     * Returns the parameters bound to the statement, e.g. [42, 'alice', NULL], or null if they
+     * weren't captured.
+     *
+     * @return the parameters bound to the statement, or null.
+     * @see ParameterCapture
+     */
+    @Nullable
+    public String getParameters() {
+      return parameters;
+    }
+
+    @Override
+    public String toString() {
+      return method
+          + " took "
+          + TimeUnit.NANOSECONDS.toMillis(durationNs)
+          + "ms on "
+          + threadName
+          + (rowsAffected >= 0 ? ", " + rowsAffected + " rows" : "")
+          + (error != null ? ", failed with " + error : "")
+          + ": "
+          + sql
+          + (parameters != null ? " " + parameters : "");
+    }
+  }
+}
@@ -0,0 +1,85 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.trace.AttributeValue;
+import io.opencensus.trace.Span;
+import javax.annotation.Nullable;
+
+/**
+ * The attributes the sampled spans of the executions of some SQL are annotated with: "sql", the
+ * SQL truncated to a maximum length, and "sql.fingerprint", the hash of its {@link SqlFingerprint},
+ * which identifies the statement when its SQL is truncated.
+ *
+ * <p>The attributes are only built when a sampled span is annotated, and kept for the following
+ * executions of a prepared statement. Truncating the SQL bounds the memory retained by the spans
+ * waiting to be exported, e.g. for statements with huge IN lists.
+ */
+final class SqlAttributes {
+  static final String SQL_KEY = "sql";
+  static final String FINGERPRINT_KEY = "sql.fingerprint";
+
+  // Appended to the truncated SQL.
+  private static final String ELLIPSIS = "...";
+
+  private final String sql;
+  private final int maxLength;
+  // Built by the first sampled execution. AttributeValues are immutable, so threads racing to
+  // build them may each use their own.
+  @Nullable private AttributeValue sqlAttribute;
+  @Nullable private AttributeValue fingerprintAttribute;
+
+  SqlAttributes(String sql, int maxLength) {
+    this.sql = sql;
+    this.maxLength = maxLength;
+  }
+
+  // Annotates the given span, which must be sampled.
+  void annotate(Span span) {
+    AttributeValue sqlAttribute = this.sqlAttribute;
+    AttributeValue fingerprintAttribute = this.fingerprintAttribute;
+    if (sqlAttribute == null || fingerprintAttribute == null) {
+      sqlAttribute = sqlAttribute(sql, maxLength);
+      fingerprintAttribute = fingerprintAttribute(sql);
+      this.sqlAttribute = sqlAttribute;
+      this.fingerprintAttribute = fingerprintAttribute;
+    }
+    span.putAttribute(SQL_KEY, sqlAttribute);
+    span.putAttribute(FINGERPRINT_KEY, fingerprintAttribute);
+  }
+
+  // Annotates the given span, which must be sampled, with the attributes of SQL executed once.
+  static void annotate(Span span, String sql, int maxLength) {
+    span.putAttribute(SQL_KEY, sqlAttribute(sql, maxLength));
+    span.putAttribute(FINGERPRINT_KEY, fingerprintAttribute(sql));
+  }
+
+  // VisibleForTesting
+  static AttributeValue sqlAttribute(String sql, int maxLength) {
+    if (sql.length() <= maxLength) {
+      return AttributeValue.stringAttributeValue(sql);
+    }
+    int end = maxLength;
+    if (Character.isHighSurrogate(sql.charAt(end - 1))) {
+      // Doesn't split a surrogate pair.
+      end--;
+    }
+    return AttributeValue.stringAttributeValue(sql.substring(0, end) + ELLIPSIS);
+  }
+
+  private static AttributeValue fingerprintAttribute(String sql) {
+    return AttributeValue.stringAttributeValue(SqlFingerprint.of(sql).getHashString());
+  }
+}
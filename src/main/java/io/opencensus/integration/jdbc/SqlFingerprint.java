@@ -0,0 +1,225 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The shape of a SQL statement: the statement with its literals, bind parameters, IN list lengths
+ * and comments stripped, see {@link SqlNormalizer}, and a stable 64-bit hash of it.
+ *
+ * <p>Statements that only differ in their literals share the same fingerprint, so it can be used
+ * to group statements in metrics, logs and traces.
+ *
+ * <p>Fingerprints are cached by the SQL string, so that looking up the fingerprint of a statement
+ * that is executed over and over costs a hash map lookup instead of a pass over the statement.
+ * The cache is bounded to {@link #MAX_CACHED_FINGERPRINTS} entries and evicts the least recently
+ * used quarter of them when it is full, which costs two passes over the cache every {@code
+ * MAX_CACHED_FINGERPRINTS / 4} misses.
+ */
+public final class SqlFingerprint {
+  // VisibleForTesting
+  static final int MAX_CACHED_FINGERPRINTS = 2048;
+
+  // Statements longer than this are fingerprinted on every call instead of being kept alive by the
+  // cache.
+  // VisibleForTesting
+  static final int MAX_CACHED_SQL_LENGTH = 64 * 1024;
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private static final ConcurrentHashMap<String, SqlFingerprint> cache =
+      new ConcurrentHashMap<String, SqlFingerprint>();
+  // Incremented on every cache miss, and used as the clock of the LRU eviction.
+  private static final AtomicLong misses = new AtomicLong();
+  private static final ReentrantLock evictionLock = new ReentrantLock();
+  // The last accesses of the cached fingerprints, collected by the eviction, which holds the lock.
+  // Twice the size of the cache, which other threads may overfill during an eviction.
+  private static final long[] accesses = new long[2 * MAX_CACHED_FINGERPRINTS];
+
+  private final String normalizedSql;
+  private final long hash;
+  // The value of "misses" when this fingerprint was last looked up. Racy updates are fine, this
+  // only orders the evictions.
+  private long lastAccess;
+
+  private SqlFingerprint(String normalizedSql, long hash) {
+    this.normalizedSql = normalizedSql;
+    this.hash = hash;
+  }
+
+  /**
+   * Returns the fingerprint of the given SQL statement.
+   *
+   * @param sql the SQL statement.
+   * @return the fingerprint of the statement.
+   */
+  public static SqlFingerprint of(String sql) {
+    SqlFingerprint fingerprint = cache.get(sql);
+    if (fingerprint != null) {
+      fingerprint.lastAccess = misses.get();
+      return fingerprint;
+    }
+
+    fingerprint = compute(sql);
+    if (sql.length() > MAX_CACHED_SQL_LENGTH) {
+      return fingerprint;
+    }
+    fingerprint.lastAccess = misses.incrementAndGet();
+    if (cache.size() >= MAX_CACHED_FINGERPRINTS) {
+      evict();
+    }
+    SqlFingerprint existing = cache.putIfAbsent(sql, fingerprint);
+    return existing != null ? existing : fingerprint;
+  }
+
+  // VisibleForTesting
+  static SqlFingerprint compute(String sql) {
+    String normalizedSql = SqlNormalizer.normalize(sql);
+    long hash = FNV_OFFSET_BASIS;
+    for (int i = 0; i < normalizedSql.length(); i++) {
+      char c = normalizedSql.charAt(i);
+      hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+      hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+    }
+    return new SqlFingerprint(normalizedSql, hash);
+  }
+
+  // Removes the least recently used quarter of the cache. Only one thread evicts at a time, the
+  // others go ahead and briefly overfill the cache.
+  private static void evict() {
+    if (!evictionLock.tryLock()) {
+      return;
+    }
+    try {
+      int count = 0;
+      for (SqlFingerprint fingerprint : cache.values()) {
+        if (count == accesses.length) {
+          break;
+        }
+        accesses[count++] = fingerprint.lastAccess;
+      }
+      if (count < MAX_CACHED_FINGERPRINTS) {
+        return;
+      }
+      long cutoff = select(accesses, count, count / 4);
+      for (Map.Entry<String, SqlFingerprint> entry : cache.entrySet()) {
+        if (entry.getValue().lastAccess <= cutoff) {
+          cache.remove(entry.getKey(), entry.getValue());
+        }
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  // Returns the k-th smallest of the first n values, which are reordered, in linear time on
+  // average instead of sorting them.
+  // VisibleForTesting
+  static long select(long[] values, int n, int k) {
+    int left = 0;
+    int right = n - 1;
+    while (left < right) {
+      long pivot = values[(left + right) >>> 1];
+      int i = left;
+      int j = right;
+      while (i <= j) {
+        while (values[i] < pivot) {
+          i++;
+        }
+        while (values[j] > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          long value = values[i];
+          values[i++] = values[j];
+          values[j--] = value;
+        }
+      }
+      // The values up to j are at most the pivot, and the values from i at least the pivot.
+      if (k <= j) {
+        right = j;
+      } else if (k >= i) {
+        left = i;
+      } else {
+        return values[k];
+      }
+    }
+    return values[k];
+  }
+
+  // VisibleForTesting
+  static int cachedFingerprints() {
+    return cache.size();
+  }
+
+  /**
+   * Returns the normalized statement, e.g. "select * from users where id in (?+)".
+   *
+   * @return the normalized statement.
+   */
+  public String getNormalizedSql() {
+    return normalizedSql;
+  }
+
+  /**
+   * Returns the 64-bit FNV-1a hash of the normalized statement, which is stable across processes.
+   *
+   * @return the hash of the normalized statement.
+   */
+  public long getHash() {
+    return hash;
+  }
+
+  /**
+   * Returns the hash of the normalized statement as 16 hexadecimal digits.
+   *
+   * @return the hash of the normalized statement in hexadecimal.
+   */
+  public String getHashString() {
+    String hex = Long.toHexString(hash);
+    StringBuilder sb = new StringBuilder(16);
+    for (int i = hex.length(); i < 16; i++) {
+      sb.append('0');
+    }
+    return sb.append(hex).toString();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof SqlFingerprint)) {
+      return false;
+    }
+    SqlFingerprint that = (SqlFingerprint) obj;
+    return hash == that.hash && normalizedSql.equals(that.normalizedSql);
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (hash ^ (hash >>> 32));
+  }
+
+  @Override
+  public String toString() {
+    return getHashString() + " " + normalizedSql;
+  }
+}
@@ -0,0 +1,279 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import java.util.Arrays;
+
+/**
+ * Normalizes SQL statements to their shape in a single pass over the statement.
+ *
+ * <ul>
+ *   <li>Comments are removed.
+ *   <li>String and numeric literals and bind parameters ("?", "$1", ":name") become "?".
+ *   <li>Parenthesized lists of only bind parameters and literals, such as IN lists and VALUES
+ *       rows, become "(?+)", and repeated "(?+)" rows are collapsed into one.
+ *   <li>Unquoted words are lower-cased, and tokens are separated by a single space.
+ * </ul>
+ *
+ * <p>String literals follow the SQL standard, in which a quote is escaped by doubling it.
+ */
+final class SqlNormalizer {
+  private SqlNormalizer() {}
+
+  // Types of the tokens, used to decide where to put spaces.
+  private static final int NONE = 0;
+  private static final int WORD = 1;
+  private static final int OPEN_PAREN = 2;
+  private static final int CLOSE_PAREN = 3;
+  private static final int COMMA = 4;
+  private static final int DOT = 5;
+  private static final int OPERATOR = 6;
+
+  private static final String LIST = "(?+)";
+  private static final String REPEATED_LIST = "(?+), (?+)";
+
+  static String normalize(String sql) {
+    int n = sql.length();
+    StringBuilder out = new StringBuilder(Math.min(n, 4096));
+    // Positions in "out" of the currently open parentheses.
+    int[] parens = new int[16];
+    int depth = 0;
+    int prev = NONE;
+
+    int i = 0;
+    while (i < n) {
+      char c = sql.charAt(i);
+      char next = i + 1 < n ? sql.charAt(i + 1) : '\0';
+
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (c == '-' && next == '-') {
+        int end = sql.indexOf('\n', i + 2);
+        i = end < 0 ? n : end + 1;
+      } else if (c == '/' && next == '*') {
+        int end = sql.indexOf("*/", i + 2);
+        i = end < 0 ? n : end + 2;
+      } else if (c == '\'') {
+        i = skipQuoted(sql, i, '\'');
+        prev = emit(out, prev, WORD, "?");
+      } else if (c == '"' || c == '`') {
+        // Quoted identifiers are kept verbatim.
+        int end = skipQuoted(sql, i, c);
+        space(out, prev, WORD);
+        out.append(sql, i, end);
+        prev = WORD;
+        i = end;
+      } else if (isDigit(c) || (c == '.' && isDigit(next) && prev != WORD)) {
+        i = skipNumber(sql, i);
+        prev = emit(out, prev, WORD, "?");
+      } else if (c == '?' || (c == '$' && isDigit(next))) {
+        i++;
+        while (i < n && isDigit(sql.charAt(i))) {
+          i++;
+        }
+        prev = emit(out, prev, WORD, "?");
+      } else if (c == ':' && isIdentifierStart(next) && (i == 0 || sql.charAt(i - 1) != ':')) {
+        i = skipIdentifier(sql, i + 1);
+        prev = emit(out, prev, WORD, "?");
+      } else if (isIdentifierStart(c)) {
+        int end = skipIdentifier(sql, i);
+        space(out, prev, WORD);
+        for (int j = i; j < end; j++) {
+          char w = sql.charAt(j);
+          out.append(w >= 'A' && w <= 'Z' ? (char) (w + ('a' - 'A')) : w);
+        }
+        prev = WORD;
+        i = end;
+      } else if (c == '(') {
+        space(out, prev, OPEN_PAREN);
+        if (depth == parens.length) {
+          parens = Arrays.copyOf(parens, depth * 2);
+        }
+        parens[depth++] = out.length();
+        out.append('(');
+        prev = OPEN_PAREN;
+        i++;
+      } else if (c == ')') {
+        out.append(')');
+        if (depth > 0) {
+          collapseList(out, parens[--depth]);
+        }
+        prev = CLOSE_PAREN;
+        i++;
+      } else if (c == ',') {
+        out.append(',');
+        prev = COMMA;
+        i++;
+      } else if (c == '.') {
+        out.append('.');
+        prev = DOT;
+        i++;
+      } else if (c == ';') {
+        // Statement terminators don't change the shape of the statement.
+        i++;
+      } else {
+        int end = i + 1;
+        while (end < n && isOperator(c) && isOperator(sql.charAt(end))) {
+          end++;
+        }
+        space(out, prev, OPERATOR);
+        out.append(sql, i, end);
+        prev = OPERATOR;
+        i = end;
+      }
+    }
+    return out.toString();
+  }
+
+  private static int emit(StringBuilder out, int prev, int type, String token) {
+    space(out, prev, type);
+    out.append(token);
+    return type;
+  }
+
+  // Separates tokens by a single space, except around dots, inside parentheses and before commas.
+  private static void space(StringBuilder out, int prev, int type) {
+    if (prev != NONE && prev != OPEN_PAREN && prev != DOT && type != DOT) {
+      out.append(' ');
+    }
+  }
+
+  // Replaces the parenthesized list starting at "open" with "(?+)" if it only holds "?"s, and
+  // then collapses a repeated "(?+), (?+)" into a single "(?+)".
+  private static void collapseList(StringBuilder out, int open) {
+    int close = out.length() - 1;
+    boolean sawParameter = false;
+    for (int j = open + 1; j < close; j++) {
+      char c = out.charAt(j);
+      if (c == '?') {
+        sawParameter = true;
+      } else if (c != ',' && c != ' ') {
+        return;
+      }
+    }
+    if (!sawParameter) {
+      return;
+    }
+    out.setLength(open);
+    out.append(LIST);
+    if (endsWith(out, REPEATED_LIST)) {
+      out.setLength(out.length() - REPEATED_LIST.length() + LIST.length());
+    }
+  }
+
+  private static boolean endsWith(StringBuilder out, String suffix) {
+    int offset = out.length() - suffix.length();
+    if (offset < 0) {
+      return false;
+    }
+    for (int j = 0; j < suffix.length(); j++) {
+      if (out.charAt(offset + j) != suffix.charAt(j)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Returns the position after the closing quote, a doubled quote being an escaped quote.
+  private static int skipQuoted(String sql, int start, char quote) {
+    int n = sql.length();
+    int i = start + 1;
+    while (i < n) {
+      if (sql.charAt(i) == quote) {
+        if (i + 1 < n && sql.charAt(i + 1) == quote) {
+          i += 2;
+          continue;
+        }
+        return i + 1;
+      }
+      i++;
+    }
+    return n;
+  }
+
+  private static int skipNumber(String sql, int start) {
+    int n = sql.length();
+    int i = start;
+    char second = i + 1 < n ? sql.charAt(i + 1) : '\0';
+    if (sql.charAt(i) == '0' && (second == 'x' || second == 'X')) {
+      i += 2;
+      while (i < n && Character.digit(sql.charAt(i), 16) >= 0) {
+        i++;
+      }
+      return i;
+    }
+    while (i < n && (isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+      i++;
+    }
+    if (i < n && (sql.charAt(i) == 'e' || sql.charAt(i) == 'E')) {
+      int j = i + 1;
+      if (j < n && (sql.charAt(j) == '+' || sql.charAt(j) == '-')) {
+        j++;
+      }
+      if (j < n && isDigit(sql.charAt(j))) {
+        i = j;
+        while (i < n && isDigit(sql.charAt(i))) {
+          i++;
+        }
+      }
+    }
+    return i;
+  }
+
+  private static int skipIdentifier(String sql, int start) {
+    int n = sql.length();
+    int i = start;
+    while (i < n && isIdentifierPart(sql.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isIdentifierStart(char c) {
+    return Character.isLetter(c) || c == '_';
+  }
+
+  private static boolean isIdentifierPart(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+  }
+
+  private static boolean isOperator(char c) {
+    switch (c) {
+      case '+':
+      case '-':
+      case '*':
+      case '/':
+      case '<':
+      case '>':
+      case '=':
+      case '!':
+      case '~':
+      case '^':
+      case '&':
+      case '|':
+      case '%':
+      case '@':
+      case '#':
+      case ':':
+        return true;
+      default:
+        return false;
+    }
+  }
+}
@@ -0,0 +1,368 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.stats.MeasureMap;
+import io.opencensus.stats.Stats;
+import io.opencensus.stats.StatsRecorder;
+import io.opencensus.tags.TagValue;
+import io.opencensus.tags.Tagger;
+import io.opencensus.tags.Tags;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import javax.annotation.Nullable;
+
+/**
+ * Caches the idle prepared statements of a connection, so that preparing the same SQL again reuses
+ * a statement instead of having the database parse it again, for the drivers and pools that don't
+ * cache statements themselves.
+ *
+ * <p>The statements are keyed by their SQL and the arguments they were prepared with. Closing a
+ * statement taken from the cache returns it to the cache, after closing its result sets, clearing
+ * its parameters and its batch, and restoring the {@link Settings} the application changed, e.g.
+ * its fetch size or its query timeout, and its wrapper can't be used anymore. The statements whose
+ * settings can't be restored are closed instead. The cache holds at most one idle statement per
+ * key, and closes the least recently used statements once it is full.
+ *
+ * <p>The lookups are counted as hits or misses in "java.sql/client/statement_cache", along with the
+ * evictions, and the latency of preparing the statements of the misses is recorded in
+ * "java.sql/client/prepare_latency", which gives the time the hits saved. Both are recorded in the
+ * current tag context, like the other metrics.
+ */
+final class StatementCache {
+  // The value of the arguments a statement wasn't prepared with, which no JDBC constant uses.
+  static final int UNSPECIFIED = -1;
+
+  private final int maxSize;
+  private final StatsRecorder statsRecorder;
+  private final Tagger tagger;
+  // Access-ordered, so that the least recently used statements are evicted first.
+  private final LinkedHashMap<Key, PreparedStatement> idle =
+      new LinkedHashMap<Key, PreparedStatement>(16, 0.75f, true);
+  // Whether the connection was closed, after which the returned statements are closed.
+  private boolean closed;
+
+  StatementCache(int maxSize) {
+    this(maxSize, Stats.getStatsRecorder(), Tags.getTagger());
+  }
+
+  // VisibleForTesting
+  StatementCache(int maxSize, StatsRecorder statsRecorder, Tagger tagger) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("Invalid statement cache size: " + maxSize);
+    }
+    this.maxSize = maxSize;
+    this.statsRecorder = statsRecorder;
+    this.tagger = tagger;
+  }
+
+  // Takes the idle statement of the given key from the cache, or prepares it on the connection if
+  // there is none.
+  @Nullable
+  PreparedStatement prepare(Connection connection, Key key) throws SQLException {
+    PreparedStatement statement;
+    synchronized (this) {
+      statement = idle.remove(key);
+    }
+    if (statement != null) {
+      record(Observability.VALUE_HIT, -1);
+      return statement;
+    }
+    long startTimeNs = System.nanoTime();
+    statement = key.prepare(connection);
+    record(Observability.VALUE_MISS, System.nanoTime() - startTimeNs);
+    return statement;
+  }
+
+  // Returns a statement taken from the cache, which was closed by the application after changing
+  // the given settings, if any. The statement is closed instead if it can't be reset, if the cache
+  // already holds an idle statement of the same key, or if the connection was closed.
+  void release(
+      Key key, PreparedStatement statement, boolean batched, @Nullable Settings changedSettings)
+      throws SQLException {
+    try {
+      statement.clearParameters();
+      if (batched) {
+        statement.clearBatch();
+      }
+      if (changedSettings != null && !changedSettings.restore(statement)) {
+        statement.close();
+        return;
+      }
+    } catch (SQLException e) {
+      statement.close();
+      return;
+    }
+    PreparedStatement discarded = statement;
+    boolean evicted = false;
+    synchronized (this) {
+      if (!closed && !idle.containsKey(key)) {
+        idle.put(key, statement);
+        discarded = null;
+        if (idle.size() > maxSize) {
+          Iterator<PreparedStatement> eldest = idle.values().iterator();
+          discarded = eldest.next();
+          eldest.remove();
+          evicted = true;
+        }
+      }
+    }
+    if (evicted) {
+      record(Observability.VALUE_EVICTION, -1);
+    }
+    if (discarded != null) {
+      discarded.close();
+    }
+  }
+
+  // Closes the idle statements, when the connection is closed. The statements taken from the cache
+  // are closed when they are returned.
+  void close() {
+    List<PreparedStatement> statements;
+    synchronized (this) {
+      closed = true;
+      statements = new ArrayList<PreparedStatement>(idle.values());
+      idle.clear();
+    }
+    for (PreparedStatement statement : statements) {
+      try {
+        statement.close();
+      } catch (SQLException e) {
+        // The statement is closed along with its connection anyway.
+      }
+    }
+  }
+
+  // Returns the number of idle statements.
+  // VisibleForTesting
+  synchronized int size() {
+    return idle.size();
+  }
+
+  // Records a hit, a miss along with the time it took to prepare the statement, or an eviction.
+  private void record(TagValue event, long prepareTimeNs) {
+    MeasureMap measureMap =
+        statsRecorder.newMeasureMap().put(Observability.MEASURE_STATEMENT_CACHE_EVENTS, 1);
+    if (prepareTimeNs >= 0) {
+      measureMap.put(Observability.MEASURE_PREPARE_LATENCY_MS, ((double) prepareTimeNs) / 1e6);
+    }
+    measureMap.record(
+        tagger.currentBuilder().put(Observability.JAVA_SQL_STATEMENT_CACHE, event).build());
+  }
+
+  /**
+   * The settings of a statement taken from the cache that the application changed, saved before
+   * their first change and restored when the statement is returned, so that the next {@code
+   * prepareStatement} of the same SQL gets the statement as the driver prepares it. Escape
+   * processing, which can't be read, is restored to its default, enabled. The statements on which
+   * {@code closeOnCompletion} or {@code setCursorName} was called, which can't be undone, aren't
+   * reused.
+   */
+  static final class Settings {
+    private int maxRows = UNSPECIFIED;
+    private int queryTimeout = UNSPECIFIED;
+    private int fetchSize = UNSPECIFIED;
+    private int fetchDirection = UNSPECIFIED;
+    private int maxFieldSize = UNSPECIFIED;
+    private boolean escapeProcessing;
+    @Nullable private Boolean poolable;
+    // Whether a setting that can't be restored was changed, or couldn't be saved.
+    private boolean irreversible;
+
+    // Saves the maximum number of rows, also changed by setLargeMaxRows.
+    void saveMaxRows(PreparedStatement statement) {
+      try {
+        if (maxRows == UNSPECIFIED) {
+          maxRows = statement.getMaxRows();
+        }
+      } catch (SQLException e) {
+        irreversible = true;
+      }
+    }
+
+    void saveQueryTimeout(PreparedStatement statement) {
+      try {
+        if (queryTimeout == UNSPECIFIED) {
+          queryTimeout = statement.getQueryTimeout();
+        }
+      } catch (SQLException e) {
+        irreversible = true;
+      }
+    }
+
+    void saveFetchSize(PreparedStatement statement) {
+      try {
+        if (fetchSize == UNSPECIFIED) {
+          fetchSize = statement.getFetchSize();
+        }
+      } catch (SQLException e) {
+        irreversible = true;
+      }
+    }
+
+    void saveFetchDirection(PreparedStatement statement) {
+      try {
+        if (fetchDirection == UNSPECIFIED) {
+          fetchDirection = statement.getFetchDirection();
+        }
+      } catch (SQLException e) {
+        irreversible = true;
+      }
+    }
+
+    void saveMaxFieldSize(PreparedStatement statement) {
+      try {
+        if (maxFieldSize == UNSPECIFIED) {
+          maxFieldSize = statement.getMaxFieldSize();
+        }
+      } catch (SQLException e) {
+        irreversible = true;
+      }
+    }
+
+    void saveEscapeProcessing() {
+      escapeProcessing = true;
+    }
+
+    void savePoolable(PreparedStatement statement) {
+      try {
+        if (poolable == null) {
+          poolable = statement.isPoolable();
+        }
+      } catch (SQLException e) {
+        irreversible = true;
+      }
+    }
+
+    // Called once closeOnCompletion or setCursorName was called.
+    void changedIrreversibly() {
+      irreversible = true;
+    }
+
+    // Restores the saved settings. Returns false if the statement can't be reused.
+    boolean restore(PreparedStatement statement) throws SQLException {
+      if (irreversible) {
+        return false;
+      }
+      if (maxRows != UNSPECIFIED) {
+        statement.setMaxRows(maxRows);
+      }
+      if (queryTimeout != UNSPECIFIED) {
+        statement.setQueryTimeout(queryTimeout);
+      }
+      if (fetchSize != UNSPECIFIED) {
+        statement.setFetchSize(fetchSize);
+      }
+      if (fetchDirection != UNSPECIFIED) {
+        statement.setFetchDirection(fetchDirection);
+      }
+      if (maxFieldSize != UNSPECIFIED) {
+        statement.setMaxFieldSize(maxFieldSize);
+      }
+      if (escapeProcessing) {
+        statement.setEscapeProcessing(true);
+      }
+      if (poolable != null) {
+        statement.setPoolable(poolable);
+      }
+      return true;
+    }
+  }
+
+  // The SQL of a prepared statement and the arguments of the prepareStatement overload it was
+  // prepared with, UNSPECIFIED or null for the arguments of the other overloads. The statements of
+  // a null SQL, which the driver rejects, aren't taken from the cache.
+  static final class Key {
+    @Nullable final String sql;
+    private final int resultSetType;
+    private final int resultSetConcurrency;
+    private final int resultSetHoldability;
+    private final int autoGeneratedKeys;
+    @Nullable private final int[] columnIndexes;
+    @Nullable private final String[] columnNames;
+
+    Key(
+        @Nullable String sql,
+        int resultSetType,
+        int resultSetConcurrency,
+        int resultSetHoldability,
+        int autoGeneratedKeys,
+        @Nullable int[] columnIndexes,
+        @Nullable String[] columnNames) {
+      this.sql = sql;
+      this.resultSetType = resultSetType;
+      this.resultSetConcurrency = resultSetConcurrency;
+      this.resultSetHoldability = resultSetHoldability;
+      this.autoGeneratedKeys = autoGeneratedKeys;
+      // Copied, as the application may reuse its arrays.
+      this.columnIndexes = columnIndexes != null ? columnIndexes.clone() : null;
+      this.columnNames = columnNames != null ? columnNames.clone() : null;
+    }
+
+    // Prepares the statement with the overload the key was built from.
+    PreparedStatement prepare(Connection connection) throws SQLException {
+      if (columnIndexes != null) {
+        return connection.prepareStatement(sql, columnIndexes);
+      } else if (columnNames != null) {
+        return connection.prepareStatement(sql, columnNames);
+      } else if (autoGeneratedKeys != UNSPECIFIED) {
+        return connection.prepareStatement(sql, autoGeneratedKeys);
+      } else if (resultSetHoldability != UNSPECIFIED) {
+        return connection.prepareStatement(
+            sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+      } else if (resultSetType != UNSPECIFIED) {
+        return connection.prepareStatement(sql, resultSetType, resultSetConcurrency);
+      }
+      return connection.prepareStatement(sql);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key that = (Key) obj;
+      return Objects.equals(sql, that.sql)
+          && resultSetType == that.resultSetType
+          && resultSetConcurrency == that.resultSetConcurrency
+          && resultSetHoldability == that.resultSetHoldability
+          && autoGeneratedKeys == that.autoGeneratedKeys
+          && Arrays.equals(columnIndexes, that.columnIndexes)
+          && Arrays.equals(columnNames, that.columnNames);
+    }
+
+    @Override
+    public int hashCode() {
+      int h = Objects.hashCode(sql);
+      h = 31 * h + resultSetType;
+      h = 31 * h + resultSetConcurrency;
+      h = 31 * h + resultSetHoldability;
+      h = 31 * h + autoGeneratedKeys;
+      h = 31 * h + Arrays.hashCode(columnIndexes);
+      h = 31 * h + Arrays.hashCode(columnNames);
+      return h;
+    }
+  }
+}
@@ -0,0 +1,231 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.stats.Stats;
+import io.opencensus.stats.StatsRecorder;
+import io.opencensus.tags.TagValue;
+import io.opencensus.tags.Tagger;
+import io.opencensus.tags.Tags;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Detects the statements and result sets that are garbage collected without being closed, which
+ * hold a cursor on the database and often a buffer in the driver until then.
+ *
+ * <p>Every statement and result set opened while the detector is started is tracked by a {@link
+ * PhantomReference} until it is closed, including by JDBC: a result set is closed along with its
+ * statement or when the statement is executed again, and a statement along with its connection.
+ * The wrappers collected without being closed are logged
+ * with the {@link SqlFingerprint} of their SQL, and counted in the
+ * "java.sql/client/leaked_statements" metric, the next time a statement or a result set is opened.
+ *
+ * <p>In debug mode, the stack trace of the code that opened the statement or the result set is
+ * captured for a sampled fraction of them, and logged with the leak.
+ *
+ * <p>The detector is started with {@link #start(double)}, after which the statements and result
+ * sets opened are tracked until {@link #stop()} is called.
+ */
+public final class StatementLeakDetector {
+  private static final Logger logger = Logger.getLogger(StatementLeakDetector.class.getName());
+
+  // The kinds of tracked wrappers.
+  static final TagValue STATEMENT = TagValue.create("java.sql.Statement");
+  static final TagValue PREPARED_STATEMENT = TagValue.create("java.sql.PreparedStatement");
+  static final TagValue CALLABLE_STATEMENT = TagValue.create("java.sql.CallableStatement");
+  static final TagValue RESULT_SET = TagValue.create("java.sql.ResultSet");
+
+  @Nullable private static volatile StatementLeakDetector current;
+
+  private final double stackTraceProbability;
+  private final StatsRecorder statsRecorder;
+  private final Tagger tagger;
+  // The tracked wrappers, which keep their phantom references reachable.
+  private final Set<Tracked> tracked =
+      Collections.newSetFromMap(new ConcurrentHashMap<Tracked, Boolean>());
+  private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+  private final AtomicLong leaked = new AtomicLong();
+
+  // VisibleForTesting
+  StatementLeakDetector(double stackTraceProbability, StatsRecorder statsRecorder, Tagger tagger) {
+    if (!(stackTraceProbability >= 0 && stackTraceProbability <= 1)) {
+      throw new IllegalArgumentException(
+          "Invalid stack trace probability: " + stackTraceProbability);
+    }
+    this.stackTraceProbability = stackTraceProbability;
+    this.statsRecorder = statsRecorder;
+    this.tagger = tagger;
+  }
+
+  /**
+   * Starts detecting the statements and result sets collected without being closed, without
+   * capturing stack traces.
+   *
+   * @return the started detector.
+   */
+  public static StatementLeakDetector start() {
+    return start(0);
+  }
+
+  /**
+   * Starts detecting the statements and result sets collected without being closed, replacing the
+   * detector started previously if there is one.
+   *
+   * @param stackTraceProbability the probability of capturing the stack trace of the code that
+   *     opens a statement or a result set, between 0 and 1. Capturing stack traces is meant for
+   *     debugging, as it slows down the opening of statements.
+   * @return the started detector.
+   * @throws IllegalArgumentException if the probability isn't between 0 and 1.
+   */
+  public static synchronized StatementLeakDetector start(double stackTraceProbability) {
+    StatementLeakDetector detector =
+        new StatementLeakDetector(
+            stackTraceProbability, Stats.getStatsRecorder(), Tags.getTagger());
+    current = detector;
+    return detector;
+  }
+
+  /**
+   * Stops detecting the leaked statements and result sets. Those tracked by the detector started
+   * by {@link #start(double)} are no longer reported.
+   */
+  public static synchronized void stop() {
+    current = null;
+  }
+
+  // Returns the detector the statements and result sets opened now are tracked by, if any.
+  @Nullable
+  static StatementLeakDetector current() {
+    return current;
+  }
+
+  /**
+   * Returns the number of statements and result sets reported as leaked since the detector was
+   * started.
+   *
+   * @return the number of leaked statements and result sets.
+   */
+  public long getLeakedStatements() {
+    return leaked.get();
+  }
+
+  /**
+   * Returns the number of open statements and result sets tracked by the detector, including those
+   * that were collected and not reported yet.
+   *
+   * @return the number of tracked statements and result sets.
+   */
+  public int getTrackedStatements() {
+    return tracked.size();
+  }
+
+  // Starts tracking the given wrapper, of the given kind, if the detector is started. Returns null
+  // otherwise.
+  @Nullable
+  static Tracked track(Object wrapper, TagValue kind, @Nullable String sql) {
+    StatementLeakDetector detector = current;
+    return detector != null ? detector.trackWrapper(wrapper, kind, sql) : null;
+  }
+
+  // VisibleForTesting
+  Tracked trackWrapper(Object wrapper, TagValue kind, @Nullable String sql) {
+    expunge();
+    Throwable stackTrace = null;
+    if (stackTraceProbability > 0
+        && ThreadLocalRandom.current().nextDouble() < stackTraceProbability) {
+      stackTrace = new Throwable(kind.asString() + " opened here");
+    }
+    Tracked tracked = new Tracked(wrapper, queue, this, kind, sql, stackTrace);
+    this.tracked.add(tracked);
+    return tracked;
+  }
+
+  // Reports the wrappers collected without being closed. Returns the number of leaks reported.
+  // VisibleForTesting
+  int expunge() {
+    int leaks = 0;
+    for (Reference<?> reference = queue.poll(); reference != null; reference = queue.poll()) {
+      Tracked collected = (Tracked) reference;
+      if (tracked.remove(collected)) {
+        report(collected);
+        leaks++;
+      }
+    }
+    return leaks;
+  }
+
+  private void report(Tracked collected) {
+    leaked.incrementAndGet();
+    statsRecorder
+        .newMeasureMap()
+        .put(Observability.MEASURE_LEAKED_STATEMENTS, 1)
+        .record(tagger.emptyBuilder().put(Observability.JAVA_SQL_RESOURCE, collected.kind).build());
+    String sql;
+    if (collected.sql == null) {
+      sql = "of unknown SQL";
+    } else {
+      SqlFingerprint fingerprint = SqlFingerprint.of(collected.sql);
+      sql = "of " + fingerprint.getHashString() + " (" + fingerprint.getNormalizedSql() + ")";
+    }
+    logger.log(
+        Level.WARNING,
+        collected.kind.asString()
+            + " "
+            + sql
+            + " was garbage collected without being closed"
+            + (collected.stackTrace == null ? "" : ", opened by thread " + collected.threadName),
+        collected.stackTrace);
+  }
+
+  // The phantom reference to a tracked wrapper, which must not reference the wrapper itself.
+  static final class Tracked extends PhantomReference<Object> {
+    final StatementLeakDetector detector;
+    final TagValue kind;
+    @Nullable final String sql;
+    @Nullable final Throwable stackTrace;
+    @Nullable final String threadName;
+
+    Tracked(
+        Object wrapper,
+        ReferenceQueue<Object> queue,
+        StatementLeakDetector detector,
+        TagValue kind,
+        @Nullable String sql,
+        @Nullable Throwable stackTrace) {
+      super(wrapper, queue);
+      this.detector = detector;
+      this.kind = kind;
+      this.sql = sql;
+      this.stackTrace = stackTrace;
+      this.threadName = stackTrace != null ? Thread.currentThread().getName() : null;
+    }
+
+    // Stops tracking the wrapper, which was closed.
+    void release() {
+      detector.tracked.remove(this);
+      clear();
+    }
+  }
+}
@@ -0,0 +1,211 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.tags.TagValue;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Tracks what a statement wrapper holds open until it is closed: its count in the {@link
+ * CursorTracker} of its connection, its tracking by the {@link StatementLeakDetector}, and the
+ * wrappers of its result sets.
+ *
+ * <p>JDBC closes the result sets of a statement along with it: the current result set when the
+ * statement is executed again, moves to its next result or is closed, and the generated keys when
+ * it is executed again or closed. The wrappers of those result sets are released at the same time,
+ * so that they stop being counted as open and aren't reported as leaked once they are collected,
+ * without calling the driver again. The statement itself is released when it is closed, either by
+ * the application or by JDBC when its connection is closed.
+ *
+ * <p>The result set wrappers are created once per result, so that calling {@link
+ * Statement#getResultSet()} again returns the same wrapper instead of counting the cursor again.
+ *
+ * <p>Like the statement, its resources aren't meant to be used by several threads at once.
+ */
+final class StatementResources {
+  @Nullable private final UnitOfWork unitOfWork;
+  // The tracking of the statement by the StatementLeakDetector started when it was opened, if any.
+  @Nullable private final StatementLeakDetector.Tracked tracked;
+  // Whether the statement was released, so that it is only counted as closed once. Volatile, as
+  // closing the connection may release it from another thread.
+  private volatile boolean closed;
+  // The wrappers of the current result set and of the generated keys, if any.
+  @Nullable private OcWrapResultSet resultSet;
+  @Nullable private OcWrapResultSet generatedKeys;
+  // The result sets kept open by getMoreResults(KEEP_CURRENT_RESULT), if any.
+  @Nullable private List<OcWrapResultSet> keptResultSets;
+
+  StatementResources(
+      Object statement, TagValue kind, @Nullable String sql, @Nullable UnitOfWork unitOfWork) {
+    this.unitOfWork = unitOfWork;
+    this.tracked = StatementLeakDetector.track(statement, kind, sql);
+    if (unitOfWork != null) {
+      unitOfWork.cursors().statementOpened(this);
+    }
+  }
+
+  // Returns the wrapper of the current result set, which is created the first time.
+  OcWrapResultSet resultSet(
+      ResultSet result,
+      @Nullable String sql,
+      TrackingOptions options,
+      @Nullable UnitOfWork unitOfWork) {
+    OcWrapResultSet wrapper = this.resultSet;
+    if (wrapper != null && wrapper.wraps(result)) {
+      return wrapper;
+    }
+    // A driver returning another result set for the same result closed the previous one.
+    release(wrapper);
+    wrapper = new OcWrapResultSet(result, sql, options, unitOfWork);
+    this.resultSet = wrapper;
+    return wrapper;
+  }
+
+  // Returns the wrapper of the generated keys, which is created the first time.
+  OcWrapResultSet generatedKeys(
+      ResultSet result,
+      @Nullable String sql,
+      TrackingOptions options,
+      @Nullable UnitOfWork unitOfWork) {
+    OcWrapResultSet wrapper = this.generatedKeys;
+    if (wrapper != null && wrapper.wraps(result)) {
+      return wrapper;
+    }
+    release(wrapper);
+    wrapper = new OcWrapResultSet(result, sql, options, unitOfWork);
+    this.generatedKeys = wrapper;
+    return wrapper;
+  }
+
+  // Called before the statement is executed, which closes its result sets.
+  void executed() {
+    releaseResultSets();
+  }
+
+  // Called before getMoreResults(), which closes the current result set.
+  void moreResults() {
+    moreResults(Statement.CLOSE_CURRENT_RESULT);
+  }
+
+  // Called before getMoreResults(current), which closes or keeps the current result set.
+  void moreResults(int current) {
+    OcWrapResultSet wrapper = this.resultSet;
+    this.resultSet = null;
+    if (current == Statement.KEEP_CURRENT_RESULT) {
+      if (wrapper != null) {
+        if (this.keptResultSets == null) {
+          this.keptResultSets = new ArrayList<OcWrapResultSet>();
+        }
+        this.keptResultSets.add(wrapper);
+      }
+      return;
+    }
+    release(wrapper);
+    if (current == Statement.CLOSE_ALL_RESULTS) {
+      releaseKeptResultSets();
+    }
+  }
+
+  // Returns whether the statement was released.
+  boolean isClosed() {
+    return this.closed;
+  }
+
+  // Throws if the statement was released. A statement returned to a StatementCache isn't closed,
+  // and may already be used through another wrapper, which its own wrapper mustn't disturb.
+  void checkOpen() throws SQLException {
+    if (this.closed) {
+      throw new SQLException("Statement is closed");
+    }
+  }
+
+  // Closes the result sets of the statement, before it is returned to a StatementCache instead of
+  // being closed, which would have closed them.
+  void closeResultSets() throws SQLException {
+    List<OcWrapResultSet> open = new ArrayList<OcWrapResultSet>();
+    if (this.resultSet != null) {
+      open.add(this.resultSet);
+    }
+    if (this.generatedKeys != null) {
+      open.add(this.generatedKeys);
+    }
+    if (this.keptResultSets != null) {
+      open.addAll(this.keptResultSets);
+    }
+    this.resultSet = null;
+    this.generatedKeys = null;
+    this.keptResultSets = null;
+    SQLException failure = null;
+    for (OcWrapResultSet wrapper : open) {
+      try {
+        wrapper.close();
+      } catch (SQLException e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  // Releases the statement and its result sets, the first time it is closed by the application or
+  // along with its connection.
+  void release() {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+    releaseResultSets();
+    if (this.unitOfWork != null) {
+      this.unitOfWork.cursors().statementClosed(this);
+    }
+    if (this.tracked != null) {
+      this.tracked.release();
+    }
+  }
+
+  private void releaseResultSets() {
+    release(this.resultSet);
+    release(this.generatedKeys);
+    this.resultSet = null;
+    this.generatedKeys = null;
+    releaseKeptResultSets();
+  }
+
+  private void releaseKeptResultSets() {
+    List<OcWrapResultSet> kept = this.keptResultSets;
+    if (kept != null) {
+      this.keptResultSets = null;
+      for (OcWrapResultSet wrapper : kept) {
+        wrapper.released();
+      }
+    }
+  }
+
+  private static void release(@Nullable OcWrapResultSet wrapper) {
+    if (wrapper != null) {
+      wrapper.released();
+    }
+  }
+}
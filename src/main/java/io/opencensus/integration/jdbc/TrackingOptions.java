@@ -0,0 +1,107 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.integration.jdbc.InstrumentationPolicy.Mode;
+import io.opencensus.integration.jdbc.Observability.TraceOption;
+import io.opencensus.trace.Sampler;
+import java.util.EnumSet;
+import javax.annotation.Nullable;
+
+/**
+ * The {@link TraceOption}s and the {@link InstrumentationPolicy} of a connection, resolved once
+ * when the connection is wrapped and shared by all the statements and result sets created from it.
+ */
+final class TrackingOptions {
+  // The default maximum number of characters of the "sql" attribute.
+  static final int DEFAULT_MAX_SQL_LENGTH = 1024;
+
+  final boolean annotateSpansWithSQL;
+  // The maximum number of characters of the "sql" attribute, past which the SQL is truncated.
+  final int maxSqlLength;
+  final boolean aggregateResultSetFetches;
+  final boolean metricsOnly;
+  // The sampler of the spans, or null to use the one of the active TraceConfig.
+  @Nullable final Sampler sampler;
+  // The maximum number of idle prepared statements cached per connection, or 0 if they aren't.
+  final int statementCacheSize;
+  private final InstrumentationPolicy policy;
+
+  private TrackingOptions(
+      EnumSet<TraceOption> opts,
+      InstrumentationPolicy policy,
+      @Nullable Sampler sampler,
+      int maxSqlLength,
+      int statementCacheSize) {
+    if (maxSqlLength <= 0) {
+      throw new IllegalArgumentException("Invalid maximum SQL length: " + maxSqlLength);
+    }
+    if (statementCacheSize < 0) {
+      throw new IllegalArgumentException("Invalid statement cache size: " + statementCacheSize);
+    }
+    this.annotateSpansWithSQL = Observability.shouldAnnotateSpansWithSQL(opts);
+    this.maxSqlLength = maxSqlLength;
+    this.aggregateResultSetFetches = Observability.shouldAggregateResultSetFetches(opts);
+    this.metricsOnly = opts.contains(TraceOption.METRICS_ONLY);
+    this.sampler = sampler;
+    this.statementCacheSize = statementCacheSize;
+    this.policy = policy;
+  }
+
+  static TrackingOptions of(EnumSet<TraceOption> opts) {
+    return new TrackingOptions(
+        opts, InstrumentationPolicy.defaults(), null, DEFAULT_MAX_SQL_LENGTH, 0);
+  }
+
+  static TrackingOptions of(EnumSet<TraceOption> opts, InstrumentationPolicy policy) {
+    return new TrackingOptions(opts, policy, null, DEFAULT_MAX_SQL_LENGTH, 0);
+  }
+
+  static TrackingOptions of(
+      EnumSet<TraceOption> opts, InstrumentationPolicy policy, @Nullable Sampler sampler) {
+    return new TrackingOptions(opts, policy, sampler, DEFAULT_MAX_SQL_LENGTH, 0);
+  }
+
+  static TrackingOptions of(
+      EnumSet<TraceOption> opts,
+      InstrumentationPolicy policy,
+      @Nullable Sampler sampler,
+      int maxSqlLength) {
+    return new TrackingOptions(opts, policy, sampler, maxSqlLength, 0);
+  }
+
+  static TrackingOptions of(
+      EnumSet<TraceOption> opts,
+      InstrumentationPolicy policy,
+      @Nullable Sampler sampler,
+      int maxSqlLength,
+      int statementCacheSize) {
+    return new TrackingOptions(opts, policy, sampler, maxSqlLength, statementCacheSize);
+  }
+
+  // Returns the attributes of the given SQL, executed by a statement prepared in advance, or null
+  // if the spans aren't annotated with the SQL.
+  @Nullable
+  SqlAttributes sqlAttributes(@Nullable String sql) {
+    return annotateSpansWithSQL && sql != null ? new SqlAttributes(sql, maxSqlLength) : null;
+  }
+
+  // Returns how the calls to the given method are instrumented. METRICS_ONLY turns TRACE into
+  // METER.
+  Mode mode(String method) {
+    Mode mode = policy.getMode(method);
+    return metricsOnly && mode == Mode.TRACE ? Mode.METER : mode;
+  }
+}
@@ -0,0 +1,286 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.stats.Stats;
+import io.opencensus.stats.StatsRecorder;
+import io.opencensus.tags.TagValue;
+import io.opencensus.tags.Tagger;
+import io.opencensus.tags.Tags;
+import io.opencensus.trace.AttributeValue;
+import io.opencensus.trace.Sampler;
+import io.opencensus.trace.Span;
+import io.opencensus.trace.SpanBuilder;
+import io.opencensus.trace.Status;
+import io.opencensus.trace.Tracer;
+import io.opencensus.trace.Tracing;
+import java.sql.Connection;
+import java.sql.SQLException;
+import javax.annotation.Nullable;
+
+/**
+ * Tracks the transactions of a connection, which hold their locks from their first statement until
+ * they end.
+ *
+ * <p>A transaction starts with the first statement executed while auto-commit is disabled, and ends
+ * when the connection commits, rolls back, re-enables auto-commit or is closed. The statements of
+ * the transaction are traced as children of its "java.sql.Transaction" span, which is started by
+ * the first statement of the transaction that is traced, and the time between them is counted as
+ * idle in transaction. When the transaction ends, its duration, number of statements and idle time
+ * are recorded in the "java.sql/client/transaction_*" views.
+ *
+ * <p>Whether auto-commit is enabled is taken from the {@link InitialAutoCommit} of the driver or
+ * data source the connection comes from, then tracked by the calls of the application, so that it
+ * is only read from the connection when it isn't known.
+ */
+final class TransactionTracker {
+  static final String SPAN_NAME = "java.sql.Transaction";
+
+  private final Connection connection;
+  private final InitialAutoCommit initialAutoCommit;
+  private final StatsRecorder statsRecorder;
+  private final Tagger tagger;
+  private final Tracer tracer;
+
+  // Whether auto-commit is enabled, or null while it isn't known, e.g. after a call that may have
+  // changed it failed.
+  @Nullable private Boolean autoCommit;
+  // Whether auto-commit was enabled when the connection was handed out, if known, and whether it
+  // may have been changed since without this tracker knowing how.
+  @Nullable private Boolean handedOutAutoCommit;
+  private boolean autoCommitLost;
+  // The open transaction, if there is one.
+  private boolean open;
+  private long startTimeNs;
+  private long statementTimeNs;
+  private int statements;
+  @Nullable private Span span;
+
+  TransactionTracker(Connection connection, InitialAutoCommit initialAutoCommit) {
+    this(
+        connection,
+        initialAutoCommit,
+        Stats.getStatsRecorder(),
+        Tags.getTagger(),
+        Tracing.getTracer());
+  }
+
+  // VisibleForTesting
+  TransactionTracker(
+      Connection connection,
+      InitialAutoCommit initialAutoCommit,
+      StatsRecorder statsRecorder,
+      Tagger tagger,
+      Tracer tracer) {
+    this.connection = connection;
+    this.initialAutoCommit = initialAutoCommit;
+    this.autoCommit = initialAutoCommit.get();
+    this.handedOutAutoCommit = this.autoCommit;
+    this.statsRecorder = statsRecorder;
+    this.tagger = tagger;
+    this.tracer = tracer;
+  }
+
+  // Called before a statement is executed: starts a transaction if auto-commit is disabled and none
+  // is open, and its span if the statement is traced and the transaction has none yet. Returns the
+  // span of the transaction, which is the parent of the span of the statement, or null if there is
+  // none.
+  @Nullable
+  synchronized Span beginStatement(boolean traced, @Nullable Sampler sampler) {
+    if (!open) {
+      if (isAutoCommit()) {
+        return null;
+      }
+      open = true;
+      startTimeNs = System.nanoTime();
+      statementTimeNs = 0;
+      statements = 0;
+    }
+    if (traced && span == null) {
+      // The statements before, which weren't traced, are only counted in its attributes.
+      SpanBuilder spanBuilder = tracer.spanBuilder(SPAN_NAME);
+      if (sampler != null) {
+        spanBuilder.setSampler(sampler);
+      }
+      span = spanBuilder.startSpan();
+    }
+    statements++;
+    return span;
+  }
+
+  // Called after a statement was executed, with its latency.
+  synchronized void endStatement(long durationNs) {
+    if (open) {
+      statementTimeNs += durationNs;
+    }
+  }
+
+  // Returns the span of the open transaction, if any.
+  @Nullable
+  synchronized Span span() {
+    return span;
+  }
+
+  // Called once auto-commit was set on the connection. Enabling it commits the open transaction.
+  void setAutoCommit(boolean autoCommit) {
+    if (autoCommit) {
+      end(Observability.VALUE_COMMIT, false);
+    }
+    synchronized (this) {
+      if (handedOutAutoCommit == null) {
+        // The connection can't be told to be released the way it was handed out.
+        autoCommitLost = true;
+      }
+      this.autoCommit = autoCommit;
+    }
+  }
+
+  // Called once auto-commit was read from the connection by the application. The driver may have
+  // changed it, e.g. when a statement set it, which ends the open transaction like setAutoCommit.
+  void readAutoCommit(boolean autoCommit) {
+    synchronized (this) {
+      if (this.autoCommit == null && handedOutAutoCommit == null && !autoCommitLost) {
+        handedOutAutoCommit = autoCommit;
+      }
+    }
+    setAutoCommit(autoCommit);
+  }
+
+  // Forgets whether auto-commit is enabled, after a call that may have changed it failed. It is
+  // read from the connection again before the next statement.
+  synchronized void resetAutoCommit() {
+    this.autoCommit = null;
+    this.autoCommitLost = true;
+  }
+
+  // Called once the connection was closed, i.e. returned to its pool: tells the next connections
+  // of the pool whether auto-commit is enabled, if this one was released the way it was handed out.
+  void released() {
+    Boolean handedOut;
+    boolean changed;
+    synchronized (this) {
+      handedOut = handedOutAutoCommit;
+      changed = autoCommitLost || (handedOut != null && !handedOut.equals(autoCommit));
+    }
+    initialAutoCommit.released(handedOut, changed);
+  }
+
+  // Ends the open transaction, if any, with the given outcome, e.g. VALUE_COMMIT, which failed if
+  // the call that ended it failed.
+  void end(TagValue outcome, boolean failed) {
+    Span span;
+    long durationNs;
+    int statements;
+    long idleNs;
+    synchronized (this) {
+      if (!open) {
+        return;
+      }
+      span = this.span;
+      durationNs = System.nanoTime() - startTimeNs;
+      statements = this.statements;
+      idleNs = Math.max(0, durationNs - statementTimeNs);
+      open = false;
+      this.span = null;
+    }
+
+    Observability.recordTransaction(
+        statsRecorder, tagger, outcome, failed, durationNs, statements, idleNs);
+    if (span != null) {
+      span.putAttribute("outcome", AttributeValue.stringAttributeValue(outcome.asString()));
+      span.putAttribute("statements", AttributeValue.longAttributeValue(statements));
+      span.putAttribute("idle_ns", AttributeValue.longAttributeValue(idleNs));
+      if (failed) {
+        span.setStatus(Status.UNKNOWN.withDescription(outcome.asString() + " failed"));
+      }
+      span.end();
+    }
+  }
+
+  // Whether auto-commit is enabled, read from the connection if it isn't known, which may be a
+  // roundtrip to the database.
+  private boolean isAutoCommit() {
+    if (autoCommit == null) {
+      try {
+        autoCommit = connection.getAutoCommit();
+      } catch (SQLException e) {
+        // Transactions can't be told apart from single statements.
+        return true;
+      }
+      if (handedOutAutoCommit == null && !autoCommitLost) {
+        handedOutAutoCommit = autoCommit;
+      }
+    }
+    return autoCommit;
+  }
+
+  /**
+   * Whether auto-commit is enabled on the connections handed out by a driver or a data source, as
+   * far as it is known.
+   *
+   * <p>The connections created by a driver have auto-commit enabled. Those of a data source, e.g.
+   * a pool, are handed out the way the pool is configured, which is learned from the first
+   * connection whose transactions are tracked, as the pool resets the connections it hands out
+   * again. It is forgotten for good once a connection is released after auto-commit was changed
+   * on it, since the pool may not reset it: whether auto-commit is enabled is then read from each
+   * connection before its first statement.
+   */
+  static final class InitialAutoCommit {
+    private static final InitialAutoCommit DRIVER = new InitialAutoCommit(Boolean.TRUE, false);
+
+    private final boolean learned;
+    @Nullable private volatile Boolean autoCommit;
+    private volatile boolean unknown;
+
+    private InitialAutoCommit(@Nullable Boolean autoCommit, boolean learned) {
+      this.autoCommit = autoCommit;
+      this.learned = learned;
+    }
+
+    // Returns the auto-commit of the connections created by a driver.
+    static InitialAutoCommit ofDriver() {
+      return DRIVER;
+    }
+
+    // Returns the auto-commit of a connection wrapped by the application, read from it.
+    static InitialAutoCommit ofConnection() {
+      return new InitialAutoCommit(null, false);
+    }
+
+    // Returns the auto-commit of the connections of a data source, learned from them.
+    static InitialAutoCommit ofDataSource() {
+      return new InitialAutoCommit(null, true);
+    }
+
+    // Returns whether auto-commit is enabled on a connection handed out now, or null if unknown.
+    @Nullable
+    Boolean get() {
+      return unknown ? null : autoCommit;
+    }
+
+    // Called once a connection handed out with the given auto-commit, if known, was released,
+    // after auto-commit was changed on it or not.
+    void released(@Nullable Boolean handedOut, boolean changed) {
+      if (!learned) {
+        return;
+      }
+      if (changed) {
+        unknown = true;
+      } else if (handedOut != null) {
+        autoCommit = handedOut;
+      }
+    }
+  }
+}
@@ -0,0 +1,148 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.trace.TraceId;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+/**
+ * The work done with a connection, from when it is checked out until it is closed, or within a
+ * single trace if the connection outlives the traces, e.g. when it is pooled above the driver.
+ *
+ * <p>Counts the statements executed during the unit of work, per {@link SqlFingerprint} hash, in an
+ * open addressing map of primitives. Entries are stamped with the generation of the unit of work,
+ * so that starting a new unit of work only increments the generation.
+ *
+ * <p>The unit of work also gives the statements of the connection access to its {@link
+ * TransactionTracker}, and to the {@link CursorTracker} counting its open statements and result
+ * sets.
+ */
+final class UnitOfWork {
+  private static final int INITIAL_CAPACITY = 16;
+  // Past this number of distinct fingerprints, only the executions are counted.
+  // VisibleForTesting
+  static final int MAX_FINGERPRINTS = 512;
+
+  private int generation = 1;
+  private long[] hashes = new long[INITIAL_CAPACITY];
+  private int[] counts = new int[INITIAL_CAPACITY];
+  private int[] generations = new int[INITIAL_CAPACITY];
+  private int fingerprints;
+  private int executions;
+  // The trace of the unit of work, or null if its statements weren't executed within a trace.
+  @Nullable private TraceId traceId;
+  // The transactions of the connection, or null if they aren't tracked.
+  @Nullable private final TransactionTracker transaction;
+  // The open statements and result sets of the connection, which outlive the unit of work.
+  private final CursorTracker cursors;
+
+  UnitOfWork() {
+    this(null);
+  }
+
+  UnitOfWork(@Nullable TransactionTracker transaction) {
+    this(transaction, new CursorTracker());
+  }
+
+  UnitOfWork(@Nullable TransactionTracker transaction, CursorTracker cursors) {
+    this.transaction = transaction;
+    this.cursors = cursors;
+  }
+
+  // Returns the tracker of the transactions of the connection, if any.
+  @Nullable
+  TransactionTracker transaction() {
+    return transaction;
+  }
+
+  CursorTracker cursors() {
+    return cursors;
+  }
+
+  // Counts an execution of the statement with the given fingerprint hash, made within the given
+  // trace. Returns the number of executions of the fingerprint in the unit of work, or 0 if it
+  // holds too many fingerprints to count them.
+  synchronized int recordExecution(long hash, @Nullable TraceId traceId) {
+    if (traceId == null ? this.traceId != null : !traceId.equals(this.traceId)) {
+      // A new trace starts a new unit of work.
+      reset();
+      this.traceId = traceId;
+    }
+    executions++;
+
+    int mask = hashes.length - 1;
+    for (int i = index(hash, mask); ; i = (i + 1) & mask) {
+      if (generations[i] != generation) {
+        if (fingerprints == MAX_FINGERPRINTS) {
+          return 0;
+        }
+        hashes[i] = hash;
+        counts[i] = 1;
+        generations[i] = generation;
+        if (++fingerprints * 2 > hashes.length) {
+          grow();
+        }
+        return 1;
+      }
+      if (hashes[i] == hash) {
+        return ++counts[i];
+      }
+    }
+  }
+
+  // Returns the number of statements executed in the unit of work.
+  synchronized int executions() {
+    return executions;
+  }
+
+  // Ends the unit of work and starts a new one.
+  synchronized void reset() {
+    if (++generation == 0) {
+      // Entries of the generations of 2^32 resets ago would look current.
+      Arrays.fill(generations, 0);
+      generation = 1;
+    }
+    fingerprints = 0;
+    executions = 0;
+    traceId = null;
+  }
+
+  private void grow() {
+    long[] oldHashes = hashes;
+    int[] oldCounts = counts;
+    int[] oldGenerations = generations;
+    hashes = new long[oldHashes.length * 2];
+    counts = new int[oldHashes.length * 2];
+    generations = new int[oldHashes.length * 2];
+    int mask = hashes.length - 1;
+    for (int j = 0; j < oldHashes.length; j++) {
+      if (oldGenerations[j] == generation) {
+        int i = index(oldHashes[j], mask);
+        while (generations[i] == generation) {
+          i = (i + 1) & mask;
+        }
+        hashes[i] = oldHashes[j];
+        counts[i] = oldCounts[j];
+        generations[i] = generation;
+      }
+    }
+  }
+
+  private static int index(long hash, int mask) {
+    // The FNV hashes of the fingerprints are well mixed, their low bits are used as they are.
+    return (int) (hash ^ (hash >>> 32)) & mask;
+  }
+}
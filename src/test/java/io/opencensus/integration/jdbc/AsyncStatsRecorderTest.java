@@ -0,0 +1,188 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+
+import io.opencensus.integration.jdbc.AsyncStatsRecorder.OverflowPolicy;
+import io.opencensus.integration.jdbc.Observability.MethodTags;
+import io.opencensus.stats.Measure.MeasureDouble;
+import io.opencensus.stats.Measure.MeasureLong;
+import io.opencensus.stats.MeasureMap;
+import io.opencensus.stats.StatsRecorder;
+import io.opencensus.tags.TagContext;
+import io.opencensus.tags.TagValue;
+import io.opencensus.tags.Tagger;
+import io.opencensus.tags.Tags;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+/** Tests for {@link AsyncStatsRecorder}. */
+@RunWith(JUnit4.class)
+public class AsyncStatsRecorderTest {
+
+  @Mock private StatsRecorder mockStatsRecorder;
+  @Mock private MeasureMap mockMeasureMap;
+
+  private final Tagger tagger = Tags.getTagger();
+  private final MethodTags methodTags = Observability.methodTags("method");
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    Mockito.when(mockStatsRecorder.newMeasureMap()).thenReturn(mockMeasureMap);
+    Mockito.when(mockMeasureMap.put(any(MeasureDouble.class), anyDouble()))
+        .thenReturn(mockMeasureMap);
+    Mockito.when(mockMeasureMap.put(any(MeasureLong.class), anyLong()))
+        .thenReturn(mockMeasureMap);
+    Mockito.doNothing().when(mockMeasureMap).record(any(TagContext.class));
+  }
+
+  @Test
+  public void capacity_roundedUpToPowerOfTwo() {
+    assertThat(newRecorder(100, OverflowPolicy.DROP).getCapacity()).isEqualTo(128);
+    assertThat(newRecorder(64, OverflowPolicy.DROP).getCapacity()).isEqualTo(64);
+    assertThat(newRecorder(1, OverflowPolicy.DROP).getCapacity()).isEqualTo(1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void capacity_invalid() {
+    newRecorder(0, OverflowPolicy.DROP);
+  }
+
+  @Test
+  public void offer_recordedByDrain() {
+    AsyncStatsRecorder recorder = newRecorder(4, OverflowPolicy.DROP);
+    assertThat(offer(recorder, 2000000L)).isTrue();
+    Mockito.verifyZeroInteractions(mockStatsRecorder);
+
+    assertThat(recorder.drain()).isEqualTo(1);
+    Mockito.verify(mockMeasureMap).put(eq(Observability.MEASURE_LATENCY_MS), eq(2.0));
+    Mockito.verify(mockMeasureMap).put(eq(Observability.MEASURE_ROWS_READ), eq(3L));
+    Mockito.verify(mockMeasureMap).record(any(TagContext.class));
+    assertThat(recorder.drain()).isEqualTo(0);
+  }
+
+  @Test
+  public void offer_wrapsAround() {
+    AsyncStatsRecorder recorder = newRecorder(2, OverflowPolicy.DROP);
+    for (int i = 0; i < 5; i++) {
+      assertThat(offer(recorder, 1000000L)).isTrue();
+      assertThat(offer(recorder, 1000000L)).isTrue();
+      assertThat(recorder.drain()).isEqualTo(2);
+    }
+    assertThat(recorder.getDroppedRecords()).isEqualTo(0L);
+  }
+
+  @Test
+  public void offer_full_drop() {
+    AsyncStatsRecorder recorder = newRecorder(2, OverflowPolicy.DROP);
+    assertThat(offer(recorder, 1000000L)).isTrue();
+    assertThat(offer(recorder, 1000000L)).isTrue();
+    assertThat(offer(recorder, 1000000L)).isTrue();
+    assertThat(recorder.getDroppedRecords()).isEqualTo(1L);
+    assertThat(recorder.drain()).isEqualTo(2);
+  }
+
+  @Test
+  public void offer_full_recordSynchronously() {
+    AsyncStatsRecorder recorder = newRecorder(2, OverflowPolicy.RECORD_SYNCHRONOUSLY);
+    assertThat(offer(recorder, 1000000L)).isTrue();
+    assertThat(offer(recorder, 1000000L)).isTrue();
+    assertThat(offer(recorder, 1000000L)).isFalse();
+    assertThat(recorder.getDroppedRecords()).isEqualTo(0L);
+  }
+
+  @Test
+  public void offer_afterClose_recordedSynchronously() {
+    AsyncStatsRecorder recorder = newRecorder(4, OverflowPolicy.DROP);
+    assertThat(offer(recorder, 1000000L)).isTrue();
+    recorder.close();
+    assertThat(offer(recorder, 1000000L)).isFalse();
+    assertThat(recorder.getDroppedRecords()).isEqualTo(0L);
+    // The call accepted before is still recorded.
+    assertThat(recorder.drain()).isEqualTo(1);
+  }
+
+  @Test
+  public void drain_failingRecordIsDropped() {
+    Mockito.doThrow(new IllegalStateException())
+        .when(mockMeasureMap)
+        .record(any(TagContext.class));
+    AsyncStatsRecorder recorder = newRecorder(2, OverflowPolicy.DROP);
+    offer(recorder, 1000000L);
+    offer(recorder, 1000000L);
+    assertThat(recorder.drain()).isEqualTo(2);
+    assertThat(recorder.getDroppedRecords()).isEqualTo(2L);
+  }
+
+  @Test
+  public void startAndStop() {
+    AsyncStatsRecorder recorder = AsyncStatsRecorder.start(16, OverflowPolicy.DROP);
+    try {
+      assertThat(AsyncStatsRecorder.current()).isSameAs(recorder);
+    } finally {
+      AsyncStatsRecorder.stop();
+    }
+    assertThat(AsyncStatsRecorder.current()).isNull();
+    assertThat(offer(recorder, 1000000L)).isFalse();
+  }
+
+  @Test
+  public void shutdown_recordsAcceptedCalls() {
+    AsyncStatsRecorder recorder = newRecorder(16, OverflowPolicy.DROP);
+    assertThat(offer(recorder, 1000000L)).isTrue();
+    assertThat(offer(recorder, 1000000L)).isTrue();
+    recorder.startThread();
+    recorder.shutdown();
+    Mockito.verify(mockMeasureMap, Mockito.times(2)).record(any(TagContext.class));
+    assertThat(offer(recorder, 1000000L)).isFalse();
+  }
+
+  @Test(timeout = 10000)
+  public void startThread_recordsAfterIdle() throws InterruptedException {
+    AsyncStatsRecorder recorder = newRecorder(16, OverflowPolicy.DROP);
+    recorder.startThread();
+    try {
+      for (int i = 1; i <= 3; i++) {
+        // Lets the recording thread park on the empty buffer before each call.
+        Thread.sleep(10);
+        assertThat(offer(recorder, 1000000L)).isTrue();
+        Mockito.verify(mockMeasureMap, Mockito.timeout(5000).times(i))
+            .record(any(TagContext.class));
+      }
+    } finally {
+      recorder.shutdown();
+    }
+  }
+
+  private AsyncStatsRecorder newRecorder(int capacity, OverflowPolicy overflowPolicy) {
+    return new AsyncStatsRecorder(capacity, overflowPolicy, mockStatsRecorder, tagger);
+  }
+
+  private boolean offer(AsyncStatsRecorder recorder, long durationNs) {
+    return recorder.offer(
+        methodTags, tagger.empty(), (TagValue) null, durationNs, false, 3, -1, -1);
+  }
+}
@@ -0,0 +1,169 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+
+import io.opencensus.integration.jdbc.Observability.TraceOption;
+import io.opencensus.stats.Measure.MeasureDouble;
+import io.opencensus.stats.Measure.MeasureLong;
+import io.opencensus.stats.MeasureMap;
+import io.opencensus.stats.StatsRecorder;
+import io.opencensus.tags.TagContext;
+import io.opencensus.tags.TagContextBuilder;
+import io.opencensus.tags.TagKey;
+import io.opencensus.tags.TagValue;
+import io.opencensus.tags.Tagger;
+import java.sql.Connection;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.AdditionalMatchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+/** Tests for {@link ConnectionLeakDetector}. */
+@RunWith(JUnit4.class)
+public class ConnectionLeakDetectorTest {
+
+  @Mock private Connection mockConnection;
+  @Mock private StatsRecorder mockStatsRecorder;
+  @Mock private Tagger mockTagger;
+  @Mock private MeasureMap mockMeasureMap;
+  @Mock private TagContextBuilder mockTagContextBuilder;
+  @Mock private TagContext mockTagContext;
+
+  private OcWrapConnection connection;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    Mockito.when(mockStatsRecorder.newMeasureMap()).thenReturn(mockMeasureMap);
+    Mockito.when(mockMeasureMap.put(any(MeasureDouble.class), anyDouble()))
+        .thenReturn(mockMeasureMap);
+    Mockito.when(mockMeasureMap.put(any(MeasureLong.class), anyLong()))
+        .thenReturn(mockMeasureMap);
+    Mockito.when(mockTagger.empty()).thenReturn(mockTagContext);
+    Mockito.when(mockTagger.emptyBuilder()).thenReturn(mockTagContextBuilder);
+    Mockito.when(mockTagContextBuilder.put(any(TagKey.class), any(TagValue.class)))
+        .thenReturn(mockTagContextBuilder);
+    Mockito.when(mockTagContextBuilder.build()).thenReturn(mockTagContext);
+    connection = new OcWrapConnection(mockConnection, EnumSet.noneOf(TraceOption.class));
+  }
+
+  private ConnectionLeakDetector newDetector(long thresholdMs) {
+    return new ConnectionLeakDetector(
+        thresholdMs, TimeUnit.MILLISECONDS, 1.0, mockStatsRecorder, mockTagger);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidThreshold() {
+    newDetector(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidStackTraceProbability() {
+    new ConnectionLeakDetector(1, TimeUnit.SECONDS, 1.5, mockStatsRecorder, mockTagger);
+  }
+
+  @Test
+  public void track_capturesStackTrace() {
+    ConnectionLeakDetector detector = newDetector(1000);
+    ConnectionLeakDetector.Checkout checkout = detector.track(connection);
+    assertThat(checkout.stackTrace).isNotNull();
+    assertThat(checkout.threadName).isEqualTo(Thread.currentThread().getName());
+    assertThat(detector.getTrackedConnections()).isEqualTo(1);
+  }
+
+  @Test
+  public void track_noStackTrace() {
+    ConnectionLeakDetector detector =
+        new ConnectionLeakDetector(1, TimeUnit.SECONDS, 0, mockStatsRecorder, mockTagger);
+    assertThat(detector.track(connection).stackTrace).isNull();
+  }
+
+  @Test
+  public void check_openForTooLong() throws InterruptedException {
+    ConnectionLeakDetector detector = newDetector(1);
+    detector.track(connection);
+    Thread.sleep(5);
+    assertThat(detector.check()).isEqualTo(1);
+    // Reported once.
+    assertThat(detector.check()).isEqualTo(0);
+    assertThat(detector.getLeakedConnections()).isEqualTo(1);
+    assertThat(detector.getTrackedConnections()).isEqualTo(1);
+    Mockito.verify(mockTagContextBuilder, Mockito.times(1))
+        .put(Observability.JAVA_SQL_LEAK, Observability.VALUE_CHECKED_OUT_TOO_LONG);
+    Mockito.verify(mockMeasureMap, Mockito.times(1))
+        .put(Observability.MEASURE_LEAKED_CONNECTIONS, 1L);
+  }
+
+  @Test
+  public void check_recordsOldestAge() throws InterruptedException {
+    ConnectionLeakDetector detector = newDetector(1000);
+    detector.track(connection);
+    Thread.sleep(5);
+    assertThat(detector.check()).isEqualTo(0);
+    Mockito.verify(mockMeasureMap, Mockito.times(1))
+        .put(eq(Observability.MEASURE_CONNECTION_AGE_MS), AdditionalMatchers.geq(5.0));
+  }
+
+  @Test
+  public void check_collected() {
+    ConnectionLeakDetector detector = newDetector(1000);
+    // Enqueued as the garbage collector would.
+    detector.track(connection).enqueue();
+    assertThat(detector.check()).isEqualTo(1);
+    assertThat(detector.getTrackedConnections()).isEqualTo(0);
+    Mockito.verify(mockTagContextBuilder, Mockito.times(1))
+        .put(Observability.JAVA_SQL_LEAK, Observability.VALUE_NOT_CLOSED);
+  }
+
+  @Test
+  public void check_released() throws InterruptedException {
+    ConnectionLeakDetector detector = newDetector(1);
+    ConnectionLeakDetector.Checkout checkout = detector.track(connection);
+    checkout.release();
+    Thread.sleep(5);
+    assertThat(detector.check()).isEqualTo(0);
+    assertThat(detector.getTrackedConnections()).isEqualTo(0);
+    assertThat(detector.getLeakedConnections()).isEqualTo(0);
+  }
+
+  @Test
+  public void startAndStop() throws Exception {
+    ConnectionLeakDetector detector = ConnectionLeakDetector.start(1, TimeUnit.HOURS);
+    try {
+      assertThat(ConnectionLeakDetector.current()).isSameAs(detector);
+      OcWrapConnection tracked =
+          new OcWrapConnection(mockConnection, EnumSet.noneOf(TraceOption.class));
+      assertThat(detector.getTrackedConnections()).isEqualTo(1);
+      tracked.close();
+      tracked.close();
+      assertThat(detector.getTrackedConnections()).isEqualTo(0);
+    } finally {
+      ConnectionLeakDetector.stop();
+    }
+    assertThat(ConnectionLeakDetector.current()).isNull();
+  }
+}
@@ -0,0 +1,139 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+
+import io.opencensus.integration.jdbc.Observability.TraceOption;
+import io.opencensus.integration.jdbc.TransactionTracker.InitialAutoCommit;
+import io.opencensus.stats.Measure.MeasureLong;
+import io.opencensus.stats.MeasureMap;
+import io.opencensus.stats.StatsRecorder;
+import io.opencensus.tags.Tags;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.EnumSet;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mockito;
+
+/** Tests for {@link CursorTracker}. */
+@RunWith(JUnit4.class)
+public class CursorTrackerTest {
+
+  @Test
+  public void countsOpenStatementsAndResultSets() {
+    long allStatements = CursorTracker.allOpenStatements();
+    long allResultSets = CursorTracker.allOpenResultSets();
+    CursorTracker cursors = new CursorTracker();
+    StatementResources statement = newStatement();
+    cursors.statementOpened(statement);
+    cursors.statementOpened(newStatement());
+    cursors.resultSetOpened();
+    assertThat(cursors.openStatements()).isEqualTo(2);
+    assertThat(cursors.openResultSets()).isEqualTo(1);
+    assertThat(CursorTracker.allOpenStatements()).isEqualTo(allStatements + 2);
+    assertThat(CursorTracker.allOpenResultSets()).isEqualTo(allResultSets + 1);
+
+    cursors.statementClosed(statement);
+    cursors.resultSetClosed();
+    assertThat(cursors.openStatements()).isEqualTo(1);
+    assertThat(cursors.openResultSets()).isEqualTo(0);
+    assertThat(CursorTracker.allOpenStatements()).isEqualTo(allStatements + 1);
+    assertThat(CursorTracker.allOpenResultSets()).isEqualTo(allResultSets);
+  }
+
+  @Test
+  public void closeAll() {
+    long allStatements = CursorTracker.allOpenStatements();
+    long allResultSets = CursorTracker.allOpenResultSets();
+    CursorTracker cursors = new CursorTracker();
+    StatementResources statement = newStatement();
+    cursors.statementOpened(statement);
+    cursors.resultSetOpened();
+    cursors.resultSetOpened();
+    cursors.closeAll();
+    assertThat(cursors.openStatements()).isEqualTo(0);
+    assertThat(cursors.openResultSets()).isEqualTo(0);
+    assertThat(CursorTracker.allOpenStatements()).isEqualTo(allStatements);
+    assertThat(CursorTracker.allOpenResultSets()).isEqualTo(allResultSets);
+
+    // Closed along with the connection, then explicitly.
+    cursors.statementClosed(statement);
+    cursors.resultSetClosed();
+    assertThat(cursors.openStatements()).isEqualTo(0);
+    assertThat(CursorTracker.allOpenStatements()).isEqualTo(allStatements);
+    assertThat(CursorTracker.allOpenResultSets()).isEqualTo(allResultSets);
+  }
+
+  @Test
+  public void closeAll_releasesOpenStatements() {
+    UnitOfWork unitOfWork = new UnitOfWork();
+    StatementResources open =
+        new StatementResources(new Object(), StatementLeakDetector.STATEMENT, null, unitOfWork);
+    StatementResources closed =
+        new StatementResources(new Object(), StatementLeakDetector.STATEMENT, null, unitOfWork);
+    closed.release();
+    assertThat(unitOfWork.cursors().openStatements()).isEqualTo(1);
+
+    unitOfWork.cursors().closeAll();
+    assertThat(open.isClosed()).isTrue();
+    assertThat(unitOfWork.cursors().openStatements()).isEqualTo(0);
+  }
+
+  @Test
+  public void gaugesRecordedOnChange() throws SQLException {
+    StatsRecorder mockStatsRecorder = Mockito.mock(StatsRecorder.class);
+    MeasureMap mockMeasureMap = Mockito.mock(MeasureMap.class);
+    Mockito.when(mockStatsRecorder.newMeasureMap()).thenReturn(mockMeasureMap);
+    Mockito.when(mockMeasureMap.put(any(MeasureLong.class), anyLong())).thenReturn(mockMeasureMap);
+    Connection mockConnection = Mockito.mock(Connection.class);
+    Statement mockStatement = Mockito.mock(Statement.class);
+    Mockito.when(mockConnection.createStatement()).thenReturn(mockStatement);
+    Mockito.when(mockStatement.executeQuery("SELECT 1"))
+        .thenReturn(Mockito.mock(ResultSet.class));
+    OcWrapConnection connection =
+        new OcWrapConnection(
+            mockConnection,
+            TrackingOptions.of(EnumSet.noneOf(TraceOption.class)),
+            InitialAutoCommit.ofConnection(),
+            new CursorTracker(mockStatsRecorder, Tags.getTagger()));
+    long allStatements = CursorTracker.allOpenStatements();
+    long allResultSets = CursorTracker.allOpenResultSets();
+
+    // The connection stays open, as behind a pool.
+    Statement statement = connection.createStatement();
+    Mockito.verify(mockMeasureMap)
+        .put(Observability.MEASURE_OPEN_STATEMENTS, allStatements + 1);
+    ResultSet resultSet = statement.executeQuery("SELECT 1");
+    Mockito.verify(mockMeasureMap)
+        .put(Observability.MEASURE_OPEN_RESULT_SETS, allResultSets + 1);
+    resultSet.close();
+    Mockito.verify(mockMeasureMap).put(Observability.MEASURE_OPEN_RESULT_SETS, allResultSets);
+    statement.close();
+    Mockito.verify(mockMeasureMap).put(Observability.MEASURE_OPEN_STATEMENTS, allStatements);
+  }
+
+  // Returns the resources of a statement that doesn't belong to a connection, which the tests
+  // count themselves.
+  private static StatementResources newStatement() {
+    return new StatementResources(new Object(), StatementLeakDetector.STATEMENT, null, null);
+  }
+}
@@ -0,0 +1,104 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.tags.TagValue;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ErrorClassifier}. */
+@RunWith(JUnit4.class)
+public class ErrorClassifierTest {
+
+  @After
+  public void tearDown() {
+    ErrorClassifier.clearRefinedValues();
+  }
+
+  @Test
+  public void classify_exceptionTypes() {
+    assertThat(ErrorClassifier.category(new SQLTimeoutException("timed out after 30s")))
+        .isEqualTo(ErrorClassifier.TIMEOUT);
+    assertThat(ErrorClassifier.category(new SQLTransientConnectionException()))
+        .isEqualTo(ErrorClassifier.TRANSIENT_CONNECTION);
+    assertThat(ErrorClassifier.category(new SQLIntegrityConstraintViolationException()))
+        .isEqualTo(ErrorClassifier.INTEGRITY_CONSTRAINT);
+    assertThat(ErrorClassifier.category(new IllegalStateException()))
+        .isEqualTo(ErrorClassifier.RUNTIME);
+    assertThat(ErrorClassifier.category(new IOException())).isEqualTo(ErrorClassifier.OTHER);
+  }
+
+  @Test
+  public void classify_plainSqlExceptionUsesSqlState() {
+    assertThat(ErrorClassifier.category(new SQLException("boom", "42P01")))
+        .isEqualTo(ErrorClassifier.SYNTAX);
+    assertThat(ErrorClassifier.category(new SQLException("boom", "HYT00")))
+        .isEqualTo(ErrorClassifier.TIMEOUT);
+    assertThat(ErrorClassifier.category(new SQLException("boom"))).isEqualTo(ErrorClassifier.SQL);
+  }
+
+  @Test
+  public void classify_ignoresMessage() {
+    TagValue first =
+        ErrorClassifier.classify(
+            new SQLIntegrityConstraintViolationException(
+                "Duplicate entry '1' for key", "23000", 1062));
+    TagValue second =
+        ErrorClassifier.classify(
+            new SQLIntegrityConstraintViolationException(
+                "Duplicate entry '2' for key", "23000", 1062));
+    assertThat(first).isEqualTo(TagValue.create("integrity_constraint:23"));
+    assertThat(second).isSameAs(first);
+  }
+
+  @Test
+  public void classify_ignoresVendorCode() {
+    assertThat(ErrorClassifier.classify(new SQLException("boom", "23505", 0)))
+        .isSameAs(ErrorClassifier.classify(new SQLException("boom", "23000", 1062)));
+  }
+
+  @Test
+  public void classify_dropsMalformedSqlState() {
+    assertThat(ErrorClassifier.classify(new SQLException("boom", "éx")))
+        .isEqualTo(TagValue.create(ErrorClassifier.SQL));
+  }
+
+  @Test
+  public void classify_boundedValues() {
+    // Every SQLState class, which is more than the refined values.
+    String chars = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    for (int i = 0; i < chars.length(); i++) {
+      for (int j = 0; j < chars.length(); j++) {
+        ErrorClassifier.classify(
+            new SQLException("boom", "" + chars.charAt(i) + chars.charAt(j) + "000"));
+      }
+    }
+    assertThat(ErrorClassifier.refinedValues()).isEqualTo(ErrorClassifier.MAX_REFINED_VALUES);
+    // The values already created are kept, the others fall back to the category.
+    assertThat(ErrorClassifier.classify(new SQLException("boom", "00000")))
+        .isEqualTo(TagValue.create("sql:00"));
+    assertThat(ErrorClassifier.classify(new SQLException("boom", "ZZ000")))
+        .isEqualTo(TagValue.create(ErrorClassifier.SQL));
+  }
+}
@@ -0,0 +1,74 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.integration.jdbc.Observability.TrackingOperation;
+import io.opencensus.stats.StatsRecorder;
+import io.opencensus.tags.Tagger;
+import io.opencensus.trace.Tracer;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/** Tests for {@link InFlightOperation}. */
+@RunWith(JUnit4.class)
+public class InFlightOperationTest {
+
+  @Mock private StatsRecorder mockStatsRecorder;
+  @Mock private Tagger mockTagger;
+  @Mock private Tracer mockTracer;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+  }
+
+  private TrackingOperation newOperation() {
+    return new TrackingOperation("method", null, false, mockStatsRecorder, mockTagger, mockTracer);
+  }
+
+  @Test
+  public void beginAndEnd() {
+    InFlightOperation inFlight = new InFlightOperation();
+    TrackingOperation operation = newOperation();
+    inFlight.begin(operation);
+    assertThat(inFlight.get()).isSameAs(operation);
+    inFlight.end(operation);
+    assertThat(inFlight.get()).isNull();
+  }
+
+  @Test
+  public void end_keepsNextOperation() {
+    InFlightOperation inFlight = new InFlightOperation();
+    TrackingOperation operation = newOperation();
+    TrackingOperation next = newOperation();
+    inFlight.begin(operation);
+    inFlight.begin(next);
+    inFlight.end(operation);
+    assertThat(inFlight.get()).isSameAs(next);
+  }
+
+  @Test
+  public void cancel_nothingInFlight() {
+    InFlightOperation inFlight = new InFlightOperation();
+    inFlight.cancel(newOperation());
+    assertThat(inFlight.get()).isNull();
+  }
+}
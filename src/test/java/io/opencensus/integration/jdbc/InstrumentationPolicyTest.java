@@ -0,0 +1,102 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.integration.jdbc.InstrumentationPolicy.Mode;
+import io.opencensus.integration.jdbc.Observability.TraceOption;
+import java.util.EnumSet;
+import java.util.Properties;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link InstrumentationPolicy}. */
+@RunWith(JUnit4.class)
+public class InstrumentationPolicyTest {
+
+  @Test
+  public void defaults_passThroughLocalOnlyMethods() {
+    InstrumentationPolicy policy = InstrumentationPolicy.defaults();
+    for (String method : InstrumentationPolicy.LOCAL_ONLY_METHODS) {
+      assertThat(policy.getMode(method)).isEqualTo(Mode.PASSTHROUGH);
+    }
+    assertThat(policy.getMode("java.sql.Statement.executeQuery")).isEqualTo(Mode.TRACE);
+  }
+
+  @Test
+  public void traceAll() {
+    assertThat(InstrumentationPolicy.traceAll().getMode("java.sql.ResultSet.getRow"))
+        .isEqualTo(Mode.TRACE);
+  }
+
+  @Test
+  public void withMode_doesNotModifyOriginal() {
+    InstrumentationPolicy policy = InstrumentationPolicy.defaults();
+    InstrumentationPolicy meterNext = policy.withMode("java.sql.ResultSet.next", Mode.METER);
+    assertThat(meterNext.getMode("java.sql.ResultSet.next")).isEqualTo(Mode.METER);
+    assertThat(policy.getMode("java.sql.ResultSet.next")).isEqualTo(Mode.TRACE);
+  }
+
+  @Test
+  public void fromProperties() {
+    Properties properties = new Properties();
+    properties.setProperty("opencensus.jdbc.policy.default", "meter");
+    properties.setProperty("opencensus.jdbc.policy.java.sql.ResultSet.getRow", "TRACE");
+    properties.setProperty("user", "ignored");
+    InstrumentationPolicy policy = InstrumentationPolicy.fromProperties(properties);
+    assertThat(policy.getMode("java.sql.Statement.execute")).isEqualTo(Mode.METER);
+    assertThat(policy.getMode("java.sql.ResultSet.getRow")).isEqualTo(Mode.TRACE);
+    assertThat(policy.getMode("java.sql.ResultSet.findColumn")).isEqualTo(Mode.PASSTHROUGH);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fromProperties_invalidMode() {
+    Properties properties = new Properties();
+    properties.setProperty("opencensus.jdbc.policy.java.sql.ResultSet.next", "SOMETIMES");
+    InstrumentationPolicy.fromProperties(properties);
+  }
+
+  @Test
+  public void isInstrumented() {
+    // Generated from the table, or written by hand.
+    assertThat(InstrumentationPolicy.isInstrumented("java.sql.Connection.setNetworkTimeout"))
+        .isTrue();
+    assertThat(InstrumentationPolicy.isInstrumented("java.sql.ResultSet.fetch")).isTrue();
+    // Only delegated.
+    assertThat(InstrumentationPolicy.isInstrumented("java.sql.ResultSet.getString")).isFalse();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void withMode_notInstrumented() {
+    InstrumentationPolicy.defaults().withMode("java.sql.ResultSet.getString", Mode.TRACE);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fromProperties_misspelledMethod() {
+    Properties properties = new Properties();
+    properties.setProperty("opencensus.jdbc.policy.java.sql.Statement.exeucte", "METER");
+    InstrumentationPolicy.fromProperties(properties);
+  }
+
+  @Test
+  public void trackingOptions_metricsOnlyMetersTracedMethods() {
+    TrackingOptions options =
+        TrackingOptions.of(EnumSet.of(TraceOption.METRICS_ONLY), InstrumentationPolicy.defaults());
+    assertThat(options.mode("java.sql.Statement.execute")).isEqualTo(Mode.METER);
+    assertThat(options.mode("java.sql.ResultSet.getRow")).isEqualTo(Mode.PASSTHROUGH);
+  }
+}
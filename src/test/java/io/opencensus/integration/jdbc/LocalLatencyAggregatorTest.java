@@ -0,0 +1,198 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.eq;
+
+import io.opencensus.integration.jdbc.Observability.MethodTags;
+import io.opencensus.stats.Measure.MeasureDouble;
+import io.opencensus.stats.MeasureMap;
+import io.opencensus.stats.StatsRecorder;
+import io.opencensus.tags.TagContext;
+import io.opencensus.tags.TagKey;
+import io.opencensus.tags.TagValue;
+import io.opencensus.tags.Tagger;
+import io.opencensus.tags.Tags;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+/** Tests for {@link LocalLatencyAggregator}. */
+@RunWith(JUnit4.class)
+public class LocalLatencyAggregatorTest {
+  private static final TagKey TAG_KEY = TagKey.create("key");
+
+  @Mock private StatsRecorder mockStatsRecorder;
+  @Mock private MeasureMap mockMeasureMap;
+
+  private final Tagger tagger = Tags.getTagger();
+  private final MethodTags methodTags = Observability.methodTags("method");
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    Mockito.when(mockStatsRecorder.newMeasureMap()).thenReturn(mockMeasureMap);
+    Mockito.when(mockMeasureMap.put(any(MeasureDouble.class), anyDouble()))
+        .thenReturn(mockMeasureMap);
+    Mockito.doNothing().when(mockMeasureMap).record(any(TagContext.class));
+  }
+
+  @Test
+  public void bucket_boundaryStartsBucket() {
+    int bucket = LocalLatencyAggregator.bucket(10.0);
+    assertThat(LocalLatencyAggregator.bucket(9.999)).isEqualTo(bucket - 1);
+    assertThat(LocalLatencyAggregator.bucket(24.999)).isEqualTo(bucket);
+    assertThat(LocalLatencyAggregator.bucket(25.0)).isEqualTo(bucket + 1);
+  }
+
+  @Test
+  public void record_flushedAtMeanOfBucket() {
+    LocalLatencyAggregator aggregator = newAggregator();
+    assertThat(aggregator.record(methodTags, tagger.empty(), null, 11000000L)).isTrue();
+    assertThat(aggregator.record(methodTags, tagger.empty(), null, 13000000L)).isTrue();
+    Mockito.verifyZeroInteractions(mockStatsRecorder);
+
+    assertThat(aggregator.flush()).isEqualTo(2L);
+    Mockito.verify(mockStatsRecorder).newMeasureMap();
+    Mockito.verify(mockMeasureMap).put(eq(Observability.MEASURE_LATENCY_MS), eq(12.0));
+    Mockito.verify(mockMeasureMap, Mockito.times(2)).record(any(TagContext.class));
+    assertThat(aggregator.flush()).isEqualTo(0L);
+  }
+
+  @Test
+  public void record_bucketsKeptApart() {
+    LocalLatencyAggregator aggregator = newAggregator();
+    aggregator.record(methodTags, tagger.empty(), null, 1000000L);
+    aggregator.record(methodTags, tagger.empty(), null, 1000000000L);
+    assertThat(aggregator.flush()).isEqualTo(2L);
+    Mockito.verify(mockMeasureMap).put(eq(Observability.MEASURE_LATENCY_MS), eq(1.0));
+    Mockito.verify(mockMeasureMap).put(eq(Observability.MEASURE_LATENCY_MS), eq(1000.0));
+  }
+
+  @Test
+  public void record_errorsKeptApart() {
+    LocalLatencyAggregator aggregator = newAggregator();
+    aggregator.record(methodTags, tagger.empty(), null, 1000000L);
+    aggregator.record(methodTags, tagger.empty(), TagValue.create("TIMEOUT"), 1000000L);
+    aggregator.record(methodTags, tagger.empty(), TagValue.create("TIMEOUT"), 1000000L);
+    assertThat(aggregator.flush()).isEqualTo(3L);
+    Mockito.verify(mockMeasureMap, Mockito.times(2))
+        .put(eq(Observability.MEASURE_LATENCY_MS), eq(1.0));
+    Mockito.verify(mockMeasureMap, Mockito.times(3)).record(any(TagContext.class));
+    assertThat(aggregator.flush()).isEqualTo(0L);
+  }
+
+  @Test
+  public void record_contextsKeptApart() {
+    LocalLatencyAggregator aggregator = newAggregator();
+    TagContext context = tagger.emptyBuilder().put(TAG_KEY, TagValue.create("value")).build();
+    TagContext tags = methodTags.tags(tagger, context, null);
+    assertThat(aggregator.record(methodTags, context, null, 1000000L)).isTrue();
+    assertThat(aggregator.record(methodTags, context, null, 1000000L)).isTrue();
+    assertThat(aggregator.record(methodTags, tagger.empty(), null, 1000000L)).isTrue();
+    assertThat(aggregator.flush()).isEqualTo(3L);
+    Mockito.verify(mockMeasureMap, Mockito.times(2)).record(eq(tags));
+    Mockito.verify(mockMeasureMap).record(eq(methodTags.tags(tagger, tagger.empty(), null)));
+  }
+
+  @Test
+  public void record_boundedContexts() {
+    LocalLatencyAggregator aggregator = newAggregator();
+    for (int i = 0; i < LocalLatencyAggregator.MAX_TAGGED_CONTEXTS; i++) {
+      TagContext context =
+          tagger.emptyBuilder().put(TAG_KEY, TagValue.create("value" + i)).build();
+      assertThat(aggregator.record(methodTags, context, null, 1000000L)).isTrue();
+    }
+    TagContext context = tagger.emptyBuilder().put(TAG_KEY, TagValue.create("value")).build();
+    assertThat(aggregator.record(methodTags, context, null, 1000000L)).isFalse();
+    assertThat(aggregator.record(methodTags, tagger.empty(), null, 1000000L)).isTrue();
+  }
+
+  @Test
+  public void flush_dropsIdleContexts() {
+    LocalLatencyAggregator aggregator = newAggregator();
+    TagContext context = tagger.emptyBuilder().put(TAG_KEY, TagValue.create("value")).build();
+    aggregator.record(methodTags, context, null, 1000000L);
+    assertThat(aggregator.flush()).isEqualTo(1L);
+    assertThat(aggregator.taggedContexts()).isEqualTo(1);
+    assertThat(aggregator.flush()).isEqualTo(0L);
+    assertThat(aggregator.taggedContexts()).isEqualTo(0);
+
+    assertThat(aggregator.record(methodTags, context, null, 1000000L)).isTrue();
+    assertThat(aggregator.taggedContexts()).isEqualTo(1);
+    assertThat(aggregator.flush()).isEqualTo(1L);
+    Mockito.verify(mockMeasureMap, Mockito.times(2))
+        .record(eq(methodTags.tags(tagger, context, null)));
+  }
+
+  @Test
+  public void flush_freesBoundedContexts() {
+    LocalLatencyAggregator aggregator = newAggregator();
+    for (int i = 0; i < LocalLatencyAggregator.MAX_TAGGED_CONTEXTS; i++) {
+      TagContext context =
+          tagger.emptyBuilder().put(TAG_KEY, TagValue.create("value" + i)).build();
+      aggregator.record(methodTags, context, null, 1000000L);
+    }
+    TagContext context = tagger.emptyBuilder().put(TAG_KEY, TagValue.create("value")).build();
+    assertThat(aggregator.record(methodTags, context, null, 1000000L)).isFalse();
+    aggregator.flush();
+    aggregator.flush();
+    assertThat(aggregator.record(methodTags, context, null, 1000000L)).isTrue();
+  }
+
+  @Test
+  public void scheduledFlush_countsOverruns() {
+    LocalLatencyAggregator aggregator =
+        new LocalLatencyAggregator(1, TimeUnit.NANOSECONDS, mockStatsRecorder, tagger);
+    aggregator.record(methodTags, tagger.empty(), null, 1000000L);
+    aggregator.scheduledFlush();
+    assertThat(aggregator.getOverrunFlushes()).isEqualTo(1L);
+    Mockito.verify(mockMeasureMap).record(any(TagContext.class));
+
+    LocalLatencyAggregator slowAggregator = newAggregator();
+    slowAggregator.record(methodTags, tagger.empty(), null, 1000000L);
+    slowAggregator.scheduledFlush();
+    assertThat(slowAggregator.getOverrunFlushes()).isEqualTo(0L);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void flushInterval_invalid() {
+    new LocalLatencyAggregator(0, TimeUnit.SECONDS, mockStatsRecorder, tagger);
+  }
+
+  @Test
+  public void startAndStop() {
+    LocalLatencyAggregator aggregator = LocalLatencyAggregator.start(1, TimeUnit.HOURS);
+    try {
+      assertThat(LocalLatencyAggregator.current()).isSameAs(aggregator);
+    } finally {
+      LocalLatencyAggregator.stop();
+    }
+    assertThat(LocalLatencyAggregator.current()).isNull();
+    assertThat(aggregator.record(methodTags, tagger.empty(), null, 1000000L)).isFalse();
+  }
+
+  private LocalLatencyAggregator newAggregator() {
+    return new LocalLatencyAggregator(1, TimeUnit.HOURS, mockStatsRecorder, tagger);
+  }
+}
@@ -17,29 +17,49 @@ package io.opencensus.integration.jdbc;
 import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 
+import io.opencensus.integration.jdbc.Observability.TraceOption;
 import io.opencensus.integration.jdbc.Observability.TrackingOperation;
+import io.opencensus.integration.jdbc.TransactionTracker.InitialAutoCommit;
 import io.opencensus.stats.Aggregation.Distribution;
 import io.opencensus.stats.BucketBoundaries;
 import io.opencensus.stats.Measure.MeasureDouble;
+import io.opencensus.stats.Measure.MeasureLong;
 import io.opencensus.stats.MeasureMap;
 import io.opencensus.stats.StatsRecorder;
 import io.opencensus.stats.View;
 import io.opencensus.stats.ViewManager;
+import io.opencensus.tags.Tag;
 import io.opencensus.tags.TagContext;
 import io.opencensus.tags.TagContextBuilder;
 import io.opencensus.tags.TagKey;
 import io.opencensus.tags.TagValue;
 import io.opencensus.tags.Tagger;
+import io.opencensus.trace.Annotation;
 import io.opencensus.trace.AttributeValue;
+import io.opencensus.trace.EndSpanOptions;
+import io.opencensus.trace.Link;
 import io.opencensus.trace.Span;
 import io.opencensus.trace.SpanBuilder;
+import io.opencensus.trace.SpanContext;
+import io.opencensus.trace.SpanId;
 import io.opencensus.trace.Status;
+import io.opencensus.trace.TraceId;
+import io.opencensus.trace.TraceOptions;
 import io.opencensus.trace.Tracer;
+import java.sql.Connection;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
 import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -47,10 +67,16 @@ import org.junit.runners.JUnit4;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 
 /** Tests for {@link Observability}. */
 @RunWith(JUnit4.class)
 public class ObservabilityTest {
+  private static final SpanContext SAMPLED_CONTEXT =
+      SpanContext.create(
+          TraceId.fromLowerBase16("1234567890abcdef1234567890abcdef"),
+          SpanId.fromLowerBase16("1234567890abcdef"),
+          TraceOptions.builder().setIsSampled(true).build());
 
   @Mock private ViewManager mockViewManager;
   @Mock private Tagger mockTagger;
@@ -60,20 +86,26 @@ public class ObservabilityTest {
   @Mock private MeasureMap mockMeasureMap;
   @Mock private TagContextBuilder mockTagContextBuilder;
   @Mock private TagContext mockTagContext;
-  @Mock private Span mockSpan;
+  @Spy private Span mockSpan = new FakeSpan(SAMPLED_CONTEXT);
   @Mock private SpanBuilder mockSpanBuilder;
 
+  private final TagContext currentTagContext =
+      new FakeTagContext(Tag.create(TagKey.create("key"), TagValue.create("value")));
+
   @Before
   public void setUp() {
     MockitoAnnotations.initMocks(this);
     Mockito.doNothing().when(mockViewManager).registerView(any(View.class));
-    Mockito.when(mockTagger.currentBuilder()).thenReturn(mockTagContextBuilder);
+    Mockito.when(mockTagger.getCurrentTagContext()).thenReturn(currentTagContext);
+    Mockito.when(mockTagger.toBuilder(any(TagContext.class))).thenReturn(mockTagContextBuilder);
     Mockito.when(mockTagContextBuilder.put(any(TagKey.class), any(TagValue.class)))
         .thenReturn(mockTagContextBuilder);
     Mockito.when(mockTagContextBuilder.build()).thenReturn(mockTagContext);
     Mockito.when(mockStatsRecorder.newMeasureMap()).thenReturn(mockMeasureMap);
     Mockito.when(mockMeasureMap.put(any(MeasureDouble.class), anyDouble()))
         .thenReturn(mockMeasureMap);
+    Mockito.when(mockMeasureMap.put(any(MeasureLong.class), anyLong()))
+        .thenReturn(mockMeasureMap);
     Mockito.doNothing().when(mockMeasureMap).record(any(TagContext.class));
     Mockito.when(mockTracer.spanBuilderWithExplicitParent(anyString(), anyObject()))
         .thenReturn(mockSpanBuilder);
@@ -141,6 +173,50 @@ public class ObservabilityTest {
         .registerView(Observability.SQL_CLIENT_CALLS_VIEW);
     Mockito.verify(mockViewManager, Mockito.times(1))
         .registerView(Observability.SQL_CLIENT_LATENCY_VIEW);
+    Mockito.verify(mockViewManager, Mockito.times(1))
+        .registerView(Observability.SQL_CLIENT_CONNECTION_ACQUIRE_VIEW);
+    Mockito.verify(mockViewManager, Mockito.times(1))
+        .registerView(Observability.SQL_CLIENT_ROWS_READ_VIEW);
+    Mockito.verify(mockViewManager, Mockito.times(1))
+        .registerView(Observability.SQL_CLIENT_ROWS_AFFECTED_VIEW);
+    Mockito.verify(mockViewManager, Mockito.times(1))
+        .registerView(Observability.SQL_CLIENT_BATCH_SIZE_VIEW);
+    Mockito.verify(mockViewManager, Mockito.times(1))
+        .registerView(Observability.SQL_CLIENT_BATCH_THROUGHPUT_VIEW);
+    Mockito.verify(mockViewManager, Mockito.times(1))
+        .registerView(Observability.SQL_CLIENT_BATCH_LATENCY_VIEW);
+    Mockito.verify(mockViewManager, Mockito.times(1))
+        .registerView(Observability.SQL_CLIENT_CHATTY_UNITS_OF_WORK_VIEW);
+    Mockito.verify(mockViewManager, Mockito.times(1))
+        .registerView(Observability.SQL_CLIENT_TRANSACTION_LATENCY_VIEW);
+    Mockito.verify(mockViewManager, Mockito.times(1))
+        .registerView(Observability.SQL_CLIENT_TRANSACTION_STATEMENTS_VIEW);
+    Mockito.verify(mockViewManager, Mockito.times(1))
+        .registerView(Observability.SQL_CLIENT_TRANSACTION_IDLE_VIEW);
+    Mockito.verify(mockViewManager, Mockito.times(1))
+        .registerView(Observability.SQL_CLIENT_OPEN_CONNECTIONS_VIEW);
+    Mockito.verify(mockViewManager, Mockito.times(1))
+        .registerView(Observability.SQL_CLIENT_CONNECTION_AGE_VIEW);
+    Mockito.verify(mockViewManager, Mockito.times(1))
+        .registerView(Observability.SQL_CLIENT_LEAKED_CONNECTIONS_VIEW);
+    Mockito.verify(mockViewManager, Mockito.times(1))
+        .registerView(Observability.SQL_CLIENT_OPEN_STATEMENTS_VIEW);
+    Mockito.verify(mockViewManager, Mockito.times(1))
+        .registerView(Observability.SQL_CLIENT_OPEN_RESULT_SETS_VIEW);
+    Mockito.verify(mockViewManager, Mockito.times(1))
+        .registerView(Observability.SQL_CLIENT_LEAKED_STATEMENTS_VIEW);
+    Mockito.verify(mockViewManager, Mockito.times(1))
+        .registerView(Observability.SQL_CLIENT_CANCEL_LATENCY_VIEW);
+    Mockito.verify(mockViewManager, Mockito.times(1))
+        .registerView(Observability.SQL_CLIENT_CANCELLED_CALLS_VIEW);
+    Mockito.verify(mockViewManager, Mockito.times(1))
+        .registerView(Observability.SQL_CLIENT_TIMEOUT_LATENCY_VIEW);
+    Mockito.verify(mockViewManager, Mockito.times(1))
+        .registerView(Observability.SQL_CLIENT_TIMEOUTS_VIEW);
+    Mockito.verify(mockViewManager, Mockito.times(1))
+        .registerView(Observability.SQL_CLIENT_STATEMENT_CACHE_VIEW);
+    Mockito.verify(mockViewManager, Mockito.times(1))
+        .registerView(Observability.SQL_CLIENT_PREPARE_LATENCY_VIEW);
   }
 
   @Test
@@ -152,6 +228,55 @@ public class ObservabilityTest {
     Mockito.verify(mockSpanBuilder, Mockito.times(1)).startSpan();
     Mockito.verify(mockSpan, Mockito.times(1))
         .putAttribute("sql", AttributeValue.stringAttributeValue("update"));
+    Mockito.verify(mockSpan, Mockito.times(1))
+        .putAttribute(
+            "sql.fingerprint",
+            AttributeValue.stringAttributeValue(SqlFingerprint.of("update").getHashString()));
+  }
+
+  @Test
+  public void trackingOperation_notSampled() {
+    Span span = Mockito.spy(new FakeSpan(SpanContext.INVALID));
+    Mockito.when(mockSpanBuilder.startSpan()).thenReturn(span);
+    TrackingOperation trackingOperation =
+        new TrackingOperation("method", "update", mockStatsRecorder, mockTagger, mockTracer);
+    trackingOperation.annotateSql("update", TrackingOptions.DEFAULT_MAX_SQL_LENGTH);
+    trackingOperation.end();
+    Mockito.verify(span, Mockito.never()).putAttribute(anyString(), any(AttributeValue.class));
+    Mockito.verify(span, Mockito.times(1)).end();
+  }
+
+  @Test
+  public void trackingOperation_annotateSql() {
+    TrackingOperation trackingOperation =
+        new TrackingOperation("method", null, mockStatsRecorder, mockTagger, mockTracer);
+    trackingOperation.annotateSql("SELECT * FROM t WHERE id IN (1, 2, 3)", 20);
+    Mockito.verify(mockSpan, Mockito.times(1))
+        .putAttribute("sql", AttributeValue.stringAttributeValue("SELECT * FROM t WHER..."));
+    Mockito.verify(mockSpan, Mockito.times(1))
+        .putAttribute(
+            "sql.fingerprint",
+            AttributeValue.stringAttributeValue(
+                SqlFingerprint.of("SELECT * FROM t WHERE id IN (1, 2, 3)").getHashString()));
+  }
+
+  @Test
+  public void trackingOperation_putAttribute() {
+    TrackingOperation trackingOperation =
+        new TrackingOperation("method", null, mockStatsRecorder, mockTagger, mockTracer);
+    trackingOperation.putAttribute("rows", AttributeValue.longAttributeValue(10));
+    Mockito.verify(mockSpan, Mockito.times(1))
+        .putAttribute("rows", AttributeValue.longAttributeValue(10));
+  }
+
+  @Test
+  public void shouldAggregateResultSetFetches() {
+    assertThat(Observability.shouldAggregateResultSetFetches(EnumSet.noneOf(TraceOption.class)))
+        .isFalse();
+    assertThat(
+            Observability.shouldAggregateResultSetFetches(
+                EnumSet.of(TraceOption.AGGREGATE_RESULT_SET_FETCHES)))
+        .isTrue();
   }
 
   @Test
@@ -159,7 +284,7 @@ public class ObservabilityTest {
     TrackingOperation trackingOperation =
         new TrackingOperation("method", "update", mockStatsRecorder, mockTagger, mockTracer);
     trackingOperation.end();
-    Mockito.verify(mockTagger, Mockito.times(1)).currentBuilder();
+    Mockito.verify(mockTagger, Mockito.times(1)).toBuilder(currentTagContext);
     Mockito.verify(mockTagContextBuilder, Mockito.times(1))
         .put(eq(Observability.JAVA_SQL_METHOD), eq(TagValue.create("method")));
     Mockito.verify(mockTagContextBuilder, Mockito.times(1))
@@ -178,11 +303,11 @@ public class ObservabilityTest {
     IllegalArgumentException exception = new IllegalArgumentException("message");
     trackingOperation.recordException(exception);
     trackingOperation.end();
-    Mockito.verify(mockTagger, Mockito.times(1)).currentBuilder();
+    Mockito.verify(mockTagger, Mockito.times(1)).toBuilder(currentTagContext);
     Mockito.verify(mockTagContextBuilder, Mockito.times(1))
         .put(eq(Observability.JAVA_SQL_METHOD), eq(TagValue.create("method")));
     Mockito.verify(mockTagContextBuilder, Mockito.times(1))
-        .put(eq(Observability.JAVA_SQL_ERROR), eq(TagValue.create(exception.toString())));
+        .put(eq(Observability.JAVA_SQL_ERROR), eq(TagValue.create(ErrorClassifier.RUNTIME)));
     Mockito.verify(mockTagContextBuilder, Mockito.times(1))
         .put(eq(Observability.JAVA_SQL_STATUS), eq(Observability.VALUE_ERROR));
     Mockito.verify(mockSpan, Mockito.times(1))
@@ -193,4 +318,355 @@ public class ObservabilityTest {
     Mockito.verify(mockMeasureMap, Mockito.times(1)).record(any(TagContext.class));
     Mockito.verify(mockSpan, Mockito.times(1)).end();
   }
+
+  @Test
+  public void trackingOperation_end_emptyCurrentTags() {
+    Mockito.when(mockTagger.getCurrentTagContext()).thenReturn(new FakeTagContext());
+    TrackingOperation trackingOperation =
+        new TrackingOperation("method", null, mockStatsRecorder, mockTagger, mockTracer);
+    trackingOperation.end();
+    Mockito.verify(mockTagger, Mockito.never()).toBuilder(any(TagContext.class));
+    Mockito.verify(mockMeasureMap, Mockito.times(1))
+        .record(eq(Observability.methodTags("method").okTags(mockTagger)));
+  }
+
+  @Test
+  public void trackingOperation_end_async() {
+    AsyncStatsRecorder asyncStatsRecorder =
+        new AsyncStatsRecorder(
+            16, AsyncStatsRecorder.OverflowPolicy.DROP, mockStatsRecorder, mockTagger);
+    TrackingOperation trackingOperation =
+        new TrackingOperation(
+            "method",
+            null,
+            false,
+            null,
+            asyncStatsRecorder,
+            mockStatsRecorder,
+            mockTagger,
+            mockTracer);
+    trackingOperation.end();
+    Mockito.verify(mockStatsRecorder, Mockito.never()).newMeasureMap();
+
+    assertThat(asyncStatsRecorder.drain()).isEqualTo(1);
+    Mockito.verify(mockMeasureMap, Mockito.times(1))
+        .put(eq(Observability.MEASURE_LATENCY_MS), anyDouble());
+    Mockito.verify(mockMeasureMap, Mockito.times(1)).record(eq(mockTagContext));
+  }
+
+  @Test
+  public void trackingOperation_end_slowQuery() {
+    SlowQueryLog slowQueryLog = SlowQueryLog.start(0, TimeUnit.MILLISECONDS);
+    try {
+      TrackingOperation trackingOperation =
+          new TrackingOperation("method", null, mockStatsRecorder, mockTagger, mockTracer);
+      trackingOperation.recordQuery("SELECT 1", null);
+      trackingOperation.recordRowsAffected(2);
+      trackingOperation.end();
+    } finally {
+      SlowQueryLog.stop();
+    }
+    assertThat(slowQueryLog.dump()).hasSize(1);
+    assertThat(slowQueryLog.dump().get(0).getSql()).isEqualTo("SELECT 1");
+    assertThat(slowQueryLog.dump().get(0).getRowsAffected()).isEqualTo(2L);
+  }
+
+  @Test
+  public void trackingOperation_end_repeatedStatement() {
+    Mockito.when(mockTagger.currentBuilder()).thenReturn(mockTagContextBuilder);
+    UnitOfWork unitOfWork = new UnitOfWork();
+    ChattinessDetector.start(2, 100);
+    try {
+      for (int i = 0; i < 5; i++) {
+        TrackingOperation trackingOperation =
+            new TrackingOperation("method", null, false, mockStatsRecorder, mockTagger, mockTracer);
+        trackingOperation.recordQuery("SELECT * FROM t WHERE id = " + i, unitOfWork);
+        trackingOperation.end();
+      }
+    } finally {
+      ChattinessDetector.stop();
+    }
+    // Reported once, by the third execution.
+    Mockito.verify(mockMeasureMap, Mockito.times(1))
+        .put(Observability.MEASURE_CHATTY_UNITS_OF_WORK, 1L);
+    Mockito.verify(mockTagContextBuilder, Mockito.times(1))
+        .put(Observability.JAVA_SQL_CHATTINESS, Observability.VALUE_REPEATED_STATEMENT);
+  }
+
+  @Test
+  public void trackingOperation_end_transactionStatementWithoutSql() {
+    Mockito.when(mockTagger.currentBuilder()).thenReturn(mockTagContextBuilder);
+    TransactionTracker transaction =
+        new TransactionTracker(
+            Mockito.mock(Connection.class),
+            InitialAutoCommit.ofConnection(),
+            mockStatsRecorder,
+            mockTagger,
+            mockTracer);
+    transaction.beginStatement(false, null);
+    TrackingOperation trackingOperation =
+        new TrackingOperation("method", null, mockStatsRecorder, mockTagger, mockTracer);
+    trackingOperation.recordQuery(null, new UnitOfWork(transaction));
+    // The statement took longer than the transaction: it was never idle.
+    trackingOperation.recordLatency(Long.MAX_VALUE / 2);
+    trackingOperation.end();
+    transaction.end(Observability.VALUE_COMMIT, false);
+    Mockito.verify(mockMeasureMap, Mockito.times(1))
+        .put(Observability.MEASURE_TRANSACTION_IDLE_MS, 0.0);
+  }
+
+  @Test
+  public void trackingOperation_end_tooManyRoundtrips() {
+    Mockito.when(mockTagger.currentBuilder()).thenReturn(mockTagContextBuilder);
+    UnitOfWork unitOfWork = new UnitOfWork();
+    ChattinessDetector.start(100, 3);
+    try {
+      for (int i = 0; i < 5; i++) {
+        TrackingOperation trackingOperation =
+            new TrackingOperation("method", null, false, mockStatsRecorder, mockTagger, mockTracer);
+        trackingOperation.recordQuery("SELECT * FROM t" + i, unitOfWork);
+        trackingOperation.end();
+      }
+    } finally {
+      ChattinessDetector.stop();
+    }
+    Mockito.verify(mockMeasureMap, Mockito.times(1))
+        .put(Observability.MEASURE_CHATTY_UNITS_OF_WORK, 1L);
+    Mockito.verify(mockTagContextBuilder, Mockito.times(1))
+        .put(Observability.JAVA_SQL_CHATTINESS, Observability.VALUE_TOO_MANY_ROUNDTRIPS);
+  }
+
+  @Test
+  public void trackingOperation_end_cancelled() {
+    Mockito.when(mockTagger.currentBuilder()).thenReturn(mockTagContextBuilder);
+    Span cancelSpan = Mockito.spy(new FakeSpan(SAMPLED_CONTEXT));
+    Mockito.when(mockSpanBuilder.startSpan()).thenReturn(mockSpan, cancelSpan);
+    InFlightOperation inFlight = new InFlightOperation();
+    TrackingOperation trackingOperation =
+        new TrackingOperation("method", null, mockStatsRecorder, mockTagger, mockTracer);
+    trackingOperation.recordInFlight(inFlight);
+    assertThat(inFlight.get()).isSameAs(trackingOperation);
+
+    TrackingOperation cancel =
+        new TrackingOperation("cancel", null, mockStatsRecorder, mockTagger, mockTracer);
+    inFlight.cancel(cancel);
+    // Only the first cancellation is recorded.
+    inFlight.cancel(cancel);
+    cancel.end();
+    trackingOperation.end();
+
+    assertThat(inFlight.get()).isNull();
+    Mockito.verify(mockSpan, Mockito.times(1))
+        .addAnnotation(eq("Cancelled"), Mockito.<Map<String, AttributeValue>>any());
+    Mockito.verify(cancelSpan, Mockito.times(1))
+        .putAttribute("cancelled_method", AttributeValue.stringAttributeValue("method"));
+    Mockito.verify(cancelSpan, Mockito.times(1))
+        .addLink(Link.fromSpanContext(SAMPLED_CONTEXT, Link.Type.PARENT_LINKED_SPAN));
+    Mockito.verify(mockMeasureMap, Mockito.times(1))
+        .put(eq(Observability.MEASURE_CANCEL_LATENCY_MS), anyDouble());
+    Mockito.verify(mockMeasureMap, Mockito.never())
+        .put(eq(Observability.MEASURE_TIMEOUT_LATENCY_MS), anyDouble());
+    Mockito.verify(mockTagger, Mockito.times(1)).currentBuilder();
+  }
+
+  @Test
+  public void trackingOperation_end_notCancelled() {
+    InFlightOperation inFlight = new InFlightOperation();
+    TrackingOperation trackingOperation =
+        new TrackingOperation("method", null, mockStatsRecorder, mockTagger, mockTracer);
+    trackingOperation.recordInFlight(inFlight);
+    trackingOperation.end();
+    // Cancelling the statement after the operation ended doesn't affect it.
+    inFlight.cancel(
+        new TrackingOperation("cancel", null, mockStatsRecorder, mockTagger, mockTracer));
+    Mockito.verify(mockMeasureMap, Mockito.never())
+        .put(eq(Observability.MEASURE_CANCEL_LATENCY_MS), anyDouble());
+    Mockito.verify(mockTagger, Mockito.never()).currentBuilder();
+  }
+
+  @Test
+  public void trackingOperation_end_timedOut() {
+    Mockito.when(mockTagger.currentBuilder()).thenReturn(mockTagContextBuilder);
+    TrackingOperation trackingOperation =
+        new TrackingOperation("method", null, mockStatsRecorder, mockTagger, mockTracer);
+    SQLTimeoutException exception = new SQLTimeoutException("timeout");
+    trackingOperation.recordException(exception);
+    trackingOperation.end();
+    Mockito.verify(mockMeasureMap, Mockito.times(1))
+        .put(eq(Observability.MEASURE_TIMEOUT_LATENCY_MS), anyDouble());
+    Mockito.verify(mockMeasureMap, Mockito.never())
+        .put(eq(Observability.MEASURE_CANCEL_LATENCY_MS), anyDouble());
+    Mockito.verify(mockSpan, Mockito.times(1))
+        .setStatus(eq(Status.DEADLINE_EXCEEDED.withDescription(exception.toString())));
+  }
+
+  @Test
+  public void trackingOperation_end_connectionAcquire() {
+    TrackingOperation trackingOperation =
+        new TrackingOperation("method", null, mockStatsRecorder, mockTagger, mockTracer);
+    trackingOperation.recordConnectionAcquire();
+    trackingOperation.end();
+    Mockito.verify(mockMeasureMap, Mockito.times(1))
+        .put(eq(Observability.MEASURE_LATENCY_MS), anyDouble());
+    Mockito.verify(mockMeasureMap, Mockito.times(1))
+        .put(eq(Observability.MEASURE_CONNECTION_ACQUIRE_MS), anyDouble());
+    Mockito.verify(mockMeasureMap, Mockito.times(1)).record(any(TagContext.class));
+  }
+
+  @Test
+  public void trackingOperation_end_rows() {
+    TrackingOperation trackingOperation =
+        new TrackingOperation("method", null, mockStatsRecorder, mockTagger, mockTracer);
+    trackingOperation.recordRowsRead(10);
+    trackingOperation.recordRowsAffected(0);
+    trackingOperation.end();
+    Mockito.verify(mockMeasureMap, Mockito.times(1)).put(Observability.MEASURE_ROWS_READ, 10L);
+    Mockito.verify(mockMeasureMap, Mockito.times(1)).put(Observability.MEASURE_ROWS_AFFECTED, 0L);
+    Mockito.verify(mockMeasureMap, Mockito.times(1)).record(any(TagContext.class));
+  }
+
+  @Test
+  public void trackingOperation_end_recordedLatency() {
+    TrackingOperation trackingOperation =
+        new TrackingOperation("method", null, mockStatsRecorder, mockTagger, mockTracer);
+    trackingOperation.recordLatency(3000000L);
+    trackingOperation.end();
+    Mockito.verify(mockMeasureMap, Mockito.times(1)).put(Observability.MEASURE_LATENCY_MS, 3.0);
+  }
+
+  @Test
+  public void trackingOperation_end_noRows() {
+    TrackingOperation trackingOperation =
+        new TrackingOperation("method", null, mockStatsRecorder, mockTagger, mockTracer);
+    trackingOperation.end();
+    Mockito.verify(mockMeasureMap, Mockito.never()).put(any(MeasureLong.class), anyLong());
+  }
+
+  @Test
+  public void trackingOperation_end_batch() throws InterruptedException {
+    TrackingOperation trackingOperation =
+        new TrackingOperation("method", null, mockStatsRecorder, mockTagger, mockTracer);
+    trackingOperation.recordBatch(100);
+    Thread.sleep(1);
+    trackingOperation.end();
+    Mockito.verify(mockSpan, Mockito.times(1))
+        .putAttribute("batch_size", AttributeValue.longAttributeValue(100));
+    Mockito.verify(mockMeasureMap, Mockito.times(1)).put(Observability.MEASURE_BATCH_SIZE, 100L);
+    Mockito.verify(mockMeasureMap, Mockito.times(1))
+        .put(eq(Observability.MEASURE_BATCH_LATENCY_MS), anyDouble());
+    Mockito.verify(mockMeasureMap, Mockito.times(1))
+        .put(eq(Observability.MEASURE_BATCH_THROUGHPUT), anyDouble());
+    Mockito.verify(mockMeasureMap, Mockito.times(1)).record(any(TagContext.class));
+  }
+
+  @Test
+  public void trackingOperation_end_failedBatch() {
+    TrackingOperation trackingOperation =
+        new TrackingOperation("method", null, mockStatsRecorder, mockTagger, mockTracer);
+    trackingOperation.recordBatch(100);
+    trackingOperation.recordException(new IllegalArgumentException("message"));
+    trackingOperation.end();
+    Mockito.verify(mockMeasureMap, Mockito.times(1)).put(Observability.MEASURE_BATCH_SIZE, 100L);
+    Mockito.verify(mockMeasureMap, Mockito.never())
+        .put(eq(Observability.MEASURE_BATCH_THROUGHPUT), anyDouble());
+  }
+
+  @Test
+  public void rowsAffected() {
+    assertThat(Observability.rowsAffected(new int[] {1, 2, Statement.SUCCESS_NO_INFO, 0}))
+        .isEqualTo(3L);
+    assertThat(Observability.rowsAffected(new int[] {Statement.EXECUTE_FAILED})).isEqualTo(0L);
+  }
+
+  @Test
+  public void trackingOperation_metricsOnly() {
+    TrackingOperation trackingOperation =
+        new TrackingOperation(
+            "method",
+            new SqlAttributes("update", TrackingOptions.DEFAULT_MAX_SQL_LENGTH),
+            false,
+            mockStatsRecorder,
+            mockTagger,
+            mockTracer);
+    trackingOperation.withSpan().close();
+    trackingOperation.recordException(new IllegalArgumentException("message"));
+    trackingOperation.end();
+    Mockito.verifyZeroInteractions(mockTracer, mockSpanBuilder, mockSpan);
+    Mockito.verify(mockMeasureMap, Mockito.times(1))
+        .put(eq(Observability.MEASURE_LATENCY_MS), anyDouble());
+    Mockito.verify(mockMeasureMap, Mockito.times(1)).record(any(TagContext.class));
+  }
+
+  @Test
+  public void createRoundtripTrackingSpan_passthrough() {
+    TrackingOptions options =
+        TrackingOptions.of(
+            EnumSet.noneOf(TraceOption.class),
+            InstrumentationPolicy.defaults()
+                .withMode("java.sql.Statement.execute", InstrumentationPolicy.Mode.PASSTHROUGH));
+    assertThat(Observability.createRoundtripTrackingSpan(options, "java.sql.Statement.execute"))
+        .isSameAs(TrackingOperation.NOOP);
+    assertThat(
+            Observability.createRoundtripTrackingSpan(
+                options, "java.sql.Statement.execute", "SELECT 1"))
+        .isSameAs(TrackingOperation.NOOP);
+    assertThat(Observability.createRoundtripTrackingSpan(options, "java.sql.Statement.close"))
+        .isNotSameAs(TrackingOperation.NOOP);
+  }
+
+  @Test
+  public void createQueryTrackingSpan_passthrough() {
+    TrackingOptions options =
+        TrackingOptions.of(
+            EnumSet.noneOf(TraceOption.class),
+            InstrumentationPolicy.defaults()
+                .withMode("java.sql.Statement.execute", InstrumentationPolicy.Mode.PASSTHROUGH));
+    UnitOfWork unitOfWork = new UnitOfWork();
+    assertThat(
+            Observability.createQueryTrackingSpan(
+                options, "java.sql.Statement.execute", "SELECT 1", unitOfWork))
+        .isSameAs(TrackingOperation.NOOP);
+    assertThat(
+            Observability.createQueryTrackingSpan(
+                options, "java.sql.Statement.executeQuery", "SELECT 1", unitOfWork))
+        .isNotSameAs(TrackingOperation.NOOP);
+  }
+
+  @Test
+  public void methodTags_cached() {
+    assertThat(Observability.methodTags("java.sql.Statement.execute"))
+        .isSameAs(Observability.methodTags("java.sql.Statement.execute"));
+  }
+
+  // Spied on, so that its context is real.
+  private static class FakeSpan extends Span {
+    FakeSpan(SpanContext context) {
+      super(context, EnumSet.of(Span.Options.RECORD_EVENTS));
+    }
+
+    @Override
+    public void addAnnotation(String description, Map<String, AttributeValue> attributes) {}
+
+    @Override
+    public void addAnnotation(Annotation annotation) {}
+
+    @Override
+    public void addLink(Link link) {}
+
+    @Override
+    public void end(EndSpanOptions options) {}
+  }
+
+  private static final class FakeTagContext extends TagContext {
+    private final List<Tag> tags;
+
+    FakeTagContext(Tag... tags) {
+      this.tags = Arrays.asList(tags);
+    }
+
+    @Override
+    protected Iterator<Tag> getIterator() {
+      return tags.iterator();
+    }
+  }
 }
@@ -0,0 +1,177 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.integration.jdbc.InstrumentationPolicy.Mode;
+import io.opencensus.integration.jdbc.OcDriver.ParsedUrl;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link OcDriver}. */
+@RunWith(JUnit4.class)
+public class OcDriverTest {
+
+  @Test
+  public void acceptsURL() {
+    OcDriver driver = new OcDriver();
+    assertThat(driver.acceptsURL("jdbc:opencensus:postgresql://localhost/db")).isTrue();
+    assertThat(driver.acceptsURL("jdbc:postgresql://localhost/db")).isFalse();
+    assertThat(driver.acceptsURL(null)).isFalse();
+  }
+
+  @Test
+  public void connect_otherUrl() throws SQLException {
+    assertThat(new OcDriver().connect("jdbc:postgresql://localhost/db", new Properties())).isNull();
+  }
+
+  @Test
+  public void registered() throws SQLException {
+    assertThat(DriverManager.getDriver("jdbc:opencensus:postgresql://localhost/db"))
+        .isInstanceOf(OcDriver.class);
+  }
+
+  @Test
+  public void parse_noOptions() throws SQLException {
+    ParsedUrl parsedUrl = OcDriver.parse("jdbc:opencensus:postgresql://localhost/db?ssl=true");
+    assertThat(parsedUrl.delegateUrl).isEqualTo("jdbc:postgresql://localhost/db?ssl=true");
+    assertThat(parsedUrl.options.annotateSpansWithSQL).isFalse();
+    assertThat(parsedUrl.options.aggregateResultSetFetches).isFalse();
+    assertThat(parsedUrl.options.metricsOnly).isFalse();
+    assertThat(parsedUrl.options.sampler).isNull();
+  }
+
+  @Test
+  public void parse_options() throws SQLException {
+    ParsedUrl parsedUrl =
+        OcDriver.parse(
+            "jdbc:opencensus:postgresql://localhost/db?ssl=true"
+                + "&opencensus.jdbc.annotateSql=true"
+                + "&opencensus.jdbc.aggregateFetches=TRUE"
+                + "&opencensus.jdbc.samplingProbability=0.25"
+                + "&opencensus.jdbc.policy.java.sql.Connection.commit=passthrough"
+                + "&user=test");
+    assertThat(parsedUrl.delegateUrl)
+        .isEqualTo("jdbc:postgresql://localhost/db?ssl=true&user=test");
+    assertThat(parsedUrl.options.annotateSpansWithSQL).isTrue();
+    assertThat(parsedUrl.options.aggregateResultSetFetches).isTrue();
+    assertThat(parsedUrl.options.metricsOnly).isFalse();
+    assertThat(parsedUrl.options.sampler).isNotNull();
+    assertThat(parsedUrl.options.mode("java.sql.Connection.commit")).isEqualTo(Mode.PASSTHROUGH);
+  }
+
+  @Test
+  public void parse_onlyOptions() throws SQLException {
+    ParsedUrl parsedUrl =
+        OcDriver.parse("jdbc:opencensus:h2:mem:?opencensus.jdbc.metricsOnly=true");
+    assertThat(parsedUrl.delegateUrl).isEqualTo("jdbc:h2:mem:");
+    assertThat(parsedUrl.options.metricsOnly).isTrue();
+  }
+
+  @Test
+  public void parse_cached() throws SQLException {
+    String url = "jdbc:opencensus:mysql://localhost/db?opencensus.jdbc.annotateSql=true";
+    assertThat(OcDriver.parse(url)).isSameAs(OcDriver.parse(url));
+  }
+
+  @Test(expected = SQLException.class)
+  public void parse_invalidBoolean() throws SQLException {
+    OcDriver.parse("jdbc:opencensus:mysql://localhost/db?opencensus.jdbc.annotateSql=yes");
+  }
+
+  @Test(expected = SQLException.class)
+  public void parse_invalidProbability() throws SQLException {
+    OcDriver.parse("jdbc:opencensus:mysql://localhost/db?opencensus.jdbc.samplingProbability=2");
+  }
+
+  @Test(expected = SQLException.class)
+  public void parse_unknownOption() throws SQLException {
+    OcDriver.parse("jdbc:opencensus:mysql://localhost/db?opencensus.jdbc.annotateSQL=true");
+  }
+
+  @Test
+  public void parsedUrl_overriddenOptions() throws SQLException {
+    ParsedUrl parsedUrl =
+        OcDriver.parse("jdbc:opencensus:mysql://localhost/db?opencensus.jdbc.annotateSql=true");
+    Properties overrides = new Properties();
+    overrides.setProperty(OcDriver.METRICS_ONLY_PROPERTY, "true");
+    TrackingOptions options = parsedUrl.options(overrides);
+    assertThat(options.annotateSpansWithSQL).isTrue();
+    assertThat(options.metricsOnly).isTrue();
+
+    // Parsed once for the same properties.
+    Properties sameOverrides = new Properties();
+    sameOverrides.setProperty(OcDriver.METRICS_ONLY_PROPERTY, "true");
+    assertThat(parsedUrl.options(sameOverrides)).isSameAs(options);
+  }
+
+  @Test(expected = SQLException.class)
+  public void parsedUrl_unknownOverride() throws SQLException {
+    Properties overrides = new Properties();
+    overrides.setProperty("opencensus.jdbc.unknown", "true");
+    OcDriver.parse("jdbc:opencensus:mysql://localhost/db").options(overrides);
+  }
+
+  @Test
+  public void getParentLogger() throws SQLException {
+    assertThat(new OcDriver().getParentLogger().getName())
+        .isEqualTo("io.opencensus.integration.jdbc");
+  }
+
+  @Test
+  public void options_fromProperties() throws SQLException {
+    Properties settings = new Properties();
+    settings.setProperty(OcDriver.METRICS_ONLY_PROPERTY, "true");
+    TrackingOptions options = OcDriver.options(settings);
+    assertThat(options.metricsOnly).isTrue();
+    assertThat(options.mode("java.sql.Statement.execute")).isEqualTo(Mode.METER);
+  }
+
+  @Test
+  public void options_maxSqlLength() throws SQLException {
+    Properties settings = new Properties();
+    assertThat(OcDriver.options(settings).maxSqlLength)
+        .isEqualTo(TrackingOptions.DEFAULT_MAX_SQL_LENGTH);
+    settings.setProperty(OcDriver.MAX_SQL_LENGTH_PROPERTY, "256");
+    assertThat(OcDriver.options(settings).maxSqlLength).isEqualTo(256);
+  }
+
+  @Test(expected = SQLException.class)
+  public void options_invalidMaxSqlLength() throws SQLException {
+    Properties settings = new Properties();
+    settings.setProperty(OcDriver.MAX_SQL_LENGTH_PROPERTY, "0");
+    OcDriver.options(settings);
+  }
+
+  @Test
+  public void options_statementCacheSize() throws SQLException {
+    Properties settings = new Properties();
+    assertThat(OcDriver.options(settings).statementCacheSize).isEqualTo(0);
+    settings.setProperty(OcDriver.STATEMENT_CACHE_SIZE_PROPERTY, "64");
+    assertThat(OcDriver.options(settings).statementCacheSize).isEqualTo(64);
+  }
+
+  @Test(expected = SQLException.class)
+  public void options_invalidStatementCacheSize() throws SQLException {
+    Properties settings = new Properties();
+    settings.setProperty(OcDriver.STATEMENT_CACHE_SIZE_PROPERTY, "-1");
+    OcDriver.options(settings);
+  }
+}
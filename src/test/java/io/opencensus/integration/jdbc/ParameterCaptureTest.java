@@ -0,0 +1,224 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.integration.jdbc.ParameterCapture.Redaction;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ParameterCapture} and {@link ParameterSlots}. */
+@RunWith(JUnit4.class)
+public class ParameterCaptureTest {
+
+  @After
+  public void tearDown() {
+    ParameterCapture.stop();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidMaxValueBytes() {
+    new ParameterCapture(4, 1024);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidMaxTotalBytes() {
+    new ParameterCapture(64, 32);
+  }
+
+  // Starts a capture that renders all the values, which the slots capture.
+  private static ParameterCapture startVerbatim() {
+    ParameterCapture capture = ParameterCapture.start();
+    capture.setRedaction(Object.class, Redaction.NONE);
+    return capture;
+  }
+
+  @Test
+  public void slots() {
+    startVerbatim();
+    ParameterSlots parameters = new ParameterSlots();
+    parameters.set(2, "a");
+    parameters.set(1, null);
+    assertThat(parameters.size()).isEqualTo(2);
+    assertThat(parameters.get(1)).isSameAs(ParameterSlots.NULL);
+    assertThat(parameters.get(2)).isEqualTo("a");
+    assertThat(parameters.get(3)).isNull();
+
+    parameters.set(20, 1);
+    assertThat(parameters.size()).isEqualTo(20);
+    assertThat(parameters.get(20)).isEqualTo(1);
+
+    parameters.clear();
+    assertThat(parameters.size()).isEqualTo(0);
+    assertThat(parameters.get(2)).isNull();
+  }
+
+  @Test
+  public void slots_notCapturedWhileStopped() {
+    ParameterSlots parameters = new ParameterSlots();
+    parameters.set(1, 42);
+    parameters.set(2, "a");
+    assertThat(parameters.size()).isEqualTo(0);
+
+    startVerbatim();
+    parameters.set(1, 42);
+    ParameterCapture.stop();
+    // Unset rather than rendered with an older value.
+    parameters.set(1, 43);
+    assertThat(parameters.get(1)).isNull();
+  }
+
+  @Test
+  public void slots_redactedPrimitivesNotBoxed() {
+    ParameterCapture.start();
+    ParameterSlots parameters = new ParameterSlots();
+    parameters.set(1, 42L);
+    assertThat(parameters.get(1)).isSameAs(Long.class);
+  }
+
+  @Test
+  public void slots_redactedValuesNotHeld() {
+    ParameterCapture capture = ParameterCapture.start();
+    ParameterSlots parameters = new ParameterSlots();
+    parameters.set(1, "alice");
+    parameters.set(2, new ByteArrayInputStream(new byte[1024]));
+    assertThat(parameters.get(1)).isSameAs(String.class);
+    assertThat(parameters.get(2)).isNotInstanceOf(InputStream.class);
+    assertThat(capture.render(parameters)).isEqualTo("[<redacted String>, <InputStream>]");
+  }
+
+  @Test
+  public void slots_longValuesCut() {
+    ParameterCapture capture = startVerbatim();
+    ParameterSlots parameters = new ParameterSlots();
+    String string = new String(new char[4096]).replace('\0', 'a');
+    byte[] bytes = new byte[4096];
+    parameters.set(1, string);
+    parameters.set(2, bytes);
+    assertThat(((String) parameters.get(1)).length())
+        .isAtMost(ParameterCapture.DEFAULT_MAX_VALUE_BYTES);
+    assertThat(((byte[]) parameters.get(2)).length)
+        .isAtMost(ParameterCapture.DEFAULT_MAX_VALUE_BYTES);
+    assertThat(capture.renderValue(parameters.get(1))).isEqualTo(capture.renderValue(string));
+    assertThat(capture.renderValue(parameters.get(2))).isEqualTo(capture.renderValue(bytes));
+  }
+
+  @Test
+  public void slots_invalidIndex() {
+    startVerbatim();
+    ParameterSlots parameters = new ParameterSlots();
+    parameters.set(0, "a");
+    parameters.set(ParameterSlots.MAX_PARAMETERS + 1, "a");
+    assertThat(parameters.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void render() {
+    ParameterCapture capture = startVerbatim();
+    ParameterSlots parameters = new ParameterSlots();
+    parameters.set(1, 42);
+    parameters.set(2, "alice");
+    parameters.set(3, null);
+    parameters.set(5, new BigDecimal("3.14"));
+    assertThat(capture.render(parameters)).isEqualTo("[42, 'alice', NULL, ?, 3.14]");
+    assertThat(capture.render(new ParameterSlots())).isEqualTo("[]");
+  }
+
+  @Test
+  public void render_redactedByDefault() {
+    ParameterCapture capture = ParameterCapture.start();
+    ParameterSlots parameters = new ParameterSlots();
+    parameters.set(1, 42);
+    parameters.set(2, "alice");
+    parameters.set(3, null);
+    assertThat(capture.render(parameters))
+        .isEqualTo("[<redacted Integer>, <redacted String>, NULL]");
+
+    // Only the numbers are rendered.
+    capture.setRedaction(Number.class, Redaction.NONE);
+    parameters.set(1, 42);
+    parameters.set(4, new BigDecimal("3.14"));
+    assertThat(capture.render(parameters)).isEqualTo("[42, <redacted String>, NULL, 3.14]");
+  }
+
+  @Test
+  public void renderValue_opaqueTypes() {
+    ParameterCapture capture = new ParameterCapture(64, 1024);
+    assertThat(capture.renderValue(new ByteArrayInputStream(new byte[1])))
+        .isEqualTo("<InputStream>");
+  }
+
+  @Test
+  public void renderValue_bytes() {
+    ParameterCapture capture = new ParameterCapture(8, 1024);
+    capture.setRedaction(Object.class, Redaction.NONE);
+    assertThat(capture.renderValue(new byte[] {1, (byte) 0xab, 3})).isEqualTo("0x01ab03");
+    assertThat(capture.renderValue(new byte[] {1, 2, 3, 4})).isEqualTo("0x01...");
+  }
+
+  @Test
+  public void renderValue_truncated() {
+    ParameterCapture capture = new ParameterCapture(10, 1024);
+    capture.setRedaction(Object.class, Redaction.NONE);
+    assertThat(capture.renderValue("abcdefgh")).isEqualTo("'abcdefgh'");
+    assertThat(capture.renderValue("abcdefghi")).isEqualTo("'abcde...'");
+    assertThat(capture.renderValue(1234567890123L)).isEqualTo("1234567...");
+    // Multi-byte characters aren't split.
+    assertThat(capture.renderValue("\u00e9\u00e9\u00e9\u00e9\u00e9"))
+        .isEqualTo("'\u00e9\u00e9...'");
+  }
+
+  @Test
+  public void render_totalTruncated() {
+    startVerbatim();
+    ParameterCapture capture = new ParameterCapture(8, 16);
+    capture.setRedaction(Object.class, Redaction.NONE);
+    ParameterSlots parameters = new ParameterSlots();
+    for (int i = 1; i <= 10; i++) {
+      parameters.set(i, i);
+    }
+    assertThat(capture.render(parameters)).isEqualTo("[1, 2, 3, ...]");
+  }
+
+  @Test
+  public void redaction() {
+    ParameterCapture capture = new ParameterCapture(64, 1024);
+    capture.setRedaction(Object.class, Redaction.NONE);
+    capture.setRedaction(java.util.Date.class, Redaction.REDACT);
+    capture.setRedaction(String.class, Redaction.REDACT);
+    assertThat(capture.renderValue("secret")).isEqualTo("<redacted String>");
+    // Applies to the subclasses.
+    assertThat(capture.renderValue(new java.sql.Timestamp(0))).isEqualTo("<redacted Timestamp>");
+    capture.setRedaction(String.class, Redaction.NONE);
+    assertThat(capture.renderValue("secret")).isEqualTo("'secret'");
+  }
+
+  @Test
+  public void startAndStop() {
+    ParameterCapture capture = ParameterCapture.start();
+    try {
+      assertThat(ParameterCapture.current()).isSameAs(capture);
+    } finally {
+      ParameterCapture.stop();
+    }
+    assertThat(ParameterCapture.current()).isNull();
+  }
+}
@@ -0,0 +1,144 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.integration.jdbc.QueryStatistics.QueryStats;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link QueryStatistics}. */
+@RunWith(JUnit4.class)
+public class QueryStatisticsTest {
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  public void record_aggregatedByFingerprint() {
+    QueryStatistics queryStatistics = new QueryStatistics(10);
+    queryStatistics.record("UPDATE t SET a = 1 WHERE id = 1", 3 * MS, 1, false);
+    queryStatistics.record("update t set a = 2 where id = 2", 7 * MS, 2, false);
+    queryStatistics.record("UPDATE t SET a = 3 WHERE id = 3", 20 * MS, -1, true);
+
+    List<QueryStats> snapshot = queryStatistics.snapshot();
+    assertThat(snapshot).hasSize(1);
+    QueryStats stats = snapshot.get(0);
+    assertThat(stats.getFingerprint())
+        .isEqualTo(SqlFingerprint.of("UPDATE t SET a = 4 WHERE id = 4"));
+    assertThat(stats.getCalls()).isEqualTo(3L);
+    assertThat(stats.getEstimatedCalls()).isEqualTo(3L);
+    assertThat(stats.getTotalTimeNanos()).isEqualTo(30 * MS);
+    assertThat(stats.getMeanTimeNanos()).isEqualTo(10.0 * MS);
+    assertThat(stats.getMaxTimeNanos()).isEqualTo(20 * MS);
+    assertThat(stats.getRowsAffected()).isEqualTo(3L);
+    assertThat(stats.getRowsRead()).isEqualTo(0L);
+    assertThat(stats.getErrors()).isEqualTo(1L);
+    // [2ms, 5ms), [5ms, 10ms) and [20ms, 50ms).
+    assertThat(stats.getHistogram())
+        .isEqualTo(new long[] {0, 0, 1, 1, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0});
+  }
+
+  @Test
+  public void snapshot_byTotalTime() {
+    QueryStatistics queryStatistics = new QueryStatistics(10);
+    queryStatistics.record("SELECT a FROM t", 1 * MS, -1, false);
+    queryStatistics.record("SELECT b FROM t", 5 * MS, -1, false);
+    List<QueryStats> snapshot = queryStatistics.snapshot();
+    assertThat(snapshot.get(0).getFingerprint().getNormalizedSql()).isEqualTo("select b from t");
+    assertThat(snapshot.get(1).getFingerprint().getNormalizedSql()).isEqualTo("select a from t");
+  }
+
+  @Test
+  public void record_replacesFewestCalls() {
+    QueryStatistics queryStatistics = new QueryStatistics(2);
+    for (int i = 0; i < 5; i++) {
+      queryStatistics.record("SELECT a FROM t", MS, -1, false);
+    }
+    queryStatistics.record("SELECT b FROM t", MS, -1, false);
+    queryStatistics.record("SELECT c FROM t", MS, -1, false);
+
+    List<QueryStats> snapshot = queryStatistics.snapshot();
+    assertThat(snapshot).hasSize(2);
+    QueryStats heavyHitter = snapshot.get(0);
+    assertThat(heavyHitter.getFingerprint().getNormalizedSql()).isEqualTo("select a from t");
+    assertThat(heavyHitter.getCalls()).isEqualTo(5L);
+    QueryStats replacement = snapshot.get(1);
+    assertThat(replacement.getFingerprint().getNormalizedSql()).isEqualTo("select c from t");
+    assertThat(replacement.getCalls()).isEqualTo(1L);
+    assertThat(replacement.getCallsError()).isEqualTo(1L);
+    assertThat(replacement.getEstimatedCalls()).isEqualTo(2L);
+  }
+
+  @Test
+  public void recordRowsRead() {
+    QueryStatistics queryStatistics = new QueryStatistics(10);
+    queryStatistics.record("SELECT a FROM t WHERE id = 1", MS, -1, false);
+    queryStatistics.recordRowsRead("SELECT a FROM t WHERE id = 2", 3);
+    queryStatistics.recordRowsRead("SELECT a FROM t WHERE id = 3", 4);
+    // Not in the table.
+    queryStatistics.recordRowsRead("SELECT b FROM t", 5);
+
+    List<QueryStats> snapshot = queryStatistics.snapshot();
+    assertThat(snapshot).hasSize(1);
+    assertThat(snapshot.get(0).getRowsRead()).isEqualTo(7L);
+    assertThat(snapshot.get(0).getRowsAffected()).isEqualTo(0L);
+  }
+
+  @Test
+  public void record_boundedByCapacity() {
+    QueryStatistics queryStatistics = new QueryStatistics(20);
+    for (int i = 0; i < 10; i++) {
+      queryStatistics.record("SELECT a FROM t", MS, -1, false);
+    }
+    for (int i = 0; i < 1000; i++) {
+      queryStatistics.record("SELECT c" + i + " FROM t", MS, -1, false);
+    }
+    List<QueryStats> snapshot = queryStatistics.snapshot();
+    assertThat(snapshot).hasSize(20);
+    long estimatedCalls = 0;
+    for (QueryStats stats : snapshot) {
+      estimatedCalls += stats.getEstimatedCalls();
+    }
+    // Each call is counted once, by a fingerprint or in the error of its replacement.
+    assertThat(estimatedCalls).isEqualTo(1010L);
+  }
+
+  @Test
+  public void reset() {
+    QueryStatistics queryStatistics = new QueryStatistics(2);
+    queryStatistics.record("SELECT a FROM t", MS, -1, false);
+    queryStatistics.reset();
+    assertThat(queryStatistics.snapshot()).isEmpty();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void capacity_invalid() {
+    new QueryStatistics(0);
+  }
+
+  @Test
+  public void startAndStop() {
+    QueryStatistics queryStatistics = QueryStatistics.start(10);
+    try {
+      assertThat(QueryStatistics.current()).isSameAs(queryStatistics);
+    } finally {
+      QueryStatistics.stop();
+    }
+    assertThat(QueryStatistics.current()).isNull();
+  }
+}
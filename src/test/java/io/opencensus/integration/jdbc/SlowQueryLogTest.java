@@ -0,0 +1,122 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.integration.jdbc.SlowQueryLog.SlowQuery;
+import io.opencensus.tags.TagValue;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link SlowQueryLog}. */
+@RunWith(JUnit4.class)
+public class SlowQueryLogTest {
+  private static final String METHOD = "java.sql.Statement.executeQuery";
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  public void offer_belowThreshold() {
+    SlowQueryLog log = new SlowQueryLog(100, TimeUnit.MILLISECONDS, 4);
+    log.offer(METHOD, "SELECT 1", 99 * MS, -1, null, null);
+    assertThat(log.dump()).isEmpty();
+    assertThat(log.getRecordedQueries()).isEqualTo(0L);
+  }
+
+  @Test
+  public void offer_aboveThreshold() {
+    SlowQueryLog log = new SlowQueryLog(100, TimeUnit.MILLISECONDS, 4);
+    log.offer(METHOD, "UPDATE t SET a = 1", 150 * MS, 3, TagValue.create("TIMEOUT"), null);
+    List<SlowQuery> queries = log.dump();
+    assertThat(queries).hasSize(1);
+    SlowQuery query = queries.get(0);
+    assertThat(query.getMethod()).isEqualTo(METHOD);
+    assertThat(query.getSql()).isEqualTo("UPDATE t SET a = 1");
+    assertThat(query.getDurationNanos()).isEqualTo(150 * MS);
+    assertThat(query.getRowsAffected()).isEqualTo(3L);
+    assertThat(query.getError()).isEqualTo("TIMEOUT");
+    assertThat(query.getThreadName()).isEqualTo(Thread.currentThread().getName());
+  }
+
+  @Test
+  public void offer_parameters() {
+    SlowQueryLog log = new SlowQueryLog(100, TimeUnit.MILLISECONDS, 4);
+    ParameterSlots parameters = new ParameterSlots();
+    ParameterCapture.start().setRedaction(Number.class, ParameterCapture.Redaction.NONE);
+    parameters.set(1, 42);
+    ParameterCapture.stop();
+    log.offer(METHOD, "SELECT * FROM t WHERE id = ?", 150 * MS, -1, null, parameters);
+    ParameterCapture.start().setRedaction(Number.class, ParameterCapture.Redaction.NONE);
+    try {
+      log.offer(METHOD, "SELECT * FROM t WHERE id = ?", 150 * MS, -1, null, parameters);
+    } finally {
+      ParameterCapture.stop();
+    }
+    List<SlowQuery> queries = log.dump();
+    // Only rendered while the capture is started.
+    assertThat(queries.get(0).getParameters()).isNull();
+    assertThat(queries.get(1).getParameters()).isEqualTo("[42]");
+  }
+
+  @Test
+  public void offer_fingerprintThreshold() {
+    SlowQueryLog log = new SlowQueryLog(100, TimeUnit.MILLISECONDS, 4);
+    log.setThreshold("SELECT * FROM t WHERE id = 1", 10, TimeUnit.MILLISECONDS);
+    log.setThreshold("SELECT * FROM u WHERE id = 1", 1, TimeUnit.SECONDS);
+    log.offer(METHOD, "SELECT * FROM t WHERE id = 2", 20 * MS, -1, null, null);
+    log.offer(METHOD, "SELECT * FROM u WHERE id = 2", 200 * MS, -1, null, null);
+    log.offer(METHOD, "SELECT * FROM v WHERE id = 2", 20 * MS, -1, null, null);
+    List<SlowQuery> queries = log.dump();
+    assertThat(queries).hasSize(1);
+    assertThat(queries.get(0).getSql()).isEqualTo("SELECT * FROM t WHERE id = 2");
+
+    log.removeThreshold("SELECT * FROM u WHERE id = 3");
+    log.offer(METHOD, "SELECT * FROM u WHERE id = 2", 200 * MS, -1, null, null);
+    assertThat(log.dump()).hasSize(2);
+  }
+
+  @Test
+  public void offer_keepsMostRecent() {
+    SlowQueryLog log = new SlowQueryLog(0, TimeUnit.MILLISECONDS, 2);
+    for (int i = 0; i < 5; i++) {
+      log.offer(METHOD, "SELECT " + i, MS, -1, null, null);
+    }
+    List<SlowQuery> queries = log.dump();
+    assertThat(queries).hasSize(2);
+    assertThat(queries.get(0).getSql()).isEqualTo("SELECT 3");
+    assertThat(queries.get(1).getSql()).isEqualTo("SELECT 4");
+    assertThat(log.getRecordedQueries()).isEqualTo(5L);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void capacity_invalid() {
+    new SlowQueryLog(1, TimeUnit.SECONDS, 0);
+  }
+
+  @Test
+  public void startAndStop() {
+    SlowQueryLog log = SlowQueryLog.start(1, TimeUnit.SECONDS, 100);
+    try {
+      assertThat(SlowQueryLog.current()).isSameAs(log);
+      assertThat(log.getCapacity()).isEqualTo(128);
+    } finally {
+      SlowQueryLog.stop();
+    }
+    assertThat(SlowQueryLog.current()).isNull();
+  }
+}
@@ -0,0 +1,46 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.trace.AttributeValue;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link SqlAttributes}. */
+@RunWith(JUnit4.class)
+public class SqlAttributesTest {
+
+  @Test
+  public void sqlAttribute() {
+    assertThat(SqlAttributes.sqlAttribute("SELECT 1", 8))
+        .isEqualTo(AttributeValue.stringAttributeValue("SELECT 1"));
+  }
+
+  @Test
+  public void sqlAttribute_truncated() {
+    assertThat(SqlAttributes.sqlAttribute("SELECT 10", 8))
+        .isEqualTo(AttributeValue.stringAttributeValue("SELECT 1..."));
+  }
+
+  @Test
+  public void sqlAttribute_surrogatePair() {
+    // U+1F600 is encoded as a surrogate pair, which isn't split.
+    assertThat(SqlAttributes.sqlAttribute("SELECT '\uD83D\uDE00'", 9))
+        .isEqualTo(AttributeValue.stringAttributeValue("SELECT '..."));
+  }
+}
@@ -0,0 +1,110 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link SqlFingerprint} and {@link SqlNormalizer}. */
+@RunWith(JUnit4.class)
+public class SqlFingerprintTest {
+
+  @Test
+  public void normalize_stripsLiteralsCommentsAndWhitespace() {
+    assertThat(
+            SqlNormalizer.normalize(
+                "SELECT *\n  FROM users -- comment\n WHERE id = 42 AND name = 'O''Brien';"))
+        .isEqualTo("select * from users where id = ? and name = ?");
+    assertThat(
+            SqlNormalizer.normalize("/* hint */ select a.b, count(*) from t a where x >= 1.5e10"))
+        .isEqualTo("select a.b, count (*) from t a where x >= ?");
+  }
+
+  @Test
+  public void normalize_bindParameters() {
+    assertThat(SqlNormalizer.normalize("select * from t where a = ? and b = $1 and c = :name"))
+        .isEqualTo("select * from t where a = ? and b = ? and c = ?");
+    assertThat(SqlNormalizer.normalize("select a::int from t")).isEqualTo("select a :: int from t");
+  }
+
+  @Test
+  public void normalize_collapsesLists() {
+    assertThat(SqlNormalizer.normalize("select * from t where id in (1, 2, 3)"))
+        .isEqualTo("select * from t where id in (?+)");
+    assertThat(SqlNormalizer.normalize("select * from t where id in (?)"))
+        .isEqualTo("select * from t where id in (?+)");
+    assertThat(SqlNormalizer.normalize("insert into t (a, b) values (1, 'x'), (2, 'y'), (3, 'z')"))
+        .isEqualTo("insert into t (a, b) values (?+)");
+  }
+
+  @Test
+  public void normalize_keepsQuotedIdentifiers() {
+    assertThat(SqlNormalizer.normalize("UPDATE \"My Table\" SET c = 1"))
+        .isEqualTo("update \"My Table\" set c = ?");
+    assertThat(SqlNormalizer.normalize("select t1.c2 from `t1`"))
+        .isEqualTo("select t1.c2 from `t1`");
+  }
+
+  @Test
+  public void fingerprint_sameShapeSameHash() {
+    SqlFingerprint first = SqlFingerprint.of("select * from t where id in (1, 2) and x = 'a'");
+    SqlFingerprint second = SqlFingerprint.of("SELECT * FROM t WHERE id IN (3,4,5) AND x='b'");
+    assertThat(second).isEqualTo(first);
+    assertThat(second.getHash()).isEqualTo(first.getHash());
+    assertThat(first.getHashString()).hasLength(16);
+    assertThat(SqlFingerprint.of("select * from u").getHash()).isNotEqualTo(first.getHash());
+  }
+
+  @Test
+  public void fingerprint_cached() {
+    String sql = "select * from cached where id = 1";
+    assertThat(SqlFingerprint.of(sql)).isSameAs(SqlFingerprint.of(sql));
+  }
+
+  @Test
+  public void fingerprint_boundedCache() {
+    for (int i = 0; i < 2 * SqlFingerprint.MAX_CACHED_FINGERPRINTS; i++) {
+      SqlFingerprint.of("select * from t" + i);
+    }
+    assertThat(SqlFingerprint.cachedFingerprints())
+        .isAtMost(SqlFingerprint.MAX_CACHED_FINGERPRINTS);
+  }
+
+  @Test
+  public void fingerprint_evictsLeastRecentlyUsed() {
+    String hot = "select * from hot";
+    SqlFingerprint fingerprint = SqlFingerprint.of(hot);
+    for (int i = 0; i < 2 * SqlFingerprint.MAX_CACHED_FINGERPRINTS; i++) {
+      SqlFingerprint.of("select * from cold" + i);
+      SqlFingerprint.of(hot);
+    }
+    assertThat(SqlFingerprint.of(hot)).isSameAs(fingerprint);
+  }
+
+  @Test
+  public void select() {
+    long[] values = {5, 3, 9, 3, 1, 7, 3, 8};
+    assertThat(SqlFingerprint.select(values.clone(), values.length, 0)).isEqualTo(1L);
+    assertThat(SqlFingerprint.select(values.clone(), values.length, 2)).isEqualTo(3L);
+    assertThat(SqlFingerprint.select(values.clone(), values.length, 3)).isEqualTo(3L);
+    assertThat(SqlFingerprint.select(values.clone(), values.length, 4)).isEqualTo(5L);
+    assertThat(SqlFingerprint.select(values.clone(), values.length, 7)).isEqualTo(9L);
+    // Only the first n values are considered.
+    assertThat(SqlFingerprint.select(values.clone(), 3, 2)).isEqualTo(9L);
+  }
+}
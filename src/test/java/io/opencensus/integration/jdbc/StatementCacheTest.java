@@ -0,0 +1,340 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+
+import io.opencensus.integration.jdbc.Observability.TraceOption;
+import io.opencensus.stats.Measure.MeasureDouble;
+import io.opencensus.stats.Measure.MeasureLong;
+import io.opencensus.stats.MeasureMap;
+import io.opencensus.stats.StatsRecorder;
+import io.opencensus.tags.TagContext;
+import io.opencensus.tags.TagContextBuilder;
+import io.opencensus.tags.TagKey;
+import io.opencensus.tags.TagValue;
+import io.opencensus.tags.Tagger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.EnumSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+/** Tests for {@link StatementCache}. */
+@RunWith(JUnit4.class)
+public class StatementCacheTest {
+
+  @Mock private Connection mockConnection;
+  @Mock private PreparedStatement mockStatement;
+  @Mock private PreparedStatement mockOtherStatement;
+  @Mock private ResultSet mockResultSet;
+  @Mock private StatsRecorder mockStatsRecorder;
+  @Mock private Tagger mockTagger;
+  @Mock private MeasureMap mockMeasureMap;
+  @Mock private TagContextBuilder mockTagContextBuilder;
+  @Mock private TagContext mockTagContext;
+
+  private StatementCache cache;
+
+  @Before
+  public void setUp() throws SQLException {
+    MockitoAnnotations.initMocks(this);
+    Mockito.when(mockConnection.prepareStatement(anyString())).thenReturn(mockStatement);
+    Mockito.when(mockStatsRecorder.newMeasureMap()).thenReturn(mockMeasureMap);
+    Mockito.when(mockMeasureMap.put(any(MeasureDouble.class), anyDouble()))
+        .thenReturn(mockMeasureMap);
+    Mockito.when(mockMeasureMap.put(any(MeasureLong.class), anyLong()))
+        .thenReturn(mockMeasureMap);
+    Mockito.when(mockTagger.currentBuilder()).thenReturn(mockTagContextBuilder);
+    Mockito.when(mockTagContextBuilder.put(any(TagKey.class), any(TagValue.class)))
+        .thenReturn(mockTagContextBuilder);
+    Mockito.when(mockTagContextBuilder.build()).thenReturn(mockTagContext);
+    cache = new StatementCache(1, mockStatsRecorder, mockTagger);
+  }
+
+  private static StatementCache.Key key(String sql) {
+    return new StatementCache.Key(
+        sql,
+        StatementCache.UNSPECIFIED,
+        StatementCache.UNSPECIFIED,
+        StatementCache.UNSPECIFIED,
+        StatementCache.UNSPECIFIED,
+        null,
+        null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidSize() {
+    new StatementCache(0, mockStatsRecorder, mockTagger);
+  }
+
+  @Test
+  public void key_equals() {
+    assertThat(key("SELECT 1")).isEqualTo(key("SELECT 1"));
+    assertThat(key("SELECT 1").hashCode()).isEqualTo(key("SELECT 1").hashCode());
+    assertThat(key("SELECT 1")).isNotEqualTo(key("SELECT 2"));
+    assertThat(key("SELECT 1"))
+        .isNotEqualTo(
+            new StatementCache.Key(
+                "SELECT 1",
+                StatementCache.UNSPECIFIED,
+                StatementCache.UNSPECIFIED,
+                StatementCache.UNSPECIFIED,
+                Statement.RETURN_GENERATED_KEYS,
+                null,
+                null));
+  }
+
+  @Test
+  public void key_copiesColumns() {
+    int[] columnIndexes = {1};
+    StatementCache.Key key =
+        new StatementCache.Key(
+            "SELECT 1",
+            StatementCache.UNSPECIFIED,
+            StatementCache.UNSPECIFIED,
+            StatementCache.UNSPECIFIED,
+            StatementCache.UNSPECIFIED,
+            columnIndexes,
+            null);
+    StatementCache.Key copy =
+        new StatementCache.Key(
+            "SELECT 1",
+            StatementCache.UNSPECIFIED,
+            StatementCache.UNSPECIFIED,
+            StatementCache.UNSPECIFIED,
+            StatementCache.UNSPECIFIED,
+            new int[] {1},
+            null);
+    columnIndexes[0] = 2;
+    assertThat(key).isEqualTo(copy);
+  }
+
+  @Test
+  public void prepare_missThenHit() throws SQLException {
+    assertThat(cache.prepare(mockConnection, key("SELECT 1"))).isSameAs(mockStatement);
+    cache.release(key("SELECT 1"), mockStatement, false, null);
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(cache.prepare(mockConnection, key("SELECT 1"))).isSameAs(mockStatement);
+    assertThat(cache.size()).isEqualTo(0);
+
+    Mockito.verify(mockConnection, Mockito.times(1)).prepareStatement("SELECT 1");
+    Mockito.verify(mockStatement, Mockito.times(1)).clearParameters();
+    Mockito.verify(mockStatement, Mockito.never()).clearBatch();
+    Mockito.verify(mockStatement, Mockito.never()).close();
+    Mockito.verify(mockTagContextBuilder, Mockito.times(1))
+        .put(Observability.JAVA_SQL_STATEMENT_CACHE, Observability.VALUE_MISS);
+    Mockito.verify(mockTagContextBuilder, Mockito.times(1))
+        .put(Observability.JAVA_SQL_STATEMENT_CACHE, Observability.VALUE_HIT);
+    Mockito.verify(mockMeasureMap, Mockito.times(1))
+        .put(eq(Observability.MEASURE_PREPARE_LATENCY_MS), anyDouble());
+  }
+
+  @Test
+  public void release_clearsBatch() throws SQLException {
+    cache.release(key("SELECT 1"), mockStatement, true, null);
+    Mockito.verify(mockStatement, Mockito.times(1)).clearBatch();
+  }
+
+  @Test
+  public void release_resetFails() throws SQLException {
+    Mockito.doThrow(new SQLException("broken")).when(mockStatement).clearParameters();
+    cache.release(key("SELECT 1"), mockStatement, false, null);
+    assertThat(cache.size()).isEqualTo(0);
+    Mockito.verify(mockStatement, Mockito.times(1)).close();
+  }
+
+  @Test
+  public void release_duplicate() throws SQLException {
+    cache.release(key("SELECT 1"), mockStatement, false, null);
+    cache.release(key("SELECT 1"), mockOtherStatement, false, null);
+    assertThat(cache.size()).isEqualTo(1);
+    Mockito.verify(mockStatement, Mockito.never()).close();
+    Mockito.verify(mockOtherStatement, Mockito.times(1)).close();
+  }
+
+  @Test
+  public void release_evictsLeastRecentlyUsed() throws SQLException {
+    cache.release(key("SELECT 1"), mockStatement, false, null);
+    cache.release(key("SELECT 2"), mockOtherStatement, false, null);
+    assertThat(cache.size()).isEqualTo(1);
+    Mockito.verify(mockStatement, Mockito.times(1)).close();
+    Mockito.verify(mockTagContextBuilder, Mockito.times(1))
+        .put(Observability.JAVA_SQL_STATEMENT_CACHE, Observability.VALUE_EVICTION);
+  }
+
+  @Test
+  public void close() throws SQLException {
+    cache.release(key("SELECT 1"), mockStatement, false, null);
+    cache.close();
+    assertThat(cache.size()).isEqualTo(0);
+    Mockito.verify(mockStatement, Mockito.times(1)).close();
+    // Returned after the connection was closed.
+    cache.release(key("SELECT 2"), mockOtherStatement, false, null);
+    assertThat(cache.size()).isEqualTo(0);
+    Mockito.verify(mockOtherStatement, Mockito.times(1)).close();
+  }
+
+  @Test
+  public void release_restoresSettings() throws SQLException {
+    Mockito.when(mockStatement.getFetchSize()).thenReturn(0);
+    Mockito.when(mockStatement.getQueryTimeout()).thenReturn(30);
+    StatementCache.Settings settings = new StatementCache.Settings();
+    settings.saveFetchSize(mockStatement);
+    settings.saveQueryTimeout(mockStatement);
+    // Saved before the first change only.
+    settings.saveFetchSize(mockStatement);
+    cache.release(key("SELECT 1"), mockStatement, false, settings);
+    assertThat(cache.size()).isEqualTo(1);
+    Mockito.verify(mockStatement, Mockito.times(1)).getFetchSize();
+    Mockito.verify(mockStatement, Mockito.times(1)).setFetchSize(0);
+    Mockito.verify(mockStatement, Mockito.times(1)).setQueryTimeout(30);
+    Mockito.verify(mockStatement, Mockito.never()).setMaxRows(anyInt());
+    Mockito.verify(mockStatement, Mockito.never()).close();
+  }
+
+  @Test
+  public void release_irreversibleSettings() throws SQLException {
+    StatementCache.Settings settings = new StatementCache.Settings();
+    settings.changedIrreversibly();
+    cache.release(key("SELECT 1"), mockStatement, false, settings);
+    assertThat(cache.size()).isEqualTo(0);
+    Mockito.verify(mockStatement, Mockito.times(1)).close();
+  }
+
+  @Test
+  public void release_settingNotSaved() throws SQLException {
+    Mockito.when(mockStatement.getMaxRows()).thenThrow(new SQLException("unsupported"));
+    StatementCache.Settings settings = new StatementCache.Settings();
+    settings.saveMaxRows(mockStatement);
+    cache.release(key("SELECT 1"), mockStatement, false, settings);
+    assertThat(cache.size()).isEqualTo(0);
+    Mockito.verify(mockStatement, Mockito.times(1)).close();
+  }
+
+  private OcWrapConnection newConnection() {
+    return new OcWrapConnection(
+        mockConnection, EnumSet.noneOf(TraceOption.class), InstrumentationPolicy.defaults(), 8);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void connection_invalidCacheSize() {
+    new OcWrapConnection(
+        mockConnection, EnumSet.noneOf(TraceOption.class), InstrumentationPolicy.defaults(), -1);
+  }
+
+  @Test
+  public void connection_returnsStatementsToCache() throws SQLException {
+    OcWrapConnection connection = newConnection();
+    for (int i = 0; i < 3; i++) {
+      PreparedStatement statement = connection.prepareStatement("SELECT 1");
+      statement.close();
+      assertThat(statement.isClosed()).isTrue();
+      // Closing it again doesn't return it twice.
+      statement.close();
+    }
+    Mockito.verify(mockConnection, Mockito.times(1)).prepareStatement("SELECT 1");
+    Mockito.verify(mockStatement, Mockito.never()).close();
+    connection.close();
+    Mockito.verify(mockStatement, Mockito.times(1)).close();
+  }
+
+  @Test(expected = SQLException.class)
+  public void connection_closedStatementRejectsSetters() throws SQLException {
+    OcWrapConnection connection = newConnection();
+    PreparedStatement statement = connection.prepareStatement("SELECT 1");
+    statement.close();
+    // The statement may be owned by the next wrapper taking it from the cache by now.
+    connection.prepareStatement("SELECT 1");
+    try {
+      statement.setInt(1, 7);
+    } finally {
+      Mockito.verify(mockStatement, Mockito.never()).setInt(anyInt(), anyInt());
+    }
+  }
+
+  @Test(expected = SQLException.class)
+  public void connection_closedStatementRejectsExecution() throws SQLException {
+    OcWrapConnection connection = newConnection();
+    PreparedStatement statement = connection.prepareStatement("SELECT 1");
+    statement.close();
+    try {
+      statement.executeQuery();
+    } finally {
+      Mockito.verify(mockStatement, Mockito.never()).executeQuery();
+    }
+  }
+
+  @Test
+  public void connection_closesResultSetsBeforeReturningStatement() throws SQLException {
+    Mockito.when(mockStatement.executeQuery()).thenReturn(mockResultSet);
+    OcWrapConnection connection = newConnection();
+    PreparedStatement statement = connection.prepareStatement("SELECT 1");
+    statement.executeQuery();
+    statement.close();
+    Mockito.verify(mockResultSet, Mockito.times(1)).close();
+    assertThat(connection.unitOfWork.cursors().openResultSets()).isEqualTo(0);
+  }
+
+  @Test
+  public void connection_restoresChangedSettings() throws SQLException {
+    Mockito.when(mockStatement.getMaxRows()).thenReturn(0);
+    OcWrapConnection connection = newConnection();
+    PreparedStatement statement = connection.prepareStatement("SELECT 1");
+    statement.setMaxRows(10);
+    statement.setMaxRows(20);
+    statement.close();
+    Mockito.verify(mockStatement, Mockito.times(1)).getMaxRows();
+    Mockito.verify(mockStatement, Mockito.times(1)).setMaxRows(0);
+
+    // The next borrower gets the statement without its settings, and doesn't save them again.
+    connection.prepareStatement("SELECT 1").close();
+    Mockito.verify(mockConnection, Mockito.times(1)).prepareStatement("SELECT 1");
+    Mockito.verify(mockStatement, Mockito.times(1)).getMaxRows();
+    Mockito.verify(mockStatement, Mockito.never()).close();
+  }
+
+  @Test
+  public void connection_closeOnCompletionNotCached() throws SQLException {
+    OcWrapConnection connection = newConnection();
+    PreparedStatement statement = connection.prepareStatement("SELECT 1");
+    statement.closeOnCompletion();
+    statement.close();
+    Mockito.verify(mockStatement, Mockito.times(1)).closeOnCompletion();
+    Mockito.verify(mockStatement, Mockito.times(1)).close();
+  }
+
+  @Test
+  public void connection_nullSqlIsNotCached() throws SQLException {
+    Mockito.when(mockConnection.prepareStatement((String) null)).thenReturn(mockStatement);
+    OcWrapConnection connection = newConnection();
+    connection.prepareStatement((String) null).close();
+    Mockito.verify(mockStatement, Mockito.times(1)).close();
+  }
+}
@@ -0,0 +1,219 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+
+import io.opencensus.integration.jdbc.Observability.TraceOption;
+import io.opencensus.stats.Measure.MeasureLong;
+import io.opencensus.stats.MeasureMap;
+import io.opencensus.stats.StatsRecorder;
+import io.opencensus.tags.TagContext;
+import io.opencensus.tags.TagContextBuilder;
+import io.opencensus.tags.TagKey;
+import io.opencensus.tags.TagValue;
+import io.opencensus.tags.Tagger;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.EnumSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+/** Tests for {@link StatementLeakDetector}. */
+@RunWith(JUnit4.class)
+public class StatementLeakDetectorTest {
+
+  @Mock private PreparedStatement mockPreparedStatement;
+  @Mock private ResultSet mockResultSet;
+  @Mock private StatsRecorder mockStatsRecorder;
+  @Mock private Tagger mockTagger;
+  @Mock private MeasureMap mockMeasureMap;
+  @Mock private TagContextBuilder mockTagContextBuilder;
+  @Mock private TagContext mockTagContext;
+
+  private final Object wrapper = new Object();
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    Mockito.when(mockStatsRecorder.newMeasureMap()).thenReturn(mockMeasureMap);
+    Mockito.when(mockMeasureMap.put(any(MeasureLong.class), anyLong()))
+        .thenReturn(mockMeasureMap);
+    Mockito.when(mockTagger.emptyBuilder()).thenReturn(mockTagContextBuilder);
+    Mockito.when(mockTagContextBuilder.put(any(TagKey.class), any(TagValue.class)))
+        .thenReturn(mockTagContextBuilder);
+    Mockito.when(mockTagContextBuilder.build()).thenReturn(mockTagContext);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidStackTraceProbability() {
+    new StatementLeakDetector(-0.5, mockStatsRecorder, mockTagger);
+  }
+
+  @Test
+  public void track_capturesStackTrace() {
+    StatementLeakDetector detector = new StatementLeakDetector(1.0, mockStatsRecorder, mockTagger);
+    StatementLeakDetector.Tracked tracked =
+        detector.trackWrapper(wrapper, StatementLeakDetector.RESULT_SET, "SELECT 1");
+    assertThat(tracked.stackTrace).isNotNull();
+    assertThat(tracked.threadName).isEqualTo(Thread.currentThread().getName());
+    assertThat(detector.getTrackedStatements()).isEqualTo(1);
+  }
+
+  @Test
+  public void track_noStackTrace() {
+    StatementLeakDetector detector = new StatementLeakDetector(0, mockStatsRecorder, mockTagger);
+    StatementLeakDetector.Tracked tracked =
+        detector.trackWrapper(wrapper, StatementLeakDetector.STATEMENT, null);
+    assertThat(tracked.stackTrace).isNull();
+    assertThat(tracked.threadName).isNull();
+  }
+
+  @Test
+  public void expunge_collected() {
+    StatementLeakDetector detector = new StatementLeakDetector(0, mockStatsRecorder, mockTagger);
+    // Enqueued as the garbage collector would.
+    detector
+        .trackWrapper(wrapper, StatementLeakDetector.PREPARED_STATEMENT, "SELECT * FROM t")
+        .enqueue();
+    assertThat(detector.expunge()).isEqualTo(1);
+    assertThat(detector.expunge()).isEqualTo(0);
+    assertThat(detector.getLeakedStatements()).isEqualTo(1);
+    assertThat(detector.getTrackedStatements()).isEqualTo(0);
+    Mockito.verify(mockTagContextBuilder, Mockito.times(1))
+        .put(Observability.JAVA_SQL_RESOURCE, StatementLeakDetector.PREPARED_STATEMENT);
+    Mockito.verify(mockMeasureMap, Mockito.times(1))
+        .put(Observability.MEASURE_LEAKED_STATEMENTS, 1L);
+  }
+
+  @Test
+  public void expunge_onNextTrack() {
+    StatementLeakDetector detector = new StatementLeakDetector(0, mockStatsRecorder, mockTagger);
+    detector.trackWrapper(wrapper, StatementLeakDetector.STATEMENT, null).enqueue();
+    detector.trackWrapper(wrapper, StatementLeakDetector.STATEMENT, null);
+    assertThat(detector.getLeakedStatements()).isEqualTo(1);
+    assertThat(detector.getTrackedStatements()).isEqualTo(1);
+  }
+
+  @Test
+  public void expunge_released() {
+    StatementLeakDetector detector = new StatementLeakDetector(0, mockStatsRecorder, mockTagger);
+    StatementLeakDetector.Tracked tracked =
+        detector.trackWrapper(wrapper, StatementLeakDetector.RESULT_SET, null);
+    tracked.release();
+    tracked.enqueue();
+    assertThat(detector.expunge()).isEqualTo(0);
+    assertThat(detector.getTrackedStatements()).isEqualTo(0);
+    Mockito.verify(mockStatsRecorder, Mockito.never()).newMeasureMap();
+  }
+
+  @Test
+  public void startAndStop() throws SQLException {
+    StatementLeakDetector detector = StatementLeakDetector.start();
+    try {
+      assertThat(StatementLeakDetector.current()).isSameAs(detector);
+      UnitOfWork unitOfWork = new UnitOfWork();
+      OcWrapPreparedStatement statement =
+          new OcWrapPreparedStatement(
+              mockPreparedStatement,
+              "SELECT * FROM t",
+              TrackingOptions.of(EnumSet.noneOf(TraceOption.class)),
+              unitOfWork);
+      OcWrapResultSet resultSet =
+          new OcWrapResultSet(
+              mockResultSet,
+              "SELECT * FROM t",
+              TrackingOptions.of(EnumSet.noneOf(TraceOption.class)),
+              unitOfWork);
+      assertThat(detector.getTrackedStatements()).isEqualTo(2);
+      assertThat(unitOfWork.cursors().openStatements()).isEqualTo(1);
+      assertThat(unitOfWork.cursors().openResultSets()).isEqualTo(1);
+
+      resultSet.close();
+      resultSet.close();
+      statement.close();
+      assertThat(detector.getTrackedStatements()).isEqualTo(0);
+      assertThat(unitOfWork.cursors().openStatements()).isEqualTo(0);
+      assertThat(unitOfWork.cursors().openResultSets()).isEqualTo(0);
+    } finally {
+      StatementLeakDetector.stop();
+    }
+    assertThat(StatementLeakDetector.current()).isNull();
+  }
+
+  @Test
+  public void closingStatementReleasesItsResultSets() throws SQLException {
+    StatementLeakDetector detector = StatementLeakDetector.start();
+    try {
+      UnitOfWork unitOfWork = new UnitOfWork();
+      Mockito.when(mockPreparedStatement.executeQuery()).thenReturn(mockResultSet);
+      OcWrapPreparedStatement statement =
+          new OcWrapPreparedStatement(
+              mockPreparedStatement,
+              "SELECT * FROM t",
+              TrackingOptions.of(EnumSet.noneOf(TraceOption.class)),
+              unitOfWork);
+      // Executing the statement again closes the first result set.
+      statement.executeQuery();
+      statement.executeQuery();
+      assertThat(detector.getTrackedStatements()).isEqualTo(2);
+      assertThat(unitOfWork.cursors().openResultSets()).isEqualTo(1);
+
+      // The result set isn't closed by the application, but along with its statement, and isn't
+      // reported once it is collected.
+      statement.close();
+      assertThat(detector.getTrackedStatements()).isEqualTo(0);
+      assertThat(unitOfWork.cursors().openStatements()).isEqualTo(0);
+      assertThat(unitOfWork.cursors().openResultSets()).isEqualTo(0);
+      assertThat(detector.expunge()).isEqualTo(0);
+      assertThat(detector.getLeakedStatements()).isEqualTo(0);
+    } finally {
+      StatementLeakDetector.stop();
+    }
+  }
+
+  @Test
+  public void closingConnectionReleasesItsStatements() throws SQLException {
+    StatementLeakDetector detector = StatementLeakDetector.start();
+    try {
+      UnitOfWork unitOfWork = new UnitOfWork();
+      Mockito.when(mockPreparedStatement.executeQuery()).thenReturn(mockResultSet);
+      OcWrapPreparedStatement statement =
+          new OcWrapPreparedStatement(
+              mockPreparedStatement,
+              "SELECT * FROM t",
+              TrackingOptions.of(EnumSet.noneOf(TraceOption.class)),
+              unitOfWork);
+      statement.executeQuery();
+      assertThat(detector.getTrackedStatements()).isEqualTo(2);
+
+      // The statement and its result set are closed along with the connection.
+      unitOfWork.cursors().closeAll();
+      assertThat(statement.resources.isClosed()).isTrue();
+      assertThat(detector.getTrackedStatements()).isEqualTo(0);
+      assertThat(detector.expunge()).isEqualTo(0);
+    } finally {
+      StatementLeakDetector.stop();
+    }
+  }
+}
@@ -0,0 +1,130 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.integration.jdbc.Observability.TraceOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.EnumSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+/** Tests for {@link StatementResources}. */
+@RunWith(JUnit4.class)
+public class StatementResourcesTest {
+  private static final TrackingOptions OPTIONS =
+      TrackingOptions.of(EnumSet.noneOf(TraceOption.class));
+
+  @Mock private Statement mockStatement;
+  @Mock private ResultSet mockResultSet;
+  @Mock private ResultSet mockOtherResultSet;
+  @Mock private ResultSet mockGeneratedKeys;
+
+  private UnitOfWork unitOfWork;
+  private StatementResources resources;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    unitOfWork = new UnitOfWork();
+    resources =
+        new StatementResources(new Object(), StatementLeakDetector.STATEMENT, null, unitOfWork);
+  }
+
+  private OcWrapResultSet resultSet(ResultSet result) {
+    return resources.resultSet(result, null, OPTIONS, unitOfWork);
+  }
+
+  @Test
+  public void resultSet_sameWrapperForSameResult() {
+    OcWrapResultSet wrapper = resultSet(mockResultSet);
+    assertThat(resultSet(mockResultSet)).isSameAs(wrapper);
+    assertThat(unitOfWork.cursors().openResultSets()).isEqualTo(1);
+  }
+
+  @Test
+  public void resultSet_otherResultReleasesPrevious() {
+    OcWrapResultSet wrapper = resultSet(mockResultSet);
+    assertThat(resultSet(mockOtherResultSet)).isNotSameAs(wrapper);
+    assertThat(unitOfWork.cursors().openResultSets()).isEqualTo(1);
+  }
+
+  @Test
+  public void executed_releasesResultSets() {
+    resultSet(mockResultSet);
+    resources.generatedKeys(mockGeneratedKeys, null, OPTIONS, unitOfWork);
+    assertThat(unitOfWork.cursors().openResultSets()).isEqualTo(2);
+
+    resources.executed();
+    assertThat(unitOfWork.cursors().openResultSets()).isEqualTo(0);
+    assertThat(resources.isClosed()).isFalse();
+  }
+
+  @Test
+  public void moreResults_keepCurrentResult() {
+    resultSet(mockResultSet);
+    resources.moreResults(Statement.KEEP_CURRENT_RESULT);
+    resultSet(mockOtherResultSet);
+    assertThat(unitOfWork.cursors().openResultSets()).isEqualTo(2);
+
+    resources.moreResults();
+    assertThat(unitOfWork.cursors().openResultSets()).isEqualTo(1);
+    resources.moreResults(Statement.CLOSE_ALL_RESULTS);
+    assertThat(unitOfWork.cursors().openResultSets()).isEqualTo(0);
+  }
+
+  @Test
+  public void release_releasesResultSets() {
+    resultSet(mockResultSet);
+    resources.moreResults(Statement.KEEP_CURRENT_RESULT);
+    resultSet(mockOtherResultSet);
+    assertThat(unitOfWork.cursors().openStatements()).isEqualTo(1);
+
+    resources.release();
+    resources.release();
+    assertThat(resources.isClosed()).isTrue();
+    assertThat(unitOfWork.cursors().openStatements()).isEqualTo(0);
+    assertThat(unitOfWork.cursors().openResultSets()).isEqualTo(0);
+  }
+
+  @Test
+  public void statement_getResultSetReturnsSameWrapper() throws SQLException {
+    Mockito.when(mockStatement.execute("SELECT 1")).thenReturn(true);
+    Mockito.when(mockStatement.getResultSet()).thenReturn(mockResultSet);
+    UnitOfWork connection = new UnitOfWork();
+    OcWrapStatement statement = new OcWrapStatement(mockStatement, OPTIONS, connection);
+    statement.execute("SELECT 1");
+    ResultSet first = statement.getResultSet();
+    assertThat(statement.getResultSet()).isSameAs(first);
+    assertThat(connection.cursors().openResultSets()).isEqualTo(1);
+
+    // Executing the statement again closes its result set.
+    statement.execute("SELECT 1");
+    assertThat(connection.cursors().openResultSets()).isEqualTo(0);
+    assertThat(statement.getResultSet()).isNotSameAs(first);
+
+    statement.close();
+    assertThat(connection.cursors().openStatements()).isEqualTo(0);
+    assertThat(connection.cursors().openResultSets()).isEqualTo(0);
+  }
+}
@@ -0,0 +1,305 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+
+import io.opencensus.integration.jdbc.TransactionTracker.InitialAutoCommit;
+import io.opencensus.stats.Measure.MeasureDouble;
+import io.opencensus.stats.Measure.MeasureLong;
+import io.opencensus.stats.MeasureMap;
+import io.opencensus.stats.StatsRecorder;
+import io.opencensus.tags.TagContext;
+import io.opencensus.tags.TagContextBuilder;
+import io.opencensus.tags.TagKey;
+import io.opencensus.tags.TagValue;
+import io.opencensus.tags.Tagger;
+import io.opencensus.trace.AttributeValue;
+import io.opencensus.trace.Span;
+import io.opencensus.trace.SpanBuilder;
+import io.opencensus.trace.Status;
+import io.opencensus.trace.Tracer;
+import java.sql.Connection;
+import java.sql.SQLException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+/** Tests for {@link TransactionTracker}. */
+@RunWith(JUnit4.class)
+public class TransactionTrackerTest {
+
+  @Mock private Connection mockConnection;
+  @Mock private StatsRecorder mockStatsRecorder;
+  @Mock private Tagger mockTagger;
+  @Mock private Tracer mockTracer;
+
+  @Mock private MeasureMap mockMeasureMap;
+  @Mock private TagContextBuilder mockTagContextBuilder;
+  @Mock private TagContext mockTagContext;
+  @Mock private Span mockSpan;
+  @Mock private SpanBuilder mockSpanBuilder;
+
+  private TransactionTracker transaction;
+
+  @Before
+  public void setUp() throws SQLException {
+    MockitoAnnotations.initMocks(this);
+    Mockito.when(mockConnection.getAutoCommit()).thenReturn(false);
+    Mockito.when(mockStatsRecorder.newMeasureMap()).thenReturn(mockMeasureMap);
+    Mockito.when(mockMeasureMap.put(any(MeasureDouble.class), anyDouble()))
+        .thenReturn(mockMeasureMap);
+    Mockito.when(mockMeasureMap.put(any(MeasureLong.class), anyLong()))
+        .thenReturn(mockMeasureMap);
+    Mockito.when(mockTagger.currentBuilder()).thenReturn(mockTagContextBuilder);
+    Mockito.when(mockTagContextBuilder.put(any(TagKey.class), any(TagValue.class)))
+        .thenReturn(mockTagContextBuilder);
+    Mockito.when(mockTagContextBuilder.build()).thenReturn(mockTagContext);
+    Mockito.when(mockTracer.spanBuilderWithExplicitParent(anyString(), anyObject()))
+        .thenReturn(mockSpanBuilder);
+    Mockito.when(mockSpanBuilder.startSpan()).thenReturn(mockSpan);
+    transaction = newTransaction(mockConnection, InitialAutoCommit.ofConnection());
+  }
+
+  @Test
+  public void beginStatement_autoCommit() throws SQLException {
+    Mockito.when(mockConnection.getAutoCommit()).thenReturn(true);
+    assertThat(transaction.beginStatement(true, null)).isNull();
+    transaction.end(Observability.VALUE_COMMIT, false);
+    Mockito.verify(mockStatsRecorder, Mockito.never()).newMeasureMap();
+    Mockito.verify(mockTracer, Mockito.never())
+        .spanBuilderWithExplicitParent(anyString(), anyObject());
+  }
+
+  @Test
+  public void beginStatement_readsAutoCommitOnce() throws SQLException {
+    transaction.beginStatement(true, null);
+    transaction.beginStatement(true, null);
+    Mockito.verify(mockConnection, Mockito.times(1)).getAutoCommit();
+  }
+
+  @Test
+  public void beginStatement_startsSpanOnce() {
+    assertThat(transaction.beginStatement(true, null)).isSameAs(mockSpan);
+    assertThat(transaction.beginStatement(true, null)).isSameAs(mockSpan);
+    assertThat(transaction.span()).isSameAs(mockSpan);
+    Mockito.verify(mockTracer, Mockito.times(1))
+        .spanBuilderWithExplicitParent(eq(TransactionTracker.SPAN_NAME), anyObject());
+  }
+
+  @Test
+  public void beginStatement_spanStartedByFirstTracedStatement() {
+    assertThat(transaction.beginStatement(false, null)).isNull();
+    assertThat(transaction.beginStatement(true, null)).isSameAs(mockSpan);
+    assertThat(transaction.beginStatement(false, null)).isSameAs(mockSpan);
+    transaction.end(Observability.VALUE_COMMIT, false);
+    Mockito.verify(mockTracer, Mockito.times(1))
+        .spanBuilderWithExplicitParent(eq(TransactionTracker.SPAN_NAME), anyObject());
+    Mockito.verify(mockSpan, Mockito.times(1))
+        .putAttribute("statements", AttributeValue.longAttributeValue(3));
+  }
+
+  @Test
+  public void beginStatement_driverConnectionNotRead() throws SQLException {
+    transaction = newTransaction(mockConnection, InitialAutoCommit.ofDriver());
+    assertThat(transaction.beginStatement(true, null)).isNull();
+    transaction.setAutoCommit(false);
+    assertThat(transaction.beginStatement(true, null)).isSameAs(mockSpan);
+    Mockito.verify(mockConnection, Mockito.never()).getAutoCommit();
+  }
+
+  @Test
+  public void released_dataSourceReadOnce() throws SQLException {
+    InitialAutoCommit initialAutoCommit = InitialAutoCommit.ofDataSource();
+    for (int i = 0; i < 3; i++) {
+      transaction = newTransaction(mockConnection, initialAutoCommit);
+      assertThat(transaction.beginStatement(true, null)).isSameAs(mockSpan);
+      transaction.end(Observability.VALUE_CLOSE, false);
+      transaction.released();
+    }
+    // Every connection was handed out and released with auto-commit disabled.
+    Mockito.verify(mockConnection, Mockito.times(1)).getAutoCommit();
+  }
+
+  @Test
+  public void released_changedAutoCommitReadAgain() throws SQLException {
+    InitialAutoCommit initialAutoCommit = InitialAutoCommit.ofDataSource();
+    transaction = newTransaction(mockConnection, initialAutoCommit);
+    transaction.beginStatement(true, null);
+    transaction.setAutoCommit(true);
+    transaction.released();
+
+    // The pool may hand the connection out again with auto-commit enabled, or not.
+    for (int i = 0; i < 2; i++) {
+      transaction = newTransaction(mockConnection, initialAutoCommit);
+      transaction.beginStatement(true, null);
+      transaction.released();
+    }
+    Mockito.verify(mockConnection, Mockito.times(3)).getAutoCommit();
+  }
+
+  @Test
+  public void released_setBeforeKnownReadAgain() throws SQLException {
+    InitialAutoCommit initialAutoCommit = InitialAutoCommit.ofDataSource();
+    transaction = newTransaction(mockConnection, initialAutoCommit);
+    transaction.setAutoCommit(false);
+    transaction.released();
+
+    transaction = newTransaction(mockConnection, initialAutoCommit);
+    transaction.beginStatement(true, null);
+    Mockito.verify(mockConnection, Mockito.times(1)).getAutoCommit();
+  }
+
+  @Test
+  public void end_recordsTransaction() {
+    transaction.beginStatement(true, null);
+    transaction.endStatement(1000);
+    transaction.beginStatement(true, null);
+    transaction.endStatement(1000);
+    transaction.end(Observability.VALUE_COMMIT, false);
+
+    Mockito.verify(mockMeasureMap, Mockito.times(1))
+        .put(eq(Observability.MEASURE_TRANSACTION_LATENCY_MS), anyDouble());
+    Mockito.verify(mockMeasureMap, Mockito.times(1))
+        .put(Observability.MEASURE_TRANSACTION_STATEMENTS, 2L);
+    Mockito.verify(mockMeasureMap, Mockito.times(1))
+        .put(eq(Observability.MEASURE_TRANSACTION_IDLE_MS), anyDouble());
+    Mockito.verify(mockMeasureMap, Mockito.times(1)).record(mockTagContext);
+    Mockito.verify(mockTagContextBuilder, Mockito.times(1))
+        .put(Observability.JAVA_SQL_TRANSACTION_OUTCOME, Observability.VALUE_COMMIT);
+    Mockito.verify(mockTagContextBuilder, Mockito.times(1))
+        .put(Observability.JAVA_SQL_STATUS, Observability.VALUE_OK);
+    Mockito.verify(mockSpan, Mockito.times(1))
+        .putAttribute("statements", AttributeValue.longAttributeValue(2));
+    Mockito.verify(mockSpan, Mockito.times(1))
+        .putAttribute("outcome", AttributeValue.stringAttributeValue("COMMIT"));
+    Mockito.verify(mockSpan, Mockito.times(1)).end();
+    assertThat(transaction.span()).isNull();
+  }
+
+  @Test
+  public void end_idleTime() {
+    transaction.beginStatement(false, null);
+    // The statements took longer than the transaction: it was never idle.
+    transaction.endStatement(Long.MAX_VALUE / 2);
+    transaction.end(Observability.VALUE_ROLLBACK, false);
+    Mockito.verify(mockMeasureMap, Mockito.times(1))
+        .put(Observability.MEASURE_TRANSACTION_IDLE_MS, 0.0);
+  }
+
+  @Test
+  public void end_failed() {
+    transaction.beginStatement(true, null);
+    transaction.end(Observability.VALUE_COMMIT, true);
+    Mockito.verify(mockTagContextBuilder, Mockito.times(1))
+        .put(Observability.JAVA_SQL_STATUS, Observability.VALUE_ERROR);
+    Mockito.verify(mockSpan, Mockito.times(1))
+        .setStatus(Status.UNKNOWN.withDescription("COMMIT failed"));
+  }
+
+  @Test
+  public void end_once() {
+    transaction.beginStatement(true, null);
+    transaction.end(Observability.VALUE_ROLLBACK, false);
+    transaction.end(Observability.VALUE_CLOSE, false);
+    Mockito.verify(mockMeasureMap, Mockito.times(1)).record(any(TagContext.class));
+    Mockito.verify(mockSpan, Mockito.times(1)).end();
+  }
+
+  @Test
+  public void end_untraced() {
+    assertThat(transaction.beginStatement(false, null)).isNull();
+    transaction.end(Observability.VALUE_COMMIT, false);
+    Mockito.verify(mockMeasureMap, Mockito.times(1)).record(mockTagContext);
+    Mockito.verify(mockTracer, Mockito.never())
+        .spanBuilderWithExplicitParent(anyString(), anyObject());
+  }
+
+  @Test
+  public void nextStatementStartsNewTransaction() {
+    transaction.beginStatement(true, null);
+    transaction.end(Observability.VALUE_COMMIT, false);
+    transaction.beginStatement(true, null);
+    transaction.end(Observability.VALUE_COMMIT, false);
+    Mockito.verify(mockSpan, Mockito.times(2)).end();
+    Mockito.verify(mockMeasureMap, Mockito.times(2))
+        .put(Observability.MEASURE_TRANSACTION_STATEMENTS, 1L);
+  }
+
+  @Test
+  public void setAutoCommit_commitsOpenTransaction() throws SQLException {
+    transaction.beginStatement(true, null);
+    transaction.setAutoCommit(true);
+    Mockito.verify(mockTagContextBuilder, Mockito.times(1))
+        .put(Observability.JAVA_SQL_TRANSACTION_OUTCOME, Observability.VALUE_COMMIT);
+    Mockito.verify(mockSpan, Mockito.times(1)).end();
+    assertThat(transaction.beginStatement(true, null)).isNull();
+    Mockito.verify(mockConnection, Mockito.times(1)).getAutoCommit();
+  }
+
+  @Test
+  public void setAutoCommit_false() throws SQLException {
+    transaction.setAutoCommit(false);
+    assertThat(transaction.beginStatement(true, null)).isSameAs(mockSpan);
+    Mockito.verify(mockConnection, Mockito.never()).getAutoCommit();
+  }
+
+  @Test
+  public void resetAutoCommit_readsAgain() throws SQLException {
+    transaction.setAutoCommit(false);
+    transaction.resetAutoCommit();
+    Mockito.when(mockConnection.getAutoCommit()).thenReturn(true);
+    assertThat(transaction.beginStatement(true, null)).isNull();
+    Mockito.verify(mockConnection, Mockito.times(1)).getAutoCommit();
+  }
+
+  @Test
+  public void readAutoCommit_learnedFromApplication() throws SQLException {
+    InitialAutoCommit initialAutoCommit = InitialAutoCommit.ofDataSource();
+    transaction = newTransaction(mockConnection, initialAutoCommit);
+    transaction.readAutoCommit(false);
+    transaction.beginStatement(true, null);
+    transaction.released();
+
+    transaction = newTransaction(mockConnection, initialAutoCommit);
+    assertThat(transaction.beginStatement(true, null)).isSameAs(mockSpan);
+    Mockito.verify(mockConnection, Mockito.never()).getAutoCommit();
+  }
+
+  @Test
+  public void getAutoCommitFails() throws SQLException {
+    Mockito.when(mockConnection.getAutoCommit()).thenThrow(new SQLException("closed"));
+    assertThat(transaction.beginStatement(true, null)).isNull();
+    assertThat(transaction.beginStatement(true, null)).isNull();
+    // Read again by every statement, until it succeeds.
+    Mockito.verify(mockConnection, Mockito.times(2)).getAutoCommit();
+  }
+
+  private TransactionTracker newTransaction(
+      Connection connection, InitialAutoCommit initialAutoCommit) {
+    return new TransactionTracker(
+        connection, initialAutoCommit, mockStatsRecorder, mockTagger, mockTracer);
+  }
+}
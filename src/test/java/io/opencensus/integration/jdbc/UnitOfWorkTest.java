@@ -0,0 +1,83 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.trace.TraceId;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link UnitOfWork}. */
+@RunWith(JUnit4.class)
+public class UnitOfWorkTest {
+  private static final TraceId TRACE_ID_1 =
+      TraceId.fromLowerBase16("1234567890abcdef1234567890abcdef");
+  private static final TraceId TRACE_ID_2 =
+      TraceId.fromLowerBase16("abcdef1234567890abcdef1234567890");
+
+  @Test
+  public void recordExecution_countsPerFingerprint() {
+    UnitOfWork unitOfWork = new UnitOfWork();
+    assertThat(unitOfWork.recordExecution(1L, null)).isEqualTo(1);
+    assertThat(unitOfWork.recordExecution(2L, null)).isEqualTo(1);
+    assertThat(unitOfWork.recordExecution(1L, null)).isEqualTo(2);
+    // Same slot, different fingerprint.
+    assertThat(unitOfWork.recordExecution(1L + (1L << 40), null)).isEqualTo(1);
+    assertThat(unitOfWork.executions()).isEqualTo(4);
+  }
+
+  @Test
+  public void recordExecution_grows() {
+    UnitOfWork unitOfWork = new UnitOfWork();
+    for (long hash = 0; hash < 100; hash++) {
+      assertThat(unitOfWork.recordExecution(hash * 16, null)).isEqualTo(1);
+    }
+    for (long hash = 0; hash < 100; hash++) {
+      assertThat(unitOfWork.recordExecution(hash * 16, null)).isEqualTo(2);
+    }
+  }
+
+  @Test
+  public void recordExecution_boundedFingerprints() {
+    UnitOfWork unitOfWork = new UnitOfWork();
+    for (long hash = 0; hash < UnitOfWork.MAX_FINGERPRINTS; hash++) {
+      unitOfWork.recordExecution(hash, null);
+    }
+    assertThat(unitOfWork.recordExecution(-1L, null)).isEqualTo(0);
+    assertThat(unitOfWork.recordExecution(0L, null)).isEqualTo(2);
+    assertThat(unitOfWork.executions()).isEqualTo(UnitOfWork.MAX_FINGERPRINTS + 2);
+  }
+
+  @Test
+  public void reset() {
+    UnitOfWork unitOfWork = new UnitOfWork();
+    unitOfWork.recordExecution(1L, null);
+    unitOfWork.recordExecution(1L, null);
+    unitOfWork.reset();
+    assertThat(unitOfWork.executions()).isEqualTo(0);
+    assertThat(unitOfWork.recordExecution(1L, null)).isEqualTo(1);
+  }
+
+  @Test
+  public void recordExecution_newTraceStartsNewUnitOfWork() {
+    UnitOfWork unitOfWork = new UnitOfWork();
+    unitOfWork.recordExecution(1L, TRACE_ID_1);
+    assertThat(unitOfWork.recordExecution(1L, TRACE_ID_1)).isEqualTo(2);
+    assertThat(unitOfWork.recordExecution(1L, TRACE_ID_2)).isEqualTo(1);
+    assertThat(unitOfWork.executions()).isEqualTo(1);
+  }
+}